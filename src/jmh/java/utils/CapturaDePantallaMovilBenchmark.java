@@ -0,0 +1,55 @@
+package utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Anotado de capturas: decodificar el PNG del driver y dibujar el borde
+ * ({@link CapturaDePantallaMovil#conBorde}), y lo mismo más la codificación a PNG que hace
+ * el codificador en segundo plano antes de escribir el archivo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class CapturaDePantallaMovilBenchmark {
+
+    @Param({"720x1600", "1080x2400"})
+    private String resolucion;
+
+    private byte[] png;
+
+    @Setup
+    public void preparar() {
+        String[] medidas = resolucion.split("x");
+        png = FixturasBenchmark.captura(Integer.parseInt(medidas[0]), Integer.parseInt(medidas[1]));
+    }
+
+    @Benchmark
+    public BufferedImage anotar() throws Exception {
+        return CapturaDePantallaMovil.conBorde(png);
+    }
+
+    @Benchmark
+    public int anotarYCodificar() throws Exception {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream(png.length);
+        ImageIO.write(CapturaDePantallaMovil.conBorde(png), "png", salida);
+        return salida.size();
+    }
+}
@@ -0,0 +1,54 @@
+package utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Expansión de un .feature con ##@externalData: {@link DataToFeature#setExcelDataToFeature}
+ * con el libro en la caché de LectorExcel (solo el armado de la tabla) y en frío.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataToFeatureBenchmark {
+
+    @Param({"50", "2000"})
+    private int filas;
+
+    private File feature;
+
+    @Setup
+    public void preparar() throws Exception {
+        // El libro se resuelve como ruta + Environment + .xlsx: sin sufijo de ambiente
+        new SeleniumFunctions().saveInScenario("Environment", "");
+        feature = FixturasBenchmark.feature(FixturasBenchmark.libro(filas));
+    }
+
+    @Benchmark
+    public List<String> expandirConLibroCacheado() throws Exception {
+        return DataToFeature.setExcelDataToFeature(feature, new HashSet<>());
+    }
+
+    @Benchmark
+    public List<String> expandirConLibroEnFrio() throws Exception {
+        LectorExcel.limpiarCache();
+        return DataToFeature.setExcelDataToFeature(feature, new HashSet<>());
+    }
+}
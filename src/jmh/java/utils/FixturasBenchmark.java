@@ -0,0 +1,161 @@
+package utils;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Datos de entrada de los benchmarks.
+ *
+ * Los page source son volcados guardados en src/jmh/resources/fixtures/paginas
+ * (menu-inicio y marcador salen del {@link utils.simulador.SimuladorUSSD}; dialogo-sobre-marcador
+ * es el diálogo USSD sobre el marcador con barra de estado y recientes, del tamaño de un volcado
+ * real de dispositivo). Los libros de Excel y las capturas PNG se generan en build/jmh-fixtures
+ * con semilla fija: siempre los mismos bytes, sin binarios en el repositorio.
+ */
+public final class FixturasBenchmark {
+
+    public static final String HOJA = "Datos";
+    public static final File CARPETA = new File("build/jmh-fixtures");
+
+    private static final List<String> COLUMNAS =
+            Arrays.asList("Numero", "CodigoUSSD", "Menu", "Opcion", "Paquete", "Valor", "MedioPago", "Resultado");
+    private static final String[] PAQUETES = {
+            "Paquete 1GB 7 dias", "Paquete 3GB 15 dias", "Todo incluido 30 dias", "Voz ilimitada 7 dias"};
+    private static final String[] MEDIOS = {"Saldo", "PSE", "Tarjeta de credito", "Nequi"};
+
+    private FixturasBenchmark() {
+    }
+
+    /**
+     * Libro con la hoja "Datos": encabezado y una fila por caso, como los de los .feature.
+     */
+    public static synchronized File libro(int filas) throws IOException {
+        File archivo = new File(CARPETA, "datos-" + filas + ".xlsx");
+        if (archivo.isFile()) {
+            return archivo;
+        }
+        CARPETA.mkdirs();
+        Random azar = new Random(filas);
+        try (XSSFWorkbook libro = new XSSFWorkbook(); FileOutputStream salida = new FileOutputStream(archivo)) {
+            Sheet hoja = libro.createSheet(HOJA);
+            Row encabezado = hoja.createRow(0);
+            for (int c = 0; c < COLUMNAS.size(); c++) {
+                encabezado.createCell(c).setCellValue(COLUMNAS.get(c));
+            }
+            for (int f = 1; f <= filas; f++) {
+                Row fila = hoja.createRow(f);
+                fila.createCell(0).setCellValue(3100000000L + azar.nextInt(99999999));
+                fila.createCell(1).setCellValue("*611#");
+                fila.createCell(2).setCellValue("Compra de paquetes");
+                fila.createCell(3).setCellValue(1 + azar.nextInt(4));
+                fila.createCell(4).setCellValue(PAQUETES[azar.nextInt(PAQUETES.length)]);
+                fila.createCell(5).setCellValue(1000 * (5 + azar.nextInt(60)));
+                fila.createCell(6).setCellValue(MEDIOS[azar.nextInt(MEDIOS.length)]);
+                fila.createCell(7).setCellValue(azar.nextBoolean() ? "Compra exitosa" : "Saldo insuficiente");
+            }
+            libro.write(salida);
+        }
+        return archivo;
+    }
+
+    /**
+     * .feature con un esquema cuyo ejemplo toma todas las filas del libro (##@externalData).
+     */
+    public static synchronized File feature(File libro) throws IOException {
+        File archivo = new File(CARPETA, libro.getName().replace(".xlsx", ".feature"));
+        String contenido = "#language: es\n"
+                + "Característica: Compra de paquetes por USSD\n\n"
+                + "  Esquema del escenario: Compra de un paquete desde el menú USSD\n"
+                + "    Dado que el usuario marca el codigo <CodigoUSSD>\n"
+                + "    Cuando ingresa la opcion <Opcion>\n"
+                + "    Entonces valida el mensaje <Resultado>\n\n"
+                + "    Ejemplos:\n"
+                + "      | " + String.join(" | ", COLUMNAS) + " |\n"
+                + "    ##@externalData@" + libro.getPath() + "@" + HOJA + "\n"
+                + "      | 3100000000 | *611# | Compra de paquetes | 1 | Paquete | 0 | Saldo | Compra exitosa |\n";
+        Files.write(archivo.toPath(), contenido.getBytes(StandardCharsets.UTF_8));
+        return archivo;
+    }
+
+    /**
+     * Page source guardado en fixtures/paginas/&lt;nombre&gt;.xml.
+     */
+    public static String pagina(String nombre) {
+        String recurso = "/fixtures/paginas/" + nombre + ".xml";
+        try (InputStream entrada = FixturasBenchmark.class.getResourceAsStream(recurso)) {
+            if (entrada == null) {
+                throw new IllegalArgumentException("No existe la fixture " + recurso);
+            }
+            return new String(entrada.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * PNG parecido a una captura del diálogo USSD: fondo degradado, barra de estado, lista de
+     * recientes y el diálogo con renglones de texto. Los bloques llevan algo de ruido para que
+     * el PNG no se comprima más que una captura real.
+     */
+    public static byte[] captura(int ancho, int alto) {
+        BufferedImage imagen = new BufferedImage(ancho, alto, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = imagen.createGraphics();
+        Random azar = new Random(ancho * 31L + alto);
+        try {
+            g.setPaint(new GradientPaint(0, 0, new Color(0x1E, 0x3A, 0x5F), 0, alto, new Color(0x0B, 0x12, 0x20)));
+            g.fillRect(0, 0, ancho, alto);
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, ancho, alto / 26);
+            int renglon = alto / 18;
+            for (int i = 0; i < 12; i++) {
+                int y = alto / 10 + i * renglon;
+                g.setColor(new Color(0xF5, 0xF5, 0xF5));
+                g.fillRect(0, y, ancho, renglon - 2);
+                g.setColor(new Color(azar.nextInt(0xFFFFFF)));
+                g.fillOval(ancho / 27, y + renglon / 8, renglon * 3 / 4, renglon * 3 / 4);
+                g.setColor(Color.GRAY);
+                g.fillRect(ancho / 6, y + renglon / 4, ancho / 3 + azar.nextInt(ancho / 4), renglon / 5);
+            }
+            int x = ancho / 15;
+            int y = alto / 4;
+            g.setColor(Color.WHITE);
+            g.fillRoundRect(x, y, ancho - 2 * x, alto * 3 / 8, 24, 24);
+            g.setColor(Color.DARK_GRAY);
+            for (int i = 0; i < 6; i++) {
+                g.fillRect(x + 40, y + 60 + i * 56, ancho / 3 + azar.nextInt(ancho / 3), 22);
+            }
+        } finally {
+            g.dispose();
+        }
+        for (int i = 0; i < ancho * alto / 40; i++) {
+            int px = azar.nextInt(ancho);
+            int py = azar.nextInt(alto);
+            imagen.setRGB(px, py, imagen.getRGB(px, py) ^ (azar.nextInt(8) * 0x010101));
+        }
+        try {
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            ImageIO.write(imagen, "png", png);
+            return png.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lectura de la hoja de datos con {@link LectorExcel#getData(String, String)}: en frío (sin la
+ * caché de hojas, lo que paga el primer .feature que usa el libro) y con la hoja ya en memoria.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LectorExcelBenchmark {
+
+    @Param({"50", "2000"})
+    private int filas;
+
+    private final LectorExcel lector = new LectorExcel();
+    private String ruta;
+
+    @Setup
+    public void preparar() throws Exception {
+        ruta = FixturasBenchmark.libro(filas).getPath();
+    }
+
+    @Benchmark
+    public List<Map<String, String>> leerHojaEnFrio() throws Exception {
+        LectorExcel.limpiarCache();
+        return lector.getData(ruta, FixturasBenchmark.HOJA);
+    }
+
+    @Benchmark
+    public List<Map<String, String>> leerHojaCacheada() throws Exception {
+        return lector.getData(ruta, FixturasBenchmark.HOJA);
+    }
+
+    /**
+     * Lectura en frío más el recorrido de todas las celdas, como hace DataToFeature.
+     */
+    @Benchmark
+    public void leerYRecorrerEnFrio(Blackhole bh) throws Exception {
+        LectorExcel.limpiarCache();
+        for (Map<String, String> fila : lector.getData(ruta, FixturasBenchmark.HOJA)) {
+            for (Map.Entry<String, String> celda : fila.entrySet()) {
+                bh.consume(celda.getValue());
+            }
+        }
+    }
+}
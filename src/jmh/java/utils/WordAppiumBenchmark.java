@@ -0,0 +1,72 @@
+package utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Armado del informe Word de un escenario ({@link WordAppium#armarDocumento}): plantilla,
+ * reemplazos y un párrafo con su captura por paso. El .docx se escribe en memoria, así que no
+ * se mide el disco ni se borran las capturas como en {@link WordAppium#escribirInforme}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class WordAppiumBenchmark {
+
+    @Param({"6", "20"})
+    private int pasos;
+
+    private InformeEscenario informe;
+    private LocalDateTime fin;
+
+    @Setup
+    public void preparar() throws Exception {
+        File carpeta = new File(FixturasBenchmark.CARPETA, "capturas-" + pasos);
+        carpeta.mkdirs();
+        byte[] png = FixturasBenchmark.captura(720, 1600);
+        List<String> nombresPasos = new ArrayList<>();
+        Map<String, File> capturaPorPaso = new LinkedHashMap<>();
+        List<File> archivos = new ArrayList<>();
+        for (int i = 1; i <= pasos; i++) {
+            String paso = "Paso " + i + ": el usuario ingresa la opcion " + (i % 4 + 1);
+            File captura = new File(carpeta, "paso_" + i + ".png");
+            Files.write(captura.toPath(), png);
+            nombresPasos.add(paso);
+            capturaPorPaso.put(paso, captura);
+            archivos.add(captura);
+        }
+        long ahora = System.currentTimeMillis();
+        informe = new InformeEscenario("Compra de paquete de datos", nombresPasos, capturaPorPaso, archivos,
+                "3100000000", "00:01:23", null, "PASSED", ahora - 83_000, ahora);
+        fin = LocalDateTime.now();
+    }
+
+    @Benchmark
+    public int armarInforme() throws Exception {
+        ByteArrayOutputStream docx = new ByteArrayOutputStream();
+        WordAppium.armarDocumento(informe, fin, docx);
+        return docx.size();
+    }
+}
@@ -0,0 +1,70 @@
+package utils.ollama;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.NoSuchElementException;
+import utils.FixturasBenchmark;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lado CPU del análisis de fallos: extracción de elementos y compactado del page source, y
+ * armado completo de los prompts de {@link OllamaAnalyzer} (sin llamar al modelo).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OllamaAnalyzerBenchmark {
+
+    @Param({"menu-inicio", "dialogo-sobre-marcador"})
+    private String pagina;
+
+    private String pageSource;
+    private FailureContext contexto;
+
+    @Setup
+    public void preparar() {
+        pageSource = FixturasBenchmark.pagina(pagina);
+        contexto = new FailureContext.Builder()
+                .withTestName("Compra de paquete de datos")
+                .withStepDescription("Entonces valida que la pantalla contenga el menu de paquetes")
+                .withError(new NoSuchElementException("no such element: Unable to locate element: "
+                        + "{\"method\":\"id\",\"selector\":\"android:id/message\"}"))
+                .withPageSource(pageSource)
+                .withElementLocator("By.id: android:id/message", "TextView")
+                .withUssdCode("*611#")
+                .build();
+    }
+
+    @Benchmark
+    public String extraerElementos() {
+        return OllamaAnalyzer.extractRelevantElements(pageSource);
+    }
+
+    @Benchmark
+    public String compactarPageSource() {
+        return CompactadorPageSource.compactar(pageSource);
+    }
+
+    @Benchmark
+    public String promptElementoNoEncontrado() {
+        return OllamaAnalyzer.buildElementNotFoundPrompt(contexto);
+    }
+
+    @Benchmark
+    public String promptAnalisisGeneral() {
+        return OllamaAnalyzer.buildGeneralAnalysisPrompt(contexto);
+    }
+}
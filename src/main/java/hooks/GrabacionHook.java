@@ -0,0 +1,34 @@
+package hooks;
+
+import cucumber.api.Scenario;
+import cucumber.api.java.After;
+import cucumber.api.java.Before;
+import utils.grabacion.Grabacion;
+
+/**
+ * Abre y cierra la grabación de cada escenario ({@link Grabacion}).
+ *
+ * Corre antes que PopupHandler en @Before y después de él en @After, así que sus
+ * comandos también quedan en la grabación del escenario.
+ *
+ * - Sin grabacion.modo no hace nada.
+ */
+public class GrabacionHook {
+
+    @Before(order = 1)
+    public void iniciar(Scenario scenario) {
+        if (!Grabacion.GRABANDO && !Grabacion.REPRODUCIENDO) {
+            return;
+        }
+        Grabacion.iniciarEscenario(scenario.getName(),
+                Grabacion.nombreArchivo(scenario.getName(), scenario.getLines().get(0)));
+    }
+
+    @After(order = 1)
+    public void terminar(Scenario scenario) {
+        if (!Grabacion.GRABANDO && !Grabacion.REPRODUCIENDO) {
+            return;
+        }
+        Grabacion.terminarEscenario(scenario.isFailed());
+    }
+}
@@ -0,0 +1,111 @@
+package hooks;
+
+import cucumber.api.java.Before;
+import net.thucydides.core.model.DataTable;
+import net.thucydides.core.model.Story;
+import net.thucydides.core.model.TestOutcome;
+import net.thucydides.core.steps.ExecutedStepDescription;
+import net.thucydides.core.steps.StepEventBus;
+import net.thucydides.core.steps.StepFailure;
+import net.thucydides.core.steps.StepListener;
+import utils.FinDeEjecucion;
+import utils.metricas.MetricasEjecucion;
+
+import java.util.Map;
+
+/**
+ * Registra en Serenity el listener de métricas de ejecución.
+ *
+ * El listener mide cada paso (los de Cucumber y los @Step anidados de tareas e
+ * interacciones) en {@link MetricasEjecucion}; los comandos del driver los mide
+ * el executor de MyDriver y las pausas {@link utils.metricas.Pausas}. Al terminar la
+ * suite ({@link FinDeEjecucion}) escribe el resumen CSV / JSON / Prometheus.
+ *
+ * - metricas.habilitadas=false no registra el listener.
+ */
+public class MetricasHook {
+
+    private static volatile boolean listenerRegistrado = false;
+
+    @Before(order = 0)
+    public void inicializar() {
+        if (!MetricasEjecucion.HABILITADAS || listenerRegistrado) {
+            return;
+        }
+        synchronized (MetricasHook.class) {
+            if (!listenerRegistrado) {
+                StepEventBus.getEventBus().registerListener(new MetricasStepListener());
+                // Serenity no llama testRunFinished() en listeners registrados a mano
+                FinDeEjecucion.registrar(0, "MetricasEjecucion", MetricasEjecucion.get()::escribir);
+                listenerRegistrado = true;
+                System.out.println("✅ [MetricasHook] Listener de métricas registrado");
+            }
+        }
+    }
+
+    private static class MetricasStepListener implements StepListener {
+
+        private final MetricasEjecucion metricas = MetricasEjecucion.get();
+
+        @Override
+        public void stepStarted(ExecutedStepDescription description) {
+            metricas.inicioPaso(description.getTitle(), false);
+        }
+
+        @Override
+        public void skippedStepStarted(ExecutedStepDescription description) {
+            metricas.inicioPaso(description.getTitle(), true);
+        }
+
+        @Override
+        public void stepFinished() {
+            metricas.finPaso(false);
+        }
+
+        @Override
+        public void stepFailed(StepFailure failure) {
+            metricas.finPaso(true);
+        }
+
+        @Override
+        public void stepIgnored() {
+            metricas.finPaso(false);
+        }
+
+        @Override
+        public void stepPending() {
+            metricas.finPaso(false);
+        }
+
+        @Override
+        public void stepPending(String s) {
+            metricas.finPaso(false);
+        }
+
+        @Override
+        public void testFinished(TestOutcome outcome) {
+            metricas.limpiarPasosAbiertos();
+        }
+
+        // Métodos obligatorios del StepListener — sin implementación
+        @Override public void testRunFinished() {}
+        @Override public void testSuiteStarted(Class<?> testSuite) {}
+        @Override public void testSuiteStarted(Story story) {}
+        @Override public void testSuiteFinished() {}
+        @Override public void testStarted(String testName) {}
+        @Override public void testStarted(String s, String s1) {}
+        @Override public void testRetried() {}
+        @Override public void lastStepFailed(StepFailure stepFailure) {}
+        @Override public void testFailed(TestOutcome outcome, Throwable cause) {}
+        @Override public void testIgnored() {}
+        @Override public void testSkipped() {}
+        @Override public void testPending() {}
+        @Override public void testIsManual() {}
+        @Override public void notifyScreenChange() {}
+        @Override public void useExamplesFrom(DataTable dataTable) {}
+        @Override public void addNewExamplesFrom(DataTable dataTable) {}
+        @Override public void exampleStarted(Map<String, String> map) {}
+        @Override public void exampleFinished() {}
+        @Override public void assumptionViolated(String s) {}
+    }
+}
@@ -2,20 +2,36 @@ package hooks;
 
 import io.appium.java_client.android.AndroidDriver;
 import net.serenitybdd.core.Serenity;
+import net.serenitybdd.core.environment.ConfiguredEnvironment;
 import net.thucydides.core.model.DataTable;
+import net.thucydides.core.model.ReportData;
 import net.thucydides.core.model.Story;
 import net.thucydides.core.model.TestOutcome;
+import net.thucydides.core.model.TestStep;
 import net.thucydides.core.steps.ExecutedStepDescription;
+import net.thucydides.core.steps.StepEventBus;
 import net.thucydides.core.steps.StepFailure;
 import net.thucydides.core.steps.StepListener;
 import org.openqa.selenium.NoSuchElementException;
 import org.openqa.selenium.TimeoutException;
+import utils.FinDeEjecucion;
 import utils.MyDriver;
+import utils.ollama.AgrupadorFallos;
+import utils.ollama.CacheAnalisis;
+import utils.ollama.ColaAnalisis;
 import utils.ollama.FailureContext;
 import utils.ollama.OllamaAnalyzer;
 import utils.ollama.OllamaClient;
-
+import utils.traza.Trazador;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * VERSION 2.0 - Listener de Serenity BDD con análisis IA mejorado
@@ -25,19 +41,42 @@ import java.util.Map;
  * - Logging detallado del tamaño de contexto
  * - Alertas cuando el page source está vacío
  * - HTML enriquecido con highlights específicos
+ * - Análisis en segundo plano: en el thread del test solo se captura el contexto
+ *   (page source y screenshot); la consulta a Ollama va a una {@link ColaAnalisis}
+ *   y el resultado se adjunta al paso fallido en Serenity y a un archivo
+ *   analisis-ollama/*.html en la carpeta de salida de Serenity
+ * - Fallos repetidos (misma huella) se responden desde {@link CacheAnalisis} sin consultar el modelo
+ * - Fallos similares de la misma corrida se agrupan con {@link AgrupadorFallos}: se analiza
+ *   uno por grupo, el resto recibe el análisis compartido, y al terminar la suite se
+ *   imprime la tabla de grupos (también en analisis-ollama/grupos.html)
+ *
+ * Configuración via system properties:
+ * - ollama.stream: consultar en streaming y cortar cuando la respuesta ya tiene las
+ *   secciones pedidas (default: true)
+ * - ollama.analisis.drenado.segundos: espera máxima por análisis pendientes al terminar la suite (default: 300)
  *
  * @author Senior Test Automation Engineer
  * @since 2.0
  */
 public class OllamaStepListener implements StepListener {
 
+    private static final boolean STREAMING = Boolean.parseBoolean(System.getProperty("ollama.stream", "true"));
+    private static final int SEGUNDOS_DRENADO = Integer.getInteger("ollama.analisis.drenado.segundos", 300);
+
     private final OllamaClient ollamaClient;
+    private final ColaAnalisis colaAnalisis = new ColaAnalisis();
+    private final CacheAnalisis cacheAnalisis = new CacheAnalisis();
+    private final AgrupadorFallos<TestStep> agrupador = new AgrupadorFallos<>();
+    /** id de grupo → archivo del análisis en analisis-ollama/ */
+    private final Map<String, String> archivosPorGrupo = new ConcurrentHashMap<>();
     private boolean initialized = false;
     private String currentTestName;
     private String currentUssdCode;
 
     public OllamaStepListener() {
         this.ollamaClient = new OllamaClient();
+        // Serenity no llama testRunFinished() en listeners registrados a mano
+        FinDeEjecucion.registrar(0, "OllamaListener", this::cerrar);
         System.out.println("🔗 [OllamaListener v2.0] Inicializado");
         System.out.println("   " + ollamaClient.getModelInfo());
     }
@@ -60,10 +99,8 @@ public class OllamaStepListener implements StepListener {
         }
 
         // ── NUEVO: verificar disponibilidad antes de reintentar 3 veces ──
-        if (!ollamaClient.isAvailable()) {
-            System.out.println("⏭️ [OllamaListener] Ollama no disponible, omitiendo análisis.");
-            return;
-        }
+        // Sin Ollama igual se busca en la cache: un fallo ya analizado no necesita el modelo
+        boolean disponible = ollamaClient.isAvailable();
 
         Throwable cause = failure.getException();
         String stepDescription = failure.getMessage();
@@ -91,6 +128,17 @@ public class OllamaStepListener implements StepListener {
             return;
         }
 
+        String clave = CacheAnalisis.clave(context, analysisType, ollamaClient.getModel());
+        String desdeCache = null;
+        long inicioCache = System.currentTimeMillis();
+        if (!disponible) {
+            desdeCache = cacheAnalisis.obtener(clave);
+            if (desdeCache == null) {
+                System.out.println("⏭️ [OllamaListener] Ollama no disponible y sin análisis en cache, omitiendo análisis.");
+                return;
+            }
+        }
+
         // VALIDACIÓN CRÍTICA: Verificar tamaño del page source
         int pageSourceSize = context.getPageSource() != null ? context.getPageSource().length() : 0;
         System.out.println("📊 Tamaño del page source capturado: " + pageSourceSize + " caracteres");
@@ -109,12 +157,156 @@ public class OllamaStepListener implements StepListener {
                     .andContents(formatPageSourceWarning(pageSourceSize));
         }
 
-        // Ejecutar análisis con Ollama
-        analyzeWithOllama(context, analysisType);
+        // Agrupar: si ya hay un fallo igual en la corrida, se reutiliza su análisis
+        AgrupadorFallos.Miembro<TestStep> miembro = agrupador.registrar(context, analysisType, pasoParaAdjuntar());
+        AgrupadorFallos.Grupo<TestStep> grupo = miembro.getGrupo();
+        if (!miembro.esRepresentante()) {
+            System.out.println("🔗 Fallo agrupado en " + grupo.getId() + " (" + grupo.tamanio()
+                    + " ocurrencias), se reutiliza el análisis del grupo");
+            if (miembro.llegoResuelto()) {
+                vincularAlGrupo(miembro);
+            } else {
+                Serenity.recordReportData()
+                        .withTitle("🔗 Fallo agrupado (" + grupo.getId() + ")")
+                        .andContents("Mismo fallo que <strong>" + escapeHtml(grupo.getRepresentante().getTestName())
+                                + "</strong>.<br>⏳ El análisis del grupo se agrega a este paso al terminar");
+            }
+            System.out.println("╚══════════════════════════════════════════════════════════════╝\n");
+            return;
+        }
+
+        if (desdeCache != null) {
+            publicarDesdeCache(context, grupo, desdeCache, System.currentTimeMillis() - inicioCache);
+            System.out.println("╚══════════════════════════════════════════════════════════════╝\n");
+            return;
+        }
+
+        // Encolar el análisis: el test sigue sin esperar la respuesta del modelo
+        boolean encolado = colaAnalisis.encolar(analysisType,
+                () -> analyzeWithOllama(context, analysisType, clave, grupo),
+                () -> registrarNoAnalizado(grupo));
+
+        if (encolado) {
+            System.out.println("📥 Análisis encolado (" + colaAnalisis.pendientes() + " pendiente(s))");
+            Serenity.recordReportData()
+                    .withTitle("🤖 Análisis Ollama en Progreso")
+                    .andContents("Modelo: " + ollamaClient.getModel() +
+                            "<br>Tipo: " + analysisType +
+                            "<br>⏳ El resultado se agrega a este paso y a analisis-ollama/ al terminar");
+        }
 
         System.out.println("╚══════════════════════════════════════════════════════════════╝\n");
     }
 
+    /**
+     * Paso de Serenity donde se adjuntará el análisis: el paso en curso del test
+     * (capturado en el thread del test, el event bus es por thread) o el último registrado.
+     */
+    private TestStep pasoParaAdjuntar() {
+        try {
+            TestOutcome outcome = StepEventBus.getEventBus().getBaseStepListener().getCurrentTestOutcome();
+            if (outcome == null) {
+                return null;
+            }
+            List<TestStep> pasos = outcome.getTestSteps();
+            return outcome.currentStep().orElse(pasos.isEmpty() ? null : pasos.get(pasos.size() - 1));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Cierra el grupo con el resultado del representante: lo adjunta a su paso, lo guarda
+     * en analisis-ollama/ y lo vincula a los fallos del grupo registrados hasta ahora.
+     */
+    private void publicarResultado(AgrupadorFallos.Grupo<TestStep> grupo, AgrupadorFallos.Estado estado,
+                                   String titulo, String html) {
+        FailureContext context = grupo.getRepresentante();
+        adjuntar(grupo.getMiembros().get(0).getDestino(), titulo, html);
+        File archivo = guardarArchivoAnalisis(context, grupo.getId() + " · " + titulo, html);
+        if (archivo != null) {
+            archivosPorGrupo.put(grupo.getId(), archivo.getName());
+        }
+        for (AgrupadorFallos.Miembro<TestStep> miembro : grupo.completar(estado, titulo, html)) {
+            vincularAlGrupo(miembro);
+        }
+    }
+
+    /**
+     * Adjunta a un fallo agrupado el resultado compartido de su grupo.
+     */
+    private void vincularAlGrupo(AgrupadorFallos.Miembro<TestStep> miembro) {
+        AgrupadorFallos.Grupo<TestStep> grupo = miembro.getGrupo();
+        FailureContext representante = grupo.getRepresentante();
+        String archivo = archivosPorGrupo.get(grupo.getId());
+        adjuntar(miembro.getDestino(), "🔗 " + grupo.getTitulo() + " · grupo " + grupo.getId(),
+                "<div style='padding: 8px 12px; background-color: #e7f3ff; border-left: 4px solid #0d6efd; "
+                        + "font-size: 13px;'>Análisis compartido del grupo <strong>" + grupo.getId()
+                        + "</strong>, hecho una sola vez sobre el fallo de <strong>"
+                        + escapeHtml(representante.getTestName()) + "</strong> ("
+                        + escapeHtml(representante.getFormattedTimestamp()) + ")."
+                        + (archivo != null ? "<br>Archivo: analisis-ollama/" + escapeHtml(archivo) : "")
+                        + "</div>" + grupo.getHtml());
+    }
+
+    private void adjuntar(TestStep paso, String titulo, String html) {
+        if (paso == null) {
+            return;
+        }
+        try {
+            synchronized (paso) {
+                paso.recordReportData(new ReportData(titulo, html, null));
+            }
+        } catch (Exception e) {
+            System.err.println("⚠️ [OllamaListener] No se pudo adjuntar a Serenity: " + e.getMessage());
+        }
+    }
+
+    private File carpetaAnalisis() {
+        return new File(ConfiguredEnvironment.getConfiguration().getOutputDirectory(), "analisis-ollama");
+    }
+
+    /**
+     * Archivo HTML por análisis en la carpeta de salida de Serenity: queda aunque el
+     * reporte del escenario ya se haya escrito cuando termina el análisis.
+     *
+     * @return El archivo escrito, o null si no se pudo
+     */
+    private File guardarArchivoAnalisis(FailureContext context, String titulo, String html) {
+        try {
+            File carpeta = carpetaAnalisis();
+            carpeta.mkdirs();
+            String nombre = context.getTimestamp().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss_SSS")) + "_"
+                    + String.valueOf(context.getTestName()).replaceAll("[^A-Za-z0-9]+", "_") + ".html";
+            File archivo = new File(carpeta, nombre.length() > 150 ? nombre.substring(0, 150) + ".html" : nombre);
+            String documento = "<html><head><meta charset='UTF-8'><title>" + escapeHtml(titulo) + "</title></head><body>"
+                    + "<h2>" + escapeHtml(titulo) + "</h2>"
+                    + "<p><strong>Test:</strong> " + escapeHtml(context.getTestName())
+                    + "<br><strong>Step:</strong> " + escapeHtml(context.getStepDescription()) + "</p>"
+                    + html + "</body></html>";
+            Files.write(archivo.toPath(), documento.getBytes(StandardCharsets.UTF_8));
+            System.out.println("💾 [OllamaListener] Análisis guardado en " + archivo.getPath());
+            return archivo;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("⚠️ [OllamaListener] No se pudo guardar el análisis: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Constancia de un fallo que no se llegó a analizar (cola llena o fin de la suite).
+     */
+    private void registrarNoAnalizado(AgrupadorFallos.Grupo<TestStep> grupo) {
+        FailureContext context = grupo.getRepresentante();
+        System.err.println("⚠️ [OllamaListener] Fallo sin analizar: " + context.getStepDescription());
+        publicarResultado(grupo, AgrupadorFallos.Estado.NO_ANALIZADO, "⏭️ Análisis Ollama no realizado",
+                "<div style='padding: 10px; background-color: #fff3cd; color: #856404;'>"
+                        + "El análisis no se ejecutó (cola llena o fin de la suite antes de procesarlo)."
+                        + "<br><strong>Error:</strong> " + escapeHtml(context.getErrorMessage())
+                        + "<br><strong>Localizador:</strong> " + escapeHtml(context.getElementLocator())
+                        + "</div>");
+    }
+
     /**
      * Construye el contexto completo del fallo capturando toda la información relevante.
      */
@@ -211,10 +403,30 @@ public class OllamaStepListener implements StepListener {
     }
 
     /**
-     * Ejecuta el análisis con Ollama y registra resultados.
+     * Cierra el grupo con un análisis tomado de {@link CacheAnalisis}.
      */
-    private void analyzeWithOllama(FailureContext context, OllamaAnalyzer.AnalysisType analysisType) {
+    private void publicarDesdeCache(FailureContext context, AgrupadorFallos.Grupo<TestStep> grupo,
+                                    String analisis, long duracionCache) {
+        System.out.println("💾 [OllamaListener] Análisis tomado de la cache (" + duracionCache + " ms)");
+        publicarResultado(grupo, AgrupadorFallos.Estado.ANALIZADO,
+                "🧠 Análisis Inteligente Ollama (" + ollamaClient.getModel() + ", desde cache)",
+                formatOllamaAnalysisAsHtml(analisis, context, duracionCache, null));
+    }
+
+    /**
+     * Ejecuta el análisis con Ollama y registra resultados (en un thread de {@link ColaAnalisis}).
+     */
+    private void analyzeWithOllama(FailureContext context, OllamaAnalyzer.AnalysisType analysisType,
+                                   String clave, AgrupadorFallos.Grupo<TestStep> grupo) {
         try {
+            // Mismo fallo ya analizado (en esta corrida o en otra): no volver a consultar el modelo
+            long inicioCache = System.currentTimeMillis();
+            String enCache = cacheAnalisis.obtener(clave);
+            if (enCache != null) {
+                publicarDesdeCache(context, grupo, enCache, System.currentTimeMillis() - inicioCache);
+                return;
+            }
+
             System.out.println("🤖 Preparando prompt para Ollama...");
 
             // Construir prompt según tipo de análisis
@@ -227,16 +439,34 @@ public class OllamaStepListener implements StepListener {
 
             System.out.println("📤 Enviando a Ollama (esto puede tomar 30-120 segundos)...");
 
-            // Registrar que el análisis está en progreso
-            Serenity.recordReportData()
-                    .withTitle("🤖 Análisis Ollama en Progreso")
-                    .andContents("Modelo: " + ollamaClient.getModel() +
-                            "<br>Tipo: " + analysisType +
-                            "<br>⏳ Esperando respuesta...");
-
             long startTime = System.currentTimeMillis();
-            String aiAnalysis = ollamaClient.ask(prompt);
+            long inicioTraza = Trazador.ahora();
+            String aiAnalysis;
+            // Motivo del corte si la respuesta quedó a medias (presupuesto o conexión), null si está completa
+            String corteParcial = null;
+            try {
+                if (STREAMING) {
+                    OllamaClient.RespuestaStreaming respuesta = ollamaClient.askStreaming(prompt,
+                            r -> OllamaAnalyzer.respuestaCompleta(r, analysisType), null);
+                    aiAnalysis = respuesta.getTexto();
+                    if (!respuesta.esCompleta() && !OllamaAnalyzer.respuestaCompleta(aiAnalysis, analysisType)) {
+                        corteParcial = respuesta.getMotivoCorte().getDescripcion();
+                    }
+                } else {
+                    aiAnalysis = ollamaClient.ask(prompt);
+                }
+            } finally {
+                // Va a la traza de la suite: a esta altura el escenario ya escribió la suya
+                Trazador.span(Trazador.OLLAMA, "Ollama " + analysisType, inicioTraza,
+                        ollamaClient.getModel() + " — " + context.getTestName());
+            }
             long duration = System.currentTimeMillis() - startTime;
+            if (corteParcial == null) {
+                cacheAnalisis.guardar(clave, aiAnalysis);
+            } else {
+                // Una respuesta truncada no se reutiliza: el próximo fallo igual vuelve a consultar
+                System.out.println("⚠️ [OllamaListener] Respuesta parcial (" + corteParcial + "), no se guarda en cache");
+            }
 
             System.out.println(String.format("✅ Análisis recibido en %.2f segundos", duration / 1000.0));
             System.out.println("\n╔══════════════════════════════════════════════════════════════╗");
@@ -246,11 +476,11 @@ public class OllamaStepListener implements StepListener {
             System.out.println("╚══════════════════════════════════════════════════════════════╝\n");
 
             // Registrar análisis completo en reporte Serenity con HTML enriquecido
-            String htmlReport = formatOllamaAnalysisAsHtml(aiAnalysis, context, duration);
+            String htmlReport = formatOllamaAnalysisAsHtml(aiAnalysis, context, duration, corteParcial);
 
-            Serenity.recordReportData()
-                    .withTitle("🧠 Análisis Inteligente Ollama (" + ollamaClient.getModel() + ")")
-                    .andContents(htmlReport);
+            publicarResultado(grupo, AgrupadorFallos.Estado.ANALIZADO,
+                    "🧠 Análisis Inteligente Ollama (" + ollamaClient.getModel()
+                            + (corteParcial != null ? ", parcial" : "") + ")", htmlReport);
 
             System.out.println("✅ Análisis registrado en reporte Serenity");
 
@@ -259,9 +489,7 @@ public class OllamaStepListener implements StepListener {
             e.printStackTrace();
 
             // Registrar el error en Serenity
-            Serenity.recordReportData()
-                    .withTitle("❌ Error en Análisis Ollama")
-                    .andContents(formatError(e));
+            publicarResultado(grupo, AgrupadorFallos.Estado.NO_ANALIZADO, "❌ Error en Análisis Ollama", formatError(e));
         }
     }
 
@@ -275,7 +503,8 @@ public class OllamaStepListener implements StepListener {
      * - Contenido organizado en bloques
      * - Código destacado con fondo gris
      */
-    private String formatOllamaAnalysisAsHtml(String analysis, FailureContext context, long durationMs) {
+    private String formatOllamaAnalysisAsHtml(String analysis, FailureContext context, long durationMs,
+                                              String corteParcial) {
         StringBuilder html = new StringBuilder();
 
         // ═══════════════════════════════════════════════════════════
@@ -298,6 +527,15 @@ public class OllamaStepListener implements StepListener {
                 .append("</div>");
         html.append("</div>");
 
+        // Aviso de respuesta parcial: el modelo no terminó y el análisis puede estar incompleto
+        if (corteParcial != null) {
+            html.append("<div style='background: #f8d7da; border-left: 5px solid #dc3545; ")
+                    .append("padding: 10px 15px; margin-top: 2px; color: #721c24; font-size: 13px;'>")
+                    .append("⚠️ <strong>Respuesta parcial</strong> (corte: ").append(escapeHtml(corteParcial))
+                    .append("): el análisis puede estar incompleto")
+                    .append("</div>");
+        }
+
         // ═══════════════════════════════════════════════════════════
         // TARJETA 2: CONTEXTO DEL FALLO
         // ═══════════════════════════════════════════════════════════
@@ -638,7 +876,74 @@ public class OllamaStepListener implements StepListener {
     @Override public void exampleStarted(Map<String, String> map) {}
     @Override public void exampleFinished() {}
     @Override public void assumptionViolated(String s) {}
-    @Override public void testRunFinished() {
+    @Override public void testRunFinished() {}
+
+    /**
+     * Fin de la suite ({@link FinDeEjecucion}): espera los análisis encolados, imprime
+     * los grupos de fallos (ya con el análisis de cada grupo) y cierra el cliente.
+     */
+    private void cerrar() {
+        if (colaAnalisis.pendientes() > 0) {
+            System.out.println("⏳ [OllamaListener] Esperando " + colaAnalisis.pendientes()
+                    + " análisis pendiente(s) (máx. " + SEGUNDOS_DRENADO + "s)...");
+        }
+        int sinTerminar = colaAnalisis.drenar(SEGUNDOS_DRENADO);
+        if (sinTerminar > 0) {
+            System.err.println("⚠️ [OllamaListener] " + sinTerminar
+                    + " análisis sin terminar al cerrar la suite (ver analisis-ollama/)");
+        }
+        imprimirResumenGrupos();
         ollamaClient.close();
     }
+
+    /**
+     * Tabla de grupos de fallos en consola y en analisis-ollama/grupos.html.
+     */
+    private void imprimirResumenGrupos() {
+        List<AgrupadorFallos.Grupo<TestStep>> grupos = agrupador.grupos();
+        if (grupos.isEmpty()) {
+            return;
+        }
+        int fallos = 0;
+        for (AgrupadorFallos.Grupo<TestStep> grupo : grupos) {
+            fallos += grupo.tamanio();
+        }
+        System.out.println("\n📊 [OllamaListener] " + fallos + " fallo(s) en " + grupos.size()
+                + " grupo(s), " + grupos.size() + " análisis en lugar de " + fallos);
+        System.out.println(agrupador.resumen());
+
+        StringBuilder html = new StringBuilder("<html><head><meta charset='UTF-8'><title>Grupos de fallos</title></head>"
+                + "<body style='font-family: Arial, sans-serif;'><h2>Grupos de fallos</h2>"
+                + "<table border='1' cellpadding='6' style='border-collapse: collapse; font-size: 13px;'>"
+                + "<tr><th>Grupo</th><th>Fallos</th><th>Tipo</th><th>Localizador</th><th>Primera</th>"
+                + "<th>Última</th><th>Escenarios</th><th>Análisis</th></tr>");
+        for (AgrupadorFallos.Grupo<TestStep> grupo : grupos) {
+            String archivo = archivosPorGrupo.get(grupo.getId());
+            StringBuilder escenarios = new StringBuilder();
+            for (String escenario : grupo.escenarios()) {
+                escenarios.append(escenarios.length() > 0 ? "<br>" : "").append(escapeHtml(escenario));
+            }
+            html.append("<tr><td>").append(grupo.getId())
+                    .append("</td><td>").append(grupo.tamanio())
+                    .append("</td><td>").append(grupo.getTipo())
+                    .append("</td><td><code>").append(escapeHtml(shortenLocator(grupo.getRepresentante().getElementLocator())))
+                    .append("</code></td><td>").append(grupo.getPrimera().format(DateTimeFormatter.ISO_LOCAL_TIME))
+                    .append("</td><td>").append(grupo.getUltima().format(DateTimeFormatter.ISO_LOCAL_TIME))
+                    .append("</td><td>").append(escenarios)
+                    .append("</td><td>").append(archivo != null
+                            ? "<a href='" + escapeHtml(archivo) + "'>" + grupo.getEstado() + "</a>"
+                            : String.valueOf(grupo.getEstado()))
+                    .append("</td></tr>");
+        }
+        html.append("</table></body></html>");
+        try {
+            File carpeta = carpetaAnalisis();
+            carpeta.mkdirs();
+            File archivo = new File(carpeta, "grupos.html");
+            Files.write(archivo.toPath(), html.toString().getBytes(StandardCharsets.UTF_8));
+            System.out.println("💾 [OllamaListener] Resumen de grupos en " + archivo.getPath());
+        } catch (IOException | RuntimeException e) {
+            System.err.println("⚠️ [OllamaListener] No se pudo guardar el resumen de grupos: " + e.getMessage());
+        }
+    }
 }
\ No newline at end of file
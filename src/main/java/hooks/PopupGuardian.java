@@ -3,13 +3,19 @@ package hooks;
 import cucumber.api.java.After;
 import cucumber.api.java.Before;
 import io.appium.java_client.android.AndroidDriver;
-import org.openqa.selenium.By;
 import utils.MyDriver;
+import utils.ShellAdb;
+import utils.grabacion.Grabacion;
+import utils.traza.Trazador;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -17,25 +23,57 @@ import java.util.concurrent.locks.ReentrantLock;
  * - Durante la ejecución del escenario (@Before/@After no alcanzan)
  * - Hasta 30 segundos después del @After (delay natural del popup SIM Claro)
  *
- * Solución al problema del timeout: usa implicitlyWait(0) exclusivamente
- * en el contexto del guardian, restaurándolo antes de devolver control al driver.
+ * Cada ciclo evalúa las reglas de {@link ReglasPopup} contra un único page source,
+ * que no depende del implicit wait, así que el guardian ya no necesita cambiarlo.
  *
- * Sincronización: ReentrantLock evita colisión con el thread principal de Appium.
+ * Detector de cambios: antes de tocar el driver se consulta la ventana con foco
+ * (dumpsys window por el shell adb persistente, o currentActivity() si no hay adb).
+ * Si no cambió desde el último ciclo, el ciclo se omite sin tomar el lock.
+ *
+ * Un guardian por thread de escenario: cada uno vigila el driver (y el dispositivo)
+ * prestado a ese thread, con su propio lock, tarea y contadores. Los ciclos de todos
+ * corren en un pool compartido.
+ *
+ * Sincronización: el lock de cada guardian ({@link #lockDriver()}) evita colisión con
+ * el thread del escenario que usa el mismo driver; dispositivos distintos no se bloquean.
  */
 public class PopupGuardian {
 
-    // ── Lock compartido: el guardian y los steps comparten el mismo driver ──
-    public static final ReentrantLock DRIVER_LOCK = new ReentrantLock();
-
-    private static ScheduledExecutorService scheduler;
-    private static ScheduledFuture<?> tareaActiva;
-
     /** Intervalo de polling del guardian (segundos) */
     private static final int INTERVALO_SEGUNDOS = 1;
 
     /** Cuántos segundos mantener el guardian activo después del @After */
     private static final int SEGUNDOS_POST_AFTER = 35;
 
+    /** popup.guardian.modo=siempre vuelve a revisar popups en cada ciclo sin detector de cambios */
+    private static final boolean MODO_SIEMPRE =
+            "siempre".equalsIgnoreCase(System.getProperty("popup.guardian.modo", "cambios"));
+
+    private static final String COMANDO_FOCO = "dumpsys window | grep -E 'mCurrentFocus|mFocusedApp'";
+    private static final long TIMEOUT_FOCO_MS = 2000;
+
+    private static final AtomicInteger NUMERO_HILO = new AtomicInteger();
+    private static final ScheduledExecutorService SCHEDULER = Executors.newScheduledThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+                Thread t = new Thread(r, "PopupGuardian-" + NUMERO_HILO.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+
+    /** Guardian de cada thread de escenario */
+    private static final Map<Thread, Guardia> GUARDIAS = new ConcurrentHashMap<>();
+
+    /**
+     * Lock del driver del thread actual: lo comparten el escenario y su guardian.
+     */
+    public static ReentrantLock lockDriver() {
+        return guardia(Thread.currentThread()).lock;
+    }
+
+    private static Guardia guardia(Thread propietario) {
+        return GUARDIAS.computeIfAbsent(propietario, Guardia::new);
+    }
+
     // ─────────────────────────────────────────────────────────────────
     // Ciclo de vida: @Before inicia el guardian, @After lo mantiene
     // activo 35s más para cubrir el delay tardío del popup
@@ -43,126 +81,201 @@ public class PopupGuardian {
 
     @Before(order = 5)
     public void iniciarGuardian() {
-        if (scheduler == null || scheduler.isShutdown()) {
-            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
-                Thread t = new Thread(r, "PopupGuardian");
-                t.setDaemon(true);
-                return t;
-            });
+        if (Grabacion.REPRODUCIENDO) {
+            // Los popups que cerró el guardian ya están en las respuestas grabadas
+            return;
         }
+        Guardia guardia = guardia(Thread.currentThread());
+        synchronized (guardia) {
+            guardia.cancelarTareaActiva();
+            if (guardia.paradaProgramada != null) {
+                // La parada del escenario anterior no debe cancelar la tarea de este
+                guardia.paradaProgramada.cancel(false);
+            }
+            guardia.reiniciarContadores();
 
-        cancelarTareaActiva();
-
-        tareaActiva = scheduler.scheduleAtFixedRate(
-                PopupGuardian::detectarYCerrarPopups,
-                1,
-                INTERVALO_SEGUNDOS,
-                TimeUnit.SECONDS
-        );
+            guardia.tareaActiva = SCHEDULER.scheduleAtFixedRate(
+                    guardia::detectarYCerrarPopups,
+                    1,
+                    INTERVALO_SEGUNDOS,
+                    TimeUnit.SECONDS
+            );
+        }
 
-        System.out.println("🛡️ [PopupGuardian] Iniciado — polling cada "
-                + INTERVALO_SEGUNDOS + "s");
+        System.out.println("🛡️ [PopupGuardian] Iniciado para " + guardia.propietario.getName() + " — polling cada "
+                + INTERVALO_SEGUNDOS + "s (" + (MODO_SIEMPRE ? "revisión completa" : "solo si cambia la ventana con foco") + ")");
     }
 
     @After(order = 100)
     public void extenderGuardianPostEscenario() {
-        // Cancelar tarea anterior y reprogramar para cubrir los 35s post-ejecución
-        cancelarTareaActiva();
-
-        tareaActiva = scheduler.scheduleAtFixedRate(
-                PopupGuardian::detectarYCerrarPopups,
-                0,
-                INTERVALO_SEGUNDOS,
-                TimeUnit.SECONDS
-        );
-
-        // Programar la parada automática tras SEGUNDOS_POST_AFTER
-        scheduler.schedule(() -> {
-            cancelarTareaActiva();
-            System.out.println("🛡️ [PopupGuardian] Detenido tras "
-                    + SEGUNDOS_POST_AFTER + "s post-escenario");
-        }, SEGUNDOS_POST_AFTER, TimeUnit.SECONDS);
+        Guardia guardia = GUARDIAS.get(Thread.currentThread());
+        if (guardia == null) {
+            return;
+        }
+        synchronized (guardia) {
+            // Cancelar tarea anterior y reprogramar para cubrir los 35s post-ejecución
+            guardia.cancelarTareaActiva();
+
+            guardia.tareaActiva = SCHEDULER.scheduleAtFixedRate(
+                    guardia::detectarYCerrarPopups,
+                    0,
+                    INTERVALO_SEGUNDOS,
+                    TimeUnit.SECONDS
+            );
+
+            // Programar la parada automática tras SEGUNDOS_POST_AFTER
+            guardia.paradaProgramada = SCHEDULER.schedule(() -> {
+                synchronized (guardia) {
+                    guardia.cancelarTareaActiva();
+                }
+                System.out.println("🛡️ [PopupGuardian] Detenido tras "
+                        + SEGUNDOS_POST_AFTER + "s post-escenario (" + guardia.propietario.getName() + ") — "
+                        + guardia.resumenContadores() + " — por regla: " + ReglasPopup.aciertos());
+            }, SEGUNDOS_POST_AFTER, TimeUnit.SECONDS);
+        }
 
         System.out.println("🛡️ [PopupGuardian] Extendido " + SEGUNDOS_POST_AFTER
                 + "s post-escenario para capturar popup tardío");
     }
 
-    // ─────────────────────────────────────────────────────────────────
-    // Lógica de detección — se ejecuta en el thread del guardian
-    // ─────────────────────────────────────────────────────────────────
+    /**
+     * Contadores del guardian del thread actual desde su último @Before.
+     */
+    public static String resumenContadores() {
+        Guardia guardia = GUARDIAS.get(Thread.currentThread());
+        return guardia == null ? "sin guardian" : guardia.resumenContadores();
+    }
 
-    private static void detectarYCerrarPopups() {
-        // Intentar adquirir el lock sin bloquear:
-        // si el thread principal está usando el driver, se omite este ciclo
-        if (!DRIVER_LOCK.tryLock()) {
-            return;
-        }
+    /**
+     * Estado del guardian de un thread de escenario.
+     */
+    private static class Guardia {
 
-        AndroidDriver driver = MyDriver.get();
-        if (driver == null) {
-            DRIVER_LOCK.unlock();
-            return;
-        }
+        /** Thread del escenario: el guardian usa el driver prestado a ese thread */
+        final Thread propietario;
 
-        try {
-            // Sin implicit wait → findElements retorna INMEDIATAMENTE si no hay popup
-            driver.manage().timeouts().implicitlyWait(0, TimeUnit.SECONDS);
+        // ── Lock del driver: el guardian y los steps de este thread comparten el mismo driver ──
+        final ReentrantLock lock = new ReentrantLock();
 
-            cerrarSimClaro(driver);
-            cerrarIniciarExplorador(driver);
-            cerrarErrorConexion(driver);
+        private ScheduledFuture<?> tareaActiva;
+        private ScheduledFuture<?> paradaProgramada;
+        private volatile String ultimoFoco;
+        private volatile boolean adbDisponible = true;
 
-        } catch (Exception e) {
-            // Silencioso: el guardian nunca interrumpe la ejecución
-        } finally {
-            // Siempre restaurar el implicit wait original antes de soltar el lock
-            try {
-                driver.manage().timeouts().implicitlyWait(10, TimeUnit.SECONDS);
-            } catch (Exception ignored) {}
+        // ── Contadores por escenario ──
+        private final AtomicLong ticks = new AtomicLong();
+        private final AtomicLong omitidos = new AtomicLong();
+        private final AtomicLong contencion = new AtomicLong();
+        private final AtomicLong cerrados = new AtomicLong();
 
-            DRIVER_LOCK.unlock();
+        Guardia(Thread propietario) {
+            this.propietario = propietario;
         }
-    }
 
-    // ── Detectores individuales ────────────────────────────────────────
+        // ─────────────────────────────────────────────────────────────
+        // Lógica de detección — se ejecuta en el pool del guardian
+        // ─────────────────────────────────────────────────────────────
 
-    private static void cerrarSimClaro(AndroidDriver driver) {
-        try {
-            if (!driver.findElements(By.xpath(
-                    "//*[contains(@text,'Continua la compra de tus productos Claro')]")).isEmpty()) {
-                driver.findElement(By.xpath("//*[@text='Cancelar']")).click();
-                System.out.println("🛡️ [PopupGuardian] Popup 'SIM Claro' cerrado");
+        void detectarYCerrarPopups() {
+            // Los comandos del driver de este ciclo van a la traza del escenario propietario
+            Trazador.trabajarPara(propietario);
+            long inicio = Trazador.ahora();
+            try {
+                revisarPopups();
+            } finally {
+                Trazador.span(Trazador.POPUP, "PopupGuardian tick", inicio, propietario.getName());
+                Trazador.terminarTrabajo();
             }
-        } catch (Exception e) { /* Silencioso */ }
-    }
+        }
+
+        private void revisarPopups() {
+            ticks.incrementAndGet();
 
-    private static void cerrarIniciarExplorador(AndroidDriver driver) {
-        try {
-            if (!driver.findElements(By.xpath(
-                    "//*[contains(@text,'Iniciar el explorador')]")).isEmpty()) {
-                driver.findElement(By.xpath("//*[@text='Cancelar']")).click();
-                System.out.println("🛡️ [PopupGuardian] Popup 'Iniciar explorador' cerrado");
+            // Detector barato: si la ventana en primer plano no cambió, no hay popup nuevo
+            String foco = MODO_SIEMPRE ? null : leerFocoAdb();
+            if (foco != null && foco.equals(ultimoFoco)) {
+                omitidos.incrementAndGet();
+                return;
             }
-        } catch (Exception e) { /* Silencioso */ }
-    }
 
-    private static void cerrarErrorConexion(AndroidDriver driver) {
-        try {
-            if (!driver.findElements(By.xpath(
-                    "//*[contains(@text,'Problema de conexión o código')]")).isEmpty()) {
-                driver.findElement(By.xpath("//*[@text='Aceptar']")).click();
-                System.out.println("🛡️ [PopupGuardian] Error conexión/MMI cerrado");
+            // Intentar adquirir el lock sin bloquear:
+            // si el thread del escenario está usando el driver, se omite este ciclo
+            if (!lock.tryLock()) {
+                contencion.incrementAndGet();
+                Trazador.instante(Trazador.LOCK, "DRIVER_LOCK ocupado", "ciclo omitido (" + propietario.getName() + ")");
+                return;
             }
-        } catch (Exception e) { /* Silencioso */ }
-    }
+            long conLock = Trazador.ahora();
 
-    // ─────────────────────────────────────────────────────────────────
-    // Utilidades internas
-    // ─────────────────────────────────────────────────────────────────
+            AndroidDriver<?> driver = MyDriver.get(propietario);
+            if (driver == null) {
+                lock.unlock();
+                return;
+            }
 
-    private static void cancelarTareaActiva() {
-        if (tareaActiva != null && !tareaActiva.isCancelled()) {
-            tareaActiva.cancel(false); // false = no interrumpir si está corriendo
+            try {
+                if (foco == null && !MODO_SIEMPRE) {
+                    // Sin adb: la actividad actual es un solo comando, mucho más barato que el page source
+                    foco = driver.currentActivity();
+                    if (foco != null && foco.equals(ultimoFoco)) {
+                        omitidos.incrementAndGet();
+                        return;
+                    }
+                }
+
+                // Un page source por ciclo; como máximo un click si hay popup
+                if (ReglasPopup.cerrarUno(driver, ReglasPopup.POPUPS, "PopupGuardian") != null) {
+                    cerrados.incrementAndGet();
+                    // Puede haber otro popup detrás: el siguiente ciclo vuelve a revisar
+                    ultimoFoco = null;
+                } else {
+                    ultimoFoco = foco;
+                }
+            } catch (Exception e) {
+                // Silencioso: el guardian nunca interrumpe la ejecución
+            } finally {
+                lock.unlock();
+                Trazador.span(Trazador.LOCK, "DRIVER_LOCK (PopupGuardian)", conLock, propietario.getName());
+            }
+        }
+
+        /**
+         * Ventana con foco según dumpsys (incluye el hash de la ventana, así que un
+         * diálogo nuevo sobre la misma actividad también cuenta como cambio).
+         * Devuelve null si adb no está disponible.
+         */
+        private String leerFocoAdb() {
+            if (!adbDisponible) {
+                return null;
+            }
+            try {
+                ShellAdb.Resultado resultado = ShellAdb.de(MyDriver.udid(propietario))
+                        .ejecutar(COMANDO_FOCO, TIMEOUT_FOCO_MS);
+                return resultado.getSalida().isEmpty() ? null : resultado.getSalida();
+            } catch (Exception e) {
+                adbDisponible = false;
+                System.out.println("ℹ️ [PopupGuardian] adb no disponible, se usa currentActivity(): " + e.getMessage());
+                return null;
+            }
+        }
+
+        String resumenContadores() {
+            return "ticks=" + ticks.get() + ", omitidos=" + omitidos.get()
+                    + ", contención lock=" + contencion.get() + ", popups cerrados=" + cerrados.get();
+        }
+
+        private void reiniciarContadores() {
+            ticks.set(0);
+            omitidos.set(0);
+            contencion.set(0);
+            cerrados.set(0);
+            ultimoFoco = null;
+        }
+
+        private void cancelarTareaActiva() {
+            if (tareaActiva != null && !tareaActiva.isCancelled()) {
+                tareaActiva.cancel(false); // false = no interrumpir si está corriendo
+            }
         }
     }
-}
\ No newline at end of file
+}
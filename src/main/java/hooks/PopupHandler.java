@@ -3,96 +3,42 @@ package hooks;
 import cucumber.api.java.After;
 import cucumber.api.java.Before;
 import io.appium.java_client.android.AndroidDriver;
-import org.openqa.selenium.By;
 import utils.MyDriver;
+import utils.traza.Trazador;
 
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class PopupHandler {
 
+    /** Espera tras cada click para que el siguiente snapshot ya no muestre el popup */
+    private static final long PAUSA_TRAS_CIERRE_MS = 300;
+
     /**
-     * Tiempo máximo de búsqueda de elementos (0 = sin espera, detección inmediata).
-     * Evita que findElements espere el implicit wait completo cuando no hay popup.
+     * Cierra SIM Claro, Iniciar el explorador, error de conexión/MMI y el USSD residual
+     * usando el registro de {@link ReglasPopup}: un page source por ronda, un click por popup.
      */
-    private static final int IMPLICIT_WAIT_POPUP = 0;
-
     @Before
     @After
     public void cerrarPopups() {
-        PopupGuardian.DRIVER_LOCK.lock();
+        ReentrantLock lock = PopupGuardian.lockDriver();
+        long inicio = Trazador.ahora();
+        if (!lock.tryLock()) {
+            // El guardian tiene el driver: la espera queda en la traza como contención
+            lock.lock();
+            Trazador.span(Trazador.LOCK, "espera DRIVER_LOCK", inicio, "PopupHandler");
+        }
+        long conLock = Trazador.ahora();
         try {
-            AndroidDriver driver = MyDriver.get();
+            AndroidDriver<?> driver = MyDriver.get();
             if (driver == null) return;
 
-            driver.manage().timeouts().implicitlyWait(0, TimeUnit.SECONDS);
-
-            try {
-                cerrarPopupSimClaro(driver);
-                cerrarPopupIniciarExplorador(driver);
-                cerrarPopupErrorConexion(driver);
-                cerrarUSSDResidual(driver);
-            } finally {
-                driver.manage().timeouts().implicitlyWait(10, TimeUnit.SECONDS);
-            }
+            ReglasPopup.cerrarTodos(driver, ReglasPopup.POPUPS_Y_USSD_RESIDUAL, "PopupHandler", PAUSA_TRAS_CIERRE_MS);
+        } catch (Exception e) {
+            /* Silencioso */
         } finally {
-            PopupGuardian.DRIVER_LOCK.unlock();
+            lock.unlock();
+            Trazador.span(Trazador.POPUP, "PopupHandler", conLock);
         }
     }
 
-    // ─────────────────────────────────────────────────────────────
-    // 1. Popup "SIM Claro" / "Claro" → cuerpo identificable
-    //    Botón: Cancelar
-    // ─────────────────────────────────────────────────────────────
-    private void cerrarPopupSimClaro(AndroidDriver driver) {
-        try {
-            if (!driver.findElements(By.xpath(
-                    "//*[contains(@text,'Continua la compra de tus productos Claro')]")).isEmpty()) {
-                driver.findElement(By.xpath("//*[@text='Cancelar']")).click();
-                System.out.println("📌 [PopupHandler] Popup 'SIM Claro' cerrado");
-            }
-        } catch (Exception e) { /* Silencioso */ }
-    }
-
-
-    // ─────────────────────────────────────────────────────────────
-    // 2. Popup "Iniciar el explorador" → nuevo popup detectado
-    //    Botón: Cancelar
-    // ─────────────────────────────────────────────────────────────
-    private void cerrarPopupIniciarExplorador(AndroidDriver driver) {
-        try {
-            if (!driver.findElements(By.xpath(
-                    "//*[contains(@text,'Iniciar el explorador')]")).isEmpty()) {
-                driver.findElement(By.xpath("//*[@text='Cancelar']")).click();
-                System.out.println("📌 [PopupHandler] Popup 'Iniciar el explorador' cerrado");
-            }
-        } catch (Exception e) { /* Silencioso */ }
-    }
-
-    // ─────────────────────────────────────────────────────────────
-    // 3. Error de conexión / MMI (todas las variantes)
-    //    Botón: Aceptar
-    // ─────────────────────────────────────────────────────────────
-    private void cerrarPopupErrorConexion(AndroidDriver driver) {
-        try {
-            if (!driver.findElements(By.xpath(
-                    "//*[contains(@text,'Problema de conexión o código')]")).isEmpty()) {
-                driver.findElement(By.xpath("//*[@text='Aceptar']")).click();
-                System.out.println("📌 [PopupHandler] Popup error conexión/MMI cerrado");
-            }
-        } catch (Exception e) { /* Silencioso */ }
-    }
-
-    // ─────────────────────────────────────────────────────────────
-    // 4. Diálogo USSD residual abierto
-    //    Botón: Cancelar
-    // ─────────────────────────────────────────────────────────────
-    private void cerrarUSSDResidual(AndroidDriver driver) {
-        try {
-            if (!driver.findElements(By.xpath("//*[@text='Cancelar']")).isEmpty()) {
-                driver.findElement(By.xpath("//*[@text='Cancelar']")).click();
-                System.out.println("📌 [PopupHandler] USSD residual cerrado");
-            }
-        } catch (Exception e) { /* Silencioso */ }
-    }
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,159 @@
+package hooks;
+
+import io.appium.java_client.TouchAction;
+import io.appium.java_client.android.AndroidDriver;
+import io.appium.java_client.touch.offset.PointOption;
+import utils.TextosPantalla;
+import utils.metricas.Pausas;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registro único de popups disruptivos: texto que identifica el popup → botón que lo cierra.
+ *
+ * Cada evaluación toma UN page source y compara todas las reglas contra esa
+ * instantánea. Si una regla coincide, el botón se toca por sus coordenadas
+ * (bounds del mismo snapshot), así que cada popup cuesta un solo click y ningún
+ * findElement. Lo usan BeforeHook, PopupHandler, PopupGuardian y RealizarLlamada.
+ */
+public final class ReglasPopup {
+
+    public static final Regla SIM_CLARO =
+            new Regla("SIM Claro", "Continua la compra de tus productos Claro", "Cancelar");
+    public static final Regla INICIAR_EXPLORADOR =
+            new Regla("Iniciar explorador", "Iniciar el explorador", "Cancelar");
+    public static final Regla ERROR_CONEXION =
+            new Regla("Error conexión/MMI", "Problema de conexión o código", "Aceptar");
+
+    /** Diálogo USSD que quedó abierto: solo se busca el botón, por eso va al final */
+    public static final Regla USSD_RESIDUAL =
+            new Regla("USSD residual", null, "Cancelar");
+
+    /** Popups que pueden aparecer en cualquier momento del escenario */
+    public static final List<Regla> POPUPS =
+            Collections.unmodifiableList(Arrays.asList(SIM_CLARO, INICIAR_EXPLORADOR, ERROR_CONEXION));
+
+    /** Popups + USSD residual, para el inicio y el cierre de cada escenario */
+    public static final List<Regla> POPUPS_Y_USSD_RESIDUAL =
+            Collections.unmodifiableList(Arrays.asList(SIM_CLARO, INICIAR_EXPLORADOR, ERROR_CONEXION, USSD_RESIDUAL));
+
+    private static final Map<String, AtomicLong> ACIERTOS = new ConcurrentHashMap<>();
+
+    private ReglasPopup() {
+    }
+
+    /**
+     * Primera regla que coincide con la instantánea, o null.
+     */
+    public static Regla evaluar(TextosPantalla pantalla, List<Regla> reglas) {
+        for (Regla regla : reglas) {
+            if (regla.coincide(pantalla)) {
+                return regla;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Toma un snapshot y cierra como máximo un popup.
+     *
+     * @param origen etiqueta para el log (ej: "PopupGuardian")
+     * @return la regla aplicada, o null si no había popup
+     */
+    public static Regla cerrarUno(AndroidDriver<?> driver, List<Regla> reglas, String origen) {
+        TextosPantalla pantalla = TextosPantalla.capturar(driver);
+        Regla regla = evaluar(pantalla, reglas);
+        if (regla == null) {
+            return null;
+        }
+
+        int[] centro = pantalla.centroDeTexto(regla.boton);
+        if (centro == null) {
+            return null;
+        }
+        new TouchAction<>(driver).tap(PointOption.point(centro[0], centro[1])).perform();
+        ACIERTOS.computeIfAbsent(regla.nombre, k -> new AtomicLong()).incrementAndGet();
+        System.out.println("📌 [" + origen + "] Popup '" + regla.nombre + "' cerrado");
+        return regla;
+    }
+
+    /**
+     * Cierra popups encadenados: un snapshot por ronda, hasta que no quede ninguno
+     * o se agoten las rondas.
+     *
+     * @param pausaMs espera tras cada click para que el diálogo desaparezca
+     * @return cantidad de popups cerrados
+     */
+    public static int cerrarTodos(AndroidDriver<?> driver, List<Regla> reglas, String origen, long pausaMs) {
+        int cerrados = 0;
+        for (int ronda = 0; ronda < reglas.size(); ronda++) {
+            if (cerrarUno(driver, reglas, origen) == null) {
+                break;
+            }
+            cerrados++;
+            try {
+                Pausas.dormir("ReglasPopup.entreCierres", pausaMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return cerrados;
+    }
+
+    /**
+     * Veces que se cerró cada popup en este JVM, en orden de registro.
+     */
+    public static Map<String, Long> aciertos() {
+        Map<String, Long> conteo = new LinkedHashMap<>();
+        for (Regla regla : POPUPS_Y_USSD_RESIDUAL) {
+            AtomicLong valor = ACIERTOS.get(regla.nombre);
+            conteo.put(regla.nombre, valor != null ? valor.get() : 0L);
+        }
+        return conteo;
+    }
+
+    /**
+     * Popup identificado por un texto contenido en su cuerpo y cerrado con un botón de texto exacto.
+     */
+    public static final class Regla {
+
+        private final String nombre;
+        private final String textoDetectado;
+        private final String boton;
+
+        /**
+         * @param textoDetectado texto contenido en el popup; null = basta con que exista el botón
+         */
+        public Regla(String nombre, String textoDetectado, String boton) {
+            this.nombre = nombre;
+            this.textoDetectado = textoDetectado;
+            this.boton = boton;
+        }
+
+        boolean coincide(TextosPantalla pantalla) {
+            if (pantalla.centroDeTexto(boton) == null) {
+                return false;
+            }
+            return textoDetectado == null || pantalla.contiene(textoDetectado);
+        }
+
+        public String getNombre() {
+            return nombre;
+        }
+
+        public String getTextoDetectado() {
+            return textoDetectado;
+        }
+
+        public String getBoton() {
+            return boton;
+        }
+    }
+}
@@ -3,66 +3,82 @@ package hooks;
 import cucumber.api.Scenario;
 import cucumber.api.java.After;
 import cucumber.api.java.Before;
+import utils.EscritorReportes;
 import utils.EstadoPrueba;
-import utils.WordAppium;
+import utils.EvidenciaUtils;
+import utils.InformeEscenario;
 
 import java.util.ArrayList;
 import java.util.List;
 
 public class ReportHooks {
 
-  private static final List<String> pasosEjecutados = new ArrayList<>();
-  private static String lineaUsada = "Sin datos";
-  private static String ultimoPaso = "";
+  // Un valor por thread de ejecución: los escenarios en paralelo no mezclan pasos ni línea
+  private static final ThreadLocal<List<String>> pasosEjecutados = ThreadLocal.withInitial(ArrayList::new);
+  private static final ThreadLocal<String> lineaUsada = ThreadLocal.withInitial(() -> "Sin datos");
+  private static final ThreadLocal<String> ultimoPaso = ThreadLocal.withInitial(() -> "");
 
   public static void registrarPaso(String paso) {
-    pasosEjecutados.add(paso);
-    ultimoPaso = paso;
+    pasosEjecutados.get().add(paso);
+    ultimoPaso.set(paso);
   }
 
   public static void setLinea(String linea) {
-    lineaUsada = linea;
+    lineaUsada.set(linea);
   }
 
   @Before
   public void beforeEachScenario() {
-    EstadoPrueba.inicio = System.currentTimeMillis();
-    pasosEjecutados.clear();
-    EstadoPrueba.fallo = false;
-    EstadoPrueba.pasoFallido = "";
+    EstadoPrueba estado = EstadoPrueba.actual();
+    estado.inicio = System.currentTimeMillis();
+    pasosEjecutados.get().clear();
+    estado.fallo = false;
+    estado.pasoFallido = "";
+    EvidenciaUtils.nuevoEscenario();
   }
 
 /*  @AfterStep
   public void afterEachStep(Scenario scenario) {
     if (scenario.isFailed()) {
-      EstadoPrueba.fallo = true;
-      EstadoPrueba.pasoFallido = !pasosEjecutados.isEmpty() ? ultimoPaso : "Paso no identificado";
+      EstadoPrueba.actual().fallo = true;
+      EstadoPrueba.actual().pasoFallido = !pasosEjecutados.get().isEmpty() ? ultimoPaso.get() : "Paso no identificado";
     }
   } */
 
   @After
   public void generarReporteFinal(Scenario scenario) {
-    EstadoPrueba.fin = System.currentTimeMillis();
+    EstadoPrueba estado = EstadoPrueba.actual();
+    estado.fin = System.currentTimeMillis();
 
-    long duracionTotal = (EstadoPrueba.fin - EstadoPrueba.inicio) / 1000;
+    long duracionTotal = (estado.fin - estado.inicio) / 1000;
     long minutos = duracionTotal / 60;
     long segundos = duracionTotal % 60;
     String duracionFormato = minutos + " min " + segundos + " seg";
 
-    String estadoFinal = EstadoPrueba.fallo ? "FAILED" : "PASSED";
-    String pasoFallido = EstadoPrueba.fallo ? EstadoPrueba.pasoFallido : null;
+    String estadoFinal = estado.fallo ? "FAILED" : "PASSED";
+    String pasoFallido = estado.fallo ? estado.pasoFallido : null;
 
-    WordAppium.generarReporte(
+    // Foto inmutable del escenario: POI arma el .docx en segundo plano
+    InformeEscenario informe = InformeEscenario.capturar(
             scenario.getName(),
-            pasosEjecutados.toArray(new String[0]),
-            lineaUsada,
+            pasosEjecutados.get().toArray(new String[0]),
+            lineaUsada.get(),
             duracionFormato,
             pasoFallido,
-            estadoFinal);
+            estadoFinal,
+            estado.inicio,
+            estado.fin);
+    if (informe != null) {
+      EscritorReportes.encolar(informe);
+    } else {
+      System.out.println("⚠️ [ReportHooks] No hay capturas para el informe de: " + scenario.getName());
+    }
+
+    System.out.println("📸 [ReportHooks] Evidencias: " + EvidenciaUtils.resumen());
 
     // Limpiar estado para el siguiente escenario
-    pasosEjecutados.clear();
-    EstadoPrueba.fallo = false;
-    EstadoPrueba.pasoFallido = "";
+    pasosEjecutados.get().clear();
+    estado.fallo = false;
+    estado.pasoFallido = "";
   }
 }
@@ -0,0 +1,167 @@
+package hooks;
+
+import cucumber.api.Scenario;
+import cucumber.api.java.After;
+import cucumber.api.java.Before;
+import net.thucydides.core.model.DataTable;
+import net.thucydides.core.model.Story;
+import net.thucydides.core.model.TestOutcome;
+import net.thucydides.core.steps.ExecutedStepDescription;
+import net.thucydides.core.steps.StepEventBus;
+import net.thucydides.core.steps.StepFailure;
+import net.thucydides.core.steps.StepListener;
+import utils.traza.Trazador;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+
+/**
+ * Escribe la línea de tiempo ({@link Trazador}) de cada escenario.
+ *
+ * Registra un StepListener que convierte los pasos de Cucumber y los @Step de tareas e
+ * interacciones de Screenplay en spans; los comandos del driver, las capturas, los ticks
+ * de PopupGuardian y la espera por el lock del driver los registra cada componente. Al
+ * terminar el escenario se escribe su ventana de eventos. Las llamadas a Ollama terminan
+ * después del escenario: van a la traza de la suite ({@link Trazador#escribirSuite()}).
+ *
+ * - traza.habilitada=false no registra nada.
+ */
+public class TrazaHook {
+
+    private static volatile boolean listenerRegistrado = false;
+
+    private static final ThreadLocal<long[]> VENTANA = new ThreadLocal<>();
+
+    @Before(order = 0)
+    public void iniciar(Scenario scenario) {
+        if (!Trazador.HABILITADO) {
+            return;
+        }
+        registrarListenerSiNecesario();
+        VENTANA.set(new long[]{Trazador.posicion(), Trazador.ahora()});
+    }
+
+    @After(order = 0)
+    public void escribir(Scenario scenario) {
+        long[] ventana = VENTANA.get();
+        if (ventana == null) {
+            return;
+        }
+        VENTANA.remove();
+        Trazador.span(Trazador.CUCUMBER, "Escenario: " + scenario.getName(), ventana[1], scenario.getStatus().toString());
+        Trazador.escribirEscenario(scenario.getName(), ventana[0]);
+    }
+
+    private void registrarListenerSiNecesario() {
+        if (!listenerRegistrado) {
+            synchronized (TrazaHook.class) {
+                if (!listenerRegistrado) {
+                    StepEventBus.getEventBus().registerListener(new TrazaStepListener());
+                    listenerRegistrado = true;
+                    System.out.println("✅ [TrazaHook] Listener de traza registrado");
+                }
+            }
+        }
+    }
+
+    private static class TrazaStepListener implements StepListener {
+
+        private final ThreadLocal<Deque<PasoAbierto>> abiertos = ThreadLocal.withInitial(ArrayDeque::new);
+
+        @Override
+        public void stepStarted(ExecutedStepDescription description) {
+            abiertos.get().push(new PasoAbierto(description, Trazador.ahora()));
+        }
+
+        @Override
+        public void skippedStepStarted(ExecutedStepDescription description) {
+            abiertos.get().push(new PasoAbierto(description, Trazador.ahora()));
+        }
+
+        @Override
+        public void stepFinished() {
+            cerrar("ok");
+        }
+
+        @Override
+        public void stepFailed(StepFailure failure) {
+            cerrar("fallido");
+        }
+
+        @Override
+        public void stepIgnored() {
+            cerrar("ignorado");
+        }
+
+        @Override
+        public void stepPending() {
+            cerrar("pendiente");
+        }
+
+        @Override
+        public void stepPending(String s) {
+            cerrar("pendiente");
+        }
+
+        @Override
+        public void testFinished(TestOutcome outcome) {
+            Deque<PasoAbierto> pila = abiertos.get();
+            while (!pila.isEmpty()) {
+                cerrar("sin cerrar");
+            }
+        }
+
+        private void cerrar(String resultado) {
+            PasoAbierto paso = abiertos.get().poll();
+            if (paso != null) {
+                Trazador.span(paso.categoria, paso.nombre, paso.inicio, resultado);
+            }
+        }
+
+        // Métodos obligatorios del StepListener — sin implementación
+        @Override public void testSuiteStarted(Class<?> testSuite) {}
+        @Override public void testSuiteStarted(Story story) {}
+        @Override public void testSuiteFinished() {}
+        @Override public void testStarted(String testName) {}
+        @Override public void testStarted(String s, String s1) {}
+        @Override public void testRetried() {}
+        @Override public void lastStepFailed(StepFailure stepFailure) {}
+        @Override public void testFailed(TestOutcome outcome, Throwable cause) {}
+        @Override public void testIgnored() {}
+        @Override public void testSkipped() {}
+        @Override public void testPending() {}
+        @Override public void testIsManual() {}
+        @Override public void notifyScreenChange() {}
+        @Override public void useExamplesFrom(DataTable dataTable) {}
+        @Override public void addNewExamplesFrom(DataTable dataTable) {}
+        @Override public void exampleStarted(Map<String, String> map) {}
+        @Override public void exampleFinished() {}
+        @Override public void assumptionViolated(String s) {}
+        @Override public void testRunFinished() {}
+    }
+
+    /**
+     * Paso en curso: los de Cucumber no traen clase; los @Step de Screenplay traen la
+     * tarea o interacción (a veces la subclase que genera CGLIB).
+     */
+    private static class PasoAbierto {
+        final String categoria;
+        final String nombre;
+        final long inicio;
+
+        PasoAbierto(ExecutedStepDescription description, long inicio) {
+            Class<?> clase = description.getStepClass();
+            if (clase == null) {
+                this.categoria = Trazador.CUCUMBER;
+                this.nombre = description.getTitle();
+            } else {
+                String simple = clase.getSimpleName();
+                int proxy = simple.indexOf("$$");
+                this.categoria = Trazador.SCREENPLAY;
+                this.nombre = (proxy > 0 ? simple.substring(0, proxy) : simple) + ": " + description.getTitle();
+            }
+            this.inicio = inicio;
+        }
+    }
+}
@@ -7,6 +7,7 @@ import net.serenitybdd.screenplay.Interaction;
 import net.serenitybdd.screenplay.Tasks;
 import net.thucydides.core.annotations.Step;
 import utils.AndroidObject;
+import utils.metricas.Pausas;
 
 /**
  * Interaction que ejecuta scroll horizontal sin validación inicial y después valida el texto
@@ -174,7 +175,7 @@ public class ScrollHorizontalYValidar implements Interaction {
   /** Pausa entre scrolls para mejor estabilidad */
   private void esperarEntreScrolls() {
     try {
-      Thread.sleep(300); // Pausa corta entre scrolls
+      Pausas.dormir("ScrollHorizontalYValidar.scroll", 300); // Pausa corta entre scrolls
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
     }
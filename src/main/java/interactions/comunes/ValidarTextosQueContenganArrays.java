@@ -3,14 +3,28 @@ package interactions.comunes;
 import net.serenitybdd.screenplay.Actor;
 import net.serenitybdd.screenplay.Interaction;
 import net.thucydides.core.annotations.Step;
+import org.openqa.selenium.NoSuchElementException;
 import utils.AndroidObject;
+import utils.TextosPantalla;
+import utils.metricas.Pausas;
 
 import java.util.List;
 
 import static net.serenitybdd.screenplay.Tasks.instrumented;
 
+/**
+ * Valida todas las líneas de un menú contra una sola captura del page source.
+ *
+ * Solo se vuelve a pedir el page source si falta alguna línea, hasta agotar el
+ * tiempo configurado (equivalente al implicit wait que usaba ElTextoContiene):
+ * - ussd.validacion.timeout: milisegundos máximos de reintento (default: 10000, 0 = sin reintento)
+ * - ussd.validacion.intervalo: milisegundos entre capturas (default: 500)
+ */
 public class ValidarTextosQueContenganArrays extends AndroidObject implements Interaction {
 
+    private static final int DEFAULT_TIMEOUT_MS = 10000;
+    private static final int DEFAULT_INTERVALO_MS = 500;
+
     private List<String> textos;
 
     public ValidarTextosQueContenganArrays(List<String> textos) {
@@ -20,9 +34,44 @@ public class ValidarTextosQueContenganArrays extends AndroidObject implements In
     @Override
     @Step("Valida que todos los textos de la lista estén contenidos en otro texto visible.")
     public <T extends Actor> void performAs(T actor) {
-        for (String texto : textos) {
-            ElTextoContiene(actor, texto); // misma validación que ya tienes
+        int timeout = Integer.getInteger("ussd.validacion.timeout", DEFAULT_TIMEOUT_MS);
+        int intervalo = Integer.getInteger("ussd.validacion.intervalo", DEFAULT_INTERVALO_MS);
+        long limite = System.currentTimeMillis() + timeout;
+        int capturas = 0;
+
+        List<String> faltantes;
+        while (true) {
+            TextosPantalla pantalla = TextosPantalla.capturar(androidDriver(actor));
+            capturas++;
+            faltantes = pantalla.faltantes(textos);
+
+            if (faltantes.isEmpty() || System.currentTimeMillis() + intervalo > limite) {
+                break;
+            }
+            pausa(intervalo);
+        }
+
+        if (!faltantes.isEmpty()) {
+            StringBuilder mensaje = new StringBuilder("❌ Faltan ")
+                    .append(faltantes.size()).append(" de ").append(textos.size())
+                    .append(" textos en pantalla (").append(capturas).append(" captura(s)):");
+            for (String faltante : faltantes) {
+                mensaje.append("\n   - \"").append(faltante).append("\"");
+            }
+            AssertionError faltaTexto = new AssertionError(mensaje.toString());
+            // Mismo tipo y "Element info" que lanzaba ElTextoContiene: OllamaStepListener extrae
+            // el localizador del mensaje y clasifica el fallo como ELEMENT_NOT_FOUND
+            mensaje.append("\n*** Element info: {Using=-android uiautomator, value=new UiSelector().textContains(\"")
+                    .append(faltantes.get(0)).append("\")}");
+            throw new NoSuchElementException(mensaje.toString(), faltaTexto);
         }
+
+        System.out.println("✅ [ValidarTextos] " + textos.size() + " textos validados con "
+                + capturas + " captura(s) del page source");
+    }
+
+    private void pausa(long ms) {
+        try { Pausas.dormir("ValidarTextosQueContenganArrays.pausa", ms); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
     }
 
     public static Interaction validarTexto(List<String> textos) {
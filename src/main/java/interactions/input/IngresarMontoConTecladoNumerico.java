@@ -3,7 +3,13 @@ package interactions.input;
 import net.serenitybdd.screenplay.Actor;
 import net.serenitybdd.screenplay.Interaction;
 import org.openqa.selenium.By;
+import utils.AdbUtils;
 import utils.AndroidObject;
+import utils.TextosPantalla;
+import utils.metricas.Pausas;
+
+import java.util.ArrayList;
+import java.util.List;
 
 import static net.serenitybdd.screenplay.Tasks.instrumented;
 
@@ -19,6 +25,31 @@ public class IngresarMontoConTecladoNumerico implements Interaction {
     return instrumented(IngresarMontoConTecladoNumerico.class, valor);
   }
 
+  /**
+   * Ubica todas las teclas en un solo page source (resource-id = dígito) y las toca
+   * en un solo lote por el shell adb persistente. Devuelve false si falta alguna
+   * tecla o adb no responde, para seguir con el click tecla por tecla.
+   */
+  private <T extends Actor> boolean tocarDigitosEnLote(T actor) {
+    try {
+      TextosPantalla pantalla = TextosPantalla.capturar(AndroidObject.androidDriver(actor));
+      List<int[]> puntos = new ArrayList<>();
+      for (char digito : valor.toCharArray()) {
+        if (!Character.isDigit(digito)) {
+          continue;
+        }
+        int[] centro = pantalla.centroDeId(String.valueOf(digito));
+        if (centro == null) {
+          return false;
+        }
+        puntos.add(centro);
+      }
+      return AdbUtils.ejecutarAdbTaps(puntos);
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
   // Solución con los localizadores reales del teclado
   @Override
   public <T extends Actor> void performAs(T actor) {
@@ -29,27 +60,31 @@ public class IngresarMontoConTecladoNumerico implements Interaction {
       AndroidObject.androidDriver(actor)
           .findElement(By.xpath("//android.widget.TextView[@resource-id='delete']"))
           .click();
-      Thread.sleep(500);
+      Pausas.dormir("IngresarMontoConTecladoNumerico.limpiar", 500);
       System.out.println("Campo limpiado");
     } catch (Exception e) {
       System.out.println("No necesita limpiar campo");
     }
 
     // Ingresar cada dígito del valor usando resource-id
-    for (char digito : valor.toCharArray()) {
-      if (Character.isDigit(digito)) {
-        try {
-          System.out.println("Haciendo click en dígito: " + digito);
-          AndroidObject.androidDriver(actor)
-              .findElement(By.xpath("//android.widget.TextView[@resource-id='" + digito + "']"))
-              .click();
+    if (tocarDigitosEnLote(actor)) {
+      System.out.println("✅ Dígitos '" + valor + "' enviados en un solo lote adb");
+    } else {
+      for (char digito : valor.toCharArray()) {
+        if (Character.isDigit(digito)) {
+          try {
+            System.out.println("Haciendo click en dígito: " + digito);
+            AndroidObject.androidDriver(actor)
+                .findElement(By.xpath("//android.widget.TextView[@resource-id='" + digito + "']"))
+                .click();
 
-          Thread.sleep(300);
-          System.out.println("✅ Click exitoso en: " + digito);
+            Pausas.dormir("IngresarMontoConTecladoNumerico.digito", 300);
+            System.out.println("✅ Click exitoso en: " + digito);
 
-        } catch (Exception e) {
-          System.out.println(
-              "❌ Error al hacer click en dígito: " + digito + " - " + e.getMessage());
+          } catch (Exception e) {
+            System.out.println(
+                "❌ Error al hacer click en dígito: " + digito + " - " + e.getMessage());
+          }
         }
       }
     }
@@ -62,7 +97,7 @@ public class IngresarMontoConTecladoNumerico implements Interaction {
           .click();
 
       System.out.println("✅ Entrada confirmada");
-      Thread.sleep(1000);
+      Pausas.dormir("IngresarMontoConTecladoNumerico.confirmar", 1000);
 
     } catch (Exception e) {
       System.out.println("❌ Error al confirmar: " + e.getMessage());
@@ -4,6 +4,12 @@ import net.serenitybdd.screenplay.Actor;
 import net.serenitybdd.screenplay.Interaction;
 import net.serenitybdd.screenplay.actions.Click;
 import net.serenitybdd.screenplay.targets.Target;
+import utils.AdbUtils;
+import utils.AndroidObject;
+import utils.TextosPantalla;
+
+import java.util.ArrayList;
+import java.util.List;
 
 import static net.serenitybdd.screenplay.Tasks.instrumented;
 
@@ -44,6 +50,11 @@ public class IngresarMontoTeclado implements Interaction {
 
   @Override
   public <T extends Actor> void performAs(T actor) {
+    if (tocarDigitosEnLote(actor)) {
+      actor.attemptsTo(Click.on(BTN_CONFIRMAR));
+      return;
+    }
+
     for (char digito : monto.toCharArray()) {
       switch (digito) {
         case '0':
@@ -82,4 +93,28 @@ public class IngresarMontoTeclado implements Interaction {
     // Confirmar entrada
     actor.attemptsTo(Click.on(BTN_CONFIRMAR));
   }
+
+  /**
+   * Ubica los botones de los dígitos en un solo page source y los toca en un
+   * solo lote adb. Devuelve false si falta algún botón o adb no responde.
+   */
+  private <T extends Actor> boolean tocarDigitosEnLote(T actor) {
+    try {
+      TextosPantalla pantalla = TextosPantalla.capturar(AndroidObject.androidDriver(actor));
+      List<int[]> puntos = new ArrayList<>();
+      for (char digito : monto.toCharArray()) {
+        if (!Character.isDigit(digito)) {
+          continue;
+        }
+        int[] centro = pantalla.centroDeTexto(String.valueOf(digito));
+        if (centro == null) {
+          return false;
+        }
+        puntos.add(centro);
+      }
+      return AdbUtils.ejecutarAdbTaps(puntos);
+    } catch (Exception e) {
+      return false;
+    }
+  }
 }
@@ -4,6 +4,7 @@ import net.serenitybdd.screenplay.Actor;
 import net.serenitybdd.screenplay.Interaction;
 import org.openqa.selenium.By;
 import utils.AndroidObject;
+import utils.metricas.Pausas;
 
 import static net.serenitybdd.screenplay.Tasks.instrumented;
 
@@ -54,7 +55,7 @@ public class IngresarTextoConTeclado implements Interaction {
           System.out.println("❌ No se encontró la letra: " + letra);
         }
 
-        Thread.sleep(300);
+        Pausas.dormir("IngresarTextoConTeclado.letra", 300);
 
       } catch (Exception e) {
         System.out.println("❌ Error general con letra: " + letra);
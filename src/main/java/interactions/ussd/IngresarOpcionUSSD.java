@@ -11,6 +11,7 @@ import org.openqa.selenium.WebElement;
 import org.openqa.selenium.support.ui.WebDriverWait;
 import utils.CapturaDePantallaMovil;
 import utils.EvidenciaUtils;
+import utils.TextosPantalla;
 
 import java.util.List;
 
@@ -49,10 +50,11 @@ public class IngresarOpcionUSSD implements Interaction {
             EvidenciaUtils.registrarCaptura("Antes de ingresar opción " + opcion + " - " + descripcionPaso);
 
             escribirOpcionDirecto(actor);
-            CapturaDePantallaMovil.tomarCapturaPantalla("opcion_" + opcion + "_ingresada");
+            EvidenciaUtils.capturar("opcion_" + opcion + "_ingresada");
             clickEnviarDirecto(actor);
 
-            actor.attemptsTo(WaitFor.aTime(1200));
+            // El diálogo está listo cuando desaparece el spinner y el campo ya no muestra la opción enviada
+            actor.attemptsTo(WaitFor.adaptativo("opcion->" + opcion + " (" + descripcionPaso + ")", 1200, this::respuestaRecibida));
 
             EvidenciaUtils.registrarCaptura("Resultado después de enviar opción " + opcion + " - " + descripcionPaso);
             System.out.println("✅ Opción USSD " + opcion + " procesada exitosamente");
@@ -64,6 +66,11 @@ public class IngresarOpcionUSSD implements Interaction {
         }
     }
 
+    private boolean respuestaRecibida(TextosPantalla pantalla) {
+        return WaitFor.SIN_SPINNER.test(pantalla)
+                && !opcion.equals(pantalla.textoDeId("com.android.phone:id/input_field"));
+    }
+
     private <T extends Actor> void limpiarCampoSiEsNecesario(T actor) {
         try {
             actor.attemptsTo(
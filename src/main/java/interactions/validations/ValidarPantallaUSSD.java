@@ -59,8 +59,10 @@ public class ValidarPantallaUSSD implements Interaction {
         try {
             System.out.println("🔍 Validando pantalla USSD: " + tipoPantalla.getDescripcion());
 
-            // Esperar a que la pantalla se cargue completamente
-            actor.attemptsTo(WaitFor.aTime(2000));
+            // Esperar a que la pantalla se cargue completamente (tope aprendido por tipo de pantalla)
+            actor.attemptsTo(WaitFor.adaptativo("pantalla->" + tipoPantalla.name(), 2000,
+                    pantalla -> WaitFor.SIN_SPINNER.test(pantalla)
+                            && pantalla.contiene(tipoPantalla.getTextoEsperado())));
 
             // Registrar evidencia antes de la validación
             EvidenciaUtils.registrarCaptura("Validando " + tipoPantalla.getDescripcion());
@@ -3,25 +3,138 @@ package interactions.wait;
 import net.serenitybdd.core.time.InternalSystemClock;
 import net.serenitybdd.screenplay.Actor;
 import net.serenitybdd.screenplay.Interaction;
+import net.serenitybdd.screenplay.abilities.BrowseTheWeb;
 import net.thucydides.core.annotations.Step;
+import utils.LatenciasUSSD;
+import utils.TextosPantalla;
+import utils.grabacion.Grabacion;
+import utils.metricas.Pausas;
+
+import java.util.function.Predicate;
 
 import static net.serenitybdd.screenplay.Tasks.instrumented;
 
+/**
+ * Pausa fija ({@link #aTime(int)}) o espera adaptativa por transición USSD
+ * ({@link #adaptativo(String, int)}).
+ *
+ * En modo adaptativo se consulta el page source hasta que la condición de
+ * "pantalla lista" se cumple, con un tope igual al p99 aprendido para esa
+ * transición (ver {@link LatenciasUSSD}). Si el tope se agota antes de la pausa
+ * fija original, se sigue esperando hasta completarla, igual que antes. La
+ * latencia observada se registra para las siguientes ejecuciones; una espera
+ * agotada se registra con el tiempo del tope, para que el presupuesto pueda crecer.
+ *
+ * - ussd.esperas.adaptativas=false vuelve a las pausas fijas originales.
+ */
 public class WaitFor implements Interaction {
 
+  /** Spinner "Ejecutando código USSD…" (USSDPage.IMG_ESPERA) */
+  public static final String ID_SPINNER = "android:id/progress";
+
+  /** Por defecto la pantalla está lista cuando hay contenido y ya no hay spinner */
+  public static final Predicate<TextosPantalla> SIN_SPINNER =
+          pantalla -> !pantalla.isVacia() && !pantalla.contieneId(ID_SPINNER);
+
+  private static final long INTERVALO_MINIMO = 100;
+  private static final long INTERVALO_MAXIMO = 500;
+
   private final int var;
+  private final String transicion;
+  private final Predicate<TextosPantalla> listo;
 
   protected WaitFor(int var) {
+    this(null, var, SIN_SPINNER);
+  }
+
+  protected WaitFor(String transicion, int var, Predicate<TextosPantalla> listo) {
     this.var = var;
+    this.transicion = transicion;
+    this.listo = listo;
   }
 
   public static WaitFor aTime(int var) {
     return instrumented(WaitFor.class, var);
   }
 
+  /**
+   * Espera la transición USSD indicada hasta que no haya spinner, con tope aprendido.
+   *
+   * @param transicion nombre estable de la transición (ej: "menu->1")
+   * @param tiempoFijo pausa original; se usa como tope mientras no hay muestras
+   */
+  public static WaitFor adaptativo(String transicion, int tiempoFijo) {
+    return instrumented(WaitFor.class, transicion, tiempoFijo, SIN_SPINNER);
+  }
+
+  public static WaitFor adaptativo(String transicion, int tiempoFijo, Predicate<TextosPantalla> listo) {
+    return instrumented(WaitFor.class, transicion, tiempoFijo, listo);
+  }
+
+  public static boolean adaptativasHabilitadas() {
+    return Boolean.parseBoolean(System.getProperty("ussd.esperas.adaptativas", "true"));
+  }
+
   @Override
   @Step("{0}")
   public <T extends Actor> void performAs(T actor) {
-    new InternalSystemClock().pauseFor(var);
+    if (transicion == null || !adaptativasHabilitadas()) {
+      pausar("WaitFor.aTime", var);
+      return;
+    }
+    esperarTransicion(actor);
+  }
+
+  private <T extends Actor> void esperarTransicion(T actor) {
+    LatenciasUSSD latencias = LatenciasUSSD.get();
+    int presupuesto = latencias.presupuesto(transicion, var);
+    long inicio = System.currentTimeMillis();
+    boolean lista = sondear(actor, inicio + presupuesto);
+    boolean fallback = !lista && presupuesto < var;
+    if (fallback) {
+      // El p99 aprendido se quedó corto: se espera como mucho la pausa fija original
+      lista = sondear(actor, inicio + var);
+    }
+
+    long transcurrido = System.currentTimeMillis() - inicio;
+    if (!Grabacion.REPRODUCIENDO) {
+      // Un tope agotado cuenta como muestra en el tope, así el presupuesto puede crecer;
+      // los tiempos de una reproducción no son latencias del operador
+      latencias.registrar(transicion, transcurrido);
+    }
+    System.out.println((lista ? "⏱️" : "⚠️") + " [WaitFor] " + transicion + ": "
+            + (lista ? "lista en " : "tope alcanzado en ") + transcurrido + " ms (presupuesto "
+            + presupuesto + " ms, fijo " + var + " ms" + (fallback ? ", completó la pausa fija" : "") + ")");
+  }
+
+  /**
+   * Consulta el page source con intervalo creciente hasta que la pantalla esté lista o
+   * se llegue al límite.
+   *
+   * @return true si la pantalla quedó lista antes del límite
+   */
+  private <T extends Actor> boolean sondear(T actor, long limite) {
+    long intervalo = INTERVALO_MINIMO;
+    while (true) {
+      boolean lista;
+      try {
+        lista = listo.test(TextosPantalla.capturar(BrowseTheWeb.as(actor).getDriver()));
+      } catch (Exception e) {
+        // Diálogo en reconstrucción: se sigue esperando
+        lista = false;
+      }
+      long restante = limite - System.currentTimeMillis();
+      if (lista || restante <= 0) {
+        return lista;
+      }
+      pausar("WaitFor.adaptativo", Math.min(intervalo, restante));
+      intervalo = Math.min(INTERVALO_MAXIMO, intervalo * 2);
+    }
+  }
+
+  private static void pausar(String origen, long ms) {
+    long inicio = System.nanoTime();
+    new InternalSystemClock().pauseFor(Grabacion.pausa(ms));
+    Pausas.registrar(origen, System.nanoTime() - inicio);
   }
-}
\ No newline at end of file
+}
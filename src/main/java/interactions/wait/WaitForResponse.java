@@ -1,24 +1,43 @@
 package interactions.wait;
 
-import io.appium.java_client.MobileBy;
 import net.serenitybdd.screenplay.Actor;
 import net.serenitybdd.screenplay.Interaction;
 import net.serenitybdd.screenplay.abilities.BrowseTheWeb;
-import org.openqa.selenium.By;
-import org.openqa.selenium.WebElement;
-import org.openqa.selenium.support.ui.WebDriverWait;
+import org.openqa.selenium.WebDriver;
+import utils.TextosPantalla;
+import utils.metricas.Pausas;
 
 import java.util.Arrays;
 import java.util.List;
 
+/**
+ * Espera la respuesta USSD hasta que aparezca cualquiera de los textos esperados.
+ *
+ * En cada ciclo se toma UNA captura del page source y se comparan todos los
+ * textos contra ella. El intervalo entre ciclos crece exponencialmente mientras
+ * la pantalla no cambia, y vuelve al mínimo cuando cambia (por ejemplo, cuando
+ * desaparece el spinner android:id/progress del diálogo USSD).
+ *
+ * El texto encontrado queda disponible en {@link #getTextoEncontrado()} para que
+ * el llamador pueda ramificar según la respuesta.
+ */
 public class WaitForResponse implements Interaction {
 
     private final List<String> expectedTexts;
     private final int timeout;
+    private String textoEncontrado;
 
     // ⏱️ Tiempo por defecto en segundos
     private static final int DEFAULT_TIMEOUT = 30;
 
+    // Backoff entre capturas (ms)
+    private static final long INTERVALO_MINIMO = 150;
+    private static final long INTERVALO_MAXIMO = 2000;
+    private static final double FACTOR_BACKOFF = 1.6;
+
+    /** Spinner "Ejecutando código USSD…" (USSDPage.IMG_ESPERA) */
+    private static final String ID_SPINNER = "android:id/progress";
+
     public WaitForResponse(List<String> expectedTexts, int timeout) {
         this.expectedTexts = expectedTexts;
         this.timeout = timeout;
@@ -26,30 +45,70 @@ public class WaitForResponse implements Interaction {
 
     @Override
     public <T extends Actor> void performAs(T actor) {
-        WebDriverWait wait = new WebDriverWait(BrowseTheWeb.as(actor).getDriver(), timeout);
-        boolean found = false;
-        long startTime = System.currentTimeMillis();
-
-        while ((System.currentTimeMillis() - startTime) < timeout * 1000 && !found) {
-            for (String text : expectedTexts) {
-                try {
-                    By locator =
-                            new MobileBy.ByAndroidUIAutomator(
-                                    String.format("new UiSelector().textContains(\"%s\")", text));
-                    List<WebElement> elements = BrowseTheWeb.as(actor).getDriver().findElements(locator);
-                    if (!elements.isEmpty()) {
-                        found = true;
-                        break;
-                    }
-                } catch (Exception ignored) {
+        textoEncontrado = esperar(BrowseTheWeb.as(actor).getDriver(), expectedTexts, timeout);
+    }
+
+    /**
+     * Espera sin Screenplay; útil para tasks que ya trabajan con el driver directo.
+     *
+     * @return el primer texto esperado que apareció en pantalla
+     * @throws RuntimeException si ninguno aparece dentro del timeout
+     */
+    public static String esperar(WebDriver driver, List<String> textos, int timeoutSegundos) {
+        long inicio = System.currentTimeMillis();
+        long limite = inicio + timeoutSegundos * 1000L;
+        long intervalo = INTERVALO_MINIMO;
+        int firmaAnterior = 0;
+        boolean spinnerAnterior = false;
+        int ciclos = 0;
+
+        while (true) {
+            TextosPantalla pantalla;
+            try {
+                pantalla = TextosPantalla.capturar(driver);
+            } catch (Exception e) {
+                // El diálogo puede estar reconstruyéndose: se trata como "sin cambios"
+                pantalla = null;
+            }
+            ciclos++;
+
+            if (pantalla != null) {
+                String encontrado = pantalla.primeroPresente(textos);
+                if (encontrado != null) {
+                    System.out.println("✅ [WaitForResponse] \"" + encontrado + "\" encontrado en "
+                            + (System.currentTimeMillis() - inicio) + " ms (" + ciclos + " capturas)");
+                    return encontrado;
                 }
+
+                boolean spinner = pantalla.contieneId(ID_SPINNER);
+                boolean cambio = pantalla.getFirma() != firmaAnterior || spinner != spinnerAnterior;
+                firmaAnterior = pantalla.getFirma();
+                spinnerAnterior = spinner;
+
+                // Pantalla nueva (o spinner que acaba de desaparecer): volver a mirar pronto
+                intervalo = cambio ? INTERVALO_MINIMO
+                        : Math.min(INTERVALO_MAXIMO, (long) (intervalo * FACTOR_BACKOFF));
+            }
+
+            long restante = limite - System.currentTimeMillis();
+            if (restante <= 0) {
+                break;
             }
-        }
 
-        if (!found) {
-            throw new RuntimeException(
-                    "Ninguno de los textos esperados fue encontrado en el tiempo dado.");
+            try {
+                Pausas.dormir("WaitForResponse.sondeo", Math.min(intervalo, restante));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
         }
+
+        throw new RuntimeException(
+                "Ninguno de los textos esperados fue encontrado en el tiempo dado: " + textos);
+    }
+
+    public String getTextoEncontrado() {
+        return textoEncontrado;
     }
 
     // ✅ Para un solo texto, con timeout personalizado
@@ -79,4 +138,4 @@ public class WaitForResponse implements Interaction {
     public static WaitForResponse withAnyText(List<String> texts) {
         return new WaitForResponse(texts, DEFAULT_TIMEOUT);
     }
-}
\ No newline at end of file
+}
@@ -195,9 +195,6 @@ public class RealizarCompraCompletaUSSD implements Task {
     private <T extends Actor> void ejecutarSoloValidaciones(T actor) {
         System.out.println("🔍 Ejecutando solo validaciones de pantalla");
 
-        // Validar pantalla actual sin interacciones
-        actor.attemptsTo(WaitFor.aTime(Constants.WAIT_MEDIUM));
-
         // Intentar identificar qué pantalla está visible
         try {
             actor.attemptsTo(ValidarPantallaUSSD.menuPrincipal());
@@ -296,9 +293,6 @@ public class RealizarCompraCompletaUSSD implements Task {
                 RealizarLlamada.alNumero(numeroUSSD)
         );
 
-        // Esperar respuesta del sistema USSD
-        actor.attemptsTo(WaitFor.aTime(Constants.WAIT_LONG));
-
         EvidenciaUtils.registrarCaptura(Constants.DESC_LLAMADA_INICIAL + " - " + numeroUSSD);
         System.out.println("✅ Llamada USSD completada");
     }
@@ -314,9 +308,6 @@ public class RealizarCompraCompletaUSSD implements Task {
                 IngresarOpcionUSSD.compraDePaquetes()
         );
 
-        // Esperar carga del menú de paquetes
-        actor.attemptsTo(WaitFor.aTime(Constants.WAIT_MEDIUM));
-
         EvidenciaUtils.registrarCaptura(Constants.DESC_SELECCION_PAQUETES);
         System.out.println("✅ Navegación a compra de paquetes completada");
     }
@@ -352,9 +343,6 @@ public class RealizarCompraCompletaUSSD implements Task {
                 IngresarOpcionUSSD.paqueteMasVendido()
         );
 
-        // Esperar procesamiento de la selección
-        actor.attemptsTo(WaitFor.aTime(Constants.WAIT_MEDIUM));
-
         EvidenciaUtils.registrarCaptura(Constants.DESC_SELECCION_MAS_VENDIDO);
         System.out.println("✅ Paquete más vendido seleccionado exitosamente");
     }
@@ -390,9 +378,6 @@ public class RealizarCompraCompletaUSSD implements Task {
                 IngresarOpcionUSSD.laOpcion(Constants.OPCION_4, "Descuento de saldo")
         );
 
-        // Esperar procesamiento del pago
-        actor.attemptsTo(WaitFor.aTime(Constants.WAIT_LONG));
-
         EvidenciaUtils.registrarCaptura(Constants.DESC_SELECCION_MEDIO_PAGO);
         System.out.println("✅ Medio de pago seleccionado exitosamente");
     }
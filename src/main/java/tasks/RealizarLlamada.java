@@ -1,5 +1,6 @@
 package tasks;
 
+import hooks.ReglasPopup;
 import interactions.wait.WaitFor;
 import net.serenitybdd.screenplay.Actor;
 import net.serenitybdd.screenplay.Performable;
@@ -11,6 +12,10 @@ import org.openqa.selenium.By;
 import org.openqa.selenium.StaleElementReferenceException;
 import utils.CapturaDePantallaMovil;
 import utils.MyDriver;
+import utils.TextosPantalla;
+import utils.UtilidadesAndroid;
+import utils.metricas.Pausas;
+import utils.traza.Trazador;
 
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -24,6 +29,16 @@ public class RealizarLlamada implements Task {
     private final String numero;
     private static final int MAX_REINTENTOS = 4;
 
+    /** -Dussd.marcado=intent lanza android.intent.action.CALL; "ui" (default) usa el teclado del Dialer */
+    private static final String MODO_INTENT = "intent";
+    private static final String MODO_UI = "ui";
+
+    /** Máximo esperando el diálogo USSD tras el intent y luego que desaparezca el spinner */
+    private static final long TIMEOUT_SPINNER_MS = 30_000;
+
+    /** App del diálogo USSD (MMIDialogActivity) */
+    private static final String PAQUETE_TELEFONO = "com.android.phone";
+
     public RealizarLlamada(String numero) {
         this.numero = numero;
     }
@@ -34,6 +49,23 @@ public class RealizarLlamada implements Task {
 
     @Override
     public <T extends Actor> void performAs(T actor) {
+        // Sin @Step: el span de la traza lo registra la propia tarea
+        long inicio = Trazador.ahora();
+        try {
+            marcar(actor);
+        } finally {
+            Trazador.span(Trazador.SCREENPLAY, "RealizarLlamada", inicio, numero);
+        }
+    }
+
+    private <T extends Actor> void marcar(T actor) {
+
+        // 0. Modo intent: marca el código sin abrir el teclado del Dialer
+        if (MODO_INTENT.equalsIgnoreCase(System.getProperty("ussd.marcado", MODO_UI)) && marcarPorIntent()) {
+            esperarDialogoIntent();
+            esperarSpinnerDirecto();
+            return;
+        }
 
         // 1. App predeterminada (sin cambios, es el primer step y raramente falla)
         if (!Presence.of(TXT_APP_PREDETERMINADA).viewedBy(actor).resolveAll().isEmpty()) {
@@ -138,27 +170,53 @@ public class RealizarLlamada implements Task {
     private void cerrarPopupSiPresente() {
         var driver = MyDriver.get();
         if (driver == null) return;
-        driver.manage().timeouts().implicitlyWait(0, TimeUnit.SECONDS);
         try {
-            List<?> simClaro = driver.findElements(By.xpath(
-                    "//*[contains(@text,'Continua la compra de tus productos Claro')]"));
-            if (!simClaro.isEmpty()) {
-                driver.findElement(By.xpath("//*[@text='Cancelar']")).click();
-                System.out.println("🛡️ [RealizarLlamada] Popup SIM Claro cerrado");
-                pausa(500);
-            }
-            List<?> explorador = driver.findElements(By.xpath(
-                    "//*[contains(@text,'Iniciar el explorador')]"));
-            if (!explorador.isEmpty()) {
-                driver.findElement(By.xpath("//*[@text='Cancelar']")).click();
-                System.out.println("🛡️ [RealizarLlamada] Popup Iniciar explorador cerrado");
-                pausa(500);
-            }
+            ReglasPopup.cerrarTodos(driver, ReglasPopup.POPUPS, "RealizarLlamada", 500);
         } catch (Exception ignored) {
-        } finally {
-            driver.manage().timeouts().implicitlyWait(10, TimeUnit.SECONDS);
         }
     }
+    /**
+     * Lanza el intent CALL. Devuelve false solo si no se pudo enviar; en ese caso
+     * se sigue por la UI del Dialer.
+     */
+    private boolean marcarPorIntent() {
+        var driver = MyDriver.get();
+        if (driver == null || !UtilidadesAndroid.llamarPorIntent(driver, numero)) {
+            System.out.println("⚠️ [RealizarLlamada] No se pudo enviar el intent CALL — se marca por la UI");
+            return false;
+        }
+        System.out.println("📞 [RealizarLlamada] Intent CALL enviado para " + numero);
+        return true;
+    }
+
+    /**
+     * Espera a que el intent ya aceptado muestre el diálogo USSD de com.android.phone
+     * (spinner, campo de respuesta o botón Enviar/Aceptar). No vuelve a la UI: el código
+     * ya se marcó y hacerlo de nuevo abriría una segunda sesión USSD.
+     *
+     * @throws RuntimeException Si el diálogo no aparece en el tiempo del spinner
+     */
+    private void esperarDialogoIntent() {
+        var driver = MyDriver.get();
+        long limite = System.currentTimeMillis() + TIMEOUT_SPINNER_MS;
+        while (System.currentTimeMillis() < limite) {
+            try {
+                TextosPantalla pantalla = TextosPantalla.capturar(driver);
+                if (pantalla.contieneId(PAQUETE_TELEFONO, "android:id/progress")
+                        || pantalla.contieneId(PAQUETE_TELEFONO, "com.android.phone:id/input_field")
+                        || pantalla.contieneId(PAQUETE_TELEFONO, "android:id/button1")) {
+                    CapturaDePantallaMovil.tomarCapturaPantalla("captura_pantalla");
+                    return;
+                }
+            } catch (Exception ignored) {
+                // Transición de ventanas: se reintenta en el siguiente ciclo
+            }
+            pausa(250);
+        }
+        throw new RuntimeException("El intent CALL para " + numero + " se envió pero el diálogo USSD de "
+                + PAQUETE_TELEFONO + " no apareció en " + TIMEOUT_SPINNER_MS / 1000 + " s");
+    }
+
     /**
      * Espera que el spinner USSD (android:id/progress) desaparezca.
      * Usa el driver directamente para evitar que Serenity cachee el elemento
@@ -169,7 +227,7 @@ public class RealizarLlamada implements Task {
         if (driver == null) return;
 
         long inicio = System.currentTimeMillis();
-        long timeout = 30_000; // 30 segundos máximo
+        long timeout = TIMEOUT_SPINNER_MS;
 
         driver.manage().timeouts().implicitlyWait(0, TimeUnit.SECONDS);
         try {
@@ -180,7 +238,7 @@ public class RealizarLlamada implements Task {
                         System.out.println("✅ [RealizarLlamada] Spinner desapareció — menú USSD listo");
                         return;
                     }
-                    Thread.sleep(300);
+                    Pausas.dormir("RealizarLlamada.spinner", 300);
                 } catch (Exception e) {
                     // StaleElement u otro error = el spinner ya no existe
                     System.out.println("✅ [RealizarLlamada] Spinner ya no existe en DOM — continuando");
@@ -194,6 +252,6 @@ public class RealizarLlamada implements Task {
     }
 
     private void pausa(long ms) {
-        try { Thread.sleep(ms); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        try { Pausas.dormir("RealizarLlamada.pausa", ms); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
     }
 }
\ No newline at end of file
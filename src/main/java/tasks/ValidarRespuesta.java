@@ -1,6 +1,7 @@
 package tasks;
 
 import interactions.wait.WaitFor;
+import interactions.wait.WaitForResponse;
 import net.serenitybdd.screenplay.Actor;
 import net.serenitybdd.screenplay.Task;
 import net.thucydides.core.annotations.Step;
@@ -8,6 +9,8 @@ import utils.AndroidObject;
 import utils.CapturaDePantallaMovil;
 import utils.EvidenciaUtils;
 
+import java.util.Arrays;
+
 import static net.serenitybdd.screenplay.Tasks.instrumented;
 
 /**
@@ -34,6 +37,9 @@ public class ValidarRespuesta extends AndroidObject implements Task {
     private static final String TEXTO_CAMINO_1 = "Selecciona para ver detalle";
     private static final String TEXTO_CAMINO_2 = "No cuentas con paquetes vigentes";
 
+    /** Segundos máximos esperando cualquiera de los dos caminos */
+    private static final int TIMEOUT_RESPUESTA = 10;
+
     // ── Factory method (patrón Screenplay) ───────────────────────────────────
     public static ValidarRespuesta enPantalla() {
         return instrumented(ValidarRespuesta.class);
@@ -43,29 +49,19 @@ public class ValidarRespuesta extends AndroidObject implements Task {
     @Step("Validar respuesta USSD: menú de paquetes o aviso sin paquetes vigentes")
     public <T extends Actor> void performAs(T actor) {
 
-        // Pequeña espera para que el diálogo USSD se estabilice
-        actor.attemptsTo(WaitFor.aTime(2000));
+        // Espera a que el diálogo USSD se estabilice (sin spinner), con tope aprendido
+        actor.attemptsTo(WaitFor.adaptativo("llamada->respuesta", 2000));
 
         EvidenciaUtils.registrarCaptura("Antes de validar respuesta USSD");
 
         System.out.println("🔍 Validando respuesta USSD — verificando caminos válidos...");
 
-        // ── Camino 1: menú con paquetes disponibles ───────────────────────────
-        try {
-            ElTextoContiene(actor, TEXTO_CAMINO_1);
-            System.out.println("✅ Camino 1 detectado: menú de selección de paquetes visible");
-            CapturaDePantallaMovil.tomarCapturaPantalla("validar_respuesta_camino1_exitoso");
-            return; // Validación superada — salir inmediatamente
-        } catch (Exception e) {
-            System.out.println("ℹ️ Camino 1 no presente, verificando camino 2...");
-        }
-
-        // ── Camino 2: aviso sin paquetes vigentes ─────────────────────────────
+        // ── Una sola espera para ambos caminos: devuelve el texto que apareció ──
+        String encontrado;
         try {
-            ElTextoContiene(actor, TEXTO_CAMINO_2);
-            System.out.println("✅ Camino 2 detectado: aviso de sin paquetes vigentes visible");
-            CapturaDePantallaMovil.tomarCapturaPantalla("validar_respuesta_camino2_exitoso");
-        } catch (Exception e) {
+            encontrado = WaitForResponse.esperar(
+                    androidDriver(actor), Arrays.asList(TEXTO_CAMINO_1, TEXTO_CAMINO_2), TIMEOUT_RESPUESTA);
+        } catch (RuntimeException e) {
             // Ninguno de los dos textos está en pantalla — fallo real
             CapturaDePantallaMovil.tomarCapturaPantalla("validar_respuesta_fallo");
             throw new AssertionError(
@@ -74,5 +70,15 @@ public class ValidarRespuesta extends AndroidObject implements Task {
                             "   Esperado (camino 2): \"" + TEXTO_CAMINO_2 + "\""
             );
         }
+
+        if (TEXTO_CAMINO_1.equals(encontrado)) {
+            // ── Camino 1: menú con paquetes disponibles ───────────────────────
+            System.out.println("✅ Camino 1 detectado: menú de selección de paquetes visible");
+            CapturaDePantallaMovil.tomarCapturaPantalla("validar_respuesta_camino1_exitoso");
+        } else {
+            // ── Camino 2: aviso sin paquetes vigentes ─────────────────────────
+            System.out.println("✅ Camino 2 detectado: aviso de sin paquetes vigentes visible");
+            CapturaDePantallaMovil.tomarCapturaPantalla("validar_respuesta_camino2_exitoso");
+        }
     }
 }
\ No newline at end of file
@@ -1,9 +1,75 @@
 package utils;
 
+import java.io.IOException;
+import java.util.List;
+
 public class AdbUtils {
+
+  /** KEYCODE_0 de Android; KEYCODE_1..KEYCODE_9 son consecutivos */
+  private static final int KEYCODE_0 = 7;
+
+  /** Pausa entre dígitos que el teclado del marcador USSD necesita para registrar cada toque */
+  private static final long PAUSA_ENTRE_TAPS_MS = 300;
+
   public static void ejecutarAdbTap(int x, int y) {
     try {
-      String comando = "adb shell input tap " + x + " " + y;
+      // Shell persistente del dispositivo del thread: sin lanzar un proceso adb por tap
+      ShellAdb.actual().lote().tap(x, y).enviar();
+    } catch (IOException e) {
+      ejecutarAdbTapProceso(x, y);
+    }
+  }
+
+  /**
+   * Varios taps en una sola escritura al shell adb, con la misma pausa de 300 ms entre
+   * uno y otro que tenía el click tecla por tecla (el sleep corre en el dispositivo).
+   *
+   * @param puntos coordenadas {x, y}
+   * @return false si adb no respondió (el llamador puede volver al click por Appium)
+   */
+  public static boolean ejecutarAdbTaps(List<int[]> puntos) {
+    ShellAdb.Lote lote = ShellAdb.actual().lote();
+    for (int i = 0; i < puntos.size(); i++) {
+      if (i > 0) {
+        lote.pausa(PAUSA_ENTRE_TAPS_MS);
+      }
+      lote.tap(puntos.get(i)[0], puntos.get(i)[1]);
+    }
+    return enviar(lote);
+  }
+
+  /**
+   * Escribe dígitos como eventos de teclado en un solo "input keyevent".
+   *
+   * @throws IllegalArgumentException si hay caracteres que no son dígitos
+   */
+  public static boolean digitarAdb(String numeros) {
+    int[] keycodes = new int[numeros.length()];
+    for (int i = 0; i < numeros.length(); i++) {
+      char numero = numeros.charAt(i);
+      if (numero < '0' || numero > '9') {
+        throw new IllegalArgumentException("Caracter no válido: " + numero);
+      }
+      keycodes[i] = KEYCODE_0 + (numero - '0');
+    }
+    return enviar(ShellAdb.actual().lote().teclas(keycodes));
+  }
+
+  private static boolean enviar(ShellAdb.Lote lote) {
+    try {
+      lote.enviar();
+      return true;
+    } catch (IOException e) {
+      System.out.println("⚠️ [AdbUtils] Lote de " + lote.tamanio() + " evento(s) no enviado: " + e.getMessage());
+      return false;
+    }
+  }
+
+  private static void ejecutarAdbTapProceso(int x, int y) {
+    try {
+      // Con varios dispositivos conectados adb exige -s <udid>
+      String udid = MyDriver.udidActual();
+      String comando = (udid != null ? "adb -s " + udid : "adb") + " shell input tap " + x + " " + y;
       Process process = Runtime.getRuntime().exec(comando);
       process.waitFor(); // Espera a que el comando termine
     } catch (Exception e) {
@@ -16,6 +16,7 @@ import net.serenitybdd.screenplay.questions.Presence;
 import net.serenitybdd.screenplay.targets.Target;
 import net.thucydides.core.webdriver.WebDriverFacade;
 import org.openqa.selenium.*;
+import utils.metricas.Pausas;
 
 import java.time.Duration;
 import java.util.ArrayList;
@@ -154,7 +155,7 @@ public class AndroidObject extends Excepciones {
                 // 3️⃣ Scroll corto si no se encuentra aún
                 System.out.println("🔄 Scroll intento #" + intento);
                 swipeVertical(actor, 0.7, 0.5, 0.3);
-                Thread.sleep(700);
+                Pausas.dormir("AndroidObject.scrollVertical", 700);
             }
 
             System.out.println("❌ Texto no encontrado tras " + intentosMaximos + " intentos: " + textoOpcional);
@@ -236,6 +237,11 @@ public class AndroidObject extends Excepciones {
 
 
     public static void digitarDesdeTeclado(String numeros) {
+        // Todos los dígitos en un solo "input keyevent" por el shell adb persistente
+        if (AdbUtils.digitarAdb(numeros)) {
+            return;
+        }
+
         AndroidDriver driver = (AndroidDriver) Serenity.getWebdriverManager().getCurrentDriver();
 
         for (char numero : numeros.toCharArray()) {
@@ -403,7 +409,7 @@ public class AndroidObject extends Excepciones {
                 // 3️⃣ Scroll horizontal corto si no se encuentra aún
                 System.out.println("🔄 Scroll horizontal intento #" + intento);
                 swipeHorizontal(actor, 0.7, 0.3, 0.4); // De derecha a izquierda
-                Thread.sleep(800); // Pausa ligeramente mayor para scroll horizontal
+                Pausas.dormir("AndroidObject.scrollHorizontal", 800); // Pausa ligeramente mayor para scroll horizontal
             }
 
             System.out.println("❌ Texto no encontrado tras " + intentosMaximos + " intentos de scroll horizontal: " + textoOpcional);
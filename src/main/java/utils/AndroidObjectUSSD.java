@@ -5,6 +5,7 @@ import io.appium.java_client.android.AndroidDriver;
 import interactions.wait.WaitFor;
 import net.serenitybdd.screenplay.Actor;
 import org.openqa.selenium.WebElement;
+import utils.metricas.Pausas;
 
 import java.util.List;
 
@@ -86,7 +87,7 @@ public class AndroidObjectUSSD extends AndroidObject {
                     // Continuar esperando
                 }
 
-                Thread.sleep(1000);
+                Pausas.dormir("AndroidObjectUSSD.esperarRespuesta", 1000);
             }
 
             System.out.println("⏰ Timeout esperando respuesta USSD");
@@ -266,10 +267,10 @@ public class AndroidObjectUSSD extends AndroidObject {
                         System.out.println("📱 Respuesta USSD detectada");
                     }
 
-                    Thread.sleep(500);
+                    Pausas.dormir("AndroidObjectUSSD.sondeo", 500);
 
                 } catch (Exception e) {
-                    Thread.sleep(1000);
+                    Pausas.dormir("AndroidObjectUSSD.sondeo", 1000);
                 }
             }
 
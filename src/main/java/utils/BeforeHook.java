@@ -1,6 +1,7 @@
 package utils;
 
 import cucumber.api.Scenario;
+import hooks.ReglasPopup;
 import io.appium.java_client.android.AndroidDriver;
 import jxl.common.Logger;
 import net.serenitybdd.screenplay.actors.OnStage;
@@ -8,11 +9,8 @@ import net.serenitybdd.screenplay.actors.OnlineCast;
 import net.serenitybdd.screenplay.rest.abiities.CallAnApi;
 import org.junit.After;
 import org.junit.Before;
-import org.openqa.selenium.By;
 import utils.MyDriver;
 
-import java.util.concurrent.TimeUnit;
-
 import static net.serenitybdd.screenplay.actors.OnStage.theActorCalled;
 
 public class BeforeHook {
@@ -46,53 +44,8 @@ public class BeforeHook {
 
       System.out.println("🔍 [BeforeHook] Verificando popups iniciales...");
 
-      // Desactivar implicit wait para detección instantánea
-      driver.manage().timeouts().implicitlyWait(0, TimeUnit.SECONDS);
-
-      try {
-        // 1. SIM Claro / Claro portal
-        try {
-          if (!driver.findElements(By.xpath(
-                  "//*[contains(@text,'Continua la compra de tus productos Claro')]")).isEmpty()) {
-            driver.findElement(By.xpath("//*[@text='Cancelar']")).click();
-            System.out.println("📌 [BeforeHook] Popup 'SIM Claro' cerrado");
-            Thread.sleep(500);
-          }
-        } catch (Exception e) { /* Silencioso */ }
-
-        // 2. Iniciar el explorador
-        try {
-          if (!driver.findElements(By.xpath(
-                  "//*[contains(@text,'Iniciar el explorador')]")).isEmpty()) {
-            driver.findElement(By.xpath("//*[@text='Cancelar']")).click();
-            System.out.println("📌 [BeforeHook] Popup 'Iniciar explorador' cerrado");
-            Thread.sleep(500);
-          }
-        } catch (Exception e) { /* Silencioso */ }
-
-        // 3. Error conexión / MMI (todas las variantes con contains)
-        try {
-          if (!driver.findElements(By.xpath(
-                  "//*[contains(@text,'Problema de conexión o código')]")).isEmpty()) {
-            driver.findElement(By.xpath("//*[@text='Aceptar']")).click();
-            System.out.println("📌 [BeforeHook] Error conexión/MMI cerrado");
-            Thread.sleep(500);
-          }
-        } catch (Exception e) { /* Silencioso */ }
-
-        // 4. USSD residual
-        try {
-          if (!driver.findElements(By.xpath("//*[@text='Cancelar']")).isEmpty()) {
-            driver.findElement(By.xpath("//*[@text='Cancelar']")).click();
-            System.out.println("📌 [BeforeHook] USSD residual cerrado");
-            Thread.sleep(500);
-          }
-        } catch (Exception e) { /* Silencioso */ }
-
-      } finally {
-        // Restaurar implicit wait original
-        driver.manage().timeouts().implicitlyWait(10, TimeUnit.SECONDS);
-      }
+      // SIM Claro, Iniciar explorador, error conexión/MMI y USSD residual: un snapshot por ronda
+      ReglasPopup.cerrarTodos(driver, ReglasPopup.POPUPS_Y_USSD_RESIDUAL, "BeforeHook", 500);
 
       System.out.println("✅ [BeforeHook] Verificación de popups completada");
 
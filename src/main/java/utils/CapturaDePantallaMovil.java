@@ -1,82 +1,214 @@
 package utils;
 
 import net.thucydides.core.webdriver.SerenityWebdriverManager;
-import org.apache.commons.io.FileUtils;
 import org.openqa.selenium.OutputType;
 import org.openqa.selenium.TakesScreenshot;
+import utils.traza.Trazador;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Capturas de pantalla con borde para el informe Word.
+ *
+ * El thread del test solo pide los bytes PNG al dispositivo; decodificar,
+ * dibujar el borde, recodificar y escribir en Capturas/ se hace en un pool
+ * acotado en segundo plano. Si los PNG pendientes superan el tope de memoria, el
+ * thread del test espera (back-pressure) en vez de acumular imágenes sin límite.
+ *
+ * Antes de leer la carpeta Capturas/ el escenario llama a {@link #esperarPendientes()},
+ * que espera solo sus propias capturas.
+ *
+ * Configuración via system properties:
+ * - capturas.hilos: threads de codificación (default: 2)
+ * - capturas.memoria.mb: MB máximos de PNG pendientes de escribir (default: 64)
+ */
 public class CapturaDePantallaMovil {
 
   private static final Logger LOGGER = Logger.getLogger(CapturaDePantallaMovil.class.getName());
   private static final String CAPTURAS_DIR = "Capturas/";
 
+  private static final int HILOS = Integer.getInteger("capturas.hilos", 2);
+  private static final int MEMORIA_KB = Integer.getInteger("capturas.memoria.mb", 64) * 1024;
+  private static final long TIMEOUT_ESPERA_SEGUNDOS = 60;
+
+  /** Permisos en KB de PNG pendientes: acquire bloquea al thread del test si se supera el tope */
+  private static final Semaphore MEMORIA = new Semaphore(MEMORIA_KB);
+
+  /** Capturas sin escribir por thread de escenario: cada escenario espera solo las suyas */
+  private static final Map<Thread, Queue<Future<?>>> PENDIENTES = new ConcurrentHashMap<>();
+
+  private static final ThreadPoolExecutor CODIFICADOR = crearCodificador();
+
   public static String tomarCapturaPantalla(String nombreCaptura) {
-    String rutaDestino = "";
+    String rutaDestino = rutaPara(nombreCaptura);
     try {
-      // Obtener fecha y hora actual en formato seguro para nombres de archivo
-      //   String formattedDateTime = LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd_MM_yyyy_HH_mm_ss"));
-      String nombreNormalizado = nombreCaptura
-              .toLowerCase()
-              .replaceAll("[^a-z0-9]", "_");  // Reemplaza todo lo que no sea letra o número
+      // Obtener el WebDriver actual y tomar la captura (único paso en el thread del test)
+      TakesScreenshot screenshotTaker = (TakesScreenshot) SerenityWebdriverManager.inThisTestThread().getCurrentDriver();
+      byte[] png = screenshotTaker.getScreenshotAs(OutputType.BYTES);
+      encolar(png, rutaDestino);
+      ManifiestoCapturas.actual().registrar(nombreCaptura, rutaDestino);
+    } catch (Exception e) {
+      LOGGER.log(Level.SEVERE, "Error al tomar la captura de pantalla: " + nombreCaptura, e);
+    }
+    return rutaDestino;
+  }
+
+  /**
+   * Ruta en Capturas/ para el nombre dado (normalizado + timestamp).
+   */
+  static String rutaPara(String nombreCaptura) {
+    String nombreNormalizado = nombreCaptura
+            .toLowerCase()
+            .replaceAll("[^a-z0-9]", "_");  // Reemplaza todo lo que no sea letra o número
 
-      String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-      String nombreArchivo = nombreNormalizado + "_" + timestamp + ".png";
-      rutaDestino = CAPTURAS_DIR + nombreArchivo;
-      //  rutaDestino = CAPTURAS_DIR + nombreArchivo;
+    String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+    return CAPTURAS_DIR + nombreNormalizado + "_" + timestamp + ".png";
+  }
+
+  /**
+   * Entrega un PNG ya obtenido del dispositivo al pool de codificación.
+   * Bloquea si los PNG pendientes superan capturas.memoria.mb.
+   */
+  static void encolar(byte[] png, String rutaDestino) throws InterruptedException {
+    int kb = Math.min(MEMORIA_KB, Math.max(1, png.length / 1024));
+    MEMORIA.acquire(kb);
+    Thread escenario = Thread.currentThread();
+    try {
+      Queue<Future<?>> delEscenario = PENDIENTES.computeIfAbsent(escenario, k -> new ConcurrentLinkedQueue<>());
+      delEscenario.add(CODIFICADOR.submit(() -> {
+        Trazador.trabajarPara(escenario);
+        try {
+          escribirConBorde(png, rutaDestino);
+        } finally {
+          Trazador.terminarTrabajo();
+          MEMORIA.release(kb);
+        }
+      }));
+    } catch (RuntimeException e) {
+      MEMORIA.release(kb);
+      throw e;
+    }
+  }
 
+  private static void escribirConBorde(byte[] png, String rutaDestino) {
+    long inicio = Trazador.ahora();
+    try {
       // Verificar si la carpeta Capturas/ existe, si no, crearla
       File carpetaCapturas = new File(CAPTURAS_DIR);
       if (!carpetaCapturas.exists()) {
         carpetaCapturas.mkdirs();
       }
 
-      // Obtener el WebDriver actual y tomar la captura
-      TakesScreenshot screenshotTaker = (TakesScreenshot) SerenityWebdriverManager.inThisTestThread().getCurrentDriver();
-      File captura = screenshotTaker.getScreenshotAs(OutputType.FILE);
-      File destinoTemporal = new File(CAPTURAS_DIR + "temp.png");
-
-      // Guardar la captura temporalmente
-      FileUtils.copyFile(captura, destinoTemporal);
-
-      // Cargar la imagen correctamente
-      BufferedImage imagen = ImageIO.read(destinoTemporal);
-      if (imagen == null) {
+      BufferedImage imagenConBorde = conBorde(png);
+      if (imagenConBorde == null) {
         LOGGER.severe("No se pudo cargar la imagen, ImageIO.read() devolvió null.");
-        return "";
+        return;
       }
 
-      // Crear una nueva imagen con el mismo tamaño
-      BufferedImage imagenConBorde = new BufferedImage(imagen.getWidth(), imagen.getHeight(), BufferedImage.TYPE_INT_RGB);
-      Graphics2D g2d = imagenConBorde.createGraphics();
-      g2d.drawImage(imagen, 0, 0, null);
+      ImageIO.write(imagenConBorde, "png", new File(rutaDestino));
+      LOGGER.info("Captura de pantalla guardada con borde: " + rutaDestino);
+    } catch (IOException e) {
+      LOGGER.log(Level.SEVERE, "Error al guardar la captura de pantalla: " + rutaDestino, e);
+    } finally {
+      Trazador.span(Trazador.CAPTURA, "codificar captura", inicio, new File(rutaDestino).getName());
+    }
+  }
 
-      // Dibujar el borde rojo
-      g2d.setColor(Color.WHITE);
-      g2d.setStroke(new BasicStroke(5)); // Grosor del borde
-      g2d.drawRect(2, 2, imagen.getWidth() - 4, imagen.getHeight() - 4);
-      g2d.dispose();
+  /**
+   * Decodifica el PNG y dibuja el borde blanco sobre una copia RGB.
+   *
+   * @return null si el PNG no se puede decodificar
+   */
+  static BufferedImage conBorde(byte[] png) throws IOException {
+    // Cargar la imagen directamente desde memoria
+    BufferedImage imagen = ImageIO.read(new ByteArrayInputStream(png));
+    if (imagen == null) {
+      return null;
+    }
 
-      // Guardar la imagen con el borde
-      File destinoFinal = new File(rutaDestino);
-      ImageIO.write(imagenConBorde, "png", destinoFinal);
+    BufferedImage imagenConBorde = new BufferedImage(imagen.getWidth(), imagen.getHeight(), BufferedImage.TYPE_INT_RGB);
+    Graphics2D g2d = imagenConBorde.createGraphics();
+    g2d.drawImage(imagen, 0, 0, null);
 
-      // Eliminar el archivo temporal
-      destinoTemporal.delete();
+    g2d.setColor(Color.WHITE);
+    g2d.setStroke(new BasicStroke(5)); // Grosor del borde
+    g2d.drawRect(2, 2, imagen.getWidth() - 4, imagen.getHeight() - 4);
+    g2d.dispose();
+    return imagenConBorde;
+  }
 
-      LOGGER.info("Captura de pantalla guardada con borde rojo: " + rutaDestino);
-    } catch (IOException e) {
-      LOGGER.log(Level.SEVERE, "Error al tomar o guardar la captura de pantalla: " + nombreCaptura, e);
+  /**
+   * Barrera: espera a que estén escritas en disco las capturas que encoló el thread
+   * actual (las de otros escenarios en paralelo siguen su curso).
+   */
+  public static void esperarPendientes() {
+    Queue<Future<?>> delEscenario = PENDIENTES.remove(Thread.currentThread());
+    if (delEscenario != null) {
+      esperar(delEscenario);
     }
-    return rutaDestino;
   }
-}
\ No newline at end of file
+
+  /**
+   * Espera las capturas de todos los escenarios (al terminar el JVM).
+   */
+  static void esperarTodas() {
+    for (Thread escenario : PENDIENTES.keySet()) {
+      Queue<Future<?>> delEscenario = PENDIENTES.remove(escenario);
+      if (delEscenario != null) {
+        esperar(delEscenario);
+      }
+    }
+  }
+
+  private static void esperar(Queue<Future<?>> pendientes) {
+    long limite = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_ESPERA_SEGUNDOS);
+    Future<?> pendiente;
+    while ((pendiente = pendientes.poll()) != null) {
+      try {
+        pendiente.get(Math.max(0, limite - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (ExecutionException | TimeoutException e) {
+        LOGGER.warning("Captura pendiente no completada: " + e.getMessage());
+      }
+    }
+  }
+
+  private static ThreadPoolExecutor crearCodificador() {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            HILOS, HILOS, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(256),
+            r -> {
+              Thread t = new Thread(r, "CapturaDePantallaMovil-codificador");
+              t.setDaemon(true);
+              return t;
+            },
+            // Cola llena: el thread del test codifica él mismo (back-pressure adicional)
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    executor.allowCoreThreadTimeOut(true);
+    // Los threads son daemon: al terminar el JVM se escriben las capturas que falten
+    Runtime.getRuntime().addShutdownHook(new Thread(CapturaDePantallaMovil::esperarTodas, "CapturaDePantallaMovil-flush"));
+    return executor;
+  }
+}
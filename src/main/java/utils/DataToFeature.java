@@ -1,34 +1,51 @@
 package utils;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 /**
  * Ingresa los datos obtenidos del archivo de Excel al archivo .feature del cual se esta llamando.
  *
+ * <p>Los .feature originales no se modifican: la versión con las tablas llenas se escribe en una
+ * carpeta aparte que el runner le pasa a Cucumber.
+ *
+ * <p>Configuración via system properties:
+ * - features.expandidas.dir: carpeta de los .feature expandidos (default: build/features-expandidas)
+ *
  * @author js.siabato@mensajerosurbanos.com
  * @since 27/04/2021
  */
 public class DataToFeature {
 
+  private static final String DESTINO_POR_DEFECTO = "build/features-expandidas";
+  private static final String ARCHIVO_INDICE = ".indice.properties";
+  private static final String SEPARADOR_LIBRO = "|";
+  private static final String SEPARADOR_AMBIENTE = "#";
+
+  private static final LectorExcel LECTOR = new LectorExcel();
+
   /**
    * Ingresa los datos obtenidos de un excel al archivo .feature del cual se esta llamando, hace que
    * se genere la tabla en el escenario.
    *
    * @param featureFile Nombre del archivo .feature el cual se modificará, debe tener la ruta del
    *     archivo y la hoja a ser usada.
+   * @param librosUsados Se agregan las rutas de los libros de excel leídos para el archivo
    * @return
    * @throws InvalidFormatException Manejo de error por formato invalido
    * @throws IOException Manejo de error para el proceso de entrada y salida de datos
    * @since 27/04/2021
    */
-  private static List<String> setExcelDataToFeature(File featureFile)
+  static List<String> setExcelDataToFeature(File featureFile, Set<String> librosUsados)
       throws InvalidFormatException, IOException {
     SeleniumFunctions functions = new SeleniumFunctions();
     List<String> fileData = new ArrayList<String>();
@@ -82,29 +99,31 @@ public class DataToFeature {
           fileData.add(data);
         }
         if (foundHashTag) {
-          excelData = new LectorExcel().getData(excelFilePath, sheetName);
+          // LectorExcel guarda las hojas ya leídas: varios tags sobre el mismo libro no lo releen
+          excelData = LECTOR.getData(excelFilePath, sheetName);
+          librosUsados.add(excelFilePath);
           for (int rowNumber = filaSeleccionada; rowNumber < excelData.size() - 1; rowNumber++) {
-            String cellData = "";
+            StringBuilder cellData = new StringBuilder();
             for (Entry<String, String> mapData : excelData.get(rowNumber).entrySet()) {
               if (dataVectorRango == null) {
                 if (rowNumber == filaSeleccionada - 1 && !esUnRango) {
-                  cellData = cellData + "   |" + mapData.getValue();
+                  cellData.append("   |").append(mapData.getValue());
                 } else {
-                  cellData = cellData + "   |" + mapData.getValue();
+                  cellData.append("   |").append(mapData.getValue());
                 }
               } else {
                 if (esRangoDefinido) {
                   if (rowNumber < Integer.parseInt(dataVectorRango[1])) {
-                    cellData = cellData + "   |" + mapData.getValue();
+                    cellData.append("   |").append(mapData.getValue());
                   }
                 } else {
                   if (rowNumber + 1 == Integer.parseInt(dataVectorRango[pos]) && esUnRango) {
-                    cellData = cellData + "   |" + mapData.getValue();
+                    cellData.append("   |").append(mapData.getValue());
                   }
                 }
               }
             }
-            fileData.add(cellData + "|");
+            fileData.add(cellData.append("|").toString());
             if (!esUnRango) {
               if (!esRangoDefinido) rowNumber = excelData.size();
             }
@@ -170,57 +189,169 @@ public class DataToFeature {
   }
 
   /**
-   * Hace una lista con todos los .feature dependiendo de la ruta asignada
+   * Genera en una carpeta aparte (features.expandidas.dir) una copia de los .feature con las
+   * tablas de los tags ##@externalData ya llenas, para que Cucumber lea esa carpeta en vez de
+   * modificar los .feature originales. Un .feature se vuelve a generar solo si cambió el archivo,
+   * alguno de los libros de excel que usó o el Environment con el que se resuelven sus libros
+   * desde la expansión anterior.
    *
    * @param featuresDirectoryPath Ruta donde se encuentra los .feature que tendrán las tablas
+   * @return Ruta de la carpeta (o del .feature) expandido, o null si ningún .feature usa datos
+   *     externos y se puede seguir leyendo la ruta original
    * @throws IOException Manejo de error para el proceso de entrada y salida de datos
    * @throws InvalidFormatException Manejo de error por formato invalido
-   * @since 27/04/2021
    */
-  public static void overrideFeatureFiles(String featuresDirectoryPath)
+  public static String expandirFeatures(String featuresDirectoryPath)
       throws IOException, InvalidFormatException {
-    List<File> listOfFeatureFiles = listOfFeatureFiles(new File(featuresDirectoryPath));
-    for (File featureFile : listOfFeatureFiles) {
-      List<String> featureWithExcelData = setExcelDataToFeature(featureFile);
-      try (BufferedWriter writer =
-          new BufferedWriter(
-              new OutputStreamWriter(new FileOutputStream(featureFile), "UTF-8")); ) {
-        for (String string : featureWithExcelData) {
-          writer.write(string);
-          writer.write("\n");
-        }
+    long inicio = System.currentTimeMillis();
+    File origen = new File(featuresDirectoryPath);
+    File destino = new File(System.getProperty("features.expandidas.dir", DESTINO_POR_DEFECTO));
+    Properties indiceAnterior = leerIndice(destino);
+    Properties indice = new Properties();
+    boolean hayDatosExternos = false;
+    int generados = 0;
+    int sinCambios = 0;
+
+    for (File featureFile : listOfFeatureFiles(origen)) {
+      String relativa =
+          origen.isFile()
+              ? featureFile.getName()
+              : origen.toPath().relativize(featureFile.toPath()).toString();
+      File salida = new File(destino, relativa);
+
+      String firma = indiceAnterior.getProperty(relativa);
+      if (firma == null || !salida.isFile() || !firmaVigente(featureFile, firma)) {
+        Set<String> librosUsados = new LinkedHashSet<String>();
+        List<String> featureWithExcelData = setExcelDataToFeature(featureFile, librosUsados);
+        escribirFeature(salida, featureWithExcelData);
+        firma = firma(featureFile, librosUsados);
+        generados++;
+      } else {
+        sinCambios++;
       }
+      indice.setProperty(relativa, firma);
+      hayDatosExternos |= firma.contains(SEPARADOR_LIBRO);
+    }
+
+    eliminarObsoletos(destino, destino, indice);
+    guardarIndice(destino, indice);
+    System.out.println(
+        "📋 [DataToFeature] Features expandidos en "
+            + destino.getPath()
+            + ": "
+            + generados
+            + " generado(s), "
+            + sinCambios
+            + " sin cambios ("
+            + (System.currentTimeMillis() - inicio)
+            + " ms)");
+
+    if (!hayDatosExternos) {
+      return null;
     }
+    return origen.isFile() ? new File(destino, origen.getName()).getPath() : destino.getPath();
   }
 
   /**
-   * Realiza un BackUp del archivo .feature
+   * Firma de un .feature expandido: su fecha de modificación, el Environment con el que se
+   * resolvieron sus libros (ruta + Environment + .xlsx) y la fecha de cada libro de excel usado.
    *
-   * @since 27/04/2021
+   * @param featureFile Archivo .feature original
+   * @param librosUsados Rutas de los libros de excel leídos al expandirlo
+   * @return
    */
-  public static void backUpFeaturesFile() {
-    try {
-      FileUtils.copyDirectory(
-          new File("./src/test/resources/features/"),
-          new File("./src/test/resources/backup/features/"));
-    } catch (IOException e) {
-      e.printStackTrace();
+  private static String firma(File featureFile, Set<String> librosUsados) {
+    StringBuilder firma = new StringBuilder().append(featureFile.lastModified());
+    if (!librosUsados.isEmpty()) {
+      firma.append(SEPARADOR_AMBIENTE).append(ambiente());
     }
+    for (String libro : librosUsados) {
+      firma.append(SEPARADOR_LIBRO).append(libro).append('=').append(new File(libro).lastModified());
+    }
+    return firma.toString();
   }
 
   /**
-   * Restaura el archivo .feature a como estaba antes de la modificación.
+   * Indica si ni el .feature, ni el Environment, ni sus libros de excel cambiaron desde que se
+   * guardó la firma.
    *
-   * @since 27/04/2021
+   * @param featureFile Archivo .feature original
+   * @param firma Firma guardada en la expansión anterior
+   * @return
+   */
+  private static boolean firmaVigente(File featureFile, String firma) {
+    String[] partes = firma.split(Pattern.quote(SEPARADOR_LIBRO));
+    String[] cabecera = partes[0].split(Pattern.quote(SEPARADOR_AMBIENTE), 2);
+    if (!cabecera[0].equals(Long.toString(featureFile.lastModified()))) {
+      return false;
+    }
+    if (partes.length > 1 && (cabecera.length < 2 || !cabecera[1].equals(ambiente()))) {
+      // Otro Environment apunta a otros libros: las rutas guardadas ya no aplican
+      return false;
+    }
+    for (int i = 1; i < partes.length; i++) {
+      int igual = partes[i].lastIndexOf('=');
+      File libro = new File(partes[i].substring(0, igual));
+      if (!partes[i].substring(igual + 1).equals(Long.toString(libro.lastModified()))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String ambiente() {
+    return new SeleniumFunctions().getScenarioData("Environment");
+  }
+
+  private static void escribirFeature(File salida, List<String> lineas) throws IOException {
+    File carpeta = salida.getParentFile();
+    if (carpeta != null && !carpeta.exists()) {
+      carpeta.mkdirs();
+    }
+    try (BufferedWriter writer =
+        new BufferedWriter(new OutputStreamWriter(new FileOutputStream(salida), "UTF-8"))) {
+      for (String string : lineas) {
+        writer.write(string);
+        writer.write("\n");
+      }
+    }
+  }
+
+  /**
+   * Borra de la carpeta expandida los .feature que ya no existen en el origen.
    */
-  public static void restoreBackUpFeatures() {
-    try {
-      FileUtils.copyDirectory(
-          new File("./src/test/resources/backup/features/"),
-          new File("./src/test/resources/features/"));
-      FileUtils.deleteDirectory(new File("./src/test/resources/backup/features/"));
-    } catch (IOException e) {
-      e.printStackTrace();
+  private static void eliminarObsoletos(File raiz, File carpeta, Properties indice) {
+    File[] archivos = carpeta.listFiles();
+    if (archivos == null) {
+      return;
+    }
+    for (File archivo : archivos) {
+      if (archivo.isDirectory()) {
+        eliminarObsoletos(raiz, archivo, indice);
+      } else if (archivo.getName().endsWith(".feature")
+          && !indice.containsKey(raiz.toPath().relativize(archivo.toPath()).toString())) {
+        archivo.delete();
+      }
+    }
+  }
+
+  private static Properties leerIndice(File destino) {
+    Properties indice = new Properties();
+    File archivo = new File(destino, ARCHIVO_INDICE);
+    if (archivo.isFile()) {
+      try (InputStream entrada = new FileInputStream(archivo)) {
+        indice.load(entrada);
+      } catch (IOException e) {
+        System.err.println("⚠️ [DataToFeature] Índice ilegible, se expanden todos: " + e.getMessage());
+      }
+    }
+    return indice;
+  }
+
+  private static void guardarIndice(File destino, Properties indice) throws IOException {
+    destino.mkdirs();
+    try (OutputStream salida = new FileOutputStream(new File(destino, ARCHIVO_INDICE))) {
+      indice.store(salida, "Firmas de los .feature expandidos por DataToFeature");
     }
   }
 }
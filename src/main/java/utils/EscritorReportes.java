@@ -0,0 +1,79 @@
+package utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Escritor de informes Word en segundo plano.
+ *
+ * ReportHooks entrega un {@link InformeEscenario} al terminar cada escenario y
+ * vuelve de inmediato; POI arma y guarda el .docx en este pool mientras el
+ * dispositivo sigue con el siguiente escenario. Al terminar la suite
+ * ({@link FinDeEjecucion}, o el shutdown hook como respaldo) se drenan los
+ * informes pendientes.
+ *
+ * Configuración via system properties:
+ * - reportes.hilos: informes escritos en paralelo (default: 2)
+ * - reportes.drenado.segundos: espera máxima al terminar la suite (default: 300)
+ */
+public class EscritorReportes {
+
+    private static final int HILOS = Integer.getInteger("reportes.hilos", 2);
+    private static final int SEGUNDOS_DRENADO = Integer.getInteger("reportes.drenado.segundos", 300);
+
+    private static final AtomicInteger PENDIENTES = new AtomicInteger();
+
+    private static final ExecutorService POOL = crearPool();
+
+    private EscritorReportes() {
+    }
+
+    public static void encolar(InformeEscenario informe) {
+        PENDIENTES.incrementAndGet();
+        POOL.submit(() -> {
+            try {
+                WordAppium.escribirInforme(informe);
+            } catch (Exception e) {
+                System.err.println("❌ [EscritorReportes] Error escribiendo el informe de '"
+                        + informe.getNombreEscenario() + "': " + e.getMessage());
+            } finally {
+                PENDIENTES.decrementAndGet();
+            }
+        });
+        System.out.println("📄 [EscritorReportes] Informe de '" + informe.getNombreEscenario()
+                + "' encolado (" + PENDIENTES.get() + " pendiente(s))");
+    }
+
+    /**
+     * Espera a que se escriban todos los informes encolados (fin de la suite).
+     */
+    public static void drenar() {
+        if (PENDIENTES.get() == 0) {
+            return;
+        }
+        System.out.println("📄 [EscritorReportes] Esperando " + PENDIENTES.get() + " informe(s) pendiente(s)...");
+        POOL.shutdown();
+        try {
+            if (!POOL.awaitTermination(SEGUNDOS_DRENADO, TimeUnit.SECONDS)) {
+                System.err.println("⚠️ [EscritorReportes] " + PENDIENTES.get()
+                        + " informe(s) sin terminar tras " + SEGUNDOS_DRENADO + "s");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ExecutorService crearPool() {
+        ExecutorService pool = Executors.newFixedThreadPool(HILOS, r -> {
+            Thread t = new Thread(r, "EscritorReportes");
+            t.setDaemon(true);
+            return t;
+        });
+        FinDeEjecucion.registrar(0, "EscritorReportes", EscritorReportes::drenar);
+        // Los threads son daemon: si no se llegó al fin de la suite, el JVM espera por ellos en este hook
+        Runtime.getRuntime().addShutdownHook(new Thread(EscritorReportes::drenar, "EscritorReportes-drenado"));
+        return pool;
+    }
+}
@@ -1,15 +1,30 @@
 package utils;
 
+/**
+ * Estado del escenario en curso. Cada thread de ejecución tiene el suyo, así
+ * dos escenarios en paralelo no se pisan el inicio ni el paso fallido.
+ */
 public class EstadoPrueba {
-  public static boolean fallo = false;
-  public static String pasoFallido = "";
-  public static long inicio = 0L;
-  public static long fin = 0L;
+
+  private static final ThreadLocal<EstadoPrueba> ACTUAL = ThreadLocal.withInitial(EstadoPrueba::new);
+
+  public boolean fallo = false;
+  public String pasoFallido = "";
+  public long inicio = 0L;
+  public long fin = 0L;
+
+  /**
+   * Estado del escenario que corre en el thread actual.
+   */
+  public static EstadoPrueba actual() {
+    return ACTUAL.get();
+  }
 
   public static void reset() {
-    fallo = false;
-    pasoFallido = null;
-    inicio = System.currentTimeMillis();
-    fin = 0;
+    EstadoPrueba estado = actual();
+    estado.fallo = false;
+    estado.pasoFallido = null;
+    estado.inicio = System.currentTimeMillis();
+    estado.fin = 0;
   }
 }
@@ -2,24 +2,240 @@ package utils;
 
 import hooks.ReportHooks;
 import net.serenitybdd.core.Serenity;
+import net.serenitybdd.core.environment.ConfiguredEnvironment;
+import net.thucydides.core.screenshots.ScreenshotAndHtmlSource;
+import net.thucydides.core.steps.StepEventBus;
+import net.thucydides.core.webdriver.SerenityWebdriverManager;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.TakesScreenshot;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Broker de evidencias: una sola captura del dispositivo por momento lógico,
+ * repartida a las capturas propias (Capturas/ → informe Word) y al reporte de Serenity.
+ *
+ * Si la captura es perceptualmente igual a la anterior (miniatura en gris de
+ * 32x64 sin la barra de estado, ninguna celda con diferencia mayor a
+ * evidencias.toleranciaGris, default 6), no se vuelve a guardar: el paso
+ * reutiliza el archivo anterior. Con una tolerancia por celda, y no un hash
+ * global, cambiar una sola línea de texto del diálogo USSD ya cuenta como pantalla nueva.
+ */
 public class EvidenciaUtils {
 
-    private static int contadorPasos = 1;
+    private static final int ANCHO_HUELLA = 32;
+    private static final int ALTO_HUELLA = 64;
+    private static final int FILAS_BARRA_ESTADO = 2;
+    private static final int TOLERANCIA_GRIS = Integer.getInteger("evidencias.toleranciaGris", 6);
+
+    /** Numeración de los pasos del escenario que corre en este thread */
+    private static final ThreadLocal<Integer> CONTADOR_PASOS = ThreadLocal.withInitial(() -> 1);
+
+    /** Última captura guardada en este thread (para descartar duplicados) */
+    private static final ThreadLocal<Frame> FRAME_ANTERIOR = new ThreadLocal<>();
+
+    private static final AtomicLong CAPTURAS_DISPOSITIVO = new AtomicLong();
+    private static final AtomicLong LLAMADAS_AHORRADAS = new AtomicLong();
+    private static final AtomicLong FRAMES_DUPLICADOS = new AtomicLong();
+    private static final AtomicLong BYTES_AHORRADOS = new AtomicLong();
 
     public static void registrarCaptura(String paso) {
-        String pasoNumerado = contadorPasos++ + ". " + paso;
+        int numero = CONTADOR_PASOS.get();
+        CONTADOR_PASOS.set(numero + 1);
+        String pasoNumerado = numero + ". " + paso;
 
         // Registrar en tu sistema actual
         ReportHooks.registrarPaso(pasoNumerado);
-        CapturaDePantallaMovil.tomarCapturaPantalla(pasoNumerado);
 
         // Integrar con Serenity (versión simple)
         Serenity.recordReportData().withTitle(paso).andContents(pasoNumerado);
-        Serenity.takeScreenshot();
+
+        capturar(pasoNumerado, true);
+    }
+
+    /**
+     * Captura intermedia que solo va a Capturas/ (no registra paso ni va a Serenity).
+     */
+    public static String capturar(String nombre) {
+        return capturar(nombre, false);
+    }
+
+    private static String capturar(String nombre, boolean aSerenity) {
+        byte[] png;
+        try {
+            TakesScreenshot driver = (TakesScreenshot) SerenityWebdriverManager.inThisTestThread().getCurrentDriver();
+            png = driver.getScreenshotAs(OutputType.BYTES);
+            CAPTURAS_DISPOSITIVO.incrementAndGet();
+        } catch (Exception e) {
+            System.err.println("⚠️ [EvidenciaUtils] No se pudo tomar la captura '" + nombre + "': " + e.getMessage());
+            return "";
+        }
+
+        Frame anterior = FRAME_ANTERIOR.get();
+        byte[] huella = huellaPerceptual(png);
+        boolean duplicado = anterior != null && mismaPantalla(huella, anterior.huella);
+
+        Frame frame;
+        if (duplicado) {
+            frame = anterior;
+            FRAMES_DUPLICADOS.incrementAndGet();
+            BYTES_AHORRADOS.addAndGet(png.length);
+        } else {
+            frame = new Frame(huella, CapturaDePantallaMovil.rutaPara(nombre));
+            try {
+                CapturaDePantallaMovil.encolar(png, frame.ruta);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return "";
+            }
+            FRAME_ANTERIOR.set(frame);
+        }
+
+        // Un duplicado queda asociado al archivo del frame anterior
+        ManifiestoCapturas.actual().registrar(nombre, frame.ruta);
+
+        if (aSerenity && adjuntarASerenity(png, frame)) {
+            // Antes se pedía una segunda captura con Serenity.takeScreenshot()
+            LLAMADAS_AHORRADAS.incrementAndGet();
+            BYTES_AHORRADOS.addAndGet(png.length);
+        }
+        return frame.ruta;
+    }
+
+    /**
+     * Adjunta el PNG al step actual de Serenity sin volver a pedirlo al dispositivo.
+     * Si no hay step activo, se usa Serenity.takeScreenshot() como antes.
+     *
+     * @return false si hubo que pedir la captura a Serenity (no se ahorró nada)
+     */
+    private static boolean adjuntarASerenity(byte[] png, Frame frame) {
+        try {
+            if (frame.serenity == null) {
+                File carpeta = ConfiguredEnvironment.getConfiguration().getOutputDirectory();
+                carpeta.mkdirs();
+                File archivo = new File(carpeta, "evidencia_" + sha1(png) + ".png");
+                if (!archivo.exists()) {
+                    Files.write(archivo.toPath(), png);
+                }
+                frame.serenity = new ScreenshotAndHtmlSource(archivo);
+            }
+            ScreenshotAndHtmlSource fuente = frame.serenity;
+            boolean adjuntada = StepEventBus.getEventBus().getBaseStepListener()
+                    .getCurrentTestOutcome().currentStep()
+                    .map(step -> step.addScreenshot(fuente))
+                    .isPresent();
+            if (!adjuntada) {
+                Serenity.takeScreenshot();
+            }
+            return adjuntada;
+        } catch (Exception e) {
+            Serenity.takeScreenshot();
+            return false;
+        }
+    }
+
+    /**
+     * Miniatura en gris de ANCHO_HUELLA x ALTO_HUELLA leída con submuestreo (sin
+     * decodificar la imagen completa a tamaño real). null si no se pudo calcular.
+     */
+    static byte[] huellaPerceptual(byte[] png) {
+        try (ImageInputStream entrada = ImageIO.createImageInputStream(new ByteArrayInputStream(png))) {
+            Iterator<ImageReader> lectores = ImageIO.getImageReaders(entrada);
+            if (!lectores.hasNext()) {
+                return null;
+            }
+            ImageReader lector = lectores.next();
+            try {
+                lector.setInput(entrada);
+                ImageReadParam parametros = lector.getDefaultReadParam();
+                int paso = Math.max(1, lector.getWidth(0) / (ANCHO_HUELLA * 4));
+                parametros.setSourceSubsampling(paso, paso, 0, 0);
+                BufferedImage reducida = lector.read(0, parametros);
+
+                BufferedImage gris = new BufferedImage(ANCHO_HUELLA, ALTO_HUELLA, BufferedImage.TYPE_BYTE_GRAY);
+                Graphics2D g = gris.createGraphics();
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.drawImage(reducida, 0, 0, ANCHO_HUELLA, ALTO_HUELLA, null);
+                g.dispose();
+
+                byte[] huella = new byte[ANCHO_HUELLA * ALTO_HUELLA];
+                gris.getRaster().getDataElements(0, 0, ANCHO_HUELLA, ALTO_HUELLA, huella);
+                return huella;
+            } finally {
+                lector.dispose();
+            }
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Dos huellas son la misma pantalla si ninguna celda (fuera de la barra de estado,
+     * donde cambia el reloj) difiere más de evidencias.toleranciaGris niveles.
+     */
+    static boolean mismaPantalla(byte[] a, byte[] b) {
+        if (a == null || b == null || a.length != b.length) {
+            return false;
+        }
+        for (int i = FILAS_BARRA_ESTADO * ANCHO_HUELLA; i < a.length; i++) {
+            if (Math.abs((a[i] & 0xFF) - (b[i] & 0xFF)) > TOLERANCIA_GRIS) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String sha1(byte[] datos) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-1").digest(datos)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Capturas pedidas al dispositivo y lo que se evitó gracias al broker.
+     */
+    public static String resumen() {
+        return "capturas de dispositivo=" + CAPTURAS_DISPOSITIVO.get()
+                + ", llamadas ahorradas=" + LLAMADAS_AHORRADAS.get()
+                + ", frames duplicados=" + FRAMES_DUPLICADOS.get()
+                + ", KB ahorrados=" + BYTES_AHORRADOS.get() / 1024;
+    }
+
+    /**
+     * Olvida el frame anterior y empieza un manifiesto nuevo: las capturas se borran al generar el informe.
+     */
+    public static void nuevoEscenario() {
+        FRAME_ANTERIOR.remove();
+        ManifiestoCapturas.nuevoEscenario();
     }
 
     public static void reiniciarContador() {
-        contadorPasos = 1;
+        CONTADOR_PASOS.remove();
+        FRAME_ANTERIOR.remove();
+    }
+
+    private static class Frame {
+        private final byte[] huella;
+        private final String ruta;
+        private ScreenshotAndHtmlSource serenity;
+
+        private Frame(byte[] huella, String ruta) {
+            this.huella = huella;
+            this.ruta = ruta;
+        }
     }
-}
\ No newline at end of file
+}
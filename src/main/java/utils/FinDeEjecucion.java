@@ -0,0 +1,76 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Tareas de cierre de la suite: drenar colas en segundo plano, escribir resúmenes.
+ *
+ * Serenity no llama testRunFinished() en los StepListener registrados con
+ * StepEventBus.registerListener, así que cada componente registra aquí lo que
+ * tiene que hacer al terminar. CustomRunner llama {@link #ejecutar()} cuando
+ * Cucumber termina; un shutdown hook lo hace como respaldo (otro runner, Ctrl+C).
+ * Las tareas corren una sola vez, de menor a mayor orden (como el order de
+ * los hooks de Cucumber) y, con el mismo orden, en el orden en que se registraron.
+ */
+public final class FinDeEjecucion {
+
+    private static final List<Tarea> TAREAS = new ArrayList<>();
+    private static boolean ejecutado = false;
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(FinDeEjecucion::ejecutar, "FinDeEjecucion"));
+    }
+
+    private FinDeEjecucion() {
+    }
+
+    /**
+     * @param orden Menor corre primero
+     * @param nombre Para el log si la tarea falla
+     * @param tarea Trabajo de cierre
+     */
+    public static synchronized void registrar(int orden, String nombre, Runnable tarea) {
+        if (ejecutado) {
+            System.err.println("⚠️ [FinDeEjecucion] '" + nombre + "' registrada después del cierre, no se ejecutará");
+            return;
+        }
+        TAREAS.add(new Tarea(orden, nombre, tarea));
+    }
+
+    /**
+     * Corre las tareas registradas; las llamadas siguientes no hacen nada.
+     */
+    public static void ejecutar() {
+        List<Tarea> tareas;
+        synchronized (FinDeEjecucion.class) {
+            if (ejecutado) {
+                return;
+            }
+            ejecutado = true;
+            tareas = new ArrayList<>(TAREAS);
+        }
+        // sort es estable: a igual orden se respeta el de registro
+        tareas.sort(Comparator.comparingInt(t -> t.orden));
+        for (Tarea tarea : tareas) {
+            try {
+                tarea.trabajo.run();
+            } catch (RuntimeException e) {
+                System.err.println("⚠️ [FinDeEjecucion] Falló '" + tarea.nombre + "': " + e.getMessage());
+            }
+        }
+    }
+
+    private static final class Tarea {
+        private final int orden;
+        private final String nombre;
+        private final Runnable trabajo;
+
+        private Tarea(int orden, String nombre, Runnable trabajo) {
+            this.orden = orden;
+            this.nombre = nombre;
+            this.trabajo = trabajo;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package utils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Foto inmutable de un escenario terminado: todo lo que WordAppium necesita
+ * para escribir el informe sin volver a mirar el estado global del test.
+ *
+ * Se arma en el thread del escenario (después de la barrera de capturas) y se
+ * entrega al {@link EscritorReportes}, que lo procesa en segundo plano mientras
+ * el dispositivo ya ejecuta el siguiente escenario.
+ */
+public final class InformeEscenario {
+
+    private final String nombreEscenario;
+    private final List<String> pasos;
+    private final Map<String, File> capturaPorPaso;
+    private final List<File> archivosCapturas;
+    private final String numero;
+    private final String duracionFormato;
+    private final String pasoFallido;
+    private final String estadoFinal;
+    private final long inicio;
+    private final long fin;
+
+    InformeEscenario(String nombreEscenario, List<String> pasos, Map<String, File> capturaPorPaso,
+                     List<File> archivosCapturas, String numero, String duracionFormato,
+                     String pasoFallido, String estadoFinal, long inicio, long fin) {
+        this.nombreEscenario = nombreEscenario;
+        this.pasos = Collections.unmodifiableList(pasos);
+        this.capturaPorPaso = Collections.unmodifiableMap(capturaPorPaso);
+        this.archivosCapturas = Collections.unmodifiableList(archivosCapturas);
+        this.numero = numero;
+        this.duracionFormato = duracionFormato;
+        this.pasoFallido = pasoFallido;
+        this.estadoFinal = estadoFinal;
+        this.inicio = inicio;
+        this.fin = fin;
+    }
+
+    /**
+     * Espera las capturas pendientes y fija qué archivo corresponde a cada paso.
+     *
+     * @return null si no hay capturas (no se genera informe, como antes)
+     */
+    public static InformeEscenario capturar(String nombreEscenario, String[] pasosEjecutados, String numero,
+                                            String duracionFormato, String pasoFallido, String estadoFinal,
+                                            long inicio, long fin) {
+        // Las capturas se codifican en segundo plano: esperar a que estén todas en disco
+        CapturaDePantallaMovil.esperarPendientes();
+
+        // Solo las capturas que registró este escenario: en paralelo Capturas/ también
+        // tiene las de los demás threads, y las que se listan aquí se borran después
+        ManifiestoCapturas registro = ManifiestoCapturas.actual();
+        Map<String, String> manifiesto = registro.instantanea();
+        if (manifiesto.isEmpty()) {
+            return null;
+        }
+
+        Map<String, File> capturaPorPaso = new LinkedHashMap<>();
+        for (String paso : pasosEjecutados) {
+            File captura = WordAppium.buscarCapturaDePaso(paso, manifiesto);
+            if (captura != null) {
+                capturaPorPaso.put(paso, captura);
+            }
+        }
+
+        Set<File> archivosCapturas = new LinkedHashSet<>();
+        for (String ruta : manifiesto.values()) {
+            archivosCapturas.add(new File(ruta));
+        }
+        archivosCapturas.add(registro.getArchivo());
+
+        return new InformeEscenario(nombreEscenario, new ArrayList<>(Arrays.asList(pasosEjecutados)), capturaPorPaso,
+                new ArrayList<>(archivosCapturas), numero, duracionFormato, pasoFallido, estadoFinal, inicio, fin);
+    }
+
+    public String getNombreEscenario() {
+        return nombreEscenario;
+    }
+
+    public List<String> getPasos() {
+        return pasos;
+    }
+
+    /**
+     * Captura asociada al paso, o null si no se encontró.
+     */
+    public File getCaptura(String paso) {
+        return capturaPorPaso.get(paso);
+    }
+
+    /**
+     * Capturas del manifiesto del escenario (y el propio .tsv); se borran después de escribir el informe.
+     */
+    public List<File> getArchivosCapturas() {
+        return archivosCapturas;
+    }
+
+    public String getNumero() {
+        return numero;
+    }
+
+    public String getDuracionFormato() {
+        return duracionFormato;
+    }
+
+    public String getPasoFallido() {
+        return pasoFallido;
+    }
+
+    public String getEstadoFinal() {
+        return estadoFinal;
+    }
+
+    public long getInicio() {
+        return inicio;
+    }
+
+    public long getFin() {
+        return fin;
+    }
+}
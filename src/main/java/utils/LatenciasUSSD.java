@@ -0,0 +1,195 @@
+package utils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Modelo de latencias observadas por transición de menú USSD.
+ *
+ * Guarda una ventana móvil de las últimas muestras por transición y calcula el
+ * presupuesto de espera como el p99 con un margen de seguridad. Las muestras se
+ * persisten en JSON al terminar el JVM para que la siguiente ejecución arranque
+ * con lo aprendido.
+ *
+ * Varios forks de Gradle comparten el mismo JSON: al guardar cada JVM toma un lock
+ * sobre &lt;archivo&gt;.lock, vuelve a leer el JSON y le agrega solo las muestras que
+ * ella misma observó, así ningún fork pisa lo aprendido por los demás.
+ *
+ * Configuración via system properties:
+ * - ussd.latencias.archivo: ruta del JSON (default: latencias/ussd-latencias.json)
+ */
+public class LatenciasUSSD {
+
+    private static final String DEFAULT_ARCHIVO = "latencias" + File.separator + "ussd-latencias.json";
+
+    /** Muestras que se conservan por transición */
+    private static final int VENTANA = 100;
+
+    /** Muestras mínimas antes de confiar en el percentil */
+    private static final int MIN_MUESTRAS = 5;
+
+    private static final double MARGEN_P99 = 1.25;
+    private static final int PRESUPUESTO_MINIMO_MS = 300;
+
+    /** El presupuesto aprendido nunca supera este múltiplo del tiempo fijo original */
+    private static final int TECHO_MULTIPLO = 3;
+
+    private static volatile LatenciasUSSD instancia;
+
+    private final File archivo;
+    private final Map<String, Deque<Long>> muestras = new HashMap<>();
+
+    /** Muestras observadas por este JVM, las únicas que agrega al guardar */
+    private final Map<String, List<Long>> nuevas = new HashMap<>();
+
+    private LatenciasUSSD(File archivo) {
+        this.archivo = archivo;
+        cargar();
+    }
+
+    public static LatenciasUSSD get() {
+        if (instancia == null) {
+            synchronized (LatenciasUSSD.class) {
+                if (instancia == null) {
+                    instancia = new LatenciasUSSD(
+                            new File(System.getProperty("ussd.latencias.archivo", DEFAULT_ARCHIVO)));
+                    Runtime.getRuntime().addShutdownHook(new Thread(instancia::guardar, "LatenciasUSSD-guardar"));
+                }
+            }
+        }
+        return instancia;
+    }
+
+    public synchronized void registrar(String transicion, long milisegundos) {
+        agregar(muestras, transicion, milisegundos);
+        nuevas.computeIfAbsent(transicion, k -> new ArrayList<>()).add(milisegundos);
+    }
+
+    private static void agregar(Map<String, Deque<Long>> destino, String transicion, long milisegundos) {
+        Deque<Long> ventana = destino.computeIfAbsent(transicion, k -> new ArrayDeque<>());
+        ventana.addLast(milisegundos);
+        while (ventana.size() > VENTANA) {
+            ventana.removeFirst();
+        }
+    }
+
+    /**
+     * Percentil (0-100) de la transición, o -1 si no hay muestras suficientes.
+     */
+    public synchronized long percentil(String transicion, double percentil) {
+        Deque<Long> ventana = muestras.get(transicion);
+        if (ventana == null || ventana.size() < MIN_MUESTRAS) {
+            return -1;
+        }
+        long[] ordenadas = ventana.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(ordenadas);
+        int indice = (int) Math.ceil(percentil / 100.0 * ordenadas.length) - 1;
+        return ordenadas[Math.max(0, Math.min(indice, ordenadas.length - 1))];
+    }
+
+    /**
+     * Tiempo máximo a esperar la transición: p99 aprendido con margen, o el tiempo
+     * fijo original mientras no haya muestras suficientes.
+     */
+    public int presupuesto(String transicion, int tiempoFijo) {
+        long p99 = percentil(transicion, 99);
+        if (p99 < 0) {
+            return tiempoFijo;
+        }
+        long presupuesto = (long) (p99 * MARGEN_P99);
+        long techo = (long) tiempoFijo * TECHO_MULTIPLO;
+        return (int) Math.max(PRESUPUESTO_MINIMO_MS, Math.min(presupuesto, techo));
+    }
+
+    private void cargar() {
+        if (!archivo.exists()) {
+            return;
+        }
+        try {
+            muestras.putAll(leer());
+            System.out.println("⏱️ [LatenciasUSSD] " + muestras.size() + " transiciones cargadas de " + archivo);
+        } catch (Exception e) {
+            System.err.println("⚠️ [LatenciasUSSD] No se pudo leer " + archivo + ": " + e.getMessage());
+        }
+    }
+
+    private Map<String, Deque<Long>> leer() throws IOException {
+        Map<String, Deque<Long>> leidas = new HashMap<>();
+        if (!archivo.exists() || archivo.length() == 0) {
+            return leidas;
+        }
+        JSONObject json = new JSONObject(new String(Files.readAllBytes(archivo.toPath()), StandardCharsets.UTF_8));
+        for (String transicion : json.keySet()) {
+            JSONArray valores = json.getJSONArray(transicion);
+            for (int i = 0; i < valores.length(); i++) {
+                agregar(leidas, transicion, valores.getLong(i));
+            }
+        }
+        return leidas;
+    }
+
+    public synchronized void guardar() {
+        if (nuevas.isEmpty()) {
+            return;
+        }
+        File carpeta = archivo.getAbsoluteFile().getParentFile();
+        if (carpeta != null) {
+            carpeta.mkdirs();
+        }
+        File bloqueo = new File(archivo.getPath() + ".lock");
+        try (FileChannel canal = FileChannel.open(bloqueo.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = canal.lock();
+            try {
+                fusionarYEscribir();
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            System.err.println("⚠️ [LatenciasUSSD] No se pudo guardar " + archivo + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Con el lock tomado: relee el JSON, le agrega las muestras nuevas de este JVM y lo
+     * reemplaza de forma atómica.
+     */
+    private void fusionarYEscribir() throws IOException {
+        Map<String, Deque<Long>> combinadas;
+        try {
+            combinadas = leer();
+        } catch (Exception e) {
+            System.err.println("⚠️ [LatenciasUSSD] " + archivo + " ilegible, se reescribe: " + e.getMessage());
+            combinadas = new HashMap<>();
+        }
+        for (Map.Entry<String, List<Long>> entrada : nuevas.entrySet()) {
+            for (Long milisegundos : entrada.getValue()) {
+                agregar(combinadas, entrada.getKey(), milisegundos);
+            }
+        }
+        JSONObject json = new JSONObject();
+        for (Map.Entry<String, Deque<Long>> entrada : combinadas.entrySet()) {
+            json.put(entrada.getKey(), new JSONArray(entrada.getValue()));
+        }
+        File temporal = new File(archivo.getPath() + ".tmp");
+        Files.write(temporal.toPath(), json.toString(2).getBytes(StandardCharsets.UTF_8));
+        Files.move(temporal.toPath(), archivo.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        nuevas.clear();
+    }
+}
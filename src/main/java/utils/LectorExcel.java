@@ -1,18 +1,42 @@
 package utils;
 
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.ss.util.CellReference;
 import org.apache.poi.ss.util.NumberToTextConverter;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
 
+import javax.xml.parsers.ParserConfigurationException;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Lector de hojas de excel con la primera fila como nombres de columna.
+ *
+ * Los .xlsx se leen en streaming (SAX sobre el XML de la hoja) sin cargar el libro
+ * completo; los encabezados se resuelven una sola vez en un índice y cada fila es
+ * una vista de solo lectura sobre un arreglo de valores. Las hojas leídas se
+ * guardan en memoria por ruta, nombre/índice de hoja y fecha de modificación del
+ * archivo, así que llamar varias veces a getData con el mismo libro no lo vuelve a leer.
+ */
 public class LectorExcel {
 
+  /** Hojas ya leídas: ruta canónica + hoja → contenido, válido mientras no cambie el archivo */
+  private static final Map<String, Hoja> CACHE = new ConcurrentHashMap<>();
+
   /**
    * Obtiene los datos de un archivo de excel, teniendo en cuenta el nombre de la hoja
    *
@@ -24,8 +48,7 @@ public class LectorExcel {
    */
   public List<Map<String, String>> getData(String excelFilePath, String sheetName)
       throws InvalidFormatException, IOException {
-    Sheet sheet = getSheetByName(excelFilePath, sheetName);
-    return readSheet(sheet);
+    return getHoja(excelFilePath, sheetName, -1).filas;
   }
 
   /**
@@ -39,211 +62,456 @@ public class LectorExcel {
    */
   public List<Map<String, String>> getData(String excelFilePath, int sheetNumber)
       throws InvalidFormatException, IOException {
-    Sheet sheet = getSheetByIndex(excelFilePath, sheetNumber);
-    return readSheet(sheet);
+    return getHoja(excelFilePath, null, sheetNumber).filas;
   }
 
   /**
-   * Obtiene la hoja de trabajo donde se encuentran los datos de acuerdo a la ruta del archivo.
-   *
-   * @param excelFilePath Ruta del libro de excel
-   * @param sheetName Nombre de la hoja que contiene los datos
-   * @return
-   * @throws IOException Manejo de error para el proceso de entrada y salida de datos
-   * @throws InvalidFormatException Manejo de error por formato invalido
+   * Vacía las hojas guardadas en memoria.
    */
-  private Sheet getSheetByName(String excelFilePath, String sheetName)
-      throws IOException, InvalidFormatException {
-    Sheet sheet = getWorkBook(excelFilePath).getSheet(sheetName);
-    return sheet;
+  public static void limpiarCache() {
+    CACHE.clear();
   }
 
   /**
-   * Obtiene la hoja de trabajo donde se encuentran los datos de acuerdo al index de la hoja.
+   * Devuelve la hoja desde la cache si el archivo no cambió desde la última lectura; si no, la lee.
    *
    * @param excelFilePath Ruta del libro de excel
-   * @param sheetNumber Nombre de la hoja que contiene los datos
+   * @param sheetName Nombre de la hoja, o null para buscarla por índice
+   * @param sheetNumber Índice de la hoja (solo si sheetName es null)
    * @return
-   * @throws IOException Manejo de error para el proceso de entrada y salida de datos
-   * @throws InvalidFormatException Manejo de error por formato invalido
    */
-  private Sheet getSheetByIndex(String excelFilePath, int sheetNumber)
+  private Hoja getHoja(String excelFilePath, String sheetName, int sheetNumber)
       throws IOException, InvalidFormatException {
-    Sheet sheet = getWorkBook(excelFilePath).getSheetAt(sheetNumber);
-    return sheet;
+    File archivo = new File(excelFilePath);
+    if (!archivo.isFile()) {
+      throw new IOException("No existe el libro de excel: " + excelFilePath);
+    }
+    String clave =
+        archivo.getCanonicalPath() + "|" + (sheetName != null ? "n:" + sheetName : "i:" + sheetNumber);
+    long modificado = archivo.lastModified();
+    long tamanio = archivo.length();
+
+    Hoja hoja = CACHE.get(clave);
+    if (hoja != null && hoja.modificado == modificado && hoja.tamanio == tamanio) {
+      return hoja;
+    }
+
+    long inicio = System.currentTimeMillis();
+    Tabla tabla =
+        excelFilePath.toLowerCase().endsWith(".xls")
+            ? leerConWorkbook(archivo, sheetName, sheetNumber)
+            : leerXlsx(archivo, sheetName, sheetNumber);
+    hoja = new Hoja(tabla, modificado, tamanio);
+    CACHE.put(clave, hoja);
+    System.out.println(
+        "📊 [LectorExcel] "
+            + archivo.getName()
+            + " ["
+            + (sheetName != null ? sheetName : "#" + sheetNumber)
+            + "]: "
+            + hoja.filas.size()
+            + " filas leídas en "
+            + (System.currentTimeMillis() - inicio)
+            + " ms");
+    return hoja;
   }
 
   /**
-   * Devuelve el libro correspondiente a la hoja determinada con antelación
+   * Lee la hoja de un .xlsx en streaming: solo el XML de esa hoja y la tabla de textos compartidos.
    *
-   * @param excelFilePath Ruta del libro de excel
+   * @param archivo Libro de excel
+   * @param sheetName Nombre de la hoja, o null para buscarla por índice
+   * @param sheetNumber Índice de la hoja
    * @return
-   * @throws IOException Manejo de error para el proceso de entrada y salida de datos
    */
-  private Workbook getWorkBook(String excelFilePath) throws IOException, InvalidFormatException {
-    return WorkbookFactory.create(new File(excelFilePath));
+  private Tabla leerXlsx(File archivo, String sheetName, int sheetNumber)
+      throws IOException, InvalidFormatException {
+    try (OPCPackage paquete = OPCPackage.open(archivo, PackageAccess.READ)) {
+      XSSFReader lector = new XSSFReader(paquete);
+      ReadOnlySharedStringsTable textos = new ReadOnlySharedStringsTable(paquete, false);
+      XSSFReader.SheetIterator hojas = (XSSFReader.SheetIterator) lector.getSheetsData();
+      int indice = 0;
+      while (hojas.hasNext()) {
+        try (InputStream xml = hojas.next()) {
+          boolean buscada =
+              sheetName != null ? sheetName.equals(hojas.getSheetName()) : indice == sheetNumber;
+          if (buscada) {
+            ManejadorHoja manejador = new ManejadorHoja(textos);
+            XMLReader parser = XMLHelper.newXMLReader();
+            parser.setContentHandler(manejador);
+            parser.parse(new InputSource(xml));
+            return manejador.tabla;
+          }
+        }
+        indice++;
+      }
+    } catch (InvalidFormatException e) {
+      throw e;
+    } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+      throw new IOException("No se pudo leer " + archivo + ": " + e.getMessage(), e);
+    }
+    throw new IOException(
+        "No existe la hoja '"
+            + (sheetName != null ? sheetName : "#" + sheetNumber)
+            + "' en "
+            + archivo);
   }
 
   /**
-   * Retorna la lista en forma de Map de todas las filas que contiene la hoja de excel, teniendo en
-   * cuenta la primera fila como los nombres de las columnas.
+   * Lectura con el modelo completo de POI para formatos que no son .xlsx (.xls).
    *
-   * @param sheet Hoja de excel
+   * @param archivo Libro de excel
+   * @param sheetName Nombre de la hoja, o null para buscarla por índice
+   * @param sheetNumber Índice de la hoja
    * @return
    */
-  private List<Map<String, String>> readSheet(Sheet sheet) {
-    Row row;
-    int totalRow = sheet.getPhysicalNumberOfRows();
-    List<Map<String, String>> excelRows = new ArrayList<Map<String, String>>();
-    int headerRowNumber = getHeaderRowNumber(sheet);
-    if (headerRowNumber != -1) {
-      int totalColumn = sheet.getRow(headerRowNumber).getLastCellNum();
-      int setCurrentRow = 1;
-      for (int currentRow = setCurrentRow; currentRow <= totalRow; currentRow++) {
-        row = getRow(sheet, sheet.getFirstRowNum() + currentRow);
-        LinkedHashMap<String, String> columnMapData = new LinkedHashMap<String, String>();
-        for (int currentColumn = 0; currentColumn < totalColumn; currentColumn++) {
-          columnMapData.putAll(getCellValue(sheet, row, currentColumn));
+  private Tabla leerConWorkbook(File archivo, String sheetName, int sheetNumber)
+      throws IOException {
+    try (Workbook workbook = WorkbookFactory.create(archivo, null, true)) {
+      Sheet sheet =
+          sheetName != null ? workbook.getSheet(sheetName) : workbook.getSheetAt(sheetNumber);
+      if (sheet == null) {
+        throw new IOException("No existe la hoja '" + sheetName + "' en " + archivo);
+      }
+      Tabla tabla = new Tabla();
+      for (Row row : sheet) {
+        tabla.nuevaFila(row.getRowNum());
+        for (Cell cell : row) {
+          tabla.celda(cell.getColumnIndex(), valorCelda(cell));
         }
-        excelRows.add(columnMapData);
       }
+      return tabla;
     }
-    return excelRows;
   }
 
   /**
-   * Obtiene el número de filas concerniente a encabezado de la hoja
+   * Convierte una celda del modelo completo al mismo valor que produce la lectura en streaming.
    *
-   * @param sheet Hoja de excel
+   * @param cell Celda de excel
    * @return
    */
-  private int getHeaderRowNumber(Sheet sheet) {
-    Row row;
-    int totalRow = sheet.getLastRowNum();
-    for (int currentRow = 0; currentRow <= totalRow + 1; currentRow++) {
-      row = getRow(sheet, currentRow);
-      if (row != null) {
-        int totalComun = row.getLastCellNum();
-        for (int currentColumn = 0; currentColumn < totalComun; currentColumn++) {
-          Cell cell;
-          cell = row.getCell(currentColumn, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK);
-          if (cell.getCellType() == CellType.STRING) {
-            return row.getRowNum();
-          } else if (cell.getCellType() == CellType.NUMERIC) {
-            return row.getRowNum();
-          } else if (cell.getCellType() == CellType.BOOLEAN) {
-            return row.getRowNum();
-          } else if (cell.getCellType() == CellType.ERROR) {
-            return row.getRowNum();
-          }
-        }
+  private static Valor valorCelda(Cell cell) {
+    switch (cell.getCellType()) {
+      case STRING:
+        return new Valor(cell.getStringCellValue(), false, true);
+      case NUMERIC:
+        return new Valor(NumberToTextConverter.toText(cell.getNumericCellValue()), false, true);
+      case BOOLEAN:
+        return new Valor(Boolean.toString(cell.getBooleanCellValue()), false, true);
+      case ERROR:
+        return new Valor(Byte.toString(cell.getErrorCellValue()), false, true);
+      case FORMULA:
+        String cacheado =
+            cell.getCachedFormulaResultType() == CellType.STRING ? cell.getStringCellValue() : "";
+        return new Valor(cacheado, true, false);
+      default:
+        return new Valor("", false, false);
+    }
+  }
+
+  /**
+   * Valor de una celda tal como lo entrega getData. Las fórmulas no se incluyen en la fila
+   * (igual que la lectura anterior), pero su texto cacheado sí puede servir de encabezado.
+   */
+  private static final class Valor {
+    private final String texto;
+    private final boolean formula;
+    private final boolean noVacia;
+
+    private Valor(String texto, boolean formula, boolean noVacia) {
+      this.texto = texto;
+      this.formula = formula;
+      this.noVacia = noVacia;
+    }
+  }
+
+  /**
+   * Filas crudas de la hoja por número de fila, tal como aparecen en el archivo.
+   */
+  private static final class Tabla {
+    private final List<Integer> numeros = new ArrayList<>();
+    private final List<Valor[]> filas = new ArrayList<>();
+    private Valor[] actual;
+
+    private void nuevaFila(int numero) {
+      numeros.add(numero);
+      actual = new Valor[0];
+      filas.add(actual);
+    }
+
+    private void celda(int columna, Valor valor) {
+      if (columna >= actual.length) {
+        actual = Arrays.copyOf(actual, Math.max(columna + 1, actual.length * 2));
+        filas.set(filas.size() - 1, actual);
       }
+      actual[columna] = valor;
     }
-    return (-1);
   }
 
   /**
-   * Obtiene la fila de acuerdo a la hoja y el número de esta.
-   *
-   * @param sheet Hoja de excel
-   * @param rowNumber Numero de filas
-   * @return
+   * Manejador SAX del XML de una hoja (xl/worksheets/sheetN.xml).
    */
-  private Row getRow(Sheet sheet, int rowNumber) {
-    return sheet.getRow(rowNumber);
+  private static final class ManejadorHoja extends DefaultHandler {
+    private final ReadOnlySharedStringsTable textosCompartidos;
+    /** Un solo String por texto compartido, aunque se repita en miles de filas */
+    private final Map<Integer, String> textosResueltos = new HashMap<>();
+    private final Tabla tabla = new Tabla();
+    private final StringBuilder contenido = new StringBuilder();
+
+    private int siguienteFila;
+    private int columna;
+    private String tipo;
+    private boolean esFormula;
+    private boolean tieneValor;
+    private boolean leyendo;
+
+    private ManejadorHoja(ReadOnlySharedStringsTable textosCompartidos) {
+      this.textosCompartidos = textosCompartidos;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+      String nombre = localName.isEmpty() ? qName : localName;
+      switch (nombre) {
+        case "row":
+          String r = attributes.getValue("r");
+          int numero = r != null ? Integer.parseInt(r) - 1 : siguienteFila;
+          siguienteFila = numero + 1;
+          tabla.nuevaFila(numero);
+          columna = -1;
+          break;
+        case "c":
+          String referencia = attributes.getValue("r");
+          columna = referencia != null ? new CellReference(referencia).getCol() : columna + 1;
+          tipo = attributes.getValue("t");
+          esFormula = false;
+          tieneValor = false;
+          contenido.setLength(0);
+          break;
+        case "f":
+          esFormula = true;
+          break;
+        case "v":
+        case "t":
+          leyendo = true;
+          tieneValor = true;
+          break;
+        default:
+          break;
+      }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+      if (leyendo) {
+        contenido.append(ch, start, length);
+      }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+      String nombre = localName.isEmpty() ? qName : localName;
+      if ("v".equals(nombre) || "t".equals(nombre)) {
+        leyendo = false;
+      } else if ("c".equals(nombre)) {
+        tabla.celda(columna, valor());
+      }
+    }
+
+    private Valor valor() {
+      String crudo = contenido.toString();
+      if (esFormula) {
+        return new Valor("str".equals(tipo) ? crudo : "", true, false);
+      }
+      if (!tieneValor) {
+        return new Valor("", false, false);
+      }
+      if (tipo == null || "n".equals(tipo)) {
+        return new Valor(NumberToTextConverter.toText(Double.parseDouble(crudo)), false, true);
+      }
+      switch (tipo) {
+        case "s":
+          int indice = Integer.parseInt(crudo);
+          String texto =
+              textosResueltos.computeIfAbsent(
+                  indice, i -> textosCompartidos.getItemAt(i).getString());
+          return new Valor(texto, false, true);
+        case "b":
+          return new Valor(Boolean.toString("1".equals(crudo)), false, true);
+        case "e":
+          return new Valor(Byte.toString(FormulaError.forString(crudo).getCode()), false, true);
+        default:
+          // inlineStr y str
+          return new Valor(crudo, false, true);
+      }
+    }
   }
 
   /**
-   * Obtiene el valor de cada una de las celdas
+   * Hoja ya convertida a filas: encabezados indexados una sola vez y una vista por fila.
    *
-   * @param sheet Hoja de excel
-   * @param row Fila de la cual se obtendran los datos
-   * @param currentColumn Columna actual
-   * @return
+   * <p>Conserva la forma de la lectura anterior: los nombres de columna salen de la primera
+   * fila del archivo, las columnas sin nombre se omiten, se devuelven tantas filas como filas
+   * físicas tiene la hoja (la última queda vacía) y las filas que faltan vienen con "".
    */
-  private LinkedHashMap<String, String> getCellValue(Sheet sheet, Row row, int currentColumn) {
-    LinkedHashMap<String, String> columnMapData = new LinkedHashMap<String, String>();
-    Cell cell;
-    if (row == null) {
-      if (sheet
-              .getRow(sheet.getFirstRowNum())
-              .getCell(currentColumn, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK)
-              .getCellType()
-          != CellType.BLANK) {
-        String columnHeaderName =
-            sheet.getRow(sheet.getFirstRowNum()).getCell(currentColumn).getStringCellValue();
-        columnMapData.put(columnHeaderName, "");
-      }
-    } else {
-      cell = row.getCell(currentColumn, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK);
-      if (cell.getCellType() == CellType.STRING) {
-        if (sheet
-                .getRow(sheet.getFirstRowNum())
-                .getCell(cell.getColumnIndex(), Row.MissingCellPolicy.CREATE_NULL_AS_BLANK)
-                .getCellType()
-            != CellType.BLANK) {
-          String columnHeaderName =
-              sheet
-                  .getRow(sheet.getFirstRowNum())
-                  .getCell(cell.getColumnIndex())
-                  .getStringCellValue();
-          columnMapData.put(columnHeaderName, cell.getStringCellValue());
+  private static final class Hoja {
+    private final List<Map<String, String>> filas;
+    private final long modificado;
+    private final long tamanio;
+
+    private Hoja(Tabla tabla, long modificado, long tamanio) {
+      this.modificado = modificado;
+      this.tamanio = tamanio;
+      this.filas = Collections.unmodifiableList(construirFilas(tabla));
+    }
+
+    private static List<Map<String, String>> construirFilas(Tabla tabla) {
+      List<Map<String, String>> resultado = new ArrayList<>();
+      int filaEncabezado = getHeaderRow(tabla);
+      if (filaEncabezado == -1) {
+        return resultado;
+      }
+      int totalColumnas = largo(tabla.filas.get(filaEncabezado));
+      Valor[] primeraFila = tabla.filas.get(0);
+
+      // Índice de encabezados: nombre → última columna con ese nombre, en orden de aparición
+      Map<String, Integer> indice = new LinkedHashMap<>();
+      for (int columna = 0; columna < totalColumnas && columna < primeraFila.length; columna++) {
+        Valor encabezado = primeraFila[columna];
+        if (encabezado != null && (encabezado.noVacia || encabezado.formula)) {
+          indice.put(encabezado.texto, columna);
         }
-      } else if (cell.getCellType() == CellType.NUMERIC) {
-        if (sheet
-                .getRow(sheet.getFirstRowNum())
-                .getCell(cell.getColumnIndex(), Row.MissingCellPolicy.CREATE_NULL_AS_BLANK)
-                .getCellType()
-            != CellType.BLANK) {
-          String columnHeaderName =
-              sheet
-                  .getRow(sheet.getFirstRowNum())
-                  .getCell(cell.getColumnIndex())
-                  .getStringCellValue();
-          columnMapData.put(
-              columnHeaderName, NumberToTextConverter.toText(cell.getNumericCellValue()));
+      }
+      String[] nombres = indice.keySet().toArray(new String[0]);
+      int[] columnas = new int[nombres.length];
+      for (int i = 0; i < nombres.length; i++) {
+        columnas[i] = indice.get(nombres[i]);
+      }
+      Map<String, Integer> posicion = new HashMap<>();
+      for (int i = 0; i < nombres.length; i++) {
+        posicion.put(nombres[i], i);
+      }
+
+      Map<Integer, Valor[]> porNumero = new HashMap<>();
+      for (int i = 0; i < tabla.numeros.size(); i++) {
+        porNumero.put(tabla.numeros.get(i), tabla.filas.get(i));
+      }
+      int primerNumero = tabla.numeros.get(0);
+      int totalFilas = tabla.filas.size();
+      for (int actual = 1; actual <= totalFilas; actual++) {
+        Valor[] fila = porNumero.get(primerNumero + actual);
+        String[] valores = new String[nombres.length];
+        for (int i = 0; i < nombres.length; i++) {
+          if (fila == null) {
+            valores[i] = "";
+          } else {
+            Valor valor = columnas[i] < fila.length ? fila[columnas[i]] : null;
+            valores[i] = valor == null ? "" : valor.formula ? null : valor.texto;
+          }
         }
-      } else if (cell.getCellType() == CellType.BLANK) {
-        if (sheet
-                .getRow(sheet.getFirstRowNum())
-                .getCell(cell.getColumnIndex(), Row.MissingCellPolicy.CREATE_NULL_AS_BLANK)
-                .getCellType()
-            != CellType.BLANK) {
-          String columnHeaderName =
-              sheet
-                  .getRow(sheet.getFirstRowNum())
-                  .getCell(cell.getColumnIndex())
-                  .getStringCellValue();
-          columnMapData.put(columnHeaderName, "");
+        resultado.add(new FilaExcel(nombres, posicion, valores));
+      }
+      return resultado;
+    }
+
+    /**
+     * Número de celdas de la fila hasta la última presente (equivale a getLastCellNum).
+     */
+    private static int largo(Valor[] fila) {
+      int largo = fila.length;
+      while (largo > 0 && fila[largo - 1] == null) {
+        largo--;
+      }
+      return largo;
+    }
+
+    /**
+     * Primera fila con alguna celda con valor (texto, número, booleano o error).
+     */
+    private static int getHeaderRow(Tabla tabla) {
+      for (int i = 0; i < tabla.filas.size(); i++) {
+        for (Valor valor : tabla.filas.get(i)) {
+          if (valor != null && valor.noVacia) {
+            return i;
+          }
         }
-      } else if (cell.getCellType() == CellType.BOOLEAN) {
-        if (sheet
-                .getRow(sheet.getFirstRowNum())
-                .getCell(cell.getColumnIndex(), Row.MissingCellPolicy.CREATE_NULL_AS_BLANK)
-                .getCellType()
-            != CellType.BLANK) {
-          String columnHeaderName =
-              sheet
-                  .getRow(sheet.getFirstRowNum())
-                  .getCell(cell.getColumnIndex())
-                  .getStringCellValue();
-          columnMapData.put(columnHeaderName, Boolean.toString(cell.getBooleanCellValue()));
+      }
+      return -1;
+    }
+  }
+
+  /**
+   * Vista de solo lectura de una fila: comparte los nombres de columna con el resto de la hoja
+   * y solo guarda el arreglo de valores. Las celdas con fórmula (null) no aparecen como clave.
+   */
+  private static final class FilaExcel extends AbstractMap<String, String> {
+    private final String[] nombres;
+    private final Map<String, Integer> posicion;
+    private final String[] valores;
+
+    private FilaExcel(String[] nombres, Map<String, Integer> posicion, String[] valores) {
+      this.nombres = nombres;
+      this.posicion = posicion;
+      this.valores = valores;
+    }
+
+    @Override
+    public String get(Object clave) {
+      Integer i = posicion.get(clave);
+      return i == null ? null : valores[i];
+    }
+
+    @Override
+    public boolean containsKey(Object clave) {
+      Integer i = posicion.get(clave);
+      return i != null && valores[i] != null;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+      return new AbstractSet<Entry<String, String>>() {
+        @Override
+        public Iterator<Entry<String, String>> iterator() {
+          return new Iterator<Entry<String, String>>() {
+            private int siguiente = avanzar(0);
+
+            private int avanzar(int desde) {
+              int i = desde;
+              while (i < valores.length && valores[i] == null) {
+                i++;
+              }
+              return i;
+            }
+
+            @Override
+            public boolean hasNext() {
+              return siguiente < valores.length;
+            }
+
+            @Override
+            public Entry<String, String> next() {
+              if (!hasNext()) {
+                throw new NoSuchElementException();
+              }
+              Entry<String, String> entrada =
+                  new SimpleImmutableEntry<>(nombres[siguiente], valores[siguiente]);
+              siguiente = avanzar(siguiente + 1);
+              return entrada;
+            }
+          };
         }
-      } else if (cell.getCellType() == CellType.ERROR) {
-        if (sheet
-                .getRow(sheet.getFirstRowNum())
-                .getCell(cell.getColumnIndex(), Row.MissingCellPolicy.CREATE_NULL_AS_BLANK)
-                .getCellType()
-            != CellType.BLANK) {
-          String columnHeaderName =
-              sheet
-                  .getRow(sheet.getFirstRowNum())
-                  .getCell(cell.getColumnIndex())
-                  .getStringCellValue();
-          columnMapData.put(columnHeaderName, Byte.toString(cell.getErrorCellValue()));
+
+        @Override
+        public int size() {
+          int total = 0;
+          for (String valor : valores) {
+            if (valor != null) {
+              total++;
+            }
+          }
+          return total;
         }
-      }
+      };
     }
-    return columnMapData;
   }
 }
@@ -0,0 +1,85 @@
+package utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Manifiesto de capturas del escenario: paso (o nombre de captura) → archivo en Capturas/.
+ *
+ * Se registra en el momento de la captura, así el informe busca la imagen de
+ * cada paso por clave exacta en vez de recorrer la carpeta con contains()
+ * (que hacía que "1. X" tomara la imagen de "11. X"). Cada registro también se
+ * agrega a Capturas/manifiesto_*.tsv para poder revisar la asociación si el
+ * JVM termina antes de generar el informe.
+ */
+public class ManifiestoCapturas {
+
+    private static final ThreadLocal<ManifiestoCapturas> ACTUAL = ThreadLocal.withInitial(ManifiestoCapturas::new);
+
+    private final Map<String, String> rutaPorPaso = new LinkedHashMap<>();
+    private final File archivo;
+
+    private ManifiestoCapturas() {
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss_SSS"));
+        this.archivo = new File(WordAppium.CAPTURAS_DIR, "manifiesto_" + timestamp + "_"
+                + Thread.currentThread().getId() + ".tsv");
+    }
+
+    /**
+     * Manifiesto del escenario que corre en este thread.
+     */
+    public static ManifiestoCapturas actual() {
+        return ACTUAL.get();
+    }
+
+    /**
+     * Empieza un manifiesto vacío (inicio de escenario).
+     */
+    public static void nuevoEscenario() {
+        ACTUAL.set(new ManifiestoCapturas());
+    }
+
+    public synchronized void registrar(String paso, String ruta) {
+        rutaPorPaso.put(paso, ruta);
+        try {
+            File carpeta = archivo.getParentFile();
+            if (carpeta != null && !carpeta.exists()) {
+                carpeta.mkdirs();
+            }
+            String linea = paso.replace('\t', ' ').replace('\n', ' ') + "\t" + ruta + System.lineSeparator();
+            Files.write(archivo.toPath(), linea.getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("⚠️ [ManifiestoCapturas] No se pudo escribir " + archivo + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Ruta registrada para el paso exacto, o null.
+     */
+    public synchronized String ruta(String paso) {
+        return rutaPorPaso.get(paso);
+    }
+
+    /**
+     * Archivo .tsv de respaldo de este manifiesto.
+     */
+    File getArchivo() {
+        return archivo;
+    }
+
+    /**
+     * Copia inmutable de las asociaciones registradas hasta ahora.
+     */
+    public synchronized Map<String, String> instantanea() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(rutaPorPaso));
+    }
+}
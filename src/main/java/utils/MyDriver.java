@@ -1,31 +1,57 @@
 package utils;
 
+import io.appium.java_client.MobileCommand;
 import io.appium.java_client.android.AndroidDriver;
+import io.appium.java_client.remote.AppiumCommandExecutor;
 import net.thucydides.core.webdriver.DriverSource;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
 import org.openqa.selenium.remote.DesiredCapabilities;
+import org.openqa.selenium.remote.HttpCommandExecutor;
+import utils.grabacion.Grabacion;
+import utils.grabacion.GrabadorComandos;
+import utils.grabacion.ReproductorComandos;
+import utils.metricas.ExecutorCronometrado;
+import utils.metricas.MetricasEjecucion;
+import utils.traza.Trazador;
 
 import java.net.URL;
 import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * DriverSource de Serenity para el Dialer nativo.
+ *
+ * Cada thread de ejecución obtiene su propio AndroidDriver sobre un dispositivo
+ * tomado de {@link PoolDispositivos}. El préstamo se devuelve al cerrar la sesión
+ * (quit), de modo que varios forks/threads pueden correr en paralelo sobre
+ * dispositivos distintos. PopupGuardian también lleva un guardian y un lock del driver
+ * por thread, así que los dispositivos no se bloquean entre sí.
+ *
+ * Con metricas.habilitadas o traza.habilitada (default) el driver usa
+ * {@link ExecutorCronometrado} para medir cada comando enviado a Appium. Con
+ * grabacion.modo=grabar|reproducir usa el grabador o el reproductor de {@link Grabacion}.
+ */
 public class MyDriver implements DriverSource {
 
-    private static AndroidDriver driver;
+    private static final Map<Thread, Sesion> SESIONES = new ConcurrentHashMap<>();
 
     @Override
     public WebDriver newDriver() {
+        PoolDispositivos.Prestamo prestamo = PoolDispositivos.get().tomar();
         try {
-            // Permite sobreescribir por línea de comandos: -Dappium.hub, -Dappium.udid, -Dappium.deviceName
-            String hub = System.getProperty("appium.hub", "http://127.0.0.1:4723/wd/hub");
-            String udid = System.getProperty("appium.udid", System.getenv("ANDROID_UDID"));
+            // Permite sobreescribir por línea de comandos: -Dappium.devices, -Dappium.hub, -Dappium.udid, -Dappium.deviceName
+            String hub = prestamo.getDispositivo().getHub();
+            String udid = prestamo.getDispositivo().getUdid();
             String deviceName = System.getProperty("appium.deviceName", System.getenv("ANDROID_DEVICE_NAME"));
 
             DesiredCapabilities caps = new DesiredCapabilities();
             caps.setCapability("platformName", "Android");
             caps.setCapability("automationName", "UiAutomator2");
             caps.setCapability("deviceName", (deviceName != null && !deviceName.isEmpty()) ? deviceName : "AndroidDevice");
-            if (udid != null && !udid.isEmpty()) {
+            if (!udid.isEmpty()) {
                 caps.setCapability("udid", udid);
             }
 
@@ -40,11 +66,30 @@ public class MyDriver implements DriverSource {
             caps.setCapability("newCommandTimeout", 120);
             caps.setCapability("dontStopAppOnReset", true);
 
-            driver = new AndroidDriver(new URL(hub), caps);
+            URL servidor = new URL(hub);
+            HttpCommandExecutor executor;
+            if (Grabacion.REPRODUCIENDO) {
+                executor = new ReproductorComandos(servidor);
+            } else if (Grabacion.GRABANDO) {
+                executor = new GrabadorComandos(servidor);
+            } else if (MetricasEjecucion.HABILITADAS || Trazador.HABILITADO) {
+                executor = new ExecutorCronometrado(servidor);
+            } else {
+                executor = new AppiumCommandExecutor(MobileCommand.commandRepository, servidor);
+            }
+
+            Thread propietario = Thread.currentThread();
+            AndroidDriver<WebElement> driver = new DriverPrestado(executor, caps, propietario);
             driver.manage().timeouts().implicitlyWait(10, TimeUnit.SECONDS);
+
+            Sesion anterior = SESIONES.put(propietario, new Sesion(driver, prestamo));
+            if (anterior != null) {
+                anterior.prestamo.devolver();
+            }
             return driver;
 
         } catch (Exception e) {
+            prestamo.devolver();
             throw new RuntimeException("No se pudo inicializar el AndroidDriver para el Dialer", e);
         }
     }
@@ -54,7 +99,89 @@ public class MyDriver implements DriverSource {
         return true;
     }
 
-    public static AndroidDriver get() {
-        return driver;
+    /**
+     * Driver del thread actual.
+     *
+     * Los threads auxiliares (PopupGuardian, análisis Ollama) no tienen sesión propia:
+     * si en este JVM hay una única sesión activa se devuelve esa, como en la
+     * ejecución con un solo dispositivo.
+     */
+    public static AndroidDriver<WebElement> get() {
+        Sesion sesion = SESIONES.get(Thread.currentThread());
+        if (sesion != null) {
+            return sesion.driver;
+        }
+        if (SESIONES.size() == 1) {
+            return SESIONES.values().iterator().next().driver;
+        }
+        return null;
+    }
+
+    /**
+     * Driver asociado a un thread concreto, para tareas en segundo plano que
+     * conocen el thread del escenario que las lanzó.
+     */
+    public static AndroidDriver<WebElement> get(Thread propietario) {
+        Sesion sesion = SESIONES.get(propietario);
+        return sesion != null ? sesion.driver : get();
+    }
+
+    /**
+     * UDID del dispositivo prestado al thread actual, o null si no hay sesión.
+     */
+    public static String udidActual() {
+        return udid(Thread.currentThread());
+    }
+
+    /**
+     * UDID del dispositivo prestado a un thread concreto (con el mismo fallback que {@link #get(Thread)}).
+     */
+    public static String udid(Thread propietario) {
+        Sesion sesion = SESIONES.get(propietario);
+        if (sesion == null && SESIONES.size() == 1) {
+            sesion = SESIONES.values().iterator().next();
+        }
+        if (sesion == null || sesion.prestamo.getDispositivo().getUdid().isEmpty()) {
+            return null;
+        }
+        return sesion.prestamo.getDispositivo().getUdid();
+    }
+
+    private static void liberarSesion(Thread propietario) {
+        Sesion sesion = SESIONES.remove(propietario);
+        if (sesion != null) {
+            sesion.prestamo.devolver();
+        }
+    }
+
+    /**
+     * Driver que devuelve el dispositivo al pool al cerrar la sesión.
+     */
+    private static final class DriverPrestado extends AndroidDriver<WebElement> {
+        private final Thread propietario;
+
+        private DriverPrestado(HttpCommandExecutor executor, DesiredCapabilities caps, Thread propietario) {
+            super(executor, caps);
+            this.propietario = propietario;
+        }
+
+        @Override
+        public void quit() {
+            try {
+                super.quit();
+            } finally {
+                liberarSesion(propietario);
+            }
+        }
+    }
+
+    private static class Sesion {
+        private final AndroidDriver<WebElement> driver;
+        private final PoolDispositivos.Prestamo prestamo;
+
+        private Sesion(AndroidDriver<WebElement> driver, PoolDispositivos.Prestamo prestamo) {
+            this.driver = driver;
+            this.prestamo = prestamo;
+        }
     }
 }
@@ -0,0 +1,226 @@
+package utils;
+
+import utils.simulador.SimuladorUSSD;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pool de dispositivos Android para ejecución en paralelo.
+ *
+ * Cada worker (thread o fork de Gradle) toma en préstamo un UDID con su servidor
+ * Appium y lo devuelve cuando su sesión termina. El préstamo se protege con:
+ * - Un set en memoria para los threads del mismo JVM
+ * - Un FileLock por UDID en el directorio temporal para los forks de Gradle
+ *
+ * Configuración via system properties:
+ * - appium.devices: lista separada por comas de "udid=hub" o "udid=puerto"
+ *   (ej: R58M1=4723,R58M2=http://127.0.0.1:4725/wd/hub)
+ * - appium.devices.leaseTimeout: segundos máximos esperando un dispositivo libre (default: 300)
+ *
+ * Sin appium.devices se usa un único dispositivo con appium.udid / appium.hub,
+ * igual que antes del pool; con ussd.simulador=true ese hub es el {@link SimuladorUSSD}.
+ */
+public class PoolDispositivos {
+
+    private static final String DEFAULT_HUB = "http://127.0.0.1:4723/wd/hub";
+    private static final int DEFAULT_LEASE_TIMEOUT_SEGUNDOS = 300;
+    private static final long INTERVALO_ESPERA_MS = 2000;
+
+    private static final File LOCKS_DIR =
+            new File(System.getProperty("java.io.tmpdir"), "ussd-device-locks");
+
+    private static volatile PoolDispositivos instancia;
+
+    private final List<Dispositivo> dispositivos;
+    private final Set<String> prestadosEnEsteJvm = ConcurrentHashMap.newKeySet();
+
+    private PoolDispositivos(List<Dispositivo> dispositivos) {
+        this.dispositivos = Collections.unmodifiableList(dispositivos);
+    }
+
+    public static PoolDispositivos get() {
+        if (instancia == null) {
+            synchronized (PoolDispositivos.class) {
+                if (instancia == null) {
+                    instancia = new PoolDispositivos(leerConfiguracion());
+                    System.out.println("📱 [PoolDispositivos] " + instancia.dispositivos.size()
+                            + " dispositivo(s) configurado(s): " + instancia.dispositivos);
+                }
+            }
+        }
+        return instancia;
+    }
+
+    /**
+     * Toma un dispositivo libre, esperando hasta appium.devices.leaseTimeout si todos están ocupados.
+     */
+    public Prestamo tomar() {
+        int timeoutSegundos = Integer.parseInt(System.getProperty(
+                "appium.devices.leaseTimeout", String.valueOf(DEFAULT_LEASE_TIMEOUT_SEGUNDOS)));
+        long limite = System.currentTimeMillis() + timeoutSegundos * 1000L;
+
+        while (true) {
+            for (Dispositivo dispositivo : dispositivos) {
+                Prestamo prestamo = intentarTomar(dispositivo);
+                if (prestamo != null) {
+                    System.out.println("📱 [PoolDispositivos] " + Thread.currentThread().getName()
+                            + " tomó " + dispositivo);
+                    return prestamo;
+                }
+            }
+
+            if (System.currentTimeMillis() >= limite) {
+                throw new IllegalStateException("No hay dispositivos libres tras " + timeoutSegundos
+                        + "s de espera. Configurados: " + dispositivos);
+            }
+
+            try {
+                Thread.sleep(INTERVALO_ESPERA_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrumpido esperando un dispositivo libre", e);
+            }
+        }
+    }
+
+    private Prestamo intentarTomar(Dispositivo dispositivo) {
+        if (!prestadosEnEsteJvm.add(dispositivo.getUdid())) {
+            return null;
+        }
+
+        // Un solo dispositivo sin UDID explícito: no hay nada que coordinar entre forks
+        if (dispositivo.getUdid().isEmpty()) {
+            return new Prestamo(dispositivo, null, null);
+        }
+
+        RandomAccessFile archivo = null;
+        try {
+            LOCKS_DIR.mkdirs();
+            archivo = new RandomAccessFile(new File(LOCKS_DIR, dispositivo.getUdid() + ".lock"), "rw");
+            FileChannel canal = archivo.getChannel();
+            FileLock lock = canal.tryLock();
+            if (lock != null) {
+                return new Prestamo(dispositivo, archivo, lock);
+            }
+        } catch (IOException | OverlappingFileLockException e) {
+            System.err.println("⚠️ [PoolDispositivos] No se pudo bloquear " + dispositivo + ": " + e.getMessage());
+        }
+
+        cerrarSilencioso(archivo);
+        prestadosEnEsteJvm.remove(dispositivo.getUdid());
+        return null;
+    }
+
+    private static List<Dispositivo> leerConfiguracion() {
+        List<Dispositivo> lista = new ArrayList<>();
+        String configuracion = System.getProperty("appium.devices", System.getenv("APPIUM_DEVICES"));
+
+        if (configuracion != null && !configuracion.trim().isEmpty()) {
+            for (String entrada : configuracion.split(",")) {
+                String limpia = entrada.trim();
+                if (limpia.isEmpty()) continue;
+
+                int separador = limpia.indexOf('=');
+                String udid = separador == -1 ? limpia : limpia.substring(0, separador).trim();
+                String hub = separador == -1 ? DEFAULT_HUB : normalizarHub(limpia.substring(separador + 1).trim());
+                lista.add(new Dispositivo(udid, hub));
+            }
+        }
+
+        if (lista.isEmpty()) {
+            // Modo clásico: un único dispositivo definido por appium.udid / appium.hub
+            // (con -Dussd.simulador=true el hub por defecto es el simulador local)
+            String hubSimulador = SimuladorUSSD.iniciarSiConfigurado();
+            String hub = System.getProperty("appium.hub", hubSimulador != null ? hubSimulador : DEFAULT_HUB);
+            String udid = System.getProperty("appium.udid", System.getenv("ANDROID_UDID"));
+            lista.add(new Dispositivo(udid != null ? udid.trim() : "", hub));
+        }
+        return lista;
+    }
+
+    private static String normalizarHub(String valor) {
+        if (valor.matches("\\d+")) {
+            return "http://127.0.0.1:" + valor + "/wd/hub";
+        }
+        return valor;
+    }
+
+    private static void cerrarSilencioso(RandomAccessFile archivo) {
+        if (archivo == null) return;
+        try {
+            archivo.close();
+        } catch (IOException ignored) {}
+    }
+
+    public List<Dispositivo> getDispositivos() {
+        return dispositivos;
+    }
+
+    // ─────────────────────────────────────────────────────────────────
+    // Tipos auxiliares
+    // ─────────────────────────────────────────────────────────────────
+
+    public static class Dispositivo {
+        private final String udid;
+        private final String hub;
+
+        Dispositivo(String udid, String hub) {
+            this.udid = udid;
+            this.hub = hub;
+        }
+
+        public String getUdid() { return udid; }
+        public String getHub() { return hub; }
+
+        @Override
+        public String toString() {
+            return (udid.isEmpty() ? "<udid por defecto>" : udid) + "@" + hub;
+        }
+    }
+
+    /**
+     * Préstamo activo de un dispositivo. Se devuelve una sola vez con {@link #devolver()}.
+     */
+    public class Prestamo {
+        private final Dispositivo dispositivo;
+        private final RandomAccessFile archivo;
+        private final FileLock lock;
+        private boolean devuelto = false;
+
+        private Prestamo(Dispositivo dispositivo, RandomAccessFile archivo, FileLock lock) {
+            this.dispositivo = dispositivo;
+            this.archivo = archivo;
+            this.lock = lock;
+        }
+
+        public Dispositivo getDispositivo() {
+            return dispositivo;
+        }
+
+        public synchronized void devolver() {
+            if (devuelto) return;
+            devuelto = true;
+            try {
+                if (lock != null && lock.isValid()) {
+                    lock.release();
+                }
+            } catch (IOException e) {
+                System.err.println("⚠️ [PoolDispositivos] Error liberando " + dispositivo + ": " + e.getMessage());
+            } finally {
+                cerrarSilencioso(archivo);
+                prestadosEnEsteJvm.remove(dispositivo.getUdid());
+                System.out.println("📱 [PoolDispositivos] " + dispositivo + " devuelto al pool");
+            }
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package utils;
+
+import utils.grabacion.Grabacion;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sesión "adb shell" de larga duración por número de serie.
+ *
+ * En lugar de lanzar un proceso adb por comando, se mantiene abierto un shell
+ * por dispositivo y cada comando se enmarca con un marcador único seguido de su
+ * código de salida:
+ *
+ *   comando ; echo "__FIN_n__ $?"
+ *
+ * La salida se lee hasta encontrar el marcador, lo que permite saber dónde
+ * termina cada respuesta y si el comando falló. Si el shell muere (dispositivo
+ * desconectado, adb reiniciado) se vuelve a abrir en el siguiente comando.
+ *
+ * Los eventos de entrada se pueden agrupar con {@link #lote()}: varios taps
+ * y teclas, con sus pausas, viajan en una sola escritura y un solo marcador.
+ *
+ * Con grabacion.modo=grabar cada comando del thread del escenario queda en su
+ * grabación; con grabacion.modo=reproducir no se abre ningún shell y cada comando
+ * responde éxito sin salida (ver {@link Grabacion}).
+ */
+public class ShellAdb {
+
+    private static final Map<String, ShellAdb> SESIONES = new ConcurrentHashMap<>();
+
+    /** Clave para el caso sin UDID (un solo dispositivo conectado) */
+    private static final String SIN_SERIAL = "";
+
+    private static final long TIMEOUT_DEFAULT_MS = 5000;
+    private static final String PREFIJO_MARCADOR = "__FIN_";
+
+    private final String serial;
+    private final AtomicLong secuencia = new AtomicLong();
+
+    private Process proceso;
+    private OutputStream entrada;
+    private BlockingQueue<String> lineas;
+
+    private ShellAdb(String serial) {
+        this.serial = serial;
+    }
+
+    /**
+     * Shell del dispositivo indicado; null o vacío = "adb shell" sin -s.
+     */
+    public static ShellAdb de(String serial) {
+        return SESIONES.computeIfAbsent(serial != null ? serial : SIN_SERIAL, ShellAdb::new);
+    }
+
+    /**
+     * Shell del dispositivo prestado al thread actual.
+     */
+    public static ShellAdb actual() {
+        return de(MyDriver.udidActual());
+    }
+
+    public Resultado ejecutar(String comando) throws IOException {
+        return ejecutar(comando, TIMEOUT_DEFAULT_MS);
+    }
+
+    /**
+     * Ejecuta un comando en el shell persistente y espera su marcador de fin.
+     *
+     * @throws IOException si el shell no se puede abrir o el comando no termina a tiempo
+     */
+    public Resultado ejecutar(String comando, long timeoutMs) throws IOException {
+        if (Grabacion.REPRODUCIENDO) {
+            // Sin dispositivo: el tap, el texto o el intent ya están en la grabación
+            return new Resultado("", 0);
+        }
+        if (!Grabacion.GRABANDO) {
+            return ejecutarEnShell(comando, timeoutMs);
+        }
+        long inicio = System.nanoTime();
+        try {
+            Resultado resultado = ejecutarEnShell(comando, timeoutMs);
+            Grabacion.grabarAdb(comando, resultado.getCodigo(), resultado.getSalida(), System.nanoTime() - inicio);
+            return resultado;
+        } catch (IOException e) {
+            Grabacion.grabarAdb(comando, -1, e.getMessage(), System.nanoTime() - inicio);
+            throw e;
+        }
+    }
+
+    private synchronized Resultado ejecutarEnShell(String comando, long timeoutMs) throws IOException {
+        abrirSiEsNecesario();
+
+        String marcador = PREFIJO_MARCADOR + secuencia.incrementAndGet() + "__";
+        entrada.write((comando + " ; echo \"" + marcador + " $?\"\n").getBytes(StandardCharsets.UTF_8));
+        entrada.flush();
+
+        StringBuilder salida = new StringBuilder();
+        long limite = System.currentTimeMillis() + timeoutMs;
+        try {
+            while (true) {
+                long restante = limite - System.currentTimeMillis();
+                String linea = restante > 0 ? lineas.poll(restante, TimeUnit.MILLISECONDS) : null;
+                if (linea == null) {
+                    // Respuesta incompleta: el shell queda desincronizado, se descarta
+                    cerrar();
+                    throw new IOException("Timeout de " + timeoutMs + " ms ejecutando '" + comando + "' en adb shell");
+                }
+                int posicion = linea.indexOf(marcador);
+                if (posicion >= 0) {
+                    // La última línea puede traer salida sin salto de línea antes del marcador
+                    salida.append(linea, 0, posicion);
+                    return new Resultado(salida.toString().trim(), codigoSalida(linea.substring(posicion + marcador.length())));
+                }
+                salida.append(linea).append('\n');
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cerrar();
+            throw new IOException("Interrumpido esperando respuesta de adb shell", e);
+        }
+    }
+
+    private static int codigoSalida(String resto) {
+        try {
+            return Integer.parseInt(resto.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void abrirSiEsNecesario() throws IOException {
+        if (proceso != null && proceso.isAlive()) {
+            return;
+        }
+        ProcessBuilder builder = serial.isEmpty()
+                ? new ProcessBuilder("adb", "shell")
+                : new ProcessBuilder("adb", "-s", serial, "shell");
+        proceso = builder.redirectErrorStream(true).start();
+        entrada = proceso.getOutputStream();
+        lineas = new LinkedBlockingQueue<>();
+
+        final Process lector = proceso;
+        final BlockingQueue<String> destino = lineas;
+        Thread hilo = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(lector.getInputStream(), StandardCharsets.UTF_8))) {
+                String linea;
+                while ((linea = reader.readLine()) != null) {
+                    destino.add(linea);
+                }
+            } catch (IOException ignored) {
+                // El proceso terminó: el siguiente comando reabre el shell
+            }
+        }, "ShellAdb-" + (serial.isEmpty() ? "default" : serial));
+        hilo.setDaemon(true);
+        hilo.start();
+
+        System.out.println("🔌 [ShellAdb] Shell persistente abierto"
+                + (serial.isEmpty() ? "" : " para " + serial));
+    }
+
+    /**
+     * Varios comandos en una sola escritura, encadenados con && para que el
+     * código de salida refleje el primero que falle.
+     */
+    public Resultado ejecutarLote(List<String> comandos, long timeoutMs) throws IOException {
+        if (comandos.isEmpty()) {
+            return new Resultado("", 0);
+        }
+        return ejecutar(String.join(" && ", comandos), timeoutMs);
+    }
+
+    /**
+     * Constructor de lotes de eventos de entrada (input tap / keyevent, con pausas).
+     */
+    public Lote lote() {
+        return new Lote(this);
+    }
+
+    public synchronized void cerrar() {
+        if (proceso != null) {
+            proceso.destroy();
+            proceso = null;
+        }
+    }
+
+    /**
+     * Cierra todos los shells abiertos (fin de la suite).
+     */
+    public static void cerrarTodos() {
+        SESIONES.values().forEach(ShellAdb::cerrar);
+        SESIONES.clear();
+    }
+
+    /**
+     * Eventos de entrada que se envían al shell en una sola escritura.
+     */
+    public static class Lote {
+
+        /** Margen por evento: cada "input" arranca una VM en el dispositivo */
+        private static final long TIMEOUT_POR_EVENTO_MS = 1500;
+
+        private final ShellAdb shell;
+        private final List<String> comandos = new ArrayList<>();
+
+        private Lote(ShellAdb shell) {
+            this.shell = shell;
+        }
+
+        public Lote tap(int x, int y) {
+            comandos.add("input tap " + x + " " + y);
+            return this;
+        }
+
+        /**
+         * Pausa en el dispositivo entre dos eventos del lote, sin volver a escribir al shell.
+         */
+        public Lote pausa(long ms) {
+            comandos.add(String.format(Locale.ROOT, "sleep %.3f", ms / 1000.0));
+            return this;
+        }
+
+        /**
+         * Una o varias teclas con códigos KEYCODE_* de Android en un solo "input keyevent".
+         */
+        public Lote teclas(int... keycodes) {
+            if (keycodes.length == 0) {
+                return this;
+            }
+            StringBuilder comando = new StringBuilder("input keyevent");
+            for (int keycode : keycodes) {
+                comando.append(' ').append(keycode);
+            }
+            comandos.add(comando.toString());
+            return this;
+        }
+
+        public int tamanio() {
+            return comandos.size();
+        }
+
+        /**
+         * @throws IOException si el shell no responde o algún evento devuelve código distinto de 0
+         */
+        public Resultado enviar() throws IOException {
+            Resultado resultado = shell.ejecutarLote(comandos, TIMEOUT_POR_EVENTO_MS * Math.max(1, comandos.size()));
+            if (!resultado.esExitoso()) {
+                throw new IOException("Lote adb falló (código " + resultado.getCodigo() + "): " + resultado.getSalida());
+            }
+            return resultado;
+        }
+    }
+
+    /**
+     * Salida de un comando y su código de salida ($?).
+     */
+    public static class Resultado {
+
+        private final String salida;
+        private final int codigo;
+
+        Resultado(String salida, int codigo) {
+            this.salida = salida;
+            this.codigo = codigo;
+        }
+
+        public String getSalida() {
+            return salida;
+        }
+
+        public int getCodigo() {
+            return codigo;
+        }
+
+        public boolean esExitoso() {
+            return codigo == 0;
+        }
+    }
+}
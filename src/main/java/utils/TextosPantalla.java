@@ -0,0 +1,214 @@
+package utils;
+
+import org.openqa.selenium.WebDriver;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Índice en memoria de los textos visibles en una captura del page source.
+ *
+ * Un solo getPageSource() reemplaza N findElement(textContains) por UiAutomator:
+ * se parsea el XML una vez y se consultan todos los textos esperados sobre la
+ * misma instantánea.
+ */
+public class TextosPantalla {
+
+    private static final SAXParserFactory FACTORY = SAXParserFactory.newInstance();
+
+    private final List<String> textos;
+    private final Map<String, String> textoPorId;
+    private final Map<String, String> boundsPorTexto;
+    private final Map<String, String> boundsPorId;
+    private final Set<String> idsPorPaquete;
+    private final int firma;
+
+    private TextosPantalla(List<String> textos, Map<String, String> textoPorId, Map<String, String> boundsPorTexto,
+                           Map<String, String> boundsPorId, Set<String> idsPorPaquete, int firma) {
+        this.textos = Collections.unmodifiableList(textos);
+        this.textoPorId = Collections.unmodifiableMap(textoPorId);
+        this.boundsPorTexto = Collections.unmodifiableMap(boundsPorTexto);
+        this.boundsPorId = Collections.unmodifiableMap(boundsPorId);
+        this.idsPorPaquete = Collections.unmodifiableSet(idsPorPaquete);
+        this.firma = firma;
+    }
+
+    /**
+     * Toma el page source del driver y lo indexa.
+     */
+    public static TextosPantalla capturar(WebDriver driver) {
+        return desdePageSource(driver.getPageSource());
+    }
+
+    /**
+     * Indexa los atributos text, content-desc, resource-id, package y bounds de todos los nodos del XML de UiAutomator.
+     */
+    public static TextosPantalla desdePageSource(String pageSource) {
+        Set<String> textos = new LinkedHashSet<>();
+        Map<String, String> textoPorId = new HashMap<>();
+        Map<String, String> boundsPorTexto = new HashMap<>();
+        Map<String, String> boundsPorId = new HashMap<>();
+        Set<String> idsPorPaquete = new HashSet<>();
+        if (pageSource == null || pageSource.isEmpty()) {
+            return new TextosPantalla(new ArrayList<>(), textoPorId, boundsPorTexto, boundsPorId, idsPorPaquete, 0);
+        }
+
+        try {
+            SAXParser parser;
+            synchronized (FACTORY) {
+                parser = FACTORY.newSAXParser();
+            }
+            parser.parse(new InputSource(new StringReader(pageSource)), new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes atributos) {
+                    String texto = atributos.getValue("text");
+                    agregar(textos, texto);
+                    agregar(textos, atributos.getValue("content-desc"));
+
+                    String resourceId = atributos.getValue("resource-id");
+                    String bounds = atributos.getValue("bounds");
+                    if (resourceId != null && !resourceId.isEmpty()) {
+                        textoPorId.putIfAbsent(resourceId, texto != null ? texto : "");
+                        if (bounds != null) {
+                            boundsPorId.putIfAbsent(resourceId, bounds);
+                        }
+                        idsPorPaquete.add(atributos.getValue("package") + " " + resourceId);
+                    }
+
+                    if (texto != null && !texto.isEmpty() && bounds != null) {
+                        boundsPorTexto.putIfAbsent(texto, bounds);
+                    }
+                }
+            });
+        } catch (Exception e) {
+            System.err.println("⚠️ [TextosPantalla] No se pudo parsear el page source: " + e.getMessage());
+        }
+        return new TextosPantalla(new ArrayList<>(textos), textoPorId, boundsPorTexto, boundsPorId, idsPorPaquete,
+                pageSource.hashCode());
+    }
+
+    private static void agregar(Set<String> textos, String valor) {
+        if (valor != null && !valor.isEmpty()) {
+            textos.add(valor);
+        }
+    }
+
+    /**
+     * Equivalente a UiSelector().textContains(texto) sobre la instantánea.
+     */
+    public boolean contiene(String texto) {
+        for (String visible : textos) {
+            if (visible.contains(texto)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Primer texto esperado presente en la instantánea, o null si no hay ninguno.
+     */
+    public String primeroPresente(List<String> esperados) {
+        for (String esperado : esperados) {
+            if (contiene(esperado)) {
+                return esperado;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Textos esperados que no aparecen en la instantánea, en el orden recibido.
+     */
+    public List<String> faltantes(List<String> esperados) {
+        List<String> faltantes = new ArrayList<>();
+        for (String esperado : esperados) {
+            if (!contiene(esperado)) {
+                faltantes.add(esperado);
+            }
+        }
+        return faltantes;
+    }
+
+    /**
+     * Indica si algún nodo de la instantánea tiene el resource-id dado (ej: android:id/progress).
+     */
+    public boolean contieneId(String resourceId) {
+        return textoPorId.containsKey(resourceId);
+    }
+
+    /**
+     * Indica si algún nodo de la app dada tiene el resource-id; distingue, por ejemplo, el
+     * android:id/button1 del diálogo USSD (com.android.phone) del de cualquier otro diálogo.
+     */
+    public boolean contieneId(String paquete, String resourceId) {
+        return idsPorPaquete.contains(paquete + " " + resourceId);
+    }
+
+    /**
+     * Texto del primer nodo con el resource-id dado, o null si no existe.
+     */
+    public String textoDeId(String resourceId) {
+        return textoPorId.get(resourceId);
+    }
+
+    /**
+     * Centro {x, y} del primer nodo cuyo text es exactamente el dado, a partir
+     * del atributo bounds "[x1,y1][x2,y2]"; null si no existe.
+     */
+    public int[] centroDeTexto(String textoExacto) {
+        return centro(boundsPorTexto.get(textoExacto));
+    }
+
+    /**
+     * Centro {x, y} del primer nodo con el resource-id dado; null si no existe.
+     */
+    public int[] centroDeId(String resourceId) {
+        return centro(boundsPorId.get(resourceId));
+    }
+
+    private static int[] centro(String bounds) {
+        if (bounds == null) {
+            return null;
+        }
+        String[] n = bounds.replace("][", ",").replace("[", "").replace("]", "").split(",");
+        if (n.length != 4) {
+            return null;
+        }
+        try {
+            return new int[]{
+                    (Integer.parseInt(n[0].trim()) + Integer.parseInt(n[2].trim())) / 2,
+                    (Integer.parseInt(n[1].trim()) + Integer.parseInt(n[3].trim())) / 2
+            };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Hash del page source completo: dos instantáneas con la misma firma muestran la misma pantalla.
+     */
+    public int getFirma() {
+        return firma;
+    }
+
+    public List<String> getTextos() {
+        return textos;
+    }
+
+    public boolean isVacia() {
+        return textos.isEmpty();
+    }
+}
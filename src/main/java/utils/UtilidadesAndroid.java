@@ -3,6 +3,9 @@ package utils;
 import io.appium.java_client.android.AndroidDriver;
 import net.thucydides.core.webdriver.SerenityWebdriverManager;
 
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -22,4 +25,39 @@ public class UtilidadesAndroid {
 
     driver.executeScript("mobile: shell", intentArgs);
   }
-}
\ No newline at end of file
+
+  /**
+   * Marca un número o código USSD con el intent CALL, sin pasar por la UI del Dialer.
+   * El # se codifica como %23; sin eso Android corta el número antes del #.
+   *
+   * Usa "mobile: shell" (requiere Appium con --relaxed-security) y, si no está
+   * permitido, el shell adb persistente del dispositivo.
+   *
+   * @return false si ninguno de los dos caminos pudo lanzar el intent
+   */
+  public static boolean llamarPorIntent(AndroidDriver driver, String numero) {
+    String uri = "tel:" + URLEncoder.encode(numero, StandardCharsets.UTF_8);
+
+    Map<String, Object> intentArgs = new HashMap<>();
+    intentArgs.put("command", "am");
+    intentArgs.put("args", List.of(
+            "start",
+            "-a", "android.intent.action.CALL",
+            "-d", uri
+    ));
+
+    try {
+      driver.executeScript("mobile: shell", intentArgs);
+      return true;
+    } catch (Exception e) {
+      System.out.println("ℹ️ [UtilidadesAndroid] mobile: shell no disponible (" + e.getMessage() + "), probando adb");
+    }
+
+    try {
+      return ShellAdb.actual().ejecutar("am start -a android.intent.action.CALL -d '" + uri + "'").esExitoso();
+    } catch (IOException e) {
+      System.out.println("⚠️ [UtilidadesAndroid] No se pudo lanzar el intent CALL: " + e.getMessage());
+      return false;
+    }
+  }
+}
@@ -1,15 +1,25 @@
 package utils;
 
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
 import org.apache.poi.util.Units;
 import org.apache.poi.xwpf.usermodel.*;
+import org.apache.xmlbeans.XmlException;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTBody;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTP;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTStyles;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTTbl;
 
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.ResourceBundle;
 import java.util.logging.Logger;
@@ -19,7 +29,7 @@ public class WordAppium {
     private static final Logger LOGGER = Logger.getLogger(WordAppium.class.getName());
 
     private static final String TEMPLATE_PATH = System.getProperty("user.dir") + File.separator + "ruta" + File.separator + "PlantillaInforme.docx";
-    private static final String CAPTURAS_DIR = "Capturas/";
+    static final String CAPTURAS_DIR = "Capturas/";
     private static final String REPORTES_DIR = System.getProperty("user.dir") + File.separator + "reportes";
 
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
@@ -40,41 +50,138 @@ public class WordAppium {
         }
     }
 
+    /** Plantilla parseada una sola vez; cada informe trabaja sobre una copia */
+    private static volatile Plantilla plantilla;
+
+    /**
+     * Genera el informe de forma síncrona (mismo comportamiento de siempre).
+     * ReportHooks usa {@link EscritorReportes} para hacerlo en segundo plano.
+     */
     public static void generarReporte(String nombreEscenario, String[] pasosEjecutados, String numero, String duracionFormato, String pasoFallido, String estadoFinal) {
-        File[] capturas = new File(CAPTURAS_DIR).listFiles();
-        if (capturas == null || capturas.length == 0) {
+        long ahora = System.currentTimeMillis();
+        InformeEscenario informe = InformeEscenario.capturar(
+                nombreEscenario, pasosEjecutados, numero, duracionFormato, pasoFallido, estadoFinal, ahora, ahora);
+        if (informe == null) {
             LOGGER.warning("No hay capturas para procesar.");
             return;
         }
+        escribirInforme(informe);
+    }
 
+    /**
+     * Arma y guarda el .docx de un escenario ya terminado; luego borra sus capturas.
+     */
+    static void escribirInforme(InformeEscenario informe) {
         new File(REPORTES_DIR).mkdirs();
-        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-        String nombreArchivo = "Prueba_" + nombreEscenario.replaceAll("\\s+", "_") + "_" + timestamp + ".docx";
+        LocalDateTime fin = LocalDateTime.ofInstant(Instant.ofEpochMilli(informe.getFin()), ZoneId.systemDefault());
+        String timestamp = fin.format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+        String nombreArchivo = "Prueba_" + informe.getNombreEscenario().replaceAll("\\s+", "_") + "_" + timestamp + ".docx";
         String rutaDestino = REPORTES_DIR + File.separator + nombreArchivo;
         System.out.println("📄 Guardando en: " + rutaDestino);
-        try (FileInputStream fis = new FileInputStream(TEMPLATE_PATH);
-             XWPFDocument doc = new XWPFDocument(fis);
-             FileOutputStream fos = new FileOutputStream(rutaDestino)) {
-
-            reemplazarTexto(doc, "{{ESCENARIO}}", nombreEscenario);
-            reemplazarTexto(doc, "{{FECHA}}", FORMATTER.format(LocalDateTime.now()));
-            reemplazarTexto(doc, "{{LINEA}}", numero);
-            reemplazarTexto(doc, "{{DURACION}}", duracionFormato);
-          //  reemplazarTexto(doc, "{{CONCLUSION}}", generarConclusion(pasosEjecutados, pasoFallido, estadoFinal, linea));
-            agregarPasosYCapturas(doc, pasosEjecutados, capturas);
-
-            doc.write(fos);
+        try (FileOutputStream fos = new FileOutputStream(rutaDestino)) {
+            armarDocumento(informe, fin, fos);
             LOGGER.info("Reporte generado correctamente: " + rutaDestino);
 
         } catch (IOException | InvalidFormatException e) {
             LOGGER.severe("Error generando el reporte Word: " + e.getMessage());
         }
 
-        eliminarCapturas(capturas);
+        eliminarCapturas(informe.getArchivosCapturas());
     }
 
-    private static void agregarPasosYCapturas(XWPFDocument doc, String[] pasos, File[] capturas) throws IOException, InvalidFormatException {
-        for (String paso : pasos) {
+    /**
+     * Llena la plantilla con los datos, pasos y capturas del informe y la escribe en la salida.
+     */
+    static void armarDocumento(InformeEscenario informe, LocalDateTime fin, OutputStream salida)
+            throws IOException, InvalidFormatException {
+        try (XWPFDocument doc = plantilla().copia()) {
+            reemplazarTexto(doc, "{{ESCENARIO}}", informe.getNombreEscenario());
+            reemplazarTexto(doc, "{{FECHA}}", FORMATTER.format(fin));
+            reemplazarTexto(doc, "{{LINEA}}", informe.getNumero());
+            reemplazarTexto(doc, "{{DURACION}}", informe.getDuracionFormato());
+          //  reemplazarTexto(doc, "{{CONCLUSION}}", generarConclusion(pasosEjecutados, pasoFallido, estadoFinal, linea));
+            agregarPasosYCapturas(doc, informe);
+
+            doc.write(salida);
+        }
+    }
+
+    private static Plantilla plantilla() throws IOException, InvalidFormatException {
+        Plantilla actual = plantilla;
+        if (actual == null) {
+            synchronized (WordAppium.class) {
+                if (plantilla == null) {
+                    plantilla = new Plantilla(Files.readAllBytes(Paths.get(TEMPLATE_PATH)));
+                }
+                actual = plantilla;
+            }
+        }
+        return actual;
+    }
+
+    /**
+     * PlantillaInforme.docx parseada una vez.
+     *
+     * POI no clona un XWPFDocument, así que la copia de cada informe se arma sobre un
+     * esqueleto: el mismo .docx sin el cuerpo y con los estilos vacíos (las dos partes
+     * grandes), que se abre casi sin parsear; luego se le copian el cuerpo y los estilos
+     * ya parseados del prototipo. Encabezado, imágenes, notas y tema vienen del esqueleto.
+     */
+    private static final class Plantilla {
+        private final XWPFDocument prototipo;
+        private final CTStyles estilos;
+        private final byte[] esqueleto;
+
+        Plantilla(byte[] bytes) throws IOException {
+            this.prototipo = new XWPFDocument(new ByteArrayInputStream(bytes));
+            try {
+                this.estilos = prototipo.getStyle();
+            } catch (XmlException e) {
+                throw new IOException("Estilos de la plantilla ilegibles: " + e.getMessage(), e);
+            }
+            try (XWPFDocument vacio = new XWPFDocument(new ByteArrayInputStream(bytes));
+                 ByteArrayOutputStream salida = new ByteArrayOutputStream(bytes.length)) {
+                for (int i = vacio.getBodyElements().size() - 1; i >= 0; i--) {
+                    vacio.removeBodyElement(i);
+                }
+                vacio.getStyles().setStyles(CTStyles.Factory.newInstance());
+                vacio.write(salida);
+                this.esqueleto = salida.toByteArray();
+            }
+        }
+
+        XWPFDocument copia() throws IOException, InvalidFormatException {
+            return new CopiaPlantilla(OPCPackage.open(new ByteArrayInputStream(esqueleto)), this);
+        }
+    }
+
+    private static final class CopiaPlantilla extends XWPFDocument {
+
+        CopiaPlantilla(OPCPackage esqueleto, Plantilla plantilla) throws IOException {
+            super(esqueleto);
+            getStyles().setStyles((CTStyles) plantilla.estilos.copy());
+            // El esqueleto solo conserva el sectPr; los párrafos y tablas se agregan antes de él
+            CTBody cuerpo = getDocument().getBody();
+            for (IBodyElement elemento : plantilla.prototipo.getBodyElements()) {
+                if (elemento instanceof XWPFParagraph) {
+                    CTP ctp = cuerpo.addNewP();
+                    ctp.set(((XWPFParagraph) elemento).getCTP());
+                    XWPFParagraph parrafo = new XWPFParagraph(ctp, this);
+                    paragraphs.add(parrafo);
+                    bodyElements.add(parrafo);
+                } else if (elemento instanceof XWPFTable) {
+                    CTTbl ctTbl = cuerpo.addNewTbl();
+                    ctTbl.set(((XWPFTable) elemento).getCTTbl());
+                    XWPFTable tabla = new XWPFTable(ctTbl, this);
+                    tables.add(tabla);
+                    bodyElements.add(tabla);
+                }
+            }
+        }
+    }
+
+    private static void agregarPasosYCapturas(XWPFDocument doc, InformeEscenario informe) throws IOException, InvalidFormatException {
+        for (String paso : informe.getPasos()) {
             XWPFParagraph p = doc.createParagraph();
             p.setSpacingBefore(200);
             XWPFRun run = p.createRun();
@@ -86,7 +193,7 @@ public class WordAppium {
             XWPFRun espacioRun = espacio.createRun();
             espacioRun.setText(""); // este es el salto en blanco
 
-            File imagen = buscarCapturaDePaso(paso, capturas);
+            File imagen = informe.getCaptura(paso);
             if (imagen != null) {
                 XWPFParagraph imgP = doc.createParagraph();
                 XWPFRun imgRun = imgP.createRun();
@@ -101,12 +208,13 @@ public class WordAppium {
     }
 
 
-    private static File buscarCapturaDePaso(String paso, File[] capturas) {
-        String normalizado = paso.toLowerCase().replaceAll("[^a-z0-9]", "_");
-        for (File f : capturas) {
-            if (f.getName().toLowerCase().contains(normalizado)) {
-                return f;
-            }
+    /**
+     * Captura del paso registrada en el manifiesto del escenario (clave exacta), o null.
+     */
+    static File buscarCapturaDePaso(String paso, Map<String, String> manifiesto) {
+        String registrada = manifiesto.get(paso);
+        if (registrada != null && new File(registrada).exists()) {
+            return new File(registrada);
         }
         return null;
     }
@@ -150,7 +258,7 @@ public class WordAppium {
         return paso;
     }
 
-    private static void eliminarCapturas(File[] capturas) {
+    private static void eliminarCapturas(List<File> capturas) {
         for (File captura : capturas) {
             try {
                 Files.deleteIfExists(captura.toPath());
@@ -0,0 +1,284 @@
+package utils.grabacion;
+
+import org.json.JSONObject;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.Response;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Grabación de un escenario: la sesión del driver y los comandos en orden.
+ *
+ * En disco es un zip por escenario:
+ * - sesion.json: escenario, fecha, resultado y la respuesta de newSession
+ * - comandos.jsonl: una {@link Interaccion} por línea
+ * - blobs/&lt;sha1&gt;.xml|png|txt: page sources y capturas, una sola vez cada contenido
+ *
+ * Al reproducir, el thread del escenario avanza un cursor: cada comando recibe la
+ * siguiente respuesta grabada con la misma clave (comando + parámetros). La búsqueda
+ * solo salta consultas (page source, findElement, capturas...), nunca un comando que
+ * cambia la pantalla: si el código pide algo que no está antes del próximo click (un
+ * sondeo de más, con las pausas escaladas), se repite la última respuesta igual. Un
+ * comando sin valor (setTimeout, click) que no se grabó responde vacío. Los threads
+ * auxiliares solo leen, sin mover el cursor.
+ */
+final class Cinta {
+
+    private static final String SESION = "sesion.json";
+    private static final String COMANDOS = "comandos.jsonl";
+
+    /** Comandos que solo leen el estado del dispositivo: el cursor puede saltarlos */
+    private static final Set<String> CONSULTAS = new HashSet<>(Arrays.asList(
+            DriverCommand.GET_PAGE_SOURCE, DriverCommand.SCREENSHOT, DriverCommand.ELEMENT_SCREENSHOT,
+            DriverCommand.FIND_ELEMENT, DriverCommand.FIND_ELEMENTS,
+            DriverCommand.FIND_CHILD_ELEMENT, DriverCommand.FIND_CHILD_ELEMENTS,
+            DriverCommand.GET_ELEMENT_TEXT, DriverCommand.GET_ELEMENT_ATTRIBUTE, DriverCommand.GET_ELEMENT_PROPERTY,
+            DriverCommand.GET_ELEMENT_TAG_NAME, DriverCommand.GET_ELEMENT_RECT, DriverCommand.GET_ELEMENT_SIZE,
+            DriverCommand.GET_ELEMENT_LOCATION, DriverCommand.IS_ELEMENT_DISPLAYED,
+            DriverCommand.IS_ELEMENT_ENABLED, DriverCommand.IS_ELEMENT_SELECTED,
+            DriverCommand.GET_CURRENT_URL, DriverCommand.GET_TITLE, DriverCommand.GET_CAPABILITIES,
+            DriverCommand.SET_TIMEOUT,
+            // MobileCommand.CURRENT_ACTIVITY y GET_CURRENT_PACKAGE (protegidas en java-client)
+            "currentActivity", "getCurrentPackage"));
+
+    final String escenario;
+    private Interaccion sesion;
+    private final List<Interaccion> interacciones = new ArrayList<>();
+    private final Map<String, byte[]> blobs = new HashMap<>();
+
+    // ── Estado de la reproducción ──
+    private int cursor;
+    private int servidas;
+    private int saltadas;
+    private int repetidas;
+    private int vacias;
+
+    Cinta(String escenario) {
+        this.escenario = escenario;
+    }
+
+    // ─────────────────────────────────────────────────────────────────
+    // Grabación
+    // ─────────────────────────────────────────────────────────────────
+
+    synchronized int siguiente() {
+        return interacciones.size() + 1;
+    }
+
+    synchronized void grabar(Interaccion interaccion, Interaccion sesionDriver) {
+        if (sesion == null) {
+            sesion = sesionDriver;
+        }
+        if (interaccion.contenidoBlob != null) {
+            interaccion.blob = "blobs/" + sha1(interaccion.contenidoBlob) + interaccion.extensionBlob;
+            blobs.putIfAbsent(interaccion.blob, interaccion.contenidoBlob);
+            interaccion.contenidoBlob = null;
+        }
+        interacciones.add(interaccion);
+    }
+
+    synchronized int tamano() {
+        return interacciones.size();
+    }
+
+    synchronized int cantidadBlobs() {
+        return blobs.size();
+    }
+
+    synchronized void escribir(File archivo, boolean fallido) throws IOException {
+        archivo.getParentFile().mkdirs();
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archivo))) {
+            zip.setLevel(Deflater.BEST_COMPRESSION);
+
+            JSONObject cabecera = new JSONObject()
+                    .put("escenario", escenario)
+                    .put("grabado", LocalDateTime.now().toString())
+                    .put("fallido", fallido)
+                    .put("sesion", sesion == null ? JSONObject.NULL : sesion.aJson());
+            zip.putNextEntry(new ZipEntry(SESION));
+            zip.write(cabecera.toString(2).getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+
+            zip.putNextEntry(new ZipEntry(COMANDOS));
+            for (Interaccion interaccion : interacciones) {
+                zip.write(interaccion.aJson().toString().getBytes(StandardCharsets.UTF_8));
+                zip.write('\n');
+            }
+            zip.closeEntry();
+
+            for (Map.Entry<String, byte[]> blob : blobs.entrySet()) {
+                zip.putNextEntry(new ZipEntry(blob.getKey()));
+                zip.write(blob.getValue());
+                zip.closeEntry();
+            }
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────────────
+    // Reproducción
+    // ─────────────────────────────────────────────────────────────────
+
+    static Cinta leer(File archivo) throws IOException {
+        try (ZipFile zip = new ZipFile(archivo)) {
+            ZipEntry entradaSesion = zip.getEntry(SESION);
+            ZipEntry entradaComandos = zip.getEntry(COMANDOS);
+            if (entradaSesion == null || entradaComandos == null) {
+                throw new IOException("No es una grabación de escenario: " + archivo);
+            }
+            JSONObject cabecera = new JSONObject(new String(leerTodo(zip.getInputStream(entradaSesion)), StandardCharsets.UTF_8));
+            Cinta cinta = new Cinta(cabecera.getString("escenario"));
+            if (!cabecera.isNull("sesion")) {
+                cinta.sesion = Interaccion.deJson(cabecera.getJSONObject("sesion"));
+            }
+            try (BufferedReader lector = new BufferedReader(
+                    new InputStreamReader(zip.getInputStream(entradaComandos), StandardCharsets.UTF_8))) {
+                String linea;
+                while ((linea = lector.readLine()) != null) {
+                    if (!linea.isEmpty()) {
+                        cinta.interacciones.add(Interaccion.deJson(new JSONObject(linea)));
+                    }
+                }
+            }
+            Enumeration<? extends ZipEntry> entradas = zip.entries();
+            while (entradas.hasMoreElements()) {
+                ZipEntry entrada = entradas.nextElement();
+                if (entrada.getName().startsWith("blobs/")) {
+                    cinta.blobs.put(entrada.getName(), leerTodo(zip.getInputStream(entrada)));
+                }
+            }
+            return cinta;
+        }
+    }
+
+    synchronized Response reproducir(Command command, boolean principal) {
+        String nombre = command.getName();
+        if (DriverCommand.NEW_SESSION.equals(nombre)) {
+            if (sesion == null) {
+                throw new WebDriverException("[Grabacion] La grabación de '" + escenario + "' no tiene sesión del driver");
+            }
+            return sesion.respuesta(blobs);
+        }
+
+        String clave = Interaccion.clave(command);
+        if (principal) {
+            int saltos = 0;
+            for (int i = cursor; i < interacciones.size(); i++) {
+                Interaccion interaccion = interacciones.get(i);
+                if (!interaccion.principal) {
+                    continue;
+                }
+                if (interaccion.clave.equals(clave)) {
+                    cursor = i + 1;
+                    servidas++;
+                    saltadas += saltos;
+                    return interaccion.respuesta(blobs);
+                }
+                if (!CONSULTAS.contains(interaccion.comando)) {
+                    // Un click o un texto grabado todavía no ocurrió: lo que está detrás
+                    // es otra pantalla, no la respuesta a esta consulta
+                    break;
+                }
+                saltos++;
+            }
+        }
+
+        // Reintento de más, o un thread auxiliar: la última respuesta igual antes del cursor
+        Interaccion anterior = buscar(clave, cursor - 1, -1);
+        if (anterior == null && !principal) {
+            anterior = buscar(clave, cursor, interacciones.size());
+        }
+        if (anterior != null) {
+            repetidas++;
+            return anterior.respuesta(blobs);
+        }
+
+        if (DriverCommand.QUIT.equals(nombre) || comandoSinValor(nombre)) {
+            vacias++;
+            return exito(null);
+        }
+        throw new WebDriverException("[Grabacion] Sin respuesta grabada en '" + escenario + "' para " + clave);
+    }
+
+    synchronized String resumen() {
+        return servidas + " respuestas en orden, " + saltadas + " saltadas, "
+                + repetidas + " repetidas, " + vacias + " vacías (de " + interacciones.size() + " grabadas)";
+    }
+
+    static Response exito(Object valor) {
+        Response respuesta = new Response();
+        respuesta.setStatus(0);
+        respuesta.setState("success");
+        respuesta.setValue(valor);
+        return respuesta;
+    }
+
+    private Interaccion buscar(String clave, int desde, int hasta) {
+        int paso = desde <= hasta ? 1 : -1;
+        for (int i = desde; i != hasta; i += paso) {
+            Interaccion interaccion = interacciones.get(i);
+            if (interaccion.clave.equals(clave)) {
+                return interaccion;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * El comando se grabó alguna vez y nunca devolvió valor: una variante con otros
+     * parámetros (otro timeout, otro click) se puede responder vacía.
+     */
+    private boolean comandoSinValor(String comando) {
+        boolean visto = false;
+        for (Interaccion interaccion : interacciones) {
+            if (interaccion.comando.equals(comando)) {
+                if (!interaccion.sinValor() || !Integer.valueOf(0).equals(interaccion.estado)) {
+                    return false;
+                }
+                visto = true;
+            }
+        }
+        return visto;
+    }
+
+    private static byte[] leerTodo(InputStream entrada) throws IOException {
+        try (InputStream in = entrada) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static String sha1(byte[] contenido) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(contenido);
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
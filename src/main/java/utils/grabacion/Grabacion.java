@@ -0,0 +1,174 @@
+package utils.grabacion;
+
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.Response;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Grabación y reproducción de escenarios sin dispositivo.
+ *
+ * Con grabacion.modo=grabar el driver usa {@link GrabadorComandos}: cada comando de
+ * WebDriver con su respuesta (page sources y capturas incluidas) queda en un zip por
+ * escenario. Con grabacion.modo=reproducir usa {@link ReproductorComandos}, que responde
+ * desde ese zip sin Appium, así que las validaciones (ValidarPantallaUSSD, ValidarRespuesta,
+ * ValidarTextosQueContenganArrays...) corren offline en CI, repiten un fallo tal como
+ * ocurrió y muestran el CPU que consume el propio framework.
+ *
+ * Los comandos de adb shell del escenario (taps y textos de AdbUtils, el intent CALL
+ * por ShellAdb) no pasan por el driver: ShellAdb los graba con {@link #grabarAdb} como
+ * interacciones "adb" no principales y al reproducir no los ejecuta, responde éxito.
+ *
+ * Al reproducir el PopupGuardian no arranca (sus cierres ya están en la grabación),
+ * las pausas explícitas se escalan y WaitFor no aprende latencias. Las esperas con tope
+ * por reloj conservan su tope: una espera que se agotó al grabar se vuelve a agotar,
+ * repitiendo la última respuesta grabada.
+ *
+ * Configuración via system properties:
+ * - grabacion.modo: grabar | reproducir (default: sin grabación)
+ * - grabacion.dir: carpeta de los zip, fuera de target/ para que un clean no los borre
+ *   (default: src/test/resources/grabaciones)
+ * - grabacion.escalaPausas: factor de las pausas al reproducir (default: 0.1, 0 = sin pausas)
+ */
+public final class Grabacion {
+
+    public static final String MODO = System.getProperty("grabacion.modo", "").trim().toLowerCase();
+    public static final boolean GRABANDO = "grabar".equals(MODO);
+    public static final boolean REPRODUCIENDO = "reproducir".equals(MODO);
+
+    private static final double ESCALA_PAUSAS = REPRODUCIENDO
+            ? Double.parseDouble(System.getProperty("grabacion.escalaPausas", "0.1"))
+            : 1.0;
+
+    private static final String DEFAULT_DIR =
+            "src" + File.separator + "test" + File.separator + "resources" + File.separator + "grabaciones";
+
+    /** Cinta en curso por thread de escenario (el dueño del driver) */
+    private static final Map<Thread, EnCurso> CINTAS = new ConcurrentHashMap<>();
+
+    private static final ThreadMXBean CPU = ManagementFactory.getThreadMXBean();
+
+    /** Nombre con el que quedan en la cinta los comandos de adb shell */
+    private static final String COMANDO_ADB = "adb";
+
+    private Grabacion() {
+    }
+
+    /**
+     * Nombre del zip de un escenario: el nombre más la línea, para separar los
+     * ejemplos de un Scenario Outline.
+     */
+    public static String nombreArchivo(String escenario, int linea) {
+        return String.valueOf(escenario).replaceAll("[^A-Za-z0-9]+", "_") + "_L" + linea + ".zip";
+    }
+
+    /**
+     * Empieza a grabar, o carga la grabación a reproducir, para el thread actual.
+     *
+     * @throws RuntimeException Si se reproduce y el escenario no tiene grabación
+     */
+    public static void iniciarEscenario(String escenario, String archivo) {
+        Cinta cinta;
+        if (REPRODUCIENDO) {
+            File zip = new File(carpeta(), archivo);
+            try {
+                cinta = Cinta.leer(zip);
+            } catch (IOException e) {
+                throw new RuntimeException("No se pudo cargar la grabación del escenario '" + escenario
+                        + "' (" + zip.getPath() + "): " + e.getMessage(), e);
+            }
+            System.out.println("▶️ [Grabacion] Reproduciendo " + cinta.tamano() + " comandos desde " + zip.getPath());
+        } else {
+            cinta = new Cinta(escenario);
+        }
+        CINTAS.put(Thread.currentThread(), new EnCurso(cinta, archivo));
+    }
+
+    /**
+     * Al grabar escribe el zip del escenario; al reproducir informa cómo se sirvieron
+     * las respuestas y el CPU del thread del escenario.
+     */
+    public static void terminarEscenario(boolean fallido) {
+        EnCurso enCurso = GRABANDO ? CINTAS.remove(Thread.currentThread()) : CINTAS.get(Thread.currentThread());
+        if (enCurso == null) {
+            return;
+        }
+        String tiempos = String.format("CPU %d ms, total %d ms",
+                (CPU.getCurrentThreadCpuTime() - enCurso.cpuInicio) / 1_000_000,
+                (System.nanoTime() - enCurso.inicio) / 1_000_000);
+        if (REPRODUCIENDO) {
+            // La cinta queda cargada: el quit del driver al final de la suite también pasa por ella
+            System.out.println("▶️ [Grabacion] " + enCurso.cinta.escenario + ": " + enCurso.cinta.resumen()
+                    + " — " + tiempos);
+            return;
+        }
+        File zip = new File(carpeta(), enCurso.archivo);
+        try {
+            enCurso.cinta.escribir(zip, fallido);
+            System.out.println("⏺️ [Grabacion] " + enCurso.cinta.tamano() + " comandos ("
+                    + enCurso.cinta.cantidadBlobs() + " page sources/capturas distintas) en " + zip.getPath()
+                    + " — " + tiempos);
+        } catch (IOException e) {
+            System.err.println("⚠️ [Grabacion] No se pudo escribir " + zip.getPath() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Graba un comando de adb shell del thread actual en la cinta de su escenario. Queda
+     * como no principal: al reproducir no mueve el cursor, solo documenta la secuencia.
+     * Los threads sin escenario (PopupGuardian) no graban.
+     *
+     * @param codigo Código de salida del comando (-1 si el shell no respondió)
+     */
+    public static void grabarAdb(String comando, int codigo, String salida, long nanos) {
+        Cinta cinta = cinta(Thread.currentThread());
+        if (cinta == null) {
+            return;
+        }
+        Command command = new Command(null, COMANDO_ADB, Collections.singletonMap("comando", comando));
+        Response respuesta = Cinta.exito(salida);
+        respuesta.setStatus(codigo);
+        if (codigo != 0) {
+            respuesta.setState("adb exit " + codigo);
+        }
+        cinta.grabar(Interaccion.de(cinta.siguiente(), command, respuesta, false, nanos), null);
+    }
+
+    /**
+     * Duración real de una pausa explícita: la pedida, o escalada al reproducir.
+     */
+    public static long pausa(long ms) {
+        return ESCALA_PAUSAS == 1.0 ? ms : Math.round(ms * ESCALA_PAUSAS);
+    }
+
+    static Cinta cinta(Thread propietario) {
+        EnCurso enCurso = CINTAS.get(propietario);
+        return enCurso != null ? enCurso.cinta : null;
+    }
+
+    private static File carpeta() {
+        String configurada = System.getProperty("grabacion.dir");
+        if (configurada != null && !configurada.trim().isEmpty()) {
+            return new File(configurada.trim());
+        }
+        return new File(DEFAULT_DIR);
+    }
+
+    private static class EnCurso {
+        final Cinta cinta;
+        final String archivo;
+        final long cpuInicio = CPU.getCurrentThreadCpuTime();
+        final long inicio = System.nanoTime();
+
+        EnCurso(Cinta cinta, String archivo) {
+            this.cinta = cinta;
+            this.archivo = archivo;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package utils.grabacion;
+
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.Response;
+import utils.metricas.ExecutorCronometrado;
+
+import java.net.URL;
+
+/**
+ * Executor que envía cada comando a Appium y guarda la respuesta en la {@link Cinta}
+ * del escenario en curso de su thread dueño.
+ *
+ * Los comandos de threads auxiliares (PopupGuardian, Ollama) se graban marcados como no
+ * principales: al reproducir no mueven el cursor del escenario.
+ */
+public class GrabadorComandos extends ExecutorCronometrado {
+
+    /** Thread que creó el driver: el del escenario */
+    private final Thread propietario = Thread.currentThread();
+
+    /** newSession: con restart.browser.for.each=never cada zip la necesita, no solo el primero */
+    private volatile Interaccion sesion;
+
+    public GrabadorComandos(URL servidor) {
+        super(servidor);
+    }
+
+    @Override
+    protected Response enviar(Command command) {
+        long inicio = System.nanoTime();
+        Response respuesta = super.enviar(command);
+        long nanos = System.nanoTime() - inicio;
+
+        boolean principal = Thread.currentThread() == propietario;
+        Cinta cinta = Grabacion.cinta(propietario);
+        if (DriverCommand.NEW_SESSION.equals(command.getName())) {
+            sesion = Interaccion.de(0, command, respuesta, principal, nanos);
+        } else if (cinta != null) {
+            cinta.grabar(Interaccion.de(cinta.siguiente(), command, respuesta, principal, nanos), sesion);
+        }
+        return respuesta;
+    }
+}
@@ -0,0 +1,188 @@
+package utils.grabacion;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.openqa.selenium.json.Json;
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.Response;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Un comando de WebDriver con la respuesta que dio el dispositivo.
+ *
+ * Los parámetros y el valor se guardan con el JSON de Selenium, así que al reproducir
+ * el valor vuelve con los mismos tipos (Map, List, Long, String) que daba el executor real.
+ * Las capturas y los textos largos (page source) no van en línea: quedan como blob de la
+ * {@link Cinta}, la captura ya decodificada a PNG.
+ */
+final class Interaccion {
+
+    private static final Json JSON = new Json();
+
+    /** Textos más largos que esto van a un blob deduplicado en lugar de la línea */
+    private static final int UMBRAL_BLOB = 512;
+
+    final int n;
+    final boolean principal;
+    final String comando;
+    final String clave;
+    final JSONObject parametros;
+    final Integer estado;
+    final String state;
+    final String sessionId;
+    final long micros;
+
+    /** Valor en JSON de Selenium; null si el valor está en un blob */
+    final String valorJson;
+
+    /** Nombre del blob con el valor (blobs/&lt;sha1&gt;.xml|png|txt) */
+    String blob;
+
+    /** Valor grande pendiente de pasar a blob, con su extensión (solo al grabar) */
+    byte[] contenidoBlob;
+    String extensionBlob;
+
+    private Interaccion(int n, boolean principal, String comando, JSONObject parametros,
+                        Integer estado, String state, String sessionId, long micros, String valorJson, String blob) {
+        this.n = n;
+        this.principal = principal;
+        this.comando = comando;
+        this.parametros = parametros;
+        this.clave = clave(comando, parametros);
+        this.estado = estado;
+        this.state = state;
+        this.sessionId = sessionId;
+        this.micros = micros;
+        this.valorJson = valorJson;
+        this.blob = blob;
+    }
+
+    static Interaccion de(int n, Command command, Response respuesta, boolean principal, long nanos) {
+        JSONObject parametros = parametros(command);
+        Object valor = respuesta.getValue();
+        String valorJson = null;
+        byte[] contenido = null;
+        String extension = null;
+        if (valor instanceof String && esCaptura(command.getName())) {
+            contenido = Base64.getMimeDecoder().decode((String) valor);
+            extension = ".png";
+        } else if (valor instanceof String && ((String) valor).length() > UMBRAL_BLOB) {
+            contenido = ((String) valor).getBytes(StandardCharsets.UTF_8);
+            extension = DriverCommand.GET_PAGE_SOURCE.equals(command.getName()) ? ".xml" : ".txt";
+        } else {
+            valorJson = JSON.toJson(valor);
+        }
+        Interaccion interaccion = new Interaccion(n, principal, command.getName(),
+                parametros, respuesta.getStatus(), respuesta.getState(), respuesta.getSessionId(),
+                nanos / 1000, valorJson, null);
+        interaccion.contenidoBlob = contenido;
+        interaccion.extensionBlob = extension;
+        return interaccion;
+    }
+
+    /**
+     * Clave con la que se busca la respuesta al reproducir: comando más parámetros con
+     * las llaves ordenadas (el orden de un Map no es estable entre ejecuciones).
+     */
+    static String clave(Command command) {
+        return clave(command.getName(), parametros(command));
+    }
+
+    private static String clave(String comando, JSONObject parametros) {
+        return comando + " " + canonico(parametros);
+    }
+
+    private static JSONObject parametros(Command command) {
+        Map<String, ?> parametros = command.getParameters();
+        return new JSONObject(JSON.toJson(parametros == null ? Collections.emptyMap() : parametros));
+    }
+
+    private static boolean esCaptura(String comando) {
+        return DriverCommand.SCREENSHOT.equals(comando) || DriverCommand.ELEMENT_SCREENSHOT.equals(comando);
+    }
+
+    private static String canonico(Object valor) {
+        if (valor instanceof JSONObject) {
+            JSONObject objeto = (JSONObject) valor;
+            StringBuilder sb = new StringBuilder("{");
+            for (String llave : new TreeSet<>(objeto.keySet())) {
+                if (sb.length() > 1) sb.append(',');
+                sb.append(JSONObject.quote(llave)).append(':').append(canonico(objeto.get(llave)));
+            }
+            return sb.append('}').toString();
+        }
+        if (valor instanceof JSONArray) {
+            JSONArray arreglo = (JSONArray) valor;
+            StringBuilder sb = new StringBuilder("[");
+            for (int i = 0; i < arreglo.length(); i++) {
+                if (i > 0) sb.append(',');
+                sb.append(canonico(arreglo.get(i)));
+            }
+            return sb.append(']').toString();
+        }
+        return JSONObject.valueToString(valor);
+    }
+
+    /**
+     * Respuesta reconstruida; los blobs los resuelve la cinta que la contiene.
+     */
+    Response respuesta(Map<String, byte[]> blobs) {
+        Object valor;
+        if (blob == null) {
+            valor = JSON.toType(valorJson, Object.class);
+        } else if (blob.endsWith(".png")) {
+            valor = Base64.getEncoder().encodeToString(blobs.get(blob));
+        } else {
+            valor = new String(blobs.get(blob), StandardCharsets.UTF_8);
+        }
+        Response respuesta = new Response();
+        respuesta.setSessionId(sessionId);
+        respuesta.setStatus(estado);
+        respuesta.setState(state);
+        respuesta.setValue(valor);
+        return respuesta;
+    }
+
+    boolean sinValor() {
+        return blob == null && "null".equals(valorJson);
+    }
+
+    JSONObject aJson() {
+        JSONObject json = new JSONObject()
+                .put("n", n)
+                .put("principal", principal)
+                .put("comando", comando)
+                .put("parametros", parametros)
+                .put("estado", estado == null ? JSONObject.NULL : estado)
+                .put("state", state == null ? JSONObject.NULL : state)
+                .put("sessionId", sessionId == null ? JSONObject.NULL : sessionId)
+                .put("us", micros);
+        if (blob != null) {
+            json.put("blob", blob);
+        } else {
+            json.put("valor", new JSONTokener(valorJson).nextValue());
+        }
+        return json;
+    }
+
+    static Interaccion deJson(JSONObject json) {
+        return new Interaccion(
+                json.getInt("n"),
+                json.getBoolean("principal"),
+                json.getString("comando"),
+                json.getJSONObject("parametros"),
+                json.isNull("estado") ? null : json.getInt("estado"),
+                json.isNull("state") ? null : json.getString("state"),
+                json.isNull("sessionId") ? null : json.getString("sessionId"),
+                json.optLong("us"),
+                json.has("blob") ? null : JSONObject.valueToString(json.opt("valor")),
+                json.optString("blob", null));
+    }
+}
@@ -0,0 +1,35 @@
+package utils.grabacion;
+
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.Response;
+import utils.metricas.ExecutorCronometrado;
+
+import java.net.URL;
+
+/**
+ * Executor que responde cada comando desde la {@link Cinta} cargada para el escenario
+ * de su thread dueño, sin conectarse al servidor (la URL solo la pide AppiumDriver).
+ */
+public class ReproductorComandos extends ExecutorCronometrado {
+
+    private final Thread propietario = Thread.currentThread();
+
+    public ReproductorComandos(URL servidor) {
+        super(servidor);
+    }
+
+    @Override
+    protected Response enviar(Command command) {
+        Cinta cinta = Grabacion.cinta(propietario);
+        if (cinta == null) {
+            if (DriverCommand.QUIT.equals(command.getName())) {
+                return Cinta.exito(null);
+            }
+            throw new WebDriverException("[Grabacion] No hay grabación cargada para el thread " + propietario.getName()
+                    + " (comando " + command.getName() + ")");
+        }
+        return cinta.reproducir(command, Thread.currentThread() == propietario);
+    }
+}
@@ -0,0 +1,51 @@
+package utils.metricas;
+
+import io.appium.java_client.MobileCommand;
+import io.appium.java_client.remote.AppiumCommandExecutor;
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.Response;
+import utils.traza.Trazador;
+
+import java.net.URL;
+
+/**
+ * Command executor de Appium que mide cada comando de WebDriver enviado al servidor.
+ *
+ * Es el mismo executor que arma AndroidDriver(URL, caps); la duración de cada comando
+ * (ida y vuelta HTTP incluida) se registra en {@link MetricasEjecucion} con el nombre de
+ * Selenium: findElement, findElements, getPageSource, screenshot, clickElement, etc.
+ * Con la traza habilitada cada comando queda además como span en {@link Trazador},
+ * con el localizador de findElement(s) como detalle.
+ */
+public class ExecutorCronometrado extends AppiumCommandExecutor {
+
+    public ExecutorCronometrado(URL servidor) {
+        super(MobileCommand.commandRepository, servidor);
+    }
+
+    @Override
+    public Response execute(Command command) {
+        long inicio = System.nanoTime();
+        try {
+            return enviar(command);
+        } finally {
+            if (MetricasEjecucion.HABILITADAS) {
+                MetricasEjecucion.get().comando(command.getName(), System.nanoTime() - inicio);
+            }
+            Trazador.span(Trazador.DRIVER, command.getName(), inicio, localizador(command));
+        }
+    }
+
+    /**
+     * Envía el comando al servidor Appium. Las subclases de utils.grabacion lo
+     * reemplazan para grabar o reproducir las respuestas sin perder la medición.
+     */
+    protected Response enviar(Command command) {
+        return super.execute(command);
+    }
+
+    private static String localizador(Command command) {
+        Object using = command.getParameters().get("using");
+        return using == null ? null : using + "=" + command.getParameters().get("value");
+    }
+}
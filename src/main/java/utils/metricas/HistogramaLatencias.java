@@ -0,0 +1,88 @@
+package utils.metricas;
+
+/**
+ * Histograma de latencias en microsegundos con cubetas logarítmicas.
+ *
+ * Cada potencia de 2 se parte en 16 sub-cubetas, así que un percentil se reporta con
+ * un error relativo menor al 6,25 % sin guardar las muestras: el costo por registro es
+ * constante y la memoria fija (unos 8 KB por histograma) sin importar la duración de la suite.
+ */
+public final class HistogramaLatencias {
+
+    private static final int BITS_SUB = 4;
+    private static final int SUB_CUBETAS = 1 << BITS_SUB;
+    private static final int CUBETAS = (64 - BITS_SUB + 1) * SUB_CUBETAS;
+
+    private final long[] cubetas = new long[CUBETAS];
+    private long muestras;
+    private long totalMicros;
+    private long minimoMicros = Long.MAX_VALUE;
+    private long maximoMicros;
+
+    static int indice(long micros) {
+        if (micros < SUB_CUBETAS) {
+            return (int) Math.max(0, micros);
+        }
+        int potencia = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (potencia - BITS_SUB)) & (SUB_CUBETAS - 1);
+        return (potencia - BITS_SUB + 1) * SUB_CUBETAS + sub;
+    }
+
+    /**
+     * Mayor valor que cae en la cubeta.
+     */
+    static long limiteSuperior(int indice) {
+        if (indice < SUB_CUBETAS) {
+            return indice;
+        }
+        int potencia = indice / SUB_CUBETAS + BITS_SUB - 1;
+        long ancho = 1L << (potencia - BITS_SUB);
+        return (SUB_CUBETAS + indice % SUB_CUBETAS) * ancho + ancho - 1;
+    }
+
+    public synchronized void registrar(long micros) {
+        cubetas[indice(micros)]++;
+        muestras++;
+        totalMicros += micros;
+        minimoMicros = Math.min(minimoMicros, micros);
+        maximoMicros = Math.max(maximoMicros, micros);
+    }
+
+    /**
+     * Percentil (0-100) en microsegundos, o 0 si no hay muestras.
+     */
+    public synchronized long percentil(double percentil) {
+        if (muestras == 0) {
+            return 0;
+        }
+        long objetivo = Math.max(1, (long) Math.ceil(percentil / 100.0 * muestras));
+        long acumuladas = 0;
+        for (int i = 0; i < CUBETAS; i++) {
+            acumuladas += cubetas[i];
+            if (acumuladas >= objetivo) {
+                return Math.max(minimoMicros, Math.min(maximoMicros, limiteSuperior(i)));
+            }
+        }
+        return maximoMicros;
+    }
+
+    public synchronized long getMuestras() {
+        return muestras;
+    }
+
+    public synchronized long getTotalMicros() {
+        return totalMicros;
+    }
+
+    public synchronized long getMinimoMicros() {
+        return muestras == 0 ? 0 : minimoMicros;
+    }
+
+    public synchronized long getMaximoMicros() {
+        return maximoMicros;
+    }
+
+    public synchronized double getMediaMicros() {
+        return muestras == 0 ? 0 : (double) totalMicros / muestras;
+    }
+}
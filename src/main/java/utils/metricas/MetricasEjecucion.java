@@ -0,0 +1,337 @@
+package utils.metricas;
+
+import net.serenitybdd.core.environment.ConfiguredEnvironment;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Latencias de la ejecución: pasos de Serenity, comandos del driver y pausas explícitas.
+ *
+ * Cada categoría lleva un {@link HistogramaLatencias} por nombre (paso, comando de WebDriver
+ * como findElement / getPageSource / screenshot / clickElement, u origen de la pausa). Para
+ * los pasos además se acumula cuánto de su duración se fue en comandos del driver y en
+ * pausas del mismo thread, que es lo que separa "el operador está lento" de "Appium está
+ * lento" o "nuestras esperas fijas son largas".
+ *
+ * Al terminar la suite {@link #escribir()} deja en la carpeta de métricas:
+ * - metricas.csv: una fila por paso / comando / pausa con percentiles
+ * - metricas.json: lo mismo en JSON
+ * - metricas.prom: formato de texto de Prometheus (summary con quantiles, _sum y _count)
+ *
+ * Configuración via system properties:
+ * - metricas.habilitadas: medir pasos, comandos y pausas (default: true)
+ * - metricas.dir: carpeta de salida (default: &lt;salida de Serenity&gt;/metricas)
+ */
+public class MetricasEjecucion {
+
+    public static final boolean HABILITADAS =
+            Boolean.parseBoolean(System.getProperty("metricas.habilitadas", "true"));
+
+    private static final double[] PERCENTILES = {50, 90, 95, 99};
+    private static final Pattern NUMEROS_LARGOS = Pattern.compile("\\d{4,}");
+    private static final MetricasEjecucion INSTANCIA = new MetricasEjecucion();
+
+    private final Map<String, AcumuladoPaso> pasos = new ConcurrentHashMap<>();
+    private final Map<String, HistogramaLatencias> comandos = new ConcurrentHashMap<>();
+    private final Map<String, HistogramaLatencias> pausas = new ConcurrentHashMap<>();
+    private final ThreadLocal<Deque<Marco>> marcos = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private MetricasEjecucion() {
+    }
+
+    public static MetricasEjecucion get() {
+        return INSTANCIA;
+    }
+
+    /**
+     * Nombre estable para agrupar: los números de 4 o más dígitos (líneas, montos) no cuentan;
+     * los códigos USSD cortos como *611# sí.
+     */
+    static String normalizar(String nombre) {
+        return NUMEROS_LARGOS.matcher(String.valueOf(nombre).trim()).replaceAll("N");
+    }
+
+    // =========================================================
+    // Registro
+    // =========================================================
+
+    /**
+     * Abre un paso en el thread actual. Los pasos se anidan (paso de Cucumber, tarea, interacción).
+     *
+     * @param omitido Paso que Serenity salta tras un fallo: se cierra pero no se mide
+     */
+    public void inicioPaso(String nombre, boolean omitido) {
+        marcos.get().push(new Marco(normalizar(nombre), omitido, System.nanoTime()));
+    }
+
+    /**
+     * Cierra el paso más interno del thread actual y registra su duración.
+     */
+    public void finPaso(boolean fallido) {
+        Marco marco = marcos.get().poll();
+        if (marco == null || marco.omitido) {
+            return;
+        }
+        long micros = (System.nanoTime() - marco.inicio) / 1000;
+        pasos.computeIfAbsent(marco.nombre, n -> new AcumuladoPaso()).registrar(micros, marco, fallido);
+    }
+
+    /**
+     * Descarta los pasos que quedaron abiertos (escenario interrumpido).
+     */
+    public void limpiarPasosAbiertos() {
+        marcos.get().clear();
+    }
+
+    public void comando(String nombre, long nanos) {
+        comandos.computeIfAbsent(nombre, n -> new HistogramaLatencias()).registrar(nanos / 1000);
+        for (Marco marco : marcos.get()) {
+            marco.comandosMicros += nanos / 1000;
+        }
+    }
+
+    public void pausa(String origen, long nanos) {
+        pausas.computeIfAbsent(origen, n -> new HistogramaLatencias()).registrar(nanos / 1000);
+        for (Marco marco : marcos.get()) {
+            marco.pausasMicros += nanos / 1000;
+        }
+    }
+
+    // =========================================================
+    // Resumen
+    // =========================================================
+
+    /**
+     * CSV con una fila por nombre; tiempos en milisegundos.
+     */
+    public String csv() {
+        StringBuilder csv = new StringBuilder(
+                "categoria,nombre,muestras,fallidos,total_ms,media_ms,p50_ms,p90_ms,p95_ms,p99_ms,max_ms,"
+                        + "comandos_media_ms,pausas_media_ms\n");
+        for (Map.Entry<String, AcumuladoPaso> paso : new TreeMap<>(pasos).entrySet()) {
+            AcumuladoPaso acumulado = paso.getValue();
+            filaCsv(csv, "paso", paso.getKey(), acumulado.duracion, acumulado.getFallidos());
+            csv.append(',').append(ms(acumulado.getComandosMediaMicros()))
+                    .append(',').append(ms(acumulado.getPausasMediaMicros())).append('\n');
+        }
+        for (Map.Entry<String, HistogramaLatencias> comando : new TreeMap<>(comandos).entrySet()) {
+            filaCsv(csv, "comando", comando.getKey(), comando.getValue(), 0);
+            csv.append(",,\n");
+        }
+        for (Map.Entry<String, HistogramaLatencias> pausa : new TreeMap<>(pausas).entrySet()) {
+            filaCsv(csv, "pausa", pausa.getKey(), pausa.getValue(), 0);
+            csv.append(",,\n");
+        }
+        return csv.toString();
+    }
+
+    private static void filaCsv(StringBuilder csv, String categoria, String nombre, HistogramaLatencias h,
+                                long fallidos) {
+        csv.append(categoria).append(',').append(campoCsv(nombre)).append(',')
+                .append(h.getMuestras()).append(',').append(fallidos).append(',')
+                .append(ms(h.getTotalMicros())).append(',').append(ms(h.getMediaMicros()));
+        for (double p : PERCENTILES) {
+            csv.append(',').append(ms(h.percentil(p)));
+        }
+        csv.append(',').append(ms(h.getMaximoMicros()));
+    }
+
+    private static String campoCsv(String valor) {
+        if (valor.contains(",") || valor.contains("\"") || valor.contains("\n")) {
+            return "\"" + valor.replace("\"", "\"\"") + "\"";
+        }
+        return valor;
+    }
+
+    public JSONObject json() {
+        JSONObject json = new JSONObject();
+        JSONArray listaPasos = new JSONArray();
+        for (Map.Entry<String, AcumuladoPaso> paso : new TreeMap<>(pasos).entrySet()) {
+            AcumuladoPaso acumulado = paso.getValue();
+            listaPasos.put(entradaJson(paso.getKey(), acumulado.duracion)
+                    .put("fallidos", acumulado.getFallidos())
+                    .put("comandos_media_ms", msJson(acumulado.getComandosMediaMicros()))
+                    .put("pausas_media_ms", msJson(acumulado.getPausasMediaMicros())));
+        }
+        json.put("pasos", listaPasos);
+        json.put("comandos", entradasJson(comandos));
+        json.put("pausas", entradasJson(pausas));
+        return json;
+    }
+
+    private static JSONArray entradasJson(Map<String, HistogramaLatencias> histogramas) {
+        JSONArray lista = new JSONArray();
+        for (Map.Entry<String, HistogramaLatencias> entrada : new TreeMap<>(histogramas).entrySet()) {
+            lista.put(entradaJson(entrada.getKey(), entrada.getValue()));
+        }
+        return lista;
+    }
+
+    private static JSONObject entradaJson(String nombre, HistogramaLatencias h) {
+        JSONObject entrada = new JSONObject()
+                .put("nombre", nombre)
+                .put("muestras", h.getMuestras())
+                .put("total_ms", msJson(h.getTotalMicros()))
+                .put("media_ms", msJson(h.getMediaMicros()))
+                .put("min_ms", msJson(h.getMinimoMicros()))
+                .put("max_ms", msJson(h.getMaximoMicros()));
+        for (double p : PERCENTILES) {
+            entrada.put("p" + (int) p + "_ms", msJson(h.percentil(p)));
+        }
+        return entrada;
+    }
+
+    /**
+     * Formato de texto de Prometheus: un summary por categoría, en segundos.
+     */
+    public String prometheus() {
+        StringBuilder prom = new StringBuilder();
+        Map<String, HistogramaLatencias> duracionPasos = new TreeMap<>();
+        pasos.forEach((nombre, acumulado) -> duracionPasos.put(nombre, acumulado.duracion));
+        summary(prom, "ussd_paso_duracion_segundos", "Duración de los pasos de Serenity", "paso", duracionPasos);
+        summary(prom, "ussd_comando_driver_duracion_segundos", "Duración de los comandos de WebDriver",
+                "comando", new TreeMap<>(comandos));
+        summary(prom, "ussd_pausa_duracion_segundos", "Duración de las pausas explícitas", "origen",
+                new TreeMap<>(pausas));
+
+        prom.append("# HELP ussd_paso_fallidos_total Pasos fallidos por nombre\n")
+                .append("# TYPE ussd_paso_fallidos_total counter\n");
+        for (Map.Entry<String, AcumuladoPaso> paso : new TreeMap<>(pasos).entrySet()) {
+            prom.append("ussd_paso_fallidos_total{paso=\"").append(etiqueta(paso.getKey())).append("\"} ")
+                    .append(paso.getValue().getFallidos()).append('\n');
+        }
+        return prom.toString();
+    }
+
+    private static void summary(StringBuilder prom, String metrica, String ayuda, String etiqueta,
+                                Map<String, HistogramaLatencias> histogramas) {
+        prom.append("# HELP ").append(metrica).append(' ').append(ayuda).append('\n')
+                .append("# TYPE ").append(metrica).append(" summary\n");
+        for (Map.Entry<String, HistogramaLatencias> entrada : histogramas.entrySet()) {
+            String valor = etiqueta + "=\"" + etiqueta(entrada.getKey()) + "\"";
+            HistogramaLatencias h = entrada.getValue();
+            for (double p : PERCENTILES) {
+                prom.append(metrica).append('{').append(valor).append(",quantile=\"")
+                        .append(String.format(Locale.ROOT, "%.2f", p / 100)).append("\"} ")
+                        .append(segundos(h.percentil(p))).append('\n');
+            }
+            prom.append(metrica).append("_sum{").append(valor).append("} ").append(segundos(h.getTotalMicros())).append('\n');
+            prom.append(metrica).append("_count{").append(valor).append("} ").append(h.getMuestras()).append('\n');
+        }
+    }
+
+    private static String etiqueta(String valor) {
+        return valor.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String ms(double micros) {
+        return String.format(Locale.ROOT, "%.1f", micros / 1000.0);
+    }
+
+    private static double msJson(double micros) {
+        return Math.round(micros / 100.0) / 10.0;
+    }
+
+    private static String segundos(long micros) {
+        return String.format(Locale.ROOT, "%.6f", micros / 1_000_000.0);
+    }
+
+    /**
+     * Escribe metricas.csv, metricas.json y metricas.prom. Con forks de Gradle cada JVM
+     * agrega su número de worker al nombre para no pisar los archivos de las demás.
+     */
+    public synchronized List<File> escribir() {
+        List<File> archivos = new ArrayList<>();
+        if (pasos.isEmpty() && comandos.isEmpty() && pausas.isEmpty()) {
+            return archivos;
+        }
+        File carpeta = carpeta();
+        carpeta.mkdirs();
+        String worker = System.getProperty("org.gradle.test.worker");
+        String base = worker != null ? "metricas-" + worker : "metricas";
+        try {
+            archivos.add(escribir(new File(carpeta, base + ".csv"), csv()));
+            archivos.add(escribir(new File(carpeta, base + ".json"), json().toString(2)));
+            archivos.add(escribir(new File(carpeta, base + ".prom"), prometheus()));
+            System.out.println("📊 [MetricasEjecucion] " + pasos.size() + " pasos, " + comandos.size()
+                    + " tipos de comando y " + pausas.size() + " orígenes de pausa en " + carpeta.getPath());
+        } catch (IOException e) {
+            System.err.println("⚠️ [MetricasEjecucion] No se pudieron escribir las métricas: " + e.getMessage());
+        }
+        return archivos;
+    }
+
+    private static File escribir(File archivo, String contenido) throws IOException {
+        Files.write(archivo.toPath(), contenido.getBytes(StandardCharsets.UTF_8));
+        return archivo;
+    }
+
+    private static File carpeta() {
+        String configurada = System.getProperty("metricas.dir");
+        if (configurada != null && !configurada.trim().isEmpty()) {
+            return new File(configurada.trim());
+        }
+        return new File(ConfiguredEnvironment.getConfiguration().getOutputDirectory(), "metricas");
+    }
+
+    /**
+     * Paso abierto en un thread: inicio y tiempo acumulado en comandos y pausas mientras dura.
+     */
+    private static final class Marco {
+        private final String nombre;
+        private final boolean omitido;
+        private final long inicio;
+        private long comandosMicros;
+        private long pausasMicros;
+
+        private Marco(String nombre, boolean omitido, long inicio) {
+            this.nombre = nombre;
+            this.omitido = omitido;
+            this.inicio = inicio;
+        }
+    }
+
+    private static final class AcumuladoPaso {
+        private final HistogramaLatencias duracion = new HistogramaLatencias();
+        private long comandosMicros;
+        private long pausasMicros;
+        private long fallidos;
+
+        private synchronized void registrar(long micros, Marco marco, boolean fallido) {
+            duracion.registrar(micros);
+            comandosMicros += marco.comandosMicros;
+            pausasMicros += marco.pausasMicros;
+            if (fallido) {
+                fallidos++;
+            }
+        }
+
+        private synchronized long getFallidos() {
+            return fallidos;
+        }
+
+        private synchronized double getComandosMediaMicros() {
+            long muestras = duracion.getMuestras();
+            return muestras == 0 ? 0 : (double) comandosMicros / muestras;
+        }
+
+        private synchronized double getPausasMediaMicros() {
+            long muestras = duracion.getMuestras();
+            return muestras == 0 ? 0 : (double) pausasMicros / muestras;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package utils.metricas;
+
+import utils.grabacion.Grabacion;
+
+/**
+ * Pausas explícitas medidas: mismo efecto que Thread.sleep, registrando la duración real
+ * en {@link MetricasEjecucion} bajo el origen indicado ("Clase.motivo"). Al reproducir una
+ * grabación la pausa se escala con grabacion.escalaPausas.
+ */
+public final class Pausas {
+
+    private Pausas() {
+    }
+
+    public static void dormir(String origen, long ms) throws InterruptedException {
+        long inicio = System.nanoTime();
+        try {
+            Thread.sleep(Grabacion.pausa(ms));
+        } finally {
+            registrar(origen, System.nanoTime() - inicio);
+        }
+    }
+
+    /**
+     * Registra una pausa hecha por otro medio (por ejemplo el reloj de Serenity).
+     */
+    public static void registrar(String origen, long nanos) {
+        if (MetricasEjecucion.HABILITADAS) {
+            MetricasEjecucion.get().pausa(origen, nanos);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package utils.ollama;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Agrupa los fallos de la suite por similitud para analizar cada fallo distinto una sola vez.
+ *
+ * Dos fallos caen en el mismo grupo si coinciden el tipo de excepción, el localizador
+ * normalizado y la forma del page source (mismas normalizaciones que {@link CacheAnalisis}:
+ * los números de 3 o más dígitos no cuentan). El paso no forma parte de la huella: una
+ * caída del operador hace fallar escenarios distintos con la misma pantalla.
+ *
+ * El primer fallo de cada grupo es el representante que se envía al modelo; los demás
+ * quedan como miembros y reciben el análisis compartido cuando termina (o de inmediato,
+ * si ya terminó). Al final de la suite {@link #resumen()} da la tabla de grupos.
+ *
+ * Configuración via system properties:
+ * - ollama.agrupar: agrupar fallos similares (default: true; con false cada fallo es su propio grupo)
+ *
+ * @param <D> Destino donde se adjunta el resultado de cada miembro (el paso de Serenity)
+ */
+public class AgrupadorFallos<D> {
+
+    private static final boolean AGRUPAR = Boolean.parseBoolean(System.getProperty("ollama.agrupar", "true"));
+    private static final DateTimeFormatter HORA = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    private final Map<String, Grupo<D>> grupos = new LinkedHashMap<>();
+    private final AtomicLong secuencia = new AtomicLong();
+
+    /**
+     * Huella de agrupación del fallo.
+     */
+    static String huella(FailureContext context, OllamaAnalyzer.AnalysisType tipo) {
+        return tipo + "\n"
+                + CacheAnalisis.tipoExcepcion(context.getStackTrace()) + "\n"
+                + CacheAnalisis.normalizar(context.getElementLocator()) + "\n"
+                + CacheAnalisis.hashEstructural(context.getPageSource());
+    }
+
+    /**
+     * Registra un fallo en su grupo (lo crea si es el primero de su huella).
+     *
+     * @param destino Donde adjuntar el análisis para este fallo
+     * @return El miembro registrado; {@link Miembro#esRepresentante()} indica si hay que analizarlo
+     */
+    public Miembro<D> registrar(FailureContext context, OllamaAnalyzer.AnalysisType tipo, D destino) {
+        String huella = AGRUPAR ? huella(context, tipo) : "#" + secuencia.incrementAndGet();
+        Grupo<D> grupo;
+        synchronized (grupos) {
+            grupo = grupos.get(huella);
+            if (grupo == null) {
+                grupo = new Grupo<>("G" + (grupos.size() + 1), tipo, context);
+                grupos.put(huella, grupo);
+            }
+        }
+        return grupo.agregar(context, destino);
+    }
+
+    public int cantidadGrupos() {
+        synchronized (grupos) {
+            return grupos.size();
+        }
+    }
+
+    public List<Grupo<D>> grupos() {
+        synchronized (grupos) {
+            return new ArrayList<>(grupos.values());
+        }
+    }
+
+    /**
+     * Tabla de texto con un grupo por fila, ordenada por tamaño (mayor primero).
+     */
+    public String resumen() {
+        List<Grupo<D>> ordenados = grupos();
+        ordenados.sort((a, b) -> Integer.compare(b.tamanio(), a.tamanio()));
+        StringBuilder tabla = new StringBuilder();
+        tabla.append(String.format("%-5s %6s  %-18s %-8s %-8s %-14s %s%n",
+                "Grupo", "Fallos", "Tipo", "Primera", "Última", "Análisis", "Escenarios"));
+        for (Grupo<D> grupo : ordenados) {
+            tabla.append(String.format("%-5s %6d  %-18s %-8s %-8s %-14s %s%n",
+                    grupo.getId(), grupo.tamanio(), grupo.getTipo(),
+                    grupo.getPrimera().format(HORA), grupo.getUltima().format(HORA),
+                    grupo.getEstado(), String.join(", ", grupo.escenarios())));
+        }
+        return tabla.toString();
+    }
+
+    public enum Estado { PENDIENTE, ANALIZADO, NO_ANALIZADO }
+
+    /**
+     * Fallos con la misma huella y el análisis compartido.
+     */
+    public static final class Grupo<D> {
+        private final String id;
+        private final OllamaAnalyzer.AnalysisType tipo;
+        private final FailureContext representante;
+        private final List<Miembro<D>> miembros = new ArrayList<>();
+        private Estado estado = Estado.PENDIENTE;
+        private String titulo;
+        private String html;
+
+        private Grupo(String id, OllamaAnalyzer.AnalysisType tipo, FailureContext representante) {
+            this.id = id;
+            this.tipo = tipo;
+            this.representante = representante;
+        }
+
+        private synchronized Miembro<D> agregar(FailureContext context, D destino) {
+            Miembro<D> miembro = new Miembro<>(this, context, destino, miembros.isEmpty(), estado != Estado.PENDIENTE);
+            miembros.add(miembro);
+            return miembro;
+        }
+
+        /**
+         * Fija el resultado del análisis del representante. Los miembros que lleguen después
+         * quedan con {@link Miembro#llegoResuelto()} y se adjuntan al registrarse.
+         *
+         * @return Los miembros ya registrados (sin el representante) a los que hay que adjuntar el resultado
+         */
+        public synchronized List<Miembro<D>> completar(Estado estadoFinal, String titulo, String html) {
+            this.estado = estadoFinal;
+            this.titulo = titulo;
+            this.html = html;
+            return new ArrayList<>(miembros.subList(1, miembros.size()));
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public OllamaAnalyzer.AnalysisType getTipo() {
+            return tipo;
+        }
+
+        public FailureContext getRepresentante() {
+            return representante;
+        }
+
+        public synchronized Estado getEstado() {
+            return estado;
+        }
+
+        /**
+         * Título del resultado, o null mientras el análisis está pendiente.
+         */
+        public synchronized String getTitulo() {
+            return titulo;
+        }
+
+        public synchronized String getHtml() {
+            return html;
+        }
+
+        public synchronized int tamanio() {
+            return miembros.size();
+        }
+
+        public synchronized List<Miembro<D>> getMiembros() {
+            return Collections.unmodifiableList(new ArrayList<>(miembros));
+        }
+
+        public synchronized LocalDateTime getPrimera() {
+            return miembros.get(0).getContext().getTimestamp();
+        }
+
+        public synchronized LocalDateTime getUltima() {
+            return miembros.get(miembros.size() - 1).getContext().getTimestamp();
+        }
+
+        /**
+         * Escenarios afectados, sin repetir, en orden de aparición.
+         */
+        public synchronized Set<String> escenarios() {
+            Set<String> nombres = new LinkedHashSet<>();
+            for (Miembro<D> miembro : miembros) {
+                nombres.add(String.valueOf(miembro.getContext().getTestName()));
+            }
+            return nombres;
+        }
+    }
+
+    /**
+     * Un fallo concreto dentro de su grupo.
+     */
+    public static final class Miembro<D> {
+        private final Grupo<D> grupo;
+        private final FailureContext context;
+        private final D destino;
+        private final boolean representante;
+        private final boolean llegoResuelto;
+
+        private Miembro(Grupo<D> grupo, FailureContext context, D destino, boolean representante,
+                        boolean llegoResuelto) {
+            this.grupo = grupo;
+            this.context = context;
+            this.destino = destino;
+            this.representante = representante;
+            this.llegoResuelto = llegoResuelto;
+        }
+
+        public Grupo<D> getGrupo() {
+            return grupo;
+        }
+
+        public FailureContext getContext() {
+            return context;
+        }
+
+        public D getDestino() {
+            return destino;
+        }
+
+        public boolean esRepresentante() {
+            return representante;
+        }
+
+        /**
+         * true si el grupo ya tenía resultado al registrarse este fallo: hay que adjuntarlo
+         * en el momento, {@link Grupo#completar} ya no lo va a incluir.
+         */
+        public boolean llegoResuelto() {
+            return llegoResuelto;
+        }
+    }
+}
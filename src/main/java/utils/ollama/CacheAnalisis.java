@@ -0,0 +1,234 @@
+package utils.ollama;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cache en disco de análisis de Ollama por huella del fallo.
+ *
+ * La huella combina el tipo de excepción, el localizador normalizado, el paso (sin el
+ * diagnóstico que agrega Selenium: Build info, Session ID...) y un hash estructural de
+ * los elementos relevantes del page source (clase, resource-id, text y content-desc de
+ * los nodos con contenido; sin bounds ni estados). Los
+ * números de 3 o más dígitos se reemplazan por '#' para que saldos, fechas o
+ * teléfonos no cambien la huella, pero sí cuentan las opciones de menú ("3. ...").
+ * El modelo y {@link OllamaAnalyzer#PROMPT_VERSION} forman parte de la clave: cambiar
+ * cualquiera de los dos invalida las entradas anteriores.
+ *
+ * Cada entrada es un archivo &lt;clave&gt;.txt; se expulsan primero las menos usadas
+ * recientemente (fecha de modificación, que se actualiza en cada acierto) cuando se
+ * supera el máximo de entradas o de tamaño.
+ *
+ * Configuración via system properties:
+ * - ollama.cache.enabled: usar la cache (default: true)
+ * - ollama.cache.dir: carpeta de la cache (default: ollama-cache)
+ * - ollama.cache.max.entradas: entradas máximas (default: 500)
+ * - ollama.cache.max.mb: tamaño máximo en MB (default: 20)
+ */
+public class CacheAnalisis {
+
+    private static final boolean HABILITADA = Boolean.parseBoolean(System.getProperty("ollama.cache.enabled", "true"));
+    private static final int MAX_ENTRADAS = Integer.getInteger("ollama.cache.max.entradas", 500);
+    private static final long MAX_BYTES = Integer.getInteger("ollama.cache.max.mb", 20) * 1024L * 1024L;
+
+    private static final Pattern NODO = Pattern.compile("<[\\w.$]+\\s[^>]*>");
+    private static final Pattern DIGITOS = Pattern.compile("\\d{3,}");
+    private static final Pattern DIAGNOSTICO =
+            Pattern.compile("^(Build info|System info|Driver info|Session ID):", Pattern.MULTILINE);
+
+    private final File carpeta;
+    /** clave → tamaño en bytes, en orden de uso (el primero es el menos reciente) */
+    private final LinkedHashMap<String, Long> entradas = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytesTotales;
+
+    public CacheAnalisis() {
+        this(new File(System.getProperty("ollama.cache.dir", "ollama-cache")));
+    }
+
+    public CacheAnalisis(File carpeta) {
+        this.carpeta = carpeta;
+        cargarIndice();
+    }
+
+    /**
+     * Clave de cache para el fallo, el tipo de análisis y el modelo.
+     */
+    public static String clave(FailureContext context, OllamaAnalyzer.AnalysisType tipo, String modelo) {
+        StringBuilder huella = new StringBuilder()
+                .append(modelo).append('\n')
+                .append(OllamaAnalyzer.PROMPT_VERSION).append('\n')
+                .append(tipo).append('\n')
+                .append(tipoExcepcion(context.getStackTrace())).append('\n')
+                .append(normalizar(context.getElementLocator())).append('\n')
+                .append(normalizar(sinDiagnostico(context.getStepDescription()))).append('\n')
+                .append(hashEstructural(context.getPageSource()));
+        return sha1(huella.toString());
+    }
+
+    /**
+     * Análisis guardado para la clave, o null si no hay (o la cache está deshabilitada).
+     */
+    public synchronized String obtener(String clave) {
+        if (!HABILITADA || !entradas.containsKey(clave)) {
+            return null;
+        }
+        File archivo = archivo(clave);
+        try {
+            String analisis = new String(Files.readAllBytes(archivo.toPath()), StandardCharsets.UTF_8);
+            entradas.get(clave); // marca el uso en el orden LRU
+            archivo.setLastModified(System.currentTimeMillis());
+            return analisis;
+        } catch (IOException e) {
+            quitar(clave);
+            return null;
+        }
+    }
+
+    public synchronized void guardar(String clave, String analisis) {
+        if (!HABILITADA || analisis == null || analisis.trim().isEmpty()) {
+            return;
+        }
+        try {
+            carpeta.mkdirs();
+            byte[] contenido = analisis.getBytes(StandardCharsets.UTF_8);
+            Files.write(archivo(clave).toPath(), contenido);
+            Long anterior = entradas.put(clave, (long) contenido.length);
+            bytesTotales += contenido.length - (anterior != null ? anterior : 0);
+            expulsar();
+        } catch (IOException e) {
+            System.err.println("⚠️ [CacheAnalisis] No se pudo guardar en " + carpeta + ": " + e.getMessage());
+        }
+    }
+
+    public synchronized int tamanio() {
+        return entradas.size();
+    }
+
+    private void expulsar() {
+        Iterator<Map.Entry<String, Long>> it = entradas.entrySet().iterator();
+        while ((entradas.size() > MAX_ENTRADAS || bytesTotales > MAX_BYTES) && it.hasNext()) {
+            Map.Entry<String, Long> masAntigua = it.next();
+            archivo(masAntigua.getKey()).delete();
+            bytesTotales -= masAntigua.getValue();
+            it.remove();
+        }
+    }
+
+    private void quitar(String clave) {
+        Long tamanio = entradas.remove(clave);
+        if (tamanio != null) {
+            bytesTotales -= tamanio;
+        }
+    }
+
+    private void cargarIndice() {
+        File[] archivos = carpeta.listFiles((dir, nombre) -> nombre.endsWith(".txt"));
+        if (archivos == null) {
+            return;
+        }
+        Arrays.sort(archivos, Comparator.comparingLong(File::lastModified));
+        for (File archivo : archivos) {
+            String nombre = archivo.getName();
+            entradas.put(nombre.substring(0, nombre.length() - 4), archivo.length());
+            bytesTotales += archivo.length();
+        }
+        expulsar();
+        if (!entradas.isEmpty()) {
+            System.out.println("💾 [CacheAnalisis] " + entradas.size() + " análisis en cache (" + carpeta.getPath() + ")");
+        }
+    }
+
+    private File archivo(String clave) {
+        return new File(carpeta, clave + ".txt");
+    }
+
+    /**
+     * Primera línea del stack trace hasta ':' (nombre de la clase de la excepción).
+     */
+    static String tipoExcepcion(String stackTrace) {
+        if (stackTrace == null) {
+            return "";
+        }
+        String primera = stackTrace.split("\n", 2)[0];
+        int dosPuntos = primera.indexOf(':');
+        return (dosPuntos != -1 ? primera.substring(0, dosPuntos) : primera).trim();
+    }
+
+    /**
+     * Mensaje del paso sin el diagnóstico que Selenium agrega al final (Build info,
+     * System info, Driver info, Session ID...), que cambia en cada corrida.
+     */
+    static String sinDiagnostico(String mensaje) {
+        if (mensaje == null) {
+            return null;
+        }
+        Matcher diagnostico = DIAGNOSTICO.matcher(mensaje);
+        return diagnostico.find() ? mensaje.substring(0, diagnostico.start()) : mensaje;
+    }
+
+    static String normalizar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        return DIGITOS.matcher(texto.trim().replaceAll("\\s+", " ").toLowerCase()).replaceAll("#");
+    }
+
+    /**
+     * Hash de la estructura visible: clase, resource-id, text y content-desc de cada nodo
+     * que tenga texto, id o descripción, en el orden del documento.
+     */
+    static String hashEstructural(String pageSource) {
+        if (pageSource == null || pageSource.isEmpty()) {
+            return "";
+        }
+        StringBuilder estructura = new StringBuilder();
+        Matcher nodos = NODO.matcher(pageSource);
+        while (nodos.find()) {
+            String nodo = nodos.group();
+            String texto = atributo(nodo, "text");
+            String id = atributo(nodo, "resource-id");
+            String descripcion = atributo(nodo, "content-desc");
+            if (texto.isEmpty() && id.isEmpty() && descripcion.isEmpty()) {
+                continue;
+            }
+            estructura.append(atributo(nodo, "class")).append('|')
+                    .append(id).append('|')
+                    .append(normalizar(texto)).append('|')
+                    .append(normalizar(descripcion)).append('\n');
+        }
+        return sha1(estructura.toString());
+    }
+
+    private static String atributo(String nodo, String nombre) {
+        int inicio = nodo.indexOf(" " + nombre + "=\"");
+        if (inicio == -1) {
+            return "";
+        }
+        inicio += nombre.length() + 3;
+        int fin = nodo.indexOf('"', inicio);
+        return fin == -1 ? "" : nodo.substring(inicio, fin);
+    }
+
+    private static String sha1(String texto) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(texto.getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
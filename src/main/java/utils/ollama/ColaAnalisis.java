@@ -0,0 +1,129 @@
+package utils.ollama;
+
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cola acotada de análisis de fallos con Ollama.
+ *
+ * El thread del test solo captura el contexto y encola; los análisis corren en un
+ * pool propio, atendiendo primero los tipos de fallo más útiles de analizar
+ * (ELEMENT_NOT_FOUND antes que TIMEOUT, STALE_ELEMENT y GENERAL) y, dentro del mismo
+ * tipo, en orden de llegada. Si la cola está llena, o si al drenar quedan análisis
+ * sin empezar, se invoca el callback de descarte de cada uno para que quede
+ * constancia: ningún análisis se pierde en silencio.
+ *
+ * Configuración via system properties:
+ * - ollama.analisis.hilos: análisis en paralelo (default: 1, el modelo local no gana con más)
+ * - ollama.analisis.cola: análisis pendientes como máximo (default: 20)
+ */
+public class ColaAnalisis {
+
+    private static final int HILOS = Integer.getInteger("ollama.analisis.hilos", 1);
+    private static final int CAPACIDAD = Integer.getInteger("ollama.analisis.cola", 20);
+
+    private final ThreadPoolExecutor pool;
+    private final AtomicInteger pendientes = new AtomicInteger();
+    private final AtomicLong secuencia = new AtomicLong();
+
+    public ColaAnalisis() {
+        // execute() (no submit) para que la cola ordene las Tarea por Comparable
+        this.pool = new ThreadPoolExecutor(HILOS, HILOS, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "ColaAnalisis-ollama");
+                    // Daemon: el fin de la suite espera con drenar(), acotado, no el JVM
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Encola un análisis.
+     *
+     * @param tipo Tipo de fallo (define la prioridad)
+     * @param analisis Trabajo a ejecutar en segundo plano
+     * @param siDescartado Se ejecuta en lugar del análisis si la cola está llena o se drena sin empezarlo
+     * @return false si la cola estaba llena (ya se ejecutó siDescartado)
+     */
+    public boolean encolar(OllamaAnalyzer.AnalysisType tipo, Runnable analisis, Runnable siDescartado) {
+        if (pendientes.incrementAndGet() > CAPACIDAD || pool.isShutdown()) {
+            pendientes.decrementAndGet();
+            siDescartado.run();
+            return false;
+        }
+        pool.execute(new Tarea(tipo, secuencia.incrementAndGet(), analisis, siDescartado));
+        return true;
+    }
+
+    public int pendientes() {
+        return pendientes.get();
+    }
+
+    /**
+     * Espera a que terminen los análisis encolados (fin de la suite). Los que no
+     * llegaron a empezar dentro del plazo se descartan con su callback.
+     *
+     * @param segundos Espera máxima
+     * @return Análisis que no terminaron a tiempo
+     */
+    public int drenar(long segundos) {
+        pool.shutdown();
+        try {
+            if (pool.awaitTermination(segundos, TimeUnit.SECONDS)) {
+                return 0;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int sinTerminar = pendientes.get();
+        List<Runnable> sinEmpezar = pool.shutdownNow();
+        for (Runnable r : sinEmpezar) {
+            ((Tarea) r).descartar();
+        }
+        return sinTerminar;
+    }
+
+    private final class Tarea implements Runnable, Comparable<Tarea> {
+        private final OllamaAnalyzer.AnalysisType tipo;
+        private final long orden;
+        private final Runnable analisis;
+        private final Runnable siDescartado;
+
+        private Tarea(OllamaAnalyzer.AnalysisType tipo, long orden, Runnable analisis, Runnable siDescartado) {
+            this.tipo = tipo;
+            this.orden = orden;
+            this.analisis = analisis;
+            this.siDescartado = siDescartado;
+        }
+
+        @Override
+        public void run() {
+            try {
+                analisis.run();
+            } finally {
+                pendientes.decrementAndGet();
+            }
+        }
+
+        private void descartar() {
+            try {
+                siDescartado.run();
+            } finally {
+                pendientes.decrementAndGet();
+            }
+        }
+
+        @Override
+        public int compareTo(Tarea otra) {
+            // El orden del enum ya es la prioridad: ELEMENT_NOT_FOUND primero
+            int porTipo = tipo.compareTo(otra.tipo);
+            return porTipo != 0 ? porTipo : Long.compare(orden, otra.orden);
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package utils.ollama;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Resumen del page source de UiAutomator para el prompt.
+ *
+ * Parsea el XML una sola vez y conserva solo los nodos con text, content-desc,
+ * resource-id o clickable, con sus bounds. Los layouts sin contenido desaparecen y
+ * sus hijos suben de nivel; un contenedor sin texto con un único hijo de los
+ * mismos bounds se fusiona con él, y las líneas repetidas bajo el mismo padre se
+ * omiten. Los saltos de línea del texto (menús USSD) se muestran como " | ".
+ * El resultado es un esquema indentado, por ejemplo:
+ *
+ * <pre>
+ * FrameLayout id=android:id/content [0,0][1080,1920]
+ *   TextView "1. Paquetes" id=android:id/message [60,400][1020,460]
+ *   EditText id=com.android.phone:id/input_field clickable [60,900][1020,980]
+ *   Button "Enviar" id=android:id/button1 clickable [540,1000][1020,1100]
+ * </pre>
+ *
+ * Si no cabe en el presupuesto, primero se descartan los nodos sin texto ni
+ * descripción, salvo los controles del diálogo USSD (input_field, button1...) y el
+ * nodo cuyo id coincide con el localizador que falló. Una línea muy larga (un menú
+ * USSD extenso) se recorta en lugar de cortar todo lo que viene después; lo que aun
+ * así no cabe se omite con una nota de cuántos elementos quedaron fuera.
+ *
+ * Configuración via system properties:
+ * - ollama.prompt.tokens.pantalla: tokens aproximados para la pantalla (default: 750, ~4 caracteres por token)
+ */
+public class CompactadorPageSource {
+
+    private static final int TOKENS_POR_DEFECTO = Integer.getInteger("ollama.prompt.tokens.pantalla", 750);
+    private static final int CARACTERES_POR_TOKEN = 4;
+
+    /** Controles del diálogo USSD: se conservan aunque no tengan texto */
+    private static final Set<String> IDS_USSD = new HashSet<>(Arrays.asList(
+            "com.android.phone:id/input_field",
+            "android:id/message",
+            "android:id/progress",
+            "android:id/button1",
+            "android:id/button2",
+            "android:id/button3"));
+
+    /** Ninguna línea ocupa más de esta fracción del presupuesto */
+    private static final int FRACCION_MAXIMA_LINEA = 3;
+
+    private CompactadorPageSource() {
+    }
+
+    /**
+     * Esquema con el presupuesto configurado.
+     *
+     * @return null si el page source no es XML válido (el llamador decide el respaldo)
+     */
+    public static String compactar(String pageSource) {
+        return compactar(pageSource, TOKENS_POR_DEFECTO, null);
+    }
+
+    /**
+     * Esquema con el presupuesto configurado que conserva el nodo del localizador que falló.
+     *
+     * @param localizador Localizador del fallo (By.id, resourceId(...)); null si no hay
+     * @return null si el page source no es XML válido
+     */
+    public static String compactar(String pageSource, String localizador) {
+        return compactar(pageSource, TOKENS_POR_DEFECTO, localizador);
+    }
+
+    /**
+     * @param presupuestoTokens Tokens aproximados que puede ocupar el resultado
+     * @return null si el page source no es XML válido
+     */
+    public static String compactar(String pageSource, int presupuestoTokens) {
+        return compactar(pageSource, presupuestoTokens, null);
+    }
+
+    /**
+     * @param presupuestoTokens Tokens aproximados que puede ocupar el resultado
+     * @param localizador Localizador del fallo; su nodo se conserva aunque no tenga texto
+     * @return null si el page source no es XML válido
+     */
+    public static String compactar(String pageSource, int presupuestoTokens, String localizador) {
+        if (pageSource == null || pageSource.trim().isEmpty()) {
+            return null;
+        }
+        Nodo raiz;
+        try {
+            raiz = parsear(pageSource);
+        } catch (Exception e) {
+            return null;
+        }
+
+        List<Linea> lineas = new ArrayList<>();
+        for (Nodo hijo : raiz.hijos) {
+            aplanar(hijo, 0, lineas);
+        }
+
+        int presupuesto = presupuestoTokens * CARACTERES_POR_TOKEN;
+        if (largo(lineas) > presupuesto) {
+            // Lo primero que sobra: contenedores e ids sin texto visible, salvo los que importan
+            List<Linea> conservadas = new ArrayList<>();
+            for (Linea linea : lineas) {
+                if (linea.tieneTexto || IDS_USSD.contains(linea.id) || coincide(linea.id, localizador)) {
+                    conservadas.add(linea);
+                }
+            }
+            lineas = conservadas;
+        }
+
+        int maximoLinea = Math.max(1, presupuesto / FRACCION_MAXIMA_LINEA);
+        StringBuilder esquema = new StringBuilder();
+        int emitidas = 0;
+        for (Linea linea : lineas) {
+            String texto = linea.recortada(maximoLinea);
+            if (esquema.length() + texto.length() + 1 > presupuesto) {
+                // No se corta el resto: una línea más corta (un botón) todavía puede caber
+                continue;
+            }
+            esquema.append(texto).append('\n');
+            emitidas++;
+        }
+        if (emitidas < lineas.size()) {
+            esquema.append("[... ").append(lineas.size() - emitidas).append(" elementos omitidos por tamaño]\n");
+        }
+        esquema.append("[Total: ").append(lineas.size()).append(" elementos relevantes]");
+        return esquema.toString();
+    }
+
+    /**
+     * El id del nodo aparece en el localizador completo ("com.android.phone:id/input_field")
+     * o como nombre corto ("input_field").
+     */
+    private static boolean coincide(String id, String localizador) {
+        if (id.isEmpty() || localizador == null || localizador.isEmpty()) {
+            return false;
+        }
+        if (localizador.contains(id)) {
+            return true;
+        }
+        String corto = id.substring(id.indexOf(":id/") + 1).replaceFirst("^id/", "");
+        return !corto.isEmpty()
+                && Pattern.compile("(^|[^\\w])" + Pattern.quote(corto) + "($|[^\\w])").matcher(localizador).find();
+    }
+
+    private static Nodo parsear(String pageSource) throws Exception {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        try {
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        } catch (Exception ignorada) {
+            // Parser sin esa característica: el page source de Appium no trae DTD
+        }
+        SAXParser parser = factory.newSAXParser();
+        Nodo raiz = new Nodo(null, null);
+        Deque<Nodo> pila = new ArrayDeque<>();
+        pila.push(raiz);
+        parser.parse(new InputSource(new StringReader(pageSource)), new DefaultHandler() {
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes atributos) {
+                Nodo nodo = new Nodo(qName, atributos);
+                pila.peek().hijos.add(nodo);
+                pila.push(nodo);
+            }
+
+            @Override
+            public void endElement(String uri, String localName, String qName) {
+                pila.pop();
+            }
+        });
+        return raiz;
+    }
+
+    /**
+     * Recorre el árbol: los nodos sin contenido no generan línea y sus hijos quedan a la
+     * profundidad del nodo; las líneas repetidas entre hermanos se omiten.
+     */
+    private static void aplanar(Nodo nodo, int profundidad, List<Linea> lineas) {
+        Nodo actual = fusionarEnvoltorios(nodo);
+        int nivelHijos = profundidad;
+        if (actual.relevante()) {
+            lineas.add(new Linea(profundidad, actual));
+            nivelHijos = profundidad + 1;
+        }
+        Set<String> vistas = new HashSet<>();
+        for (Nodo hijo : actual.hijos) {
+            List<Linea> delHijo = new ArrayList<>();
+            aplanar(hijo, nivelHijos, delHijo);
+            StringBuilder clave = new StringBuilder();
+            for (Linea linea : delHijo) {
+                clave.append(linea.texto).append('\n');
+            }
+            if (delHijo.isEmpty() || vistas.add(clave.toString())) {
+                lineas.addAll(delHijo);
+            }
+        }
+    }
+
+    /**
+     * Contenedor sin texto con un único hijo de los mismos bounds: es el mismo elemento en
+     * pantalla, se deja solo el hijo con el id/clickable del contenedor si no tiene propios.
+     */
+    private static Nodo fusionarEnvoltorios(Nodo nodo) {
+        Nodo actual = nodo;
+        while (actual.hijos.size() == 1 && actual.texto.isEmpty() && actual.descripcion.isEmpty()
+                && actual.bounds.equals(actual.hijos.get(0).bounds)) {
+            Nodo hijo = actual.hijos.get(0);
+            if (hijo.id.isEmpty()) {
+                hijo.id = actual.id;
+            }
+            hijo.clickable |= actual.clickable;
+            actual = hijo;
+        }
+        return actual;
+    }
+
+    private static int largo(List<Linea> lineas) {
+        int total = 0;
+        for (Linea linea : lineas) {
+            total += linea.texto.length() + 1;
+        }
+        return total;
+    }
+
+    private static final class Nodo {
+        private final String clase;
+        private final String texto;
+        private final String descripcion;
+        private final String bounds;
+        private String id;
+        private boolean clickable;
+        private final List<Nodo> hijos = new ArrayList<>();
+
+        private Nodo(String etiqueta, Attributes atributos) {
+            String nombreClase = atributos != null ? valor(atributos, "class") : "";
+            if (nombreClase.isEmpty() && etiqueta != null) {
+                nombreClase = etiqueta;
+            }
+            this.clase = nombreClase.substring(nombreClase.lastIndexOf('.') + 1);
+            this.texto = valor(atributos, "text").trim();
+            this.descripcion = valor(atributos, "content-desc").trim();
+            this.id = valor(atributos, "resource-id");
+            this.clickable = "true".equals(valor(atributos, "clickable"));
+            this.bounds = valor(atributos, "bounds");
+        }
+
+        private boolean relevante() {
+            return !texto.isEmpty() || !descripcion.isEmpty() || !id.isEmpty() || clickable;
+        }
+
+        private static String valor(Attributes atributos, String nombre) {
+            if (atributos == null) {
+                return "";
+            }
+            String valor = atributos.getValue(nombre);
+            return valor != null ? valor : "";
+        }
+    }
+
+    private static final class Linea {
+        private final int profundidad;
+        private final Nodo nodo;
+        private final String texto;
+        private final String id;
+        private final boolean tieneTexto;
+
+        private Linea(int profundidad, Nodo nodo) {
+            this.profundidad = profundidad;
+            this.nodo = nodo;
+            this.texto = armar(nodo.texto, nodo.descripcion);
+            this.id = nodo.id;
+            this.tieneTexto = !nodo.texto.isEmpty() || !nodo.descripcion.isEmpty();
+        }
+
+        /**
+         * La línea con el texto y la descripción acortados (con "…") para no pasar del
+         * máximo; id y bounds se mantienen mientras quepan.
+         */
+        private String recortada(int maximo) {
+            int exceso = texto.length() - maximo;
+            if (exceso <= 0) {
+                return texto;
+            }
+            String descripcion = acortar(nodo.descripcion, exceso);
+            exceso -= nodo.descripcion.length() - descripcion.length();
+            String recortada = armar(exceso > 0 ? acortar(nodo.texto, exceso) : nodo.texto, descripcion);
+            return recortada.length() <= maximo ? recortada : recortada.substring(0, maximo);
+        }
+
+        private static String acortar(String valor, int exceso) {
+            if (exceso <= 0 || valor.isEmpty()) {
+                return valor;
+            }
+            // +1 por el "…" que se agrega
+            int largo = valor.length() - exceso - 1;
+            return largo > 0 ? valor.substring(0, largo) + "…" : "…";
+        }
+
+        private String armar(String textoNodo, String descripcion) {
+            StringBuilder linea = new StringBuilder();
+            for (int i = 0; i < profundidad; i++) {
+                linea.append("  ");
+            }
+            linea.append(nodo.clase);
+            if (!textoNodo.isEmpty()) {
+                linea.append(" \"").append(textoNodo.replace("\n", " | ")).append('"');
+            }
+            if (!descripcion.isEmpty()) {
+                linea.append(" desc=\"").append(descripcion.replace("\n", " | ")).append('"');
+            }
+            if (!nodo.id.isEmpty()) {
+                linea.append(" id=").append(nodo.id);
+            }
+            if (nodo.clickable) {
+                linea.append(" clickable");
+            }
+            if (!nodo.bounds.isEmpty()) {
+                linea.append(' ').append(nodo.bounds);
+            }
+            return linea.toString();
+        }
+    }
+}
@@ -3,6 +3,7 @@ package utils.ollama;
 import org.openqa.selenium.OutputType;
 import org.openqa.selenium.TakesScreenshot;
 import org.openqa.selenium.WebDriver;
+import utils.metricas.Pausas;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -148,7 +149,7 @@ public class FailureContext {
                         System.err.println("   🔄 Realizando captura de emergencia...");
 
                         // Esperar 1 segundo extra y capturar nuevamente
-                        Thread.sleep(1000);
+                        Pausas.dormir("FailureContext.capturaEmergencia", 1000);
                         String emergencyCapture = driver.getPageSource();
 
                         if (emergencyCapture != null && emergencyCapture.length() > this.pageSource.length()) {
@@ -215,7 +216,7 @@ public class FailureContext {
                     if (i < maxRetries - 1) {
                         int waitTime = (i + 1) * 500; // 500ms, 1000ms, 1500ms
                         System.out.println("   ⏳ Esperando " + waitTime + "ms antes del siguiente intento...");
-                        Thread.sleep(waitTime);
+                        Pausas.dormir("FailureContext.reintento", waitTime);
                     }
 
                 } catch (Exception e) {
@@ -15,6 +15,12 @@ package utils.ollama;
  */
 public class OllamaAnalyzer {
 
+    /**
+     * Versión de los prompts: forma parte de la clave de {@link CacheAnalisis}, subirla al
+     * cambiar el texto de los prompts o la extracción del page source.
+     */
+    public static final String PROMPT_VERSION = "2.1";
+
     // Límite AUMENTADO para asegurar que capturamos todos los elementos de texto
     private static final int MAX_PAGE_SOURCE_LENGTH = 3000; // AUMENTADO de 1000
 
@@ -50,10 +56,10 @@ public class OllamaAnalyzer {
         // PAGE SOURCE COMPACTO PERO COMPLETO
         // ============================================
         prompt.append("📱 ELEMENTOS EN PANTALLA:\n");
-        String pageSource = extractRelevantElements(context.getPageSource());
+        String pageSource = extractRelevantElements(context.getPageSource(), context.getElementLocator());
 
-        // CRÍTICO: Validar que el page source tenga contenido
-        if (pageSource == null || pageSource.length() < 100) {
+        // CRÍTICO: Validar que el page source tenga contenido (el original: el esquema puede ser corto)
+        if (context.getPageSource() == null || context.getPageSource().length() < 100) {
             prompt.append("[ERROR: Page source vacío o corrupto. No se pueden analizar elementos.]\n\n");
             prompt.append("RESPUESTA REQUERIDA:\n");
             prompt.append("El page source está vacío. Verifica que:\n");
@@ -113,14 +119,30 @@ public class OllamaAnalyzer {
     }
 
     /**
-     * VERSION 2.0: Extracción mejorada que preserva MÁS información
-     * pero elimina ruido (Views vacíos, Layouts sin contenido)
+     * Esquema compacto de la pantalla (ver {@link CompactadorPageSource}); si el page source
+     * no es XML válido se usa el filtro por líneas.
+     */
+    static String extractRelevantElements(String pageSource) {
+        return extractRelevantElements(pageSource, null);
+    }
+
+    /**
+     * Igual, conservando en el esquema el nodo del localizador que falló.
      */
-    private static String extractRelevantElements(String pageSource) {
+    static String extractRelevantElements(String pageSource, String localizador) {
         if (pageSource == null || pageSource.isEmpty()) {
             return "[Page source no disponible]";
         }
 
+        String esquema = CompactadorPageSource.compactar(pageSource, localizador);
+        return esquema != null ? esquema : extractRelevantLines(pageSource);
+    }
+
+    /**
+     * VERSION 2.0: Extracción mejorada que preserva MÁS información
+     * pero elimina ruido (Views vacíos, Layouts sin contenido)
+     */
+    private static String extractRelevantLines(String pageSource) {
         if (pageSource.length() <= MAX_PAGE_SOURCE_LENGTH) {
             return pageSource;
         }
@@ -223,6 +245,45 @@ public class OllamaAnalyzer {
         return prompt.toString();
     }
 
+    /**
+     * Indica si una respuesta parcial (streaming) ya trae lo que pide el formato forzado,
+     * para cortar la generación sin esperar al resto del texto:
+     * - ELEMENT_NOT_FOUND: secciones DIAGNÓSTICO, ELEMENTOS ENCONTRADOS y SOLUCIÓN, con la
+     *   línea "Alternativa:" (o dos líneas) de la solución ya terminadas
+     * - resto: las tres líneas numeradas del prompt general ya terminadas
+     */
+    public static boolean respuestaCompleta(String respuesta, AnalysisType tipo) {
+        if (respuesta == null || respuesta.isEmpty()) {
+            return false;
+        }
+        String texto = respuesta.toUpperCase().replace('Ó', 'O');
+
+        if (tipo != AnalysisType.ELEMENT_NOT_FOUND) {
+            return texto.matches("(?s).*(^|\\n)\\s*3\\.[^\\n]*\\S[^\\n]*\\n.*");
+        }
+
+        int diagnostico = texto.indexOf("## DIAGNOSTICO");
+        int elementos = texto.indexOf("## ELEMENTOS ENCONTRADOS");
+        int solucion = texto.indexOf("## SOLUCION");
+        if (diagnostico == -1 || elementos < diagnostico || solucion < elementos) {
+            return false;
+        }
+
+        // Solo líneas terminadas en '\n' de la sección SOLUCIÓN (la última puede estar a medias)
+        String[] lineas = texto.substring(solucion).split("\n", -1);
+        int completas = 0;
+        for (int i = 1; i < lineas.length - 1; i++) {
+            String linea = lineas[i].trim();
+            if (linea.startsWith("ALTERNATIVA")) {
+                return true;
+            }
+            if (!linea.isEmpty()) {
+                completas++;
+            }
+        }
+        return completas >= 2;
+    }
+
     /**
      * Determina el tipo de análisis apropiado según el tipo de excepción.
      */
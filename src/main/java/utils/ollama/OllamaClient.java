@@ -1,10 +1,17 @@
 package utils.ollama;
 
 import okhttp3.*;
+import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
 
 /**
  * Cliente HTTP para interactuar con Ollama API.
@@ -21,6 +28,21 @@ import java.util.concurrent.TimeUnit;
  * - ollama.model: Modelo a usar (default: phi3)
  * - ollama.timeout: Timeout en segundos (default: 120)
  * - ollama.enabled: Habilitar/deshabilitar análisis (default: true)
+ * - ollama.disponibilidad.timeout.ms: Timeout del sondeo de disponibilidad (default: 2000)
+ * - ollama.disponibilidad.ttl.segundos: Vigencia del último sondeo (default: 30)
+ * - ollama.circuito.fallos: Fallos consecutivos que abren el circuito (default: 3)
+ * - ollama.circuito.espera.segundos: Tiempo abierto antes de volver a probar (default: 60)
+ * - ollama.stream.max.tokens: Fragmentos máximos por respuesta en streaming (default: 500)
+ * - ollama.stream.max.segundos: Tiempo máximo de generación en streaming, contado desde el
+ *   primer fragmento; la carga del modelo sigue acotada por ollama.timeout (default: 120)
+ *
+ * Disponibilidad: isAvailable() consulta /api/tags (lista de modelos, sin generar
+ * nada) con un timeout corto y guarda el resultado durante el TTL; si el resultado
+ * venció, se devuelve el último conocido y se refresca en segundo plano. Tras varios
+ * fallos consecutivos (sondeos o ask) el circuito se abre: isAvailable() devuelve
+ * false y ask() falla de inmediato, sin red, hasta que pasa la espera y se deja pasar
+ * una única llamada de prueba (semi-abierto: sondeo, ask o askStreaming); las demás se
+ * rechazan hasta que esa prueba vuelve a cerrar o abrir el circuito.
  *
  * Principios SOLID:
  * - SRP: Responsabilidad única de comunicación con Ollama
@@ -40,11 +62,33 @@ public class OllamaClient {
     private static final int DEFAULT_WRITE_TIMEOUT = 60;
     private static final int MAX_RETRIES = 2;
 
+    private static final int MAX_TOKENS_STREAM = Integer.getInteger("ollama.stream.max.tokens", 500);
+    private static final int MAX_SEGUNDOS_STREAM = Integer.getInteger("ollama.stream.max.segundos", 120);
+
+    private static final int TIMEOUT_SONDEO_MS = Integer.getInteger("ollama.disponibilidad.timeout.ms", 2000);
+    private static final long TTL_DISPONIBILIDAD_MS =
+            TimeUnit.SECONDS.toMillis(Integer.getInteger("ollama.disponibilidad.ttl.segundos", 30));
+    private static final int FALLOS_PARA_ABRIR = Integer.getInteger("ollama.circuito.fallos", 3);
+    private static final long ESPERA_CIRCUITO_MS =
+            TimeUnit.SECONDS.toMillis(Integer.getInteger("ollama.circuito.espera.segundos", 60));
+
+    private enum EstadoCircuito { CERRADO, ABIERTO, SEMI_ABIERTO }
+
     private final String ollamaUrl;
     private final String model;
     private final int timeoutSeconds;
     private final boolean enabled;
     private final OkHttpClient client;
+    private final OkHttpClient clienteSondeo;
+
+    // Estado de disponibilidad / circuito (protegido por this)
+    private EstadoCircuito estadoCircuito = EstadoCircuito.CERRADO;
+    private int fallosConsecutivos;
+    private long abiertoHasta;
+    private boolean pruebaEnCurso;
+    private Boolean ultimaDisponibilidad;
+    private long verificadoEn;
+    private final AtomicBoolean sondeoEnCurso = new AtomicBoolean();
 
     /**
      * Constructor por defecto que lee configuración de system properties.
@@ -63,6 +107,7 @@ public class OllamaClient {
                 .readTimeout(timeoutSeconds, TimeUnit.SECONDS)
                 .retryOnConnectionFailure(true)
                 .build();
+        this.clienteSondeo = crearClienteSondeo(client);
 
         logConfiguration();
     }
@@ -86,6 +131,7 @@ public class OllamaClient {
                 .readTimeout(timeoutSeconds, TimeUnit.SECONDS)
                 .retryOnConnectionFailure(true)
                 .build();
+        this.clienteSondeo = crearClienteSondeo(client);
 
         logConfiguration();
     }
@@ -106,7 +152,18 @@ public class OllamaClient {
             throw new IllegalArgumentException("Prompt no puede ser nulo o vacío");
         }
 
-        return askWithRetry(prompt, 0);
+        if (!permiteLlamada()) {
+            throw new IOException("Circuito abierto: Ollama no respondió en los últimos intentos");
+        }
+
+        try {
+            String respuesta = askWithRetry(prompt, 0);
+            registrarExito();
+            return respuesta;
+        } catch (IOException | RuntimeException e) {
+            registrarFallo(e.getMessage());
+            throw e;
+        }
     }
 
     /**
@@ -153,29 +210,7 @@ public class OllamaClient {
      * @throws IOException Si hay error de comunicación
      */
     private String executeRequest(String prompt) throws IOException {
-        // Construir body JSON
-        JSONObject bodyJson = new JSONObject();
-        bodyJson.put("model", model);
-        bodyJson.put("stream", false);
-        bodyJson.put("prompt", prompt);
-
-        // Opciones adicionales para mejor rendimiento
-        JSONObject options = new JSONObject();
-        options.put("temperature", 0.3);      // Menos creatividad = más rápido
-        options.put("num_predict", 500);      // Respuestas más cortas
-        options.put("top_k", 10);             // Menos opciones a considerar
-        options.put("top_p", 0.5);            // Más determinista
-        bodyJson.put("options", options);
-
-        RequestBody body = RequestBody.create(
-                MediaType.parse("application/json; charset=utf-8"),
-                bodyJson.toString()
-        );
-
-        Request request = new Request.Builder()
-                .url(ollamaUrl)
-                .post(body)
-                .build();
+        Request request = construirPeticion(prompt, false);
 
         System.out.println("🤖 [Ollama] Enviando análisis con modelo: " + model);
         long startTime = System.currentTimeMillis();
@@ -212,9 +247,262 @@ public class OllamaClient {
         }
     }
 
+    /**
+     * Body JSON de /api/generate.
+     *
+     * @param prompt Prompt a enviar
+     * @param stream true para recibir la respuesta en fragmentos NDJSON
+     */
+    private Request construirPeticion(String prompt, boolean stream) {
+        JSONObject bodyJson = new JSONObject();
+        bodyJson.put("model", model);
+        bodyJson.put("stream", stream);
+        bodyJson.put("prompt", prompt);
+
+        // Opciones adicionales para mejor rendimiento
+        JSONObject options = new JSONObject();
+        options.put("temperature", 0.3);      // Menos creatividad = más rápido
+        options.put("num_predict", 500);      // Respuestas más cortas
+        options.put("top_k", 10);             // Menos opciones a considerar
+        options.put("top_p", 0.5);            // Más determinista
+        bodyJson.put("options", options);
+
+        RequestBody body = RequestBody.create(
+                MediaType.parse("application/json; charset=utf-8"),
+                bodyJson.toString()
+        );
+
+        return new Request.Builder()
+                .url(ollamaUrl)
+                .post(body)
+                .build();
+    }
+
+    /**
+     * Recibe cada fragmento de una respuesta en streaming.
+     */
+    public interface OyenteFragmentos {
+        /**
+         * @param fragmento Texto recién generado
+         * @param acumulado Respuesta completa hasta ahora
+         */
+        void alRecibir(String fragmento, String acumulado);
+    }
+
+    /**
+     * Por qué terminó una respuesta en streaming.
+     */
+    public enum MotivoCorte {
+        /** El modelo envió done */
+        FIN_DEL_MODELO("fin del modelo"),
+        /** El criterio de respuesta suficiente aceptó lo acumulado */
+        RESPUESTA_COMPLETA("respuesta completa"),
+        PRESUPUESTO_TOKENS("presupuesto de " + MAX_TOKENS_STREAM + " tokens"),
+        PRESUPUESTO_TIEMPO("presupuesto de " + MAX_SEGUNDOS_STREAM + "s"),
+        /** La conexión se cortó antes de done */
+        INTERRUMPIDA("conexión interrumpida"),
+        DESHABILITADO("análisis deshabilitado");
+
+        private final String descripcion;
+
+        MotivoCorte(String descripcion) {
+            this.descripcion = descripcion;
+        }
+
+        public String getDescripcion() {
+            return descripcion;
+        }
+    }
+
+    /**
+     * Texto recibido en streaming y el motivo del corte: con presupuesto agotado o
+     * conexión interrumpida la respuesta es parcial.
+     */
+    public static final class RespuestaStreaming {
+        private final String texto;
+        private final MotivoCorte motivoCorte;
+
+        RespuestaStreaming(String texto, MotivoCorte motivoCorte) {
+            this.texto = texto;
+            this.motivoCorte = motivoCorte;
+        }
+
+        public String getTexto() {
+            return texto;
+        }
+
+        public MotivoCorte getMotivoCorte() {
+            return motivoCorte;
+        }
+
+        /**
+         * true si el modelo terminó o el criterio de respuesta suficiente la aceptó.
+         */
+        public boolean esCompleta() {
+            return motivoCorte == MotivoCorte.FIN_DEL_MODELO || motivoCorte == MotivoCorte.RESPUESTA_COMPLETA;
+        }
+    }
+
+    /**
+     * Envía un prompt en modo streaming: lee los fragmentos NDJSON a medida que el modelo
+     * los genera y corta la llamada (Ollama deja de generar al cerrarse la conexión) en
+     * cuanto {@code completa} acepta lo acumulado o se agota el presupuesto de
+     * fragmentos (ollama.stream.max.tokens) o de tiempo (ollama.stream.max.segundos).
+     * Si se agota el presupuesto o se corta la conexión se devuelve lo recibido hasta ese
+     * momento, con el motivo del corte para que el llamador sepa que es parcial.
+     *
+     * Solo se reintenta (como en {@link #ask(String)}) si no llegó ningún fragmento.
+     *
+     * @param prompt Prompt para el modelo
+     * @param completa Criterio de respuesta suficiente (null = hasta que el modelo termine)
+     * @param oyente Callback por fragmento (puede ser null)
+     * @return Respuesta del modelo (completa o parcial) con su motivo de corte
+     * @throws IOException Si no se recibió nada
+     */
+    public RespuestaStreaming askStreaming(String prompt, Predicate<String> completa, OyenteFragmentos oyente)
+            throws IOException {
+        if (!enabled) {
+            return new RespuestaStreaming("[Análisis Ollama deshabilitado via configuración]", MotivoCorte.DESHABILITADO);
+        }
+
+        if (prompt == null || prompt.trim().isEmpty()) {
+            throw new IllegalArgumentException("Prompt no puede ser nulo o vacío");
+        }
+
+        if (!permiteLlamada()) {
+            throw new IOException("Circuito abierto: Ollama no respondió en los últimos intentos");
+        }
+
+        IOException ultimoError = null;
+        for (int intento = 0; intento <= MAX_RETRIES; intento++) {
+            StringBuilder acumulado = new StringBuilder();
+            try {
+                RespuestaStreaming respuesta = executeStreamingRequest(prompt, completa, oyente, acumulado);
+                registrarExito();
+                return respuesta;
+            } catch (IOException e) {
+                if (acumulado.length() > 0) {
+                    // Se cortó a mitad de respuesta: lo recibido sigue sirviendo
+                    System.err.println("⚠️ [Ollama] Streaming interrumpido (" + e.getMessage()
+                            + "), se usa la respuesta parcial");
+                    registrarExito();
+                    return new RespuestaStreaming(acumulado.toString(), MotivoCorte.INTERRUMPIDA);
+                }
+                ultimoError = e;
+                if (intento < MAX_RETRIES) {
+                    System.err.println(String.format(
+                            "⚠️ [Ollama] Intento %d/%d falló: %s. Reintentando...",
+                            intento + 1, MAX_RETRIES + 1, e.getMessage()));
+                    try {
+                        Thread.sleep((long) Math.pow(2, intento) * 1000);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            } catch (RuntimeException e) {
+                registrarFallo(e.getMessage());
+                throw e;
+            }
+        }
+
+        IOException error = new IOException(
+                String.format("Falló después de %d intentos: %s", MAX_RETRIES + 1,
+                        ultimoError != null ? ultimoError.getMessage() : "interrumpido"),
+                ultimoError);
+        registrarFallo(error.getMessage());
+        throw error;
+    }
+
+    private RespuestaStreaming executeStreamingRequest(String prompt, Predicate<String> completa,
+                                                       OyenteFragmentos oyente, StringBuilder acumulado)
+            throws IOException {
+        Call call = client.newCall(construirPeticion(prompt, true));
+        // Tope de toda la llamada: la espera del primer fragmento (carga del modelo, hasta
+        // ollama.timeout) más el presupuesto de generación. Corta también una lectura bloqueada.
+        call.timeout().timeout(timeoutSeconds + MAX_SEGUNDOS_STREAM, TimeUnit.SECONDS);
+
+        System.out.println("🤖 [Ollama] Enviando análisis (streaming) con modelo: " + model);
+        long startTime = System.currentTimeMillis();
+        long primerFragmento = 0;
+        long presupuestoMs = TimeUnit.SECONDS.toMillis(MAX_SEGUNDOS_STREAM);
+        int fragmentos = 0;
+        // Sin done ni otro corte, la conexión terminó antes que el modelo
+        MotivoCorte motivoCorte = MotivoCorte.INTERRUMPIDA;
+
+        try (Response response = call.execute()) {
+            if (!response.isSuccessful()) {
+                String errorBody = response.body() != null ? response.body().string() : "Sin detalles";
+                throw new IOException(String.format(
+                        "Error de Ollama (HTTP %d): %s",
+                        response.code(), errorBody
+                ));
+            }
+
+            BufferedReader lector = new BufferedReader(
+                    new InputStreamReader(response.body().byteStream(), StandardCharsets.UTF_8));
+            String linea;
+            while ((linea = lector.readLine()) != null) {
+                if (linea.trim().isEmpty()) {
+                    continue;
+                }
+                JSONObject json = new JSONObject(linea);
+                if (json.has("error")) {
+                    throw new IOException("Error de Ollama: " + json.optString("error"));
+                }
+                String fragmento = json.optString("response", "");
+                if (!fragmento.isEmpty()) {
+                    if (fragmentos == 0) {
+                        primerFragmento = System.currentTimeMillis();
+                        System.out.println(String.format("⚡ [Ollama] Primer fragmento en %.2f segundos",
+                                (System.currentTimeMillis() - startTime) / 1000.0));
+                    }
+                    fragmentos++;
+                    acumulado.append(fragmento);
+                    if (oyente != null) {
+                        oyente.alRecibir(fragmento, acumulado.toString());
+                    }
+                }
+                if (json.optBoolean("done", false)) {
+                    motivoCorte = MotivoCorte.FIN_DEL_MODELO;
+                    break;
+                }
+                if (completa != null && completa.test(acumulado.toString())) {
+                    motivoCorte = MotivoCorte.RESPUESTA_COMPLETA;
+                    call.cancel();
+                    break;
+                }
+                if (fragmentos >= MAX_TOKENS_STREAM) {
+                    motivoCorte = MotivoCorte.PRESUPUESTO_TOKENS;
+                    call.cancel();
+                    break;
+                }
+                // El presupuesto de tiempo cuenta desde el primer fragmento, no desde el envío
+                if (fragmentos > 0 && System.currentTimeMillis() - primerFragmento >= presupuestoMs) {
+                    motivoCorte = MotivoCorte.PRESUPUESTO_TIEMPO;
+                    call.cancel();
+                    break;
+                }
+            }
+        } catch (InterruptedIOException e) {
+            if (acumulado.length() == 0) {
+                throw e;
+            }
+            motivoCorte = MotivoCorte.PRESUPUESTO_TIEMPO;
+        }
+
+        System.out.println(String.format(
+                "✅ [Ollama] Análisis completado en %.2f segundos (%d fragmentos, corte: %s)",
+                (System.currentTimeMillis() - startTime) / 1000.0, fragmentos, motivoCorte.getDescripcion()));
+        return new RespuestaStreaming(acumulado.toString(), motivoCorte);
+    }
+
     /**
      * Verifica si Ollama está disponible y el modelo configurado existe.
      *
+     * No genera texto: usa /api/tags con timeout corto, cacheado por TTL y detrás del
+     * circuito, así que en el caso normal responde sin tocar la red.
+     *
      * @return true si Ollama está disponible
      */
     public boolean isAvailable() {
@@ -222,16 +510,177 @@ public class OllamaClient {
             return false;
         }
 
-        try {
-            // Hacer una petición simple para verificar disponibilidad
-            String testPrompt = "Test connection";
-            ask(testPrompt);
-            return true;
+        boolean sondearAhora;
+        synchronized (this) {
+            if (estadoCircuito != EstadoCircuito.CERRADO) {
+                // Abierto, o semi-abierto con la llamada de prueba de otro thread en curso
+                if (!permiteLlamada()) {
+                    return false;
+                }
+                // Este thread es la prueba: sondeo síncrono (corto)
+                sondearAhora = true;
+            } else {
+                if (ultimaDisponibilidad != null && System.currentTimeMillis() - verificadoEn < TTL_DISPONIBILIDAD_MS) {
+                    return ultimaDisponibilidad;
+                }
+                // Primera vez: sondeo síncrono; si no, se refresca por detrás
+                sondearAhora = ultimaDisponibilidad == null;
+            }
+        }
+
+        if (sondearAhora) {
+            return sondear();
+        }
+        sondearEnSegundoPlano();
+        synchronized (this) {
+            return ultimaDisponibilidad;
+        }
+    }
+
+    /**
+     * Sondeo síncrono de /api/tags con el timeout corto.
+     */
+    private boolean sondear() {
+        try (Response response = clienteSondeo.newCall(peticionSondeo()).execute()) {
+            return procesarSondeo(response);
+        } catch (IOException e) {
+            return registrarSondeo(false, e.getMessage());
+        }
+    }
+
+    /**
+     * Refresca la disponibilidad sin bloquear al thread que pregunta (un sondeo a la vez).
+     */
+    private void sondearEnSegundoPlano() {
+        if (!sondeoEnCurso.compareAndSet(false, true)) {
+            return;
+        }
+        clienteSondeo.newCall(peticionSondeo()).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                sondeoEnCurso.set(false);
+                registrarSondeo(false, e.getMessage());
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (Response r = response) {
+                    procesarSondeo(r);
+                } catch (IOException e) {
+                    registrarSondeo(false, e.getMessage());
+                } finally {
+                    sondeoEnCurso.set(false);
+                }
+            }
+        });
+    }
 
+    private Request peticionSondeo() {
+        return new Request.Builder().url(urlBase() + "/api/tags").get().build();
+    }
+
+    /**
+     * Disponible si responde 200 y la lista de modelos incluye el modelo configurado.
+     */
+    private boolean procesarSondeo(Response response) throws IOException {
+        if (!response.isSuccessful()) {
+            return registrarSondeo(false, "HTTP " + response.code() + " en /api/tags");
+        }
+        String bodyString = response.body() != null ? response.body().string() : "";
+        try {
+            JSONArray modelos = new JSONObject(bodyString).optJSONArray("models");
+            if (modelos != null) {
+                for (int i = 0; i < modelos.length(); i++) {
+                    String nombre = modelos.getJSONObject(i).optString("name", "");
+                    if (nombre.equals(model) || nombre.startsWith(model + ":")) {
+                        return registrarSondeo(true, null);
+                    }
+                }
+            }
+            return registrarSondeo(false, "modelo '" + model + "' no encontrado (ollama pull " + model + ")");
         } catch (Exception e) {
-            System.err.println("⚠️ [Ollama] No disponible: " + e.getMessage());
+            return registrarSondeo(false, "respuesta inválida de /api/tags");
+        }
+    }
+
+    private boolean registrarSondeo(boolean disponible, String motivo) {
+        synchronized (this) {
+            ultimaDisponibilidad = disponible;
+            verificadoEn = System.currentTimeMillis();
+        }
+        if (disponible) {
+            registrarExito();
+        } else {
+            System.err.println("⚠️ [Ollama] No disponible: " + motivo);
+            registrarFallo(motivo);
+        }
+        return disponible;
+    }
+
+    /**
+     * Cerrado: siempre. Abierto: false hasta que vence la espera; entonces pasa a
+     * semi-abierto y deja pasar a este único caller como llamada de prueba. Semi-abierto:
+     * false para los demás hasta que la prueba registra éxito o fallo.
+     */
+    private synchronized boolean permiteLlamada() {
+        if (estadoCircuito == EstadoCircuito.CERRADO) {
+            return true;
+        }
+        if (estadoCircuito == EstadoCircuito.ABIERTO) {
+            if (System.currentTimeMillis() < abiertoHasta) {
+                return false;
+            }
+            estadoCircuito = EstadoCircuito.SEMI_ABIERTO;
+            System.out.println("🔌 [Ollama] Circuito semi-abierto, se deja pasar una llamada de prueba...");
+        } else if (pruebaEnCurso) {
             return false;
         }
+        pruebaEnCurso = true;
+        return true;
+    }
+
+    private synchronized void registrarExito() {
+        if (estadoCircuito != EstadoCircuito.CERRADO) {
+            System.out.println("🔌 [Ollama] Circuito cerrado: Ollama respondió de nuevo");
+        }
+        estadoCircuito = EstadoCircuito.CERRADO;
+        fallosConsecutivos = 0;
+        pruebaEnCurso = false;
+    }
+
+    private synchronized void registrarFallo(String motivo) {
+        fallosConsecutivos++;
+        pruebaEnCurso = false;
+        if (estadoCircuito == EstadoCircuito.SEMI_ABIERTO || fallosConsecutivos >= FALLOS_PARA_ABRIR) {
+            boolean yaAbierto = estadoCircuito == EstadoCircuito.ABIERTO;
+            estadoCircuito = EstadoCircuito.ABIERTO;
+            abiertoHasta = System.currentTimeMillis() + ESPERA_CIRCUITO_MS;
+            ultimaDisponibilidad = false;
+            if (!yaAbierto) {
+                System.err.println(String.format(
+                        "🔌 [Ollama] Circuito abierto tras %d fallo(s) (%s). Próximo intento en %ds",
+                        fallosConsecutivos, motivo, ESPERA_CIRCUITO_MS / 1000));
+            }
+        }
+    }
+
+    /**
+     * URL del servidor sin la ruta de la API (ollama.url puede traer /api/generate).
+     */
+    private String urlBase() {
+        int api = ollamaUrl.indexOf("/api/");
+        String base = api != -1 ? ollamaUrl.substring(0, api) : ollamaUrl;
+        return base.endsWith("/") ? base.substring(0, base.length() - 1) : base;
+    }
+
+    private static OkHttpClient crearClienteSondeo(OkHttpClient base) {
+        // Comparte pool de conexiones y dispatcher con el cliente principal
+        return base.newBuilder()
+                .connectTimeout(TIMEOUT_SONDEO_MS, TimeUnit.MILLISECONDS)
+                .readTimeout(TIMEOUT_SONDEO_MS, TimeUnit.MILLISECONDS)
+                .callTimeout(TIMEOUT_SONDEO_MS, TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(false)
+                .build();
     }
 
     /**
@@ -0,0 +1,242 @@
+package utils.simulador;
+
+import utils.PaquetesYOpcionesUSSD;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Árbol de menús USSD que responde el {@link SimuladorUSSD}.
+ *
+ * El árbol por defecto se arma con las listas de {@link PaquetesYOpcionesUSSD} y las
+ * transiciones que recorre escenarios.feature, así que las validaciones de los
+ * escenarios pasan contra el simulador sin cambios. También se puede cargar un
+ * guion de texto (ussd.simulador.menus) con este formato:
+ *
+ * <pre>
+ * # comentario
+ * [inicio] latencia=800
+ * Recuerda registrar tu linea para disfrutar de los servicios Claro
+ * 1. Compra de paquetes
+ * &gt; 1 compra
+ *
+ * [compra]
+ * 1. Paquete de Datos
+ * 0. Atras
+ * &gt; 1 datos
+ * </pre>
+ *
+ * Cada sección es un menú: las líneas de texto forman el mensaje y "&gt; opción destino"
+ * define a qué menú lleva cada opción. El primer menú es la raíz. La opción "0" sin
+ * transición propia vuelve al menú anterior; en un menú sin opciones (medios de pago,
+ * tipo de documento) cualquier respuesta cierra la sesión con un mensaje de confirmación.
+ */
+public class ArbolUSSD {
+
+    public static final String RAIZ_POR_DEFECTO = "inicio";
+
+    private final Map<String, Menu> menus = new LinkedHashMap<>();
+    private String raiz;
+
+    /**
+     * Árbol con los menús de escenarios.feature.
+     */
+    public static ArbolUSSD porDefecto() {
+        ArbolUSSD arbol = new ArbolUSSD();
+        arbol.menu("inicio", PaquetesYOpcionesUSSD.MenuInicioUSSD)
+                .opcion("1", "compra").opcion("2", "recargas").opcion("3", "beneficios").opcion("4", "autorizacion");
+
+        arbol.menu("compra", PaquetesYOpcionesUSSD.MenuCompraDePaquetes)
+                .opcion("1", "pagoMasVendido").opcion("2", "datos").opcion("3", "todoIncluido")
+                .opcion("9", "especialesComunidad");
+        arbol.menu("datos", PaquetesYOpcionesUSSD.MenuPaquetesDatos)
+                .opciones("pagoDatos", "1", "2", "3", "4");
+        arbol.menu("todoIncluido", PaquetesYOpcionesUSSD.MenuPaquetesTodoIncluido)
+                .opciones("pagoTodoIncluido", "1", "2", "3", "4").opcion("9", "largaDuracion");
+        arbol.menu("largaDuracion", PaquetesYOpcionesUSSD.MenuPaquetesLargaDuracion)
+                .opciones("pagoPSE", "1", "2", "3", "4").opcion("9", "especiales");
+        arbol.menu("especiales", PaquetesYOpcionesUSSD.MenuPaquetesEspeciales)
+                .opciones("pagoPSE", "1", "2", "3", "4");
+        arbol.menu("especialesComunidad", PaquetesYOpcionesUSSD.MenuPaquetesEspecialesComunidad)
+                .opcion("1", "relevo").opcion("2", "voz");
+        arbol.menu("relevo", PaquetesYOpcionesUSSD.MenuPaquetesRelevoComunidad)
+                .opciones("pagoPSE", "1", "2", "3");
+        arbol.menu("voz", PaquetesYOpcionesUSSD.MenuPaquetesVoz)
+                .opciones("pagoDatos", "1", "2", "3");
+
+        arbol.menu("recargas", PaquetesYOpcionesUSSD.MenuRecargas)
+                .opciones("pagoRecarga", "1", "2", "3", "4").opcion("9", "recargasMas");
+        arbol.menu("recargasMas", PaquetesYOpcionesUSSD.MenuRecargasMas)
+                .opciones("pagoRecargaTarjeta", "1", "2", "3", "4").opcion("9", "recargasAltas");
+        arbol.menu("recargasAltas", PaquetesYOpcionesUSSD.MenuRecargaValoresAltos)
+                .opciones("pagoRecargaPSE", "1", "2", "3", "4");
+
+        arbol.menu("beneficios", PaquetesYOpcionesUSSD.MenuBeneficios3x1)
+                .opcion("1", "beneficiosConsulta").opcion("2", "sinPaquete");
+        arbol.menu("beneficiosConsulta", PaquetesYOpcionesUSSD.MenuBeneficios3x1Consulta)
+                .opcion("1", "principalPaquetes").opcion("2", "recargas");
+        arbol.menu("principalPaquetes", PaquetesYOpcionesUSSD.MenuPrincipalPaquetes)
+                .opcion("1", "datos").opcion("2", "todoIncluido").opcion("3", "voz");
+        arbol.menu("sinPaquete", PaquetesYOpcionesUSSD.ValidaMenuDetalleSinoHayUnPaquete)
+                .opcion("1", "principalPaquetes").opcion("2", "recargas");
+
+        arbol.menu("autorizacion", PaquetesYOpcionesUSSD.MenuAutorizacionDatos)
+                .opcion("1", "tipoDocumento");
+        arbol.menu("tipoDocumento", PaquetesYOpcionesUSSD.MenuTipoDocumento);
+
+        arbol.menu("pagoMasVendido", PaquetesYOpcionesUSSD.MenuMediosDePagoPaquetesElMasVendido);
+        arbol.menu("pagoDatos", PaquetesYOpcionesUSSD.MenuMediosDePagoDePaqueteDeDatos);
+        arbol.menu("pagoTodoIncluido", PaquetesYOpcionesUSSD.MenuMediosDePagoPaquetesTodoIncluido);
+        arbol.menu("pagoPSE", PaquetesYOpcionesUSSD.MenuMedioDePagoPSE);
+        arbol.menu("pagoRecarga", PaquetesYOpcionesUSSD.MenuMediosDePagoRecarga);
+        arbol.menu("pagoRecargaTarjeta", PaquetesYOpcionesUSSD.MenuMediosDePagoRecargaConTarjeta);
+        arbol.menu("pagoRecargaPSE", PaquetesYOpcionesUSSD.MenuMediosDePagoRecargaConPSE);
+        return arbol;
+    }
+
+    /**
+     * Árbol desde un guion de texto (formato en la documentación de la clase).
+     */
+    public static ArbolUSSD cargar(File guion) throws IOException {
+        ArbolUSSD arbol = new ArbolUSSD();
+        Menu actual = null;
+        int numeroLinea = 0;
+        for (String linea : Files.readAllLines(guion.toPath(), StandardCharsets.UTF_8)) {
+            numeroLinea++;
+            String limpia = linea.trim();
+            if (limpia.isEmpty() || limpia.startsWith("#")) {
+                continue;
+            }
+            if (limpia.startsWith("[")) {
+                int cierre = limpia.indexOf(']');
+                if (cierre == -1) {
+                    throw new IOException(guion + ":" + numeroLinea + " sección sin ']'");
+                }
+                actual = arbol.menu(limpia.substring(1, cierre).trim(), Collections.emptyList());
+                String resto = limpia.substring(cierre + 1).trim();
+                if (resto.startsWith("latencia=")) {
+                    actual.latenciaMs = Integer.valueOf(resto.substring("latencia=".length()).trim());
+                }
+            } else if (actual == null) {
+                throw new IOException(guion + ":" + numeroLinea + " texto antes del primer [menu]");
+            } else if (limpia.startsWith(">")) {
+                String[] partes = limpia.substring(1).trim().split("\\s+");
+                if (partes.length != 2) {
+                    throw new IOException(guion + ":" + numeroLinea + " se esperaba '> opcion destino'");
+                }
+                actual.opcion(partes[0], partes[1]);
+            } else {
+                actual.lineas.add(limpia);
+            }
+        }
+        arbol.validar();
+        return arbol;
+    }
+
+    /**
+     * Árbol configurado: el guion de ussd.simulador.menus si existe, si no el de por defecto.
+     */
+    public static ArbolUSSD configurado() throws IOException {
+        String guion = System.getProperty("ussd.simulador.menus");
+        return guion != null && !guion.trim().isEmpty() ? cargar(new File(guion.trim())) : porDefecto();
+    }
+
+    private Menu menu(String id, List<String> lineas) {
+        Menu menu = new Menu(id, lineas);
+        menus.put(id, menu);
+        if (raiz == null) {
+            raiz = id;
+        }
+        return menu;
+    }
+
+    private void validar() throws IOException {
+        if (menus.isEmpty()) {
+            throw new IOException("El guion no define ningún menú");
+        }
+        for (Menu menu : menus.values()) {
+            for (Map.Entry<String, String> opcion : menu.opciones.entrySet()) {
+                if (!menus.containsKey(opcion.getValue())) {
+                    throw new IOException("Menú '" + menu.id + "', opción " + opcion.getKey()
+                            + ": no existe el menú '" + opcion.getValue() + "'");
+                }
+            }
+        }
+    }
+
+    public Menu getRaiz() {
+        return menus.get(raiz);
+    }
+
+    public Menu getMenu(String id) {
+        return menus.get(id);
+    }
+
+    public int cantidadMenus() {
+        return menus.size();
+    }
+
+    /**
+     * Un menú USSD: texto del diálogo y transiciones por opción.
+     */
+    public static final class Menu {
+        private final String id;
+        private final List<String> lineas;
+        private final Map<String, String> opciones = new LinkedHashMap<>();
+        private Integer latenciaMs;
+
+        private Menu(String id, List<String> lineas) {
+            this.id = id;
+            this.lineas = new ArrayList<>(lineas);
+        }
+
+        private Menu opcion(String opcion, String destino) {
+            opciones.put(opcion, destino);
+            return this;
+        }
+
+        private Menu opciones(String destino, String... opciones) {
+            for (String opcion : Arrays.asList(opciones)) {
+                opcion(opcion, destino);
+            }
+            return this;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Texto del diálogo, una línea por renglón como lo muestra el teléfono.
+         */
+        public String getMensaje() {
+            return String.join("\n", lineas);
+        }
+
+        /**
+         * Menú destino de la opción, o null si el menú no la define.
+         */
+        public String destino(String opcion) {
+            return opciones.get(opcion);
+        }
+
+        public boolean esHoja() {
+            return opciones.isEmpty();
+        }
+
+        /**
+         * Latencia propia del menú en ms, o null para usar la global.
+         */
+        public Integer getLatenciaMs() {
+            return latenciaMs;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package utils.simulador;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import javax.imageio.ImageIO;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Instantánea de la pantalla simulada: el page source de UiAutomator ya parseado,
+ * con la búsqueda de elementos por id, xpath y UiSelector que hace Appium.
+ *
+ * Los elementos se identifican por su posición en el documento dentro de una
+ * versión de pantalla ("versión.índice"); si la pantalla cambió de versión el id
+ * deja de ser válido, igual que un StaleElementReference en el dispositivo.
+ */
+final class PantallaSimulada {
+
+    private static final Pattern METODO_UISELECTOR =
+            Pattern.compile("\\.(\\w+)\\(\\s*(\"(?:[^\"\\\\]|\\\\.)*\"|[^)]*?)\\s*\\)");
+    private static final Pattern BOUNDS = Pattern.compile("\\[(\\d+),(\\d+)\\]\\[(\\d+),(\\d+)\\]");
+    private static final int ESCALA_CAPTURA = 3;
+
+    private final int version;
+    private final String xml;
+    private final List<Element> elementos = new ArrayList<>();
+    private final Map<Node, Integer> indices = new IdentityHashMap<>();
+    private final Document documento;
+    private byte[] captura;
+
+    PantallaSimulada(int version, String xml) {
+        this.version = version;
+        this.xml = xml;
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            this.documento = factory.newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+        } catch (Exception e) {
+            throw new IllegalStateException("Page source simulado inválido", e);
+        }
+        NodeList todos = documento.getDocumentElement().getElementsByTagName("*");
+        for (int i = 0; i < todos.getLength(); i++) {
+            Element elemento = (Element) todos.item(i);
+            indices.put(elemento, elementos.size());
+            elementos.add(elemento);
+        }
+    }
+
+    int getVersion() {
+        return version;
+    }
+
+    String getXml() {
+        return xml;
+    }
+
+    String idElemento(int indice) {
+        return version + "." + indice;
+    }
+
+    /**
+     * Índice del elemento para un id entregado antes, o -1 si es de otra versión (obsoleto).
+     */
+    int indiceDe(String idElemento) {
+        int punto = idElemento.indexOf('.');
+        if (punto == -1 || !idElemento.substring(0, punto).equals(String.valueOf(version))) {
+            return -1;
+        }
+        try {
+            int indice = Integer.parseInt(idElemento.substring(punto + 1));
+            return indice < elementos.size() ? indice : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    String atributo(int indice, String nombre) {
+        Element elemento = elementos.get(indice);
+        return elemento.hasAttribute(nombre) ? elemento.getAttribute(nombre) : null;
+    }
+
+    /**
+     * x, y, ancho y alto del elemento según su atributo bounds.
+     */
+    int[] rectangulo(int indice) {
+        Matcher m = BOUNDS.matcher(String.valueOf(atributo(indice, "bounds")));
+        if (!m.find()) {
+            return new int[]{0, 0, 0, 0};
+        }
+        int x1 = Integer.parseInt(m.group(1));
+        int y1 = Integer.parseInt(m.group(2));
+        return new int[]{x1, y1, Integer.parseInt(m.group(3)) - x1, Integer.parseInt(m.group(4)) - y1};
+    }
+
+    /**
+     * Elementos que cumplen el localizador, en orden del documento.
+     *
+     * @param desde Índice del elemento bajo el que se busca, o -1 para toda la pantalla
+     * @throws IllegalArgumentException si la estrategia no se soporta o el selector es inválido
+     */
+    List<Integer> buscar(String estrategia, String valor, int desde) {
+        Element raiz = desde == -1 ? documento.getDocumentElement() : elementos.get(desde);
+        List<Integer> encontrados = new ArrayList<>();
+        switch (estrategia) {
+            case "id":
+                for (Integer indice : descendientes(raiz)) {
+                    String id = elementos.get(indice).getAttribute("resource-id");
+                    if (id.equals(valor) || id.endsWith(":id/" + valor)) {
+                        encontrados.add(indice);
+                    }
+                }
+                return encontrados;
+            case "css selector":
+                if (!valor.startsWith("#")) {
+                    throw new IllegalArgumentException("Solo se soporta css selector por id: " + valor);
+                }
+                return buscar("id", valor.substring(1).replace("\\", ""), desde);
+            case "class name":
+                for (Integer indice : descendientes(raiz)) {
+                    if (elementos.get(indice).getAttribute("class").equals(valor)) {
+                        encontrados.add(indice);
+                    }
+                }
+                return encontrados;
+            case "accessibility id":
+                for (Integer indice : descendientes(raiz)) {
+                    if (elementos.get(indice).getAttribute("content-desc").equals(valor)) {
+                        encontrados.add(indice);
+                    }
+                }
+                return encontrados;
+            case "xpath":
+                return buscarXpath(valor, raiz);
+            case "-android uiautomator":
+                return buscarUiSelector(valor, raiz);
+            default:
+                throw new IllegalArgumentException("Estrategia no soportada por el simulador: " + estrategia);
+        }
+    }
+
+    private List<Integer> descendientes(Element raiz) {
+        List<Integer> resultado = new ArrayList<>();
+        NodeList nodos = raiz.getElementsByTagName("*");
+        for (int i = 0; i < nodos.getLength(); i++) {
+            resultado.add(indices.get(nodos.item(i)));
+        }
+        return resultado;
+    }
+
+    private List<Integer> buscarXpath(String xpath, Element raiz) {
+        try {
+            NodeList nodos = (NodeList) XPathFactory.newInstance().newXPath()
+                    .evaluate(xpath, raiz == documento.getDocumentElement() ? documento : raiz, XPathConstants.NODESET);
+            List<Integer> resultado = new ArrayList<>();
+            for (int i = 0; i < nodos.getLength(); i++) {
+                Integer indice = indices.get(nodos.item(i));
+                if (indice != null) {
+                    resultado.add(indice);
+                }
+            }
+            return resultado;
+        } catch (XPathExpressionException e) {
+            throw new IllegalArgumentException("XPath inválido: " + xpath, e);
+        }
+    }
+
+    /**
+     * UiSelector de UiAutomator: se evalúa el último "new UiSelector()" del texto (en un
+     * UiScrollable(...).scrollIntoView(new UiSelector()...) es el elemento buscado).
+     */
+    private List<Integer> buscarUiSelector(String selector, Element raiz) {
+        int inicio = selector.lastIndexOf("new UiSelector()");
+        if (inicio == -1) {
+            throw new IllegalArgumentException("Selector UiAutomator no soportado: " + selector);
+        }
+        List<String[]> criterios = new ArrayList<>();
+        int instancia = -1;
+        Matcher m = METODO_UISELECTOR.matcher(selector.substring(inicio + "new UiSelector()".length()));
+        while (m.find()) {
+            String argumento = m.group(2);
+            if (argumento.startsWith("\"")) {
+                argumento = argumento.substring(1, argumento.length() - 1).replace("\\\"", "\"").replace("\\\\", "\\");
+            }
+            if ("instance".equals(m.group(1))) {
+                instancia = Integer.parseInt(argumento.trim());
+            } else {
+                criterios.add(new String[]{m.group(1), argumento});
+            }
+        }
+        List<Integer> resultado = new ArrayList<>();
+        for (Integer indice : descendientes(raiz)) {
+            if (cumple(elementos.get(indice), criterios)) {
+                resultado.add(indice);
+            }
+        }
+        if (instancia >= 0) {
+            return instancia < resultado.size() ? List.of(resultado.get(instancia)) : new ArrayList<>();
+        }
+        return resultado;
+    }
+
+    private static boolean cumple(Element elemento, List<String[]> criterios) {
+        for (String[] criterio : criterios) {
+            String valor = criterio[1];
+            String texto = elemento.getAttribute("text");
+            String descripcion = elemento.getAttribute("content-desc");
+            boolean ok;
+            switch (criterio[0]) {
+                case "text": ok = texto.equals(valor); break;
+                case "textContains": ok = texto.contains(valor); break;
+                case "textStartsWith": ok = texto.startsWith(valor); break;
+                case "textMatches": ok = texto.matches(valor); break;
+                case "description": ok = descripcion.equals(valor); break;
+                case "descriptionContains": ok = descripcion.contains(valor); break;
+                case "descriptionStartsWith": ok = descripcion.startsWith(valor); break;
+                case "descriptionMatches": ok = descripcion.matches(valor); break;
+                case "resourceId": ok = elemento.getAttribute("resource-id").equals(valor); break;
+                case "resourceIdMatches": ok = elemento.getAttribute("resource-id").matches(valor); break;
+                case "className": ok = elemento.getAttribute("class").equals(valor); break;
+                case "classNameMatches": ok = elemento.getAttribute("class").matches(valor); break;
+                case "clickable":
+                case "enabled":
+                case "focusable":
+                case "scrollable":
+                case "checkable":
+                case "checked":
+                case "selected":
+                    ok = elemento.getAttribute(criterio[0]).equals(valor.trim());
+                    break;
+                default:
+                    ok = true; // Criterio sin efecto en las pantallas simuladas
+            }
+            if (!ok) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * PNG con el boceto de la pantalla: un rectángulo por nodo y barras en lugar de
+     * texto (sin fuentes, funciona en cualquier JVM headless). Se genera una vez por instantánea.
+     */
+    synchronized byte[] captura() {
+        if (captura != null) {
+            return captura;
+        }
+        Element raiz = documento.getDocumentElement();
+        int ancho = Integer.parseInt(raiz.getAttribute("width")) / ESCALA_CAPTURA;
+        int alto = Integer.parseInt(raiz.getAttribute("height")) / ESCALA_CAPTURA;
+        BufferedImage imagen = new BufferedImage(ancho, alto, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = imagen.createGraphics();
+        try {
+            g.setColor(new Color(0x30, 0x30, 0x30));
+            g.fillRect(0, 0, ancho, alto);
+            for (int i = 0; i < elementos.size(); i++) {
+                int[] r = rectangulo(i);
+                int x = r[0] / ESCALA_CAPTURA;
+                int y = r[1] / ESCALA_CAPTURA;
+                int w = r[2] / ESCALA_CAPTURA;
+                int h = r[3] / ESCALA_CAPTURA;
+                boolean boton = "true".equals(atributo(i, "clickable"));
+                g.setColor(boton ? new Color(0xE8, 0xF0, 0xFE) : Color.WHITE);
+                g.fillRect(x, y, w, h);
+                g.setColor(Color.LIGHT_GRAY);
+                g.drawRect(x, y, w, h);
+                dibujarTexto(g, atributo(i, "text"), x + 6, y + 6, w - 12);
+            }
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            ImageIO.write(imagen, "png", png);
+            captura = png.toByteArray();
+            return captura;
+        } catch (IOException e) {
+            throw new IllegalStateException("No se pudo generar la captura simulada", e);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    private static void dibujarTexto(Graphics2D g, String texto, int x, int y, int anchoMaximo) {
+        if (texto == null || texto.isEmpty()) {
+            return;
+        }
+        g.setColor(Color.DARK_GRAY);
+        int renglon = y;
+        for (String linea : texto.split("\n")) {
+            g.fillRect(x, renglon, Math.min(anchoMaximo, linea.length() * 4), 5);
+            renglon += 9;
+        }
+    }
+}
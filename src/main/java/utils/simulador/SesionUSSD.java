@@ -0,0 +1,339 @@
+package utils.simulador;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
+/**
+ * Estado de un teléfono simulado: el Dialer y, tras marcar un código USSD, el diálogo
+ * del operador recorriendo el {@link ArbolUSSD}.
+ *
+ * Cada respuesta del operador pasa primero por el diálogo "Ejecutando código USSD…"
+ * (android:id/progress) durante la latencia configurada, igual que en el dispositivo;
+ * el avance es perezoso: se resuelve en el siguiente comando que mire la pantalla.
+ */
+final class SesionUSSD {
+
+    static final String PAQUETE_DIALER = "com.google.android.dialer";
+    static final String PAQUETE_TELEFONO = "com.android.phone";
+    static final String ACTIVIDAD_DIALER = "com.google.android.dialer.extensions.GoogleDialtactsActivity";
+    static final String ACTIVIDAD_USSD = "com.android.phone.MMIDialogActivity";
+
+    static final String MENSAJE_CONFIRMACION =
+            "Tu solicitud esta siendo procesada. En un momento recibiras un mensaje de texto con la confirmacion.";
+    static final String MENSAJE_OPCION_INVALIDA = "Opcion no valida. Intenta nuevamente.";
+    static final String MENSAJE_MMI_INVALIDO = "Problema de conexión o código MMI no válido.";
+
+    private static final int KEYCODE_BACK = 4;
+    private static final int KEYCODE_0 = 7;
+    private static final int KEYCODE_9 = 16;
+    private static final int KEYCODE_STAR = 17;
+    private static final int KEYCODE_POUND = 18;
+    private static final int KEYCODE_DEL = 67;
+
+    private static final int ANCHO = 1080;
+    private static final int ALTO = 2400;
+
+    private enum Estado { DIALER, PROCESANDO, MENU, MENSAJE }
+
+    private final ArbolUSSD arbol;
+    private final int latenciaMs;
+    private final int jitterMs;
+    private final Random random;
+
+    private Estado estado = Estado.DIALER;
+    private String digitos = "";
+    private String respuesta = "";
+    private ArbolUSSD.Menu menuActual;
+    private final Deque<ArbolUSSD.Menu> anteriores = new ArrayDeque<>();
+    private String mensaje;
+
+    private long listoEnNanos;
+    private ArbolUSSD.Menu menuPendiente;
+    private String mensajePendiente;
+
+    private int version = 1;
+    private PantallaSimulada pantalla;
+    private long implicitWaitMs;
+
+    SesionUSSD(ArbolUSSD arbol, int latenciaMs, int jitterMs, long semilla) {
+        this.arbol = arbol;
+        this.latenciaMs = latenciaMs;
+        this.jitterMs = jitterMs;
+        this.random = new Random(semilla);
+    }
+
+    synchronized long getImplicitWaitMs() {
+        return implicitWaitMs;
+    }
+
+    synchronized void setImplicitWaitMs(long implicitWaitMs) {
+        this.implicitWaitMs = implicitWaitMs;
+    }
+
+    /**
+     * Pantalla actual (resuelve antes la respuesta pendiente del operador si ya llegó).
+     */
+    synchronized PantallaSimulada pantalla() {
+        if (estado == Estado.PROCESANDO && System.nanoTime() >= listoEnNanos) {
+            if (menuPendiente != null) {
+                menuActual = menuPendiente;
+                estado = Estado.MENU;
+            } else {
+                mensaje = mensajePendiente;
+                estado = Estado.MENSAJE;
+            }
+            menuPendiente = null;
+            mensajePendiente = null;
+            cambiarPantalla();
+        }
+        String xml = renderizar();
+        if (pantalla == null || pantalla.getVersion() != version || !pantalla.getXml().equals(xml)) {
+            pantalla = new PantallaSimulada(version, xml);
+        }
+        return pantalla;
+    }
+
+    synchronized String actividad() {
+        return estado == Estado.DIALER ? ACTIVIDAD_DIALER : ACTIVIDAD_USSD;
+    }
+
+    synchronized String paquete() {
+        return estado == Estado.DIALER ? PAQUETE_DIALER : PAQUETE_TELEFONO;
+    }
+
+    /**
+     * Click sobre el elemento con ese resource-id.
+     */
+    synchronized void click(String resourceId) {
+        if (resourceId == null) {
+            return;
+        }
+        if (resourceId.endsWith(":id/dialpad_voice_call_button") && estado == Estado.DIALER) {
+            String codigo = digitos;
+            digitos = "";
+            marcar(codigo);
+        } else if ("android:id/button1".equals(resourceId)) {
+            enviar();
+        } else if ("android:id/button2".equals(resourceId)) {
+            cerrarDialogo();
+        }
+        // tab_dialpad, dialpad_fab, input_field...: el teclado ya está visible, sin efecto
+    }
+
+    synchronized void escribir(String resourceId, String texto) {
+        if (resourceId == null) {
+            return;
+        }
+        if (resourceId.endsWith(":id/digits") && estado == Estado.DIALER) {
+            digitos += texto;
+        } else if (resourceId.endsWith(":id/input_field") && estado == Estado.MENU) {
+            respuesta += texto;
+        }
+    }
+
+    synchronized void limpiar(String resourceId) {
+        if (resourceId == null) {
+            return;
+        }
+        if (resourceId.endsWith(":id/digits")) {
+            digitos = "";
+        } else if (resourceId.endsWith(":id/input_field")) {
+            respuesta = "";
+        }
+    }
+
+    synchronized void tecla(int keycode) {
+        if (keycode == KEYCODE_BACK) {
+            cerrarDialogo();
+        } else if (estado == Estado.DIALER) {
+            if (keycode >= KEYCODE_0 && keycode <= KEYCODE_9) {
+                digitos += (char) ('0' + keycode - KEYCODE_0);
+            } else if (keycode == KEYCODE_STAR) {
+                digitos += '*';
+            } else if (keycode == KEYCODE_POUND) {
+                digitos += '#';
+            } else if (keycode == KEYCODE_DEL && !digitos.isEmpty()) {
+                digitos = digitos.substring(0, digitos.length() - 1);
+            }
+        }
+    }
+
+    /**
+     * Marca un número (botón Llamar o intent CALL). Los códigos USSD abren el menú raíz;
+     * cualquier otro número responde como un MMI inválido.
+     */
+    synchronized void marcar(String numero) {
+        anteriores.clear();
+        respuesta = "";
+        if (numero.matches("[*#][0-9*#]*#")) {
+            procesar(arbol.getRaiz(), null);
+        } else {
+            procesar(null, MENSAJE_MMI_INVALIDO);
+        }
+    }
+
+    private void enviar() {
+        if (estado == Estado.MENSAJE) {
+            cerrarDialogo();
+            return;
+        }
+        if (estado != Estado.MENU) {
+            return;
+        }
+        String opcion = respuesta.trim();
+        respuesta = "";
+        String destino = menuActual.destino(opcion);
+        if (destino != null) {
+            anteriores.push(menuActual);
+            procesar(arbol.getMenu(destino), null);
+        } else if ("0".equals(opcion) && !anteriores.isEmpty()) {
+            procesar(anteriores.pop(), null);
+        } else if (menuActual.esHoja()) {
+            procesar(null, MENSAJE_CONFIRMACION);
+        } else {
+            procesar(null, MENSAJE_OPCION_INVALIDA);
+        }
+    }
+
+    private void procesar(ArbolUSSD.Menu menu, String mensajeFinal) {
+        menuPendiente = menu;
+        mensajePendiente = mensajeFinal;
+        listoEnNanos = System.nanoTime() + latencia(menu) * 1_000_000L;
+        estado = Estado.PROCESANDO;
+        cambiarPantalla();
+    }
+
+    private long latencia(ArbolUSSD.Menu menu) {
+        int base = menu != null && menu.getLatenciaMs() != null ? menu.getLatenciaMs() : latenciaMs;
+        int variacion = jitterMs > 0 ? random.nextInt(2 * jitterMs + 1) - jitterMs : 0;
+        return Math.max(0, base + variacion);
+    }
+
+    private void cerrarDialogo() {
+        if (estado == Estado.DIALER) {
+            return;
+        }
+        estado = Estado.DIALER;
+        menuActual = null;
+        menuPendiente = null;
+        mensajePendiente = null;
+        anteriores.clear();
+        respuesta = "";
+        cambiarPantalla();
+    }
+
+    private void cambiarPantalla() {
+        version++;
+    }
+
+    // ─── Page source estilo UiAutomator2 ─────────────────────────────────────
+
+    private String renderizar() {
+        StringBuilder xml = new StringBuilder(1024)
+                .append("<?xml version='1.0' encoding='UTF-8' standalone='yes' ?>\n")
+                .append("<hierarchy index=\"0\" class=\"hierarchy\" rotation=\"0\" width=\"").append(ANCHO)
+                .append("\" height=\"").append(ALTO).append("\">\n");
+        switch (estado) {
+            case DIALER:
+                abrir(xml, 1, "android.widget.FrameLayout", PAQUETE_DIALER, "", "", "", false, 0, 0, ANCHO, ALTO);
+                nodo(xml, 2, "android.widget.FrameLayout", PAQUETE_DIALER, "com.google.android.dialer:id/tab_dialpad",
+                        "", "Teclado", true, 0, 2200, ANCHO, ALTO);
+                abrir(xml, 2, "android.widget.LinearLayout", PAQUETE_DIALER, "com.google.android.dialer:id/dialpad_view",
+                        "", "", false, 0, 900, ANCHO, 2200);
+                nodo(xml, 3, "android.widget.EditText", PAQUETE_DIALER, "com.google.android.dialer:id/digits",
+                        digitos, "", true, 60, 920, 1020, 1080);
+                nodo(xml, 3, "android.widget.ImageButton", PAQUETE_DIALER,
+                        "com.google.android.dialer:id/dialpad_voice_call_button", "", "marcar", true, 440, 1980, 640, 2180);
+                cerrar(xml, 2, "android.widget.LinearLayout");
+                nodo(xml, 2, "android.widget.ImageButton", PAQUETE_DIALER, "com.google.android.dialer:id/dialpad_fab",
+                        "", "teclado", true, 860, 1980, 1040, 2160);
+                cerrar(xml, 1, "android.widget.FrameLayout");
+                break;
+            case PROCESANDO:
+                abrir(xml, 1, "android.widget.FrameLayout", PAQUETE_TELEFONO, "", "", "", false, 72, 1050, 1008, 1350);
+                nodo(xml, 2, "android.widget.ProgressBar", PAQUETE_TELEFONO, "android:id/progress",
+                        "", "", false, 120, 1140, 240, 1260);
+                nodo(xml, 2, "android.widget.TextView", PAQUETE_TELEFONO, "android:id/message",
+                        "Ejecutando código USSD…", "", false, 280, 1160, 960, 1240);
+                cerrar(xml, 1, "android.widget.FrameLayout");
+                break;
+            case MENU:
+                int lineas = menuActual.getMensaje().split("\n", -1).length;
+                int finTexto = 700 + 60 * lineas;
+                abrir(xml, 1, "android.widget.FrameLayout", PAQUETE_TELEFONO, "", "", "", false, 72, 600, 1008, finTexto + 320);
+                abrir(xml, 2, "android.widget.ScrollView", PAQUETE_TELEFONO, "android:id/scrollView",
+                        "", "", false, 72, 640, 1008, finTexto);
+                nodo(xml, 3, "android.widget.TextView", PAQUETE_TELEFONO, "android:id/message",
+                        menuActual.getMensaje(), "", false, 120, 660, 960, finTexto - 20);
+                cerrar(xml, 2, "android.widget.ScrollView");
+                nodo(xml, 2, "android.widget.EditText", PAQUETE_TELEFONO, "com.android.phone:id/input_field",
+                        respuesta, "", true, 120, finTexto + 20, 960, finTexto + 140);
+                nodo(xml, 2, "android.widget.Button", PAQUETE_TELEFONO, "android:id/button2",
+                        "Cancelar", "", true, 480, finTexto + 180, 720, finTexto + 300);
+                nodo(xml, 2, "android.widget.Button", PAQUETE_TELEFONO, "android:id/button1",
+                        "Enviar", "", true, 740, finTexto + 180, 980, finTexto + 300);
+                cerrar(xml, 1, "android.widget.FrameLayout");
+                break;
+            case MENSAJE:
+                abrir(xml, 1, "android.widget.FrameLayout", PAQUETE_TELEFONO, "", "", "", false, 72, 900, 1008, 1500);
+                nodo(xml, 2, "android.widget.TextView", PAQUETE_TELEFONO, "android:id/message",
+                        mensaje, "", false, 120, 940, 960, 1340);
+                nodo(xml, 2, "android.widget.Button", PAQUETE_TELEFONO, "android:id/button1",
+                        "Aceptar", "", true, 740, 1360, 980, 1480);
+                cerrar(xml, 1, "android.widget.FrameLayout");
+                break;
+            default:
+                break;
+        }
+        return xml.append("</hierarchy>").toString();
+    }
+
+    private static void abrir(StringBuilder xml, int nivel, String clase, String paquete, String id, String texto,
+                              String descripcion, boolean clickable, int x1, int y1, int x2, int y2) {
+        atributos(xml, nivel, clase, paquete, id, texto, descripcion, clickable, x1, y1, x2, y2).append(">\n");
+    }
+
+    private static void nodo(StringBuilder xml, int nivel, String clase, String paquete, String id, String texto,
+                             String descripcion, boolean clickable, int x1, int y1, int x2, int y2) {
+        atributos(xml, nivel, clase, paquete, id, texto, descripcion, clickable, x1, y1, x2, y2).append(" />\n");
+    }
+
+    private static void cerrar(StringBuilder xml, int nivel, String clase) {
+        sangria(xml, nivel).append("</").append(clase).append(">\n");
+    }
+
+    private static StringBuilder atributos(StringBuilder xml, int nivel, String clase, String paquete, String id,
+                                           String texto, String descripcion, boolean clickable,
+                                           int x1, int y1, int x2, int y2) {
+        boolean editable = clase.endsWith("EditText");
+        return sangria(xml, nivel).append('<').append(clase)
+                .append(" index=\"0\" package=\"").append(paquete)
+                .append("\" class=\"").append(clase)
+                .append("\" text=\"").append(escapar(texto))
+                .append("\" resource-id=\"").append(id)
+                .append("\" checkable=\"false\" checked=\"false\" clickable=\"").append(clickable)
+                .append("\" enabled=\"true\" focusable=\"").append(clickable)
+                .append("\" focused=\"").append(editable)
+                .append("\" long-clickable=\"").append(editable)
+                .append("\" password=\"false\" scrollable=\"").append(clase.endsWith("ScrollView"))
+                .append("\" selected=\"false\" content-desc=\"").append(escapar(descripcion))
+                .append("\" displayed=\"true\" bounds=\"[").append(x1).append(',').append(y1)
+                .append("][").append(x2).append(',').append(y2).append("]\"");
+    }
+
+    private static StringBuilder sangria(StringBuilder xml, int nivel) {
+        for (int i = 0; i < nivel; i++) {
+            xml.append("  ");
+        }
+        return xml;
+    }
+
+    private static String escapar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        return texto.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;")
+                .replace("\"", "&quot;").replace("\n", "&#10;");
+    }
+}
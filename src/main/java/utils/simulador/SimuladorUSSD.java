@@ -0,0 +1,440 @@
+package utils.simulador;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Operador USSD simulado detrás de un endpoint compatible con Appium (protocolo W3C).
+ *
+ * Permite correr escenarios.feature sin teléfono ni red: MyDriver se conecta a este
+ * servidor como si fuera Appium y recibe page sources de UiAutomator2 con el Dialer,
+ * el diálogo "Ejecutando código USSD…" y los menús del {@link ArbolUSSD}
+ * (input_field, button1 Enviar, button2 Cancelar). Sirve para medir el costo propio del
+ * framework a máxima velocidad o bajo perfiles de latencia artificiales.
+ *
+ * Soporta lo que usa el proyecto: sesiones, timeouts (implicit wait incluido), page
+ * source, screenshot (boceto PNG), búsqueda por id, xpath y UiSelector, click,
+ * sendKeys, clear, text, atributos, rect, press_keycode, current_activity y
+ * "mobile: shell" con el intent CALL. Gestos y acciones se aceptan sin efecto.
+ *
+ * Uso:
+ * - En el mismo JVM: -Dussd.simulador=true (PoolDispositivos lo arranca y lo usa como
+ *   appium.hub si no se indicó otro)
+ * - Aparte: java utils.simulador.SimuladorUSSD y -Dappium.hub=http://127.0.0.1:4799/wd/hub
+ *
+ * Configuración via system properties:
+ * - ussd.simulador: arrancar el simulador dentro de la suite (default: false)
+ * - ussd.simulador.puerto: puerto HTTP (default: 4799, 0 = cualquiera libre)
+ * - ussd.simulador.menus: guion de menús (default: árbol de PaquetesYOpcionesUSSD)
+ * - ussd.simulador.latencia.ms: demora de cada respuesta del operador (default: 0)
+ * - ussd.simulador.jitter.ms: variación aleatoria +/- de esa demora (default: 0)
+ * - ussd.simulador.comando.ms: demora de cada comando WebDriver, como el viaje a Appium (default: 0)
+ * - ussd.simulador.semilla: semilla del jitter, para perfiles repetibles (default: 42)
+ */
+public class SimuladorUSSD {
+
+    public static final int PUERTO_POR_DEFECTO = 4799;
+
+    private static final String ELEMENTO_W3C = "element-6066-11e4-a52e-4f735466cecf";
+    private static final long INTERVALO_BUSQUEDA_MS = 50;
+
+    private static volatile SimuladorUSSD enEsteJvm;
+
+    private final ArbolUSSD arbol;
+    private final int latenciaMs;
+    private final int jitterMs;
+    private final int comandoMs;
+    private final long semilla;
+    private final Map<String, SesionUSSD> sesiones = new ConcurrentHashMap<>();
+    private final AtomicLong sesionesCreadas = new AtomicLong();
+    private HttpServer servidor;
+    private ExecutorService hilos;
+
+    public SimuladorUSSD(ArbolUSSD arbol) {
+        this.arbol = arbol;
+        this.latenciaMs = Integer.getInteger("ussd.simulador.latencia.ms", 0);
+        this.jitterMs = Integer.getInteger("ussd.simulador.jitter.ms", 0);
+        this.comandoMs = Integer.getInteger("ussd.simulador.comando.ms", 0);
+        this.semilla = Long.getLong("ussd.simulador.semilla", 42L);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int puerto = args.length > 0 ? Integer.parseInt(args[0]) : Integer.getInteger("ussd.simulador.puerto", PUERTO_POR_DEFECTO);
+        new SimuladorUSSD(ArbolUSSD.configurado()).iniciar(puerto);
+    }
+
+    /**
+     * Con ussd.simulador=true arranca (una sola vez por JVM) el simulador.
+     *
+     * @return URL del hub del simulador, o null si no está habilitado
+     */
+    public static String iniciarSiConfigurado() {
+        if (!Boolean.getBoolean("ussd.simulador")) {
+            return null;
+        }
+        if (enEsteJvm == null) {
+            synchronized (SimuladorUSSD.class) {
+                if (enEsteJvm == null) {
+                    SimuladorUSSD simulador;
+                    try {
+                        simulador = new SimuladorUSSD(ArbolUSSD.configurado());
+                    } catch (IOException e) {
+                        throw new IllegalStateException("No se pudo leer el guion del simulador USSD: " + e.getMessage(), e);
+                    }
+                    // Arrancado desde un thread daemon, el dispatcher del HttpServer hereda el
+                    // flag y no impide que el JVM de la suite termine
+                    Thread arranque = new Thread(() -> {
+                        try {
+                            simulador.iniciar(Integer.getInteger("ussd.simulador.puerto", PUERTO_POR_DEFECTO));
+                        } catch (IOException e) {
+                            throw new IllegalStateException("No se pudo iniciar el simulador USSD: " + e.getMessage(), e);
+                        }
+                    }, "SimuladorUSSD-arranque");
+                    arranque.setDaemon(true);
+                    arranque.start();
+                    try {
+                        arranque.join();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    if (simulador.servidor == null) {
+                        throw new IllegalStateException("No se pudo iniciar el simulador USSD");
+                    }
+                    enEsteJvm = simulador;
+                }
+            }
+        }
+        return enEsteJvm.getHub();
+    }
+
+    public synchronized void iniciar(int puerto) throws IOException {
+        servidor = HttpServer.create(new InetSocketAddress("127.0.0.1", puerto), 0);
+        hilos = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "SimuladorUSSD-http");
+            t.setDaemon(true);
+            return t;
+        });
+        servidor.setExecutor(hilos);
+        servidor.createContext("/", this::atender);
+        servidor.start();
+        System.out.println("🛰️ [SimuladorUSSD] Escuchando en " + getHub() + " (" + arbol.cantidadMenus()
+                + " menús, latencia " + latenciaMs + "±" + jitterMs + " ms, comando " + comandoMs + " ms)");
+    }
+
+    public synchronized void detener() {
+        if (servidor != null) {
+            servidor.stop(0);
+            hilos.shutdownNow();
+            servidor = null;
+        }
+    }
+
+    public String getHub() {
+        return "http://127.0.0.1:" + servidor.getAddress().getPort() + "/wd/hub";
+    }
+
+    // ─── Protocolo W3C ───────────────────────────────────────────────────────
+
+    private void atender(HttpExchange intercambio) throws IOException {
+        try {
+            if (comandoMs > 0) {
+                Thread.sleep(comandoMs);
+            }
+            String ruta = intercambio.getRequestURI().getPath();
+            if (ruta.startsWith("/wd/hub")) {
+                ruta = ruta.substring("/wd/hub".length());
+            }
+            String[] partes = ruta.replaceAll("^/+|/+$", "").split("/");
+            JSONObject cuerpo = leerCuerpo(intercambio);
+            Object valor = despachar(intercambio.getRequestMethod(), partes, cuerpo);
+            responder(intercambio, 200, new JSONObject().put("value", valor == null ? JSONObject.NULL : valor));
+        } catch (ErrorWebDriver e) {
+            responder(intercambio, e.estadoHttp, new JSONObject().put("value", new JSONObject()
+                    .put("error", e.codigo).put("message", e.getMessage()).put("stacktrace", "")));
+        } catch (Exception e) {
+            responder(intercambio, 500, new JSONObject().put("value", new JSONObject()
+                    .put("error", "unknown error").put("message", String.valueOf(e)).put("stacktrace", "")));
+        }
+    }
+
+    private Object despachar(String metodo, String[] p, JSONObject cuerpo) throws InterruptedException {
+        if (p.length == 1 && "status".equals(p[0])) {
+            return new JSONObject().put("ready", true).put("message", "Simulador USSD listo");
+        }
+        if (p.length == 1 && "session".equals(p[0]) && "POST".equals(metodo)) {
+            return crearSesion();
+        }
+        if (p.length < 2 || !"session".equals(p[0])) {
+            throw ErrorWebDriver.comandoDesconocido(metodo, p);
+        }
+        String idSesion = p[1];
+        SesionUSSD sesion = sesiones.get(idSesion);
+        if (sesion == null) {
+            throw new ErrorWebDriver(404, "invalid session id", "Sesión inexistente: " + idSesion);
+        }
+        String comando = p.length > 2 ? p[2] : "";
+        switch (comando) {
+            case "":
+                if ("DELETE".equals(metodo)) {
+                    sesiones.remove(idSesion);
+                    return null;
+                }
+                return capacidades();
+            case "timeouts":
+                if (cuerpo.has("implicit")) {
+                    sesion.setImplicitWaitMs(cuerpo.optLong("implicit"));
+                } else if ("implicit".equals(cuerpo.optString("type")) || (p.length > 3 && "implicit_wait".equals(p[3]))) {
+                    sesion.setImplicitWaitMs(cuerpo.optLong("ms"));
+                }
+                return null;
+            case "source":
+                return sesion.pantalla().getXml();
+            case "screenshot":
+                return Base64.getEncoder().encodeToString(sesion.pantalla().captura());
+            case "element":
+                if (p.length == 3) {
+                    return buscar(sesion, cuerpo, -1, null, true);
+                }
+                return comandoDeElemento(sesion, metodo, p, cuerpo);
+            case "elements":
+                return buscar(sesion, cuerpo, -1, null, false);
+            case "execute":
+                return ejecutarScript(sesion, cuerpo);
+            case "appium":
+                return comandoAppium(sesion, p, cuerpo);
+            case "window":
+                return new JSONObject().put("x", 0).put("y", 0).put("width", 1080).put("height", 2400);
+            case "orientation":
+                return "PORTRAIT";
+            case "context":
+                return "NATIVE_APP";
+            case "contexts":
+                return new JSONArray().put("NATIVE_APP");
+            case "actions":
+            case "touch":
+                return null; // Gestos y scroll: la pantalla simulada cabe completa
+            default:
+                throw ErrorWebDriver.comandoDesconocido(metodo, p);
+        }
+    }
+
+    private JSONObject crearSesion() {
+        String id = UUID.randomUUID().toString();
+        sesiones.put(id, new SesionUSSD(arbol, latenciaMs, jitterMs, semilla + sesionesCreadas.getAndIncrement()));
+        System.out.println("📱 [SimuladorUSSD] Nueva sesión " + id + " (" + sesiones.size() + " activa(s))");
+        return new JSONObject().put("sessionId", id).put("capabilities", capacidades());
+    }
+
+    private static JSONObject capacidades() {
+        return new JSONObject()
+                .put("platformName", "Android")
+                .put("automationName", "UiAutomator2")
+                .put("deviceName", "SimuladorUSSD")
+                .put("appPackage", SesionUSSD.PAQUETE_DIALER)
+                .put("appActivity", SesionUSSD.ACTIVIDAD_DIALER);
+    }
+
+    /**
+     * findElement(s) respetando el implicit wait de la sesión, como Appium.
+     */
+    private Object buscar(SesionUSSD sesion, JSONObject cuerpo, int desde, String idPadre, boolean uno)
+            throws InterruptedException {
+        String estrategia = cuerpo.optString("using");
+        String valor = cuerpo.optString("value");
+        long limite = System.currentTimeMillis() + sesion.getImplicitWaitMs();
+        while (true) {
+            PantallaSimulada pantalla = sesion.pantalla();
+            int raiz = desde;
+            if (idPadre != null) {
+                raiz = pantalla.indiceDe(idPadre);
+                if (raiz == -1) {
+                    throw ErrorWebDriver.obsoleto(idPadre);
+                }
+            }
+            List<Integer> encontrados;
+            try {
+                encontrados = pantalla.buscar(estrategia, valor, raiz);
+            } catch (IllegalArgumentException e) {
+                throw new ErrorWebDriver(400, "invalid selector", e.getMessage());
+            }
+            if (!encontrados.isEmpty() || System.currentTimeMillis() >= limite) {
+                if (uno) {
+                    if (encontrados.isEmpty()) {
+                        throw new ErrorWebDriver(404, "no such element",
+                                "An element could not be located on the page using the given search parameters. "
+                                        + "using=" + estrategia + ", value=" + valor);
+                    }
+                    return referencia(pantalla.idElemento(encontrados.get(0)));
+                }
+                JSONArray lista = new JSONArray();
+                for (Integer indice : encontrados) {
+                    lista.put(referencia(pantalla.idElemento(indice)));
+                }
+                return lista;
+            }
+            Thread.sleep(INTERVALO_BUSQUEDA_MS);
+        }
+    }
+
+    private static JSONObject referencia(String idElemento) {
+        return new JSONObject().put(ELEMENTO_W3C, idElemento).put("ELEMENT", idElemento);
+    }
+
+    private Object comandoDeElemento(SesionUSSD sesion, String metodo, String[] p, JSONObject cuerpo)
+            throws InterruptedException {
+        String idElemento = p[3];
+        String accion = p.length > 4 ? p[4] : "";
+        if ("element".equals(accion) || "elements".equals(accion)) {
+            return buscar(sesion, cuerpo, -1, idElemento, "element".equals(accion));
+        }
+        PantallaSimulada pantalla = sesion.pantalla();
+        int indice = pantalla.indiceDe(idElemento);
+        if (indice == -1) {
+            throw ErrorWebDriver.obsoleto(idElemento);
+        }
+        String resourceId = pantalla.atributo(indice, "resource-id");
+        switch (accion) {
+            case "click":
+                sesion.click(resourceId);
+                return null;
+            case "value":
+                sesion.escribir(resourceId, textoAEscribir(cuerpo));
+                return null;
+            case "clear":
+                sesion.limpiar(resourceId);
+                return null;
+            case "text":
+                return pantalla.atributo(indice, "text");
+            case "name":
+                return pantalla.atributo(indice, "class");
+            case "attribute":
+                String nombre = p.length > 5 ? p[5] : "";
+                return pantalla.atributo(indice, "contentDescription".equals(nombre) ? "content-desc"
+                        : "resourceId".equals(nombre) ? "resource-id" : nombre);
+            case "displayed":
+                return true;
+            case "enabled":
+            case "selected":
+                return Boolean.parseBoolean(pantalla.atributo(indice, accion));
+            case "rect":
+            case "location":
+            case "size":
+                int[] r = pantalla.rectangulo(indice);
+                return new JSONObject().put("x", r[0]).put("y", r[1]).put("width", r[2]).put("height", r[3]);
+            default:
+                throw ErrorWebDriver.comandoDesconocido(metodo, p);
+        }
+    }
+
+    private static String textoAEscribir(JSONObject cuerpo) {
+        if (cuerpo.has("text")) {
+            return cuerpo.getString("text");
+        }
+        StringBuilder texto = new StringBuilder();
+        JSONArray valor = cuerpo.optJSONArray("value");
+        for (int i = 0; valor != null && i < valor.length(); i++) {
+            texto.append(valor.getString(i));
+        }
+        return texto.toString();
+    }
+
+    /**
+     * "mobile: shell": solo el intent CALL tiene efecto (marca el número); el resto devuelve salida vacía.
+     */
+    private Object ejecutarScript(SesionUSSD sesion, JSONObject cuerpo) {
+        if (!"mobile: shell".equals(cuerpo.optString("script"))) {
+            return null;
+        }
+        JSONArray args = cuerpo.optJSONArray("args");
+        JSONObject parametros = args != null && args.length() > 0 ? args.optJSONObject(0) : null;
+        if (parametros == null) {
+            return "";
+        }
+        JSONArray argumentos = parametros.optJSONArray("args");
+        String linea = argumentos != null ? argumentos.join(" ").replace("\"", "") : "";
+        if (linea.contains("android.intent.action.CALL")) {
+            int tel = linea.indexOf("tel:");
+            if (tel != -1) {
+                String numero = linea.substring(tel + 4).split("\\s")[0].replace("'", "");
+                sesion.marcar(URLDecoder.decode(numero, StandardCharsets.UTF_8));
+            }
+        }
+        return "";
+    }
+
+    private Object comandoAppium(SesionUSSD sesion, String[] p, JSONObject cuerpo) {
+        String comando = p.length > 4 ? p[3] + "/" + p[4] : "";
+        switch (comando) {
+            case "device/press_keycode":
+            case "device/long_press_keycode":
+                sesion.tecla(cuerpo.optInt("keycode"));
+                return null;
+            case "device/current_activity":
+                return sesion.actividad();
+            case "device/current_package":
+                return sesion.paquete();
+            case "device/is_keyboard_shown":
+                return false;
+            case "device/hide_keyboard":
+                return null;
+            default:
+                throw ErrorWebDriver.comandoDesconocido("POST", p);
+        }
+    }
+
+    private static JSONObject leerCuerpo(HttpExchange intercambio) throws IOException {
+        try (InputStream entrada = intercambio.getRequestBody()) {
+            String texto = new String(entrada.readAllBytes(), StandardCharsets.UTF_8).trim();
+            return texto.startsWith("{") ? new JSONObject(texto) : new JSONObject();
+        }
+    }
+
+    private static void responder(HttpExchange intercambio, int estado, JSONObject cuerpo) throws IOException {
+        byte[] bytes = cuerpo.toString().getBytes(StandardCharsets.UTF_8);
+        intercambio.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        intercambio.sendResponseHeaders(estado, bytes.length);
+        try (OutputStream salida = intercambio.getResponseBody()) {
+            salida.write(bytes);
+        }
+    }
+
+    private static final class ErrorWebDriver extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int estadoHttp;
+        private final String codigo;
+
+        private ErrorWebDriver(int estadoHttp, String codigo, String mensaje) {
+            super(mensaje);
+            this.estadoHttp = estadoHttp;
+            this.codigo = codigo;
+        }
+
+        private static ErrorWebDriver obsoleto(String idElemento) {
+            return new ErrorWebDriver(404, "stale element reference",
+                    "The element '" + idElemento + "' does not exist in DOM anymore");
+        }
+
+        private static ErrorWebDriver comandoDesconocido(String metodo, String[] partes) {
+            return new ErrorWebDriver(404, "unknown command",
+                    "Comando no soportado por el simulador: " + metodo + " /" + String.join("/", partes));
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package utils.traza;
+
+import java.lang.invoke.VarHandle;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Anillo de eventos de traza sin locks, con las entradas creadas de antemano.
+ *
+ * Cada escritor reserva una posición con un getAndIncrement y llena la entrada que le
+ * toca; no se crea ningún objeto por evento. Cada entrada lleva la secuencia que la
+ * publica (-1 mientras se escribe), así que el lector copia la entrada y la valida
+ * como un seqlock: si cambió mientras la copiaba, el anillo ya dio la vuelta y la
+ * entrada cuenta como perdida.
+ *
+ * Cada evento lleva además su propietario (el thread del escenario para el que se
+ * registró), así que con escenarios en paralelo la ventana de uno no arrastra los
+ * eventos de los otros.
+ */
+final class AnilloEventos {
+
+    private static final long ESCRIBIENDO = -1;
+
+    /** Para {@link #copiar}: eventos de cualquier propietario */
+    static final long TODOS = -1;
+
+    private final Evento[] eventos;
+    private final int mascara;
+    private final AtomicLong cursor = new AtomicLong();
+
+    AnilloEventos(int capacidadMinima) {
+        int capacidad = Integer.highestOneBit(Math.max(16, capacidadMinima - 1)) << 1;
+        eventos = new Evento[capacidad];
+        for (int i = 0; i < capacidad; i++) {
+            eventos[i] = new Evento();
+        }
+        mascara = capacidad - 1;
+    }
+
+    int capacidad() {
+        return eventos.length;
+    }
+
+    /**
+     * Secuencia del próximo evento: marca el inicio de una ventana para {@link #copiar}.
+     */
+    long posicion() {
+        return cursor.get();
+    }
+
+    /**
+     * @param propietario id del thread del escenario al que pertenece el evento
+     */
+    void registrar(char fase, String categoria, String nombre, String detalle, long propietario,
+                   long inicioNanos, long duracionNanos) {
+        long secuencia = cursor.getAndIncrement();
+        Evento evento = eventos[(int) (secuencia & mascara)];
+        Thread hilo = Thread.currentThread();
+        evento.secuencia = ESCRIBIENDO;
+        // Que el lector no vea la secuencia vieja con campos ya nuevos
+        VarHandle.storeStoreFence();
+        evento.fase = fase;
+        evento.categoria = categoria;
+        evento.nombre = nombre;
+        evento.detalle = detalle;
+        evento.idHilo = hilo.getId();
+        evento.nombreHilo = hilo.getName();
+        evento.propietario = propietario;
+        evento.inicioNanos = inicioNanos;
+        evento.duracionNanos = duracionNanos;
+        evento.secuencia = secuencia;
+    }
+
+    /**
+     * Copia los eventos publicados desde la secuencia indicada hasta ahora.
+     *
+     * @param propietario Solo los eventos de ese propietario, o {@link #TODOS}
+     * @return Eventos de la ventana que ya no estaban (el anillo dio la vuelta o se estaban escribiendo)
+     */
+    long copiar(long desde, long propietario, List<Evento> destino) {
+        long hasta = cursor.get();
+        long primero = Math.max(desde, hasta - eventos.length);
+        long perdidos = primero - desde;
+        for (long secuencia = primero; secuencia < hasta; secuencia++) {
+            Evento evento = eventos[(int) (secuencia & mascara)];
+            if (evento.secuencia != secuencia) {
+                perdidos++;
+                continue;
+            }
+            Evento copia = evento.copia();
+            VarHandle.acquireFence();
+            if (evento.secuencia != secuencia) {
+                perdidos++;
+                continue;
+            }
+            if (propietario == TODOS || copia.propietario == propietario) {
+                destino.add(copia);
+            }
+        }
+        return perdidos;
+    }
+
+    /**
+     * Entrada del anillo. Los campos se sobrescriben en cada vuelta; solo {@link #secuencia}
+     * es volatile y es la que publica el resto.
+     */
+    static final class Evento {
+        volatile long secuencia = ESCRIBIENDO;
+        char fase;
+        String categoria;
+        String nombre;
+        String detalle;
+        long idHilo;
+        String nombreHilo;
+        long propietario;
+        long inicioNanos;
+        long duracionNanos;
+
+        private Evento copia() {
+            Evento copia = new Evento();
+            copia.fase = fase;
+            copia.categoria = categoria;
+            copia.nombre = nombre;
+            copia.detalle = detalle;
+            copia.idHilo = idHilo;
+            copia.nombreHilo = nombreHilo;
+            copia.propietario = propietario;
+            copia.inicioNanos = inicioNanos;
+            copia.duracionNanos = duracionNanos;
+            return copia;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package utils.traza;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Serializa eventos al formato JSON de Chrome trace-event
+ * ({"traceEvents": [...]}, tiempos en microsegundos).
+ */
+final class EscritorTraza {
+
+    private static final int PID = 1;
+
+    /** HttpCommandExecutor renombra el thread mientras envía cada comando */
+    private static final String NOMBRE_TEMPORAL_SELENIUM = "Forwarding ";
+
+    private EscritorTraza() {
+    }
+
+    static void escribir(File archivo, String escenario, List<AnilloEventos.Evento> eventos, long perdidos)
+            throws IOException {
+        long origen = Long.MAX_VALUE;
+        Map<Long, String> hilos = new LinkedHashMap<>();
+        for (AnilloEventos.Evento evento : eventos) {
+            origen = Math.min(origen, evento.inicioNanos);
+            String nombre = hilos.get(evento.idHilo);
+            if (nombre == null || nombre.startsWith(NOMBRE_TEMPORAL_SELENIUM)) {
+                hilos.put(evento.idHilo, evento.nombreHilo);
+            }
+        }
+
+        try (BufferedWriter salida = Files.newBufferedWriter(archivo.toPath(), StandardCharsets.UTF_8)) {
+            salida.write("{\"displayTimeUnit\":\"ms\",\"otherData\":{\"escenario\":");
+            cadena(salida, escenario);
+            salida.write(",\"eventosPerdidos\":" + perdidos + "},\"traceEvents\":[\n");
+
+            boolean primero = true;
+            for (Map.Entry<Long, String> hilo : hilos.entrySet()) {
+                primero = separar(salida, primero);
+                salida.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":" + PID + ",\"tid\":" + hilo.getKey()
+                        + ",\"args\":{\"name\":");
+                cadena(salida, hilo.getValue());
+                salida.write("}}");
+            }
+            for (AnilloEventos.Evento evento : eventos) {
+                primero = separar(salida, primero);
+                salida.write("{\"name\":");
+                cadena(salida, evento.nombre);
+                salida.write(",\"cat\":");
+                cadena(salida, evento.categoria);
+                salida.write(",\"ph\":\"" + evento.fase + "\",\"pid\":" + PID + ",\"tid\":" + evento.idHilo
+                        + ",\"ts\":" + micros(evento.inicioNanos - origen));
+                if (evento.fase == 'X') {
+                    salida.write(",\"dur\":" + micros(evento.duracionNanos));
+                } else {
+                    salida.write(",\"s\":\"t\"");
+                }
+                if (evento.detalle != null) {
+                    salida.write(",\"args\":{\"detalle\":");
+                    cadena(salida, evento.detalle);
+                    salida.write('}');
+                }
+                salida.write('}');
+            }
+            salida.write("\n]}\n");
+        }
+    }
+
+    private static boolean separar(Writer salida, boolean primero) throws IOException {
+        if (!primero) {
+            salida.write(",\n");
+        }
+        return false;
+    }
+
+    private static String micros(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1000.0);
+    }
+
+    private static void cadena(Writer salida, String texto) throws IOException {
+        if (texto == null) {
+            salida.write("null");
+            return;
+        }
+        salida.write('"');
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            switch (c) {
+                case '"': salida.write("\\\""); break;
+                case '\\': salida.write("\\\\"); break;
+                case '\n': salida.write("\\n"); break;
+                case '\r': salida.write("\\r"); break;
+                case '\t': salida.write("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        salida.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        salida.write(c);
+                    }
+            }
+        }
+        salida.write('"');
+    }
+}
@@ -0,0 +1,189 @@
+package utils.traza;
+
+import net.serenitybdd.core.environment.ConfiguredEnvironment;
+import utils.FinDeEjecucion;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Línea de tiempo de la ejecución en formato Chrome trace-event.
+ *
+ * Los spans se registran al terminar (evento "X" con inicio y duración), así que un paso
+ * de Cucumber, la tarea de Screenplay que ejecuta y los comandos del driver que envía
+ * quedan anidados por tiempo en la pista de su thread. Los threads auxiliares
+ * (PopupGuardian, codificador de capturas, cola de Ollama) tienen su propia pista.
+ *
+ * Los eventos van a un {@link AnilloEventos} sin locks; al terminar cada escenario
+ * {@link #escribirEscenario} vuelca la ventana del escenario a
+ * &lt;carpeta&gt;/&lt;fecha&gt;_&lt;escenario&gt;.json, que se abre en chrome://tracing o Perfetto.
+ * El anillo es uno para todos los threads: cada evento se marca con el thread del
+ * escenario al que pertenece (el propio, o el indicado con {@link #trabajarPara} en los
+ * threads auxiliares) y la ventana solo toma los del escenario que la escribe.
+ *
+ * Los análisis de Ollama corren en la cola después del @After del escenario que falló,
+ * así que caerían en la ventana de otro escenario. Sus spans van a un anillo aparte, con
+ * el escenario analizado en el detalle, y {@link #escribirSuite()} los escribe en una
+ * traza de la suite (&lt;fecha&gt;_suite[-worker].json) al terminar la ejecución
+ * ({@link utils.FinDeEjecucion}, después de drenar la cola).
+ *
+ * Configuración via system properties:
+ * - traza.habilitada: registrar la línea de tiempo (default: true)
+ * - traza.capacidad: eventos que guarda el anillo (default: 65536)
+ * - traza.capacidad.suite: eventos de la traza de la suite (Ollama) (default: 4096)
+ * - traza.dir: carpeta de salida (default: &lt;salida de Serenity&gt;/trazas)
+ */
+public final class Trazador {
+
+    public static final boolean HABILITADO =
+            Boolean.parseBoolean(System.getProperty("traza.habilitada", "true"));
+
+    public static final String CUCUMBER = "cucumber";
+    public static final String SCREENPLAY = "screenplay";
+    public static final String DRIVER = "driver";
+    public static final String CAPTURA = "captura";
+    public static final String POPUP = "popup";
+    public static final String LOCK = "lock";
+    public static final String OLLAMA = "ollama";
+
+    private static final AnilloEventos ANILLO = new AnilloEventos(Integer.getInteger("traza.capacidad", 65536));
+    private static final AnilloEventos ANILLO_SUITE =
+            new AnilloEventos(Integer.getInteger("traza.capacidad.suite", 4096));
+    private static final DateTimeFormatter FECHA = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+
+    /** Escenario (su thread) para el que trabaja un thread auxiliar; null = el propio thread */
+    private static final ThreadLocal<Thread> PROPIETARIO = new ThreadLocal<>();
+
+    static {
+        if (HABILITADO) {
+            // Después de los análisis de Ollama (orden 0), que escriben en esta traza
+            FinDeEjecucion.registrar(100, "Trazador", Trazador::escribirSuite);
+        }
+    }
+
+    private Trazador() {
+    }
+
+    /**
+     * Los eventos que registre el thread actual cuentan para el escenario de
+     * {@code escenario} (p. ej. el guardian de popups o el codificador de capturas)
+     * hasta {@link #terminarTrabajo()}.
+     */
+    public static void trabajarPara(Thread escenario) {
+        PROPIETARIO.set(escenario);
+    }
+
+    public static void terminarTrabajo() {
+        PROPIETARIO.remove();
+    }
+
+    /**
+     * Marca de tiempo para el inicio de un span.
+     */
+    public static long ahora() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Span que empezó en {@code inicioNanos} (ver {@link #ahora()}) y termina ahora.
+     */
+    public static void span(String categoria, String nombre, long inicioNanos) {
+        span(categoria, nombre, inicioNanos, null);
+    }
+
+    /**
+     * @param detalle Texto que se muestra en los argumentos del span (puede ser null)
+     */
+    public static void span(String categoria, String nombre, long inicioNanos, String detalle) {
+        if (HABILITADO) {
+            anillo(categoria).registrar('X', categoria, nombre, detalle, propietario(), inicioNanos,
+                    System.nanoTime() - inicioNanos);
+        }
+    }
+
+    /**
+     * Evento puntual (sin duración) en la pista del thread actual.
+     */
+    public static void instante(String categoria, String nombre, String detalle) {
+        if (HABILITADO) {
+            anillo(categoria).registrar('i', categoria, nombre, detalle, propietario(), System.nanoTime(), 0);
+        }
+    }
+
+    /**
+     * Inicio de la ventana de un escenario: se pasa después a {@link #escribirEscenario}.
+     */
+    public static long posicion() {
+        return ANILLO.posicion();
+    }
+
+    /**
+     * Escribe los eventos del escenario del thread actual registrados desde {@code desde}
+     * como un archivo de traza.
+     *
+     * @return El archivo escrito, o null si la traza está deshabilitada o falló la escritura
+     */
+    public static File escribirEscenario(String escenario, long desde) {
+        if (!HABILITADO) {
+            return null;
+        }
+        return escribir(ANILLO, escenario, String.valueOf(escenario).replaceAll("[^A-Za-z0-9]+", "_"),
+                desde, Thread.currentThread().getId());
+    }
+
+    /**
+     * Escribe la traza de la suite (análisis de Ollama); corre al terminar la ejecución,
+     * cuando la cola de análisis ya se drenó.
+     *
+     * @return El archivo escrito, o null si no hubo eventos o falló la escritura
+     */
+    public static File escribirSuite() {
+        if (!HABILITADO || ANILLO_SUITE.posicion() == 0) {
+            return null;
+        }
+        String worker = System.getProperty("org.gradle.test.worker");
+        return escribir(ANILLO_SUITE, "suite", worker != null ? "suite-" + worker : "suite", 0, AnilloEventos.TODOS);
+    }
+
+    /**
+     * Los análisis de Ollama no pertenecen a la ventana del escenario en curso.
+     */
+    private static AnilloEventos anillo(String categoria) {
+        return OLLAMA.equals(categoria) ? ANILLO_SUITE : ANILLO;
+    }
+
+    private static long propietario() {
+        Thread escenario = PROPIETARIO.get();
+        return (escenario != null ? escenario : Thread.currentThread()).getId();
+    }
+
+    private static File escribir(AnilloEventos anillo, String titulo, String sufijoArchivo, long desde, long propietario) {
+        List<AnilloEventos.Evento> eventos = new ArrayList<>();
+        long perdidos = anillo.copiar(desde, propietario, eventos);
+        File carpeta = carpeta();
+        carpeta.mkdirs();
+        File archivo = new File(carpeta, LocalDateTime.now().format(FECHA) + "_" + sufijoArchivo + ".json");
+        try {
+            EscritorTraza.escribir(archivo, titulo, eventos, perdidos);
+            System.out.println("🧵 [Trazador] " + eventos.size() + " eventos"
+                    + (perdidos > 0 ? " (" + perdidos + " perdidos, subir traza.capacidad)" : "")
+                    + " en " + archivo.getPath());
+            return archivo;
+        } catch (IOException e) {
+            System.err.println("⚠️ [Trazador] No se pudo escribir la traza: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static File carpeta() {
+        String configurada = System.getProperty("traza.dir");
+        if (configurada != null && !configurada.trim().isEmpty()) {
+            return new File(configurada.trim());
+        }
+        return new File(ConfiguredEnvironment.getConfiguration().getOutputDirectory(), "trazas");
+    }
+}
@@ -1,20 +1,37 @@
 package runners;
 
+import cucumber.api.CucumberOptions;
 import net.serenitybdd.cucumber.CucumberWithSerenity;
 import org.junit.runner.Description;
 import org.junit.runner.Runner;
 import org.junit.runner.notification.RunNotifier;
 import utils.BeforeSuite;
+import utils.DataToFeature;
+import utils.FinDeEjecucion;
 import utils.SeleniumFunctions;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class CustomRunner extends Runner {
 
+  /** Opciones de Cucumber 2.4 que consumen el siguiente token */
+  private static final Set<String> OPCIONES_CON_ARGUMENTO = new HashSet<>(Arrays.asList(
+          "--i18n", "--glue", "-g", "--tags", "-t", "--plugin", "--add-plugin", "-p",
+          "--format", "-f", "--snippets", "--name", "-n"));
+  /** Un token de cucumber.options: palabra, o texto entre comillas simples o dobles */
+  private static final Pattern TOKEN_OPCIONES = Pattern.compile("(?:[^\\s'\"]+|'[^']*'|\"[^\"]*\")+");
+
   private Class<CucumberWithSerenity> classValue;
   private CucumberWithSerenity cucumberWithSerenity;
   private final Properties prop = new Properties();
@@ -52,17 +69,71 @@ public class CustomRunner extends Runner {
     }
   }
 
+  /**
+   * Llena las tablas ##@externalData en una copia de los .feature y hace que Cucumber lea esa
+   * copia en lugar de los originales, sin tocarlos. Las rutas de features que ya traiga
+   * cucumber.options (o, si no trae, las de @CucumberOptions) se reemplazan por sus copias
+   * expandidas; el resto de opciones (--tags, --plugin...) se conserva.
+   */
+  private void expandirDatosExternos() throws Exception {
+    CucumberOptions options = classValue.getAnnotation(CucumberOptions.class);
+    if (options == null) {
+      return;
+    }
+    StringBuilder opciones = new StringBuilder();
+    List<String> features = new ArrayList<>();
+    separarOpciones(System.getProperty("cucumber.options", ""), opciones, features);
+    if (features.isEmpty()) {
+      features.addAll(Arrays.asList(options.features()));
+    }
+
+    StringBuilder rutas = new StringBuilder();
+    boolean expandido = false;
+    for (String feature : features) {
+      String expandida = DataToFeature.expandirFeatures(feature);
+      expandido |= expandida != null;
+      rutas.append(' ').append(expandida != null ? expandida : feature);
+    }
+    if (expandido) {
+      // Rutas en cucumber.options reemplazan las de la anotación: cada escenario corre una sola vez
+      System.setProperty("cucumber.options", (opciones.toString() + rutas).trim());
+    }
+  }
+
+  /**
+   * Separa un cucumber.options en sus opciones (con su argumento, tal como vienen) y sus
+   * rutas de features.
+   */
+  private static void separarOpciones(String cucumberOptions, StringBuilder opciones, List<String> features) {
+    Matcher token = TOKEN_OPCIONES.matcher(cucumberOptions);
+    boolean esArgumento = false;
+    while (token.find()) {
+      String valor = token.group();
+      if (esArgumento || valor.startsWith("-")) {
+        opciones.append(' ').append(valor);
+        esArgumento = !esArgumento && OPCIONES_CON_ARGUMENTO.contains(valor);
+      } else {
+        features.add(valor);
+      }
+    }
+  }
+
   @Override
   public void run(RunNotifier notifier) {
     try {
       String environment = readProperties("Environment");
       functions.saveInScenario("Environment", environment);
       runAnnotatedMethods(BeforeSuite.class);
+      expandirDatosExternos();
       cucumberWithSerenity = new CucumberWithSerenity(classValue);
     } catch (Exception e) {
       e.printStackTrace();
     }
-    cucumberWithSerenity.run(notifier);
-
+    try {
+      cucumberWithSerenity.run(notifier);
+    } finally {
+      // Serenity no avisa testRunFinished a los listeners registrados a mano
+      FinDeEjecucion.ejecutar();
+    }
   }
 }
\ No newline at end of file